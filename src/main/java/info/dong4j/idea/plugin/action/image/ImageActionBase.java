@@ -33,6 +33,7 @@ import com.intellij.openapi.actionSystem.PlatformDataKeys;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 
 import info.dong4j.idea.plugin.content.ImageContents;
@@ -146,6 +147,9 @@ public abstract class ImageActionBase extends AnAction {
                                         @NotNull VirtualFile virtualFile) {
         MarkdownImage markdownImage = new MarkdownImage();
         markdownImage.setVirtualFile(virtualFile);
+        if (virtualFile.isInLocalFileSystem()) {
+            markdownImage.setSourceFile(VfsUtilCore.virtualToIoFile(virtualFile));
+        }
         markdownImage.setImageName(virtualFile.getName());
         markdownImage.setPath(virtualFile.getPath());
         try {
@@ -27,11 +27,9 @@ package info.dong4j.idea.plugin.action.image;
 
 import com.intellij.icons.AllIcons;
 import com.intellij.openapi.actionSystem.AnActionEvent;
-import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.externalSystem.task.TaskCallbackAdapter;
 import com.intellij.openapi.util.io.FileUtil;
-import com.intellij.openapi.vfs.VirtualFileManager;
 
 import info.dong4j.idea.plugin.MikBundle;
 import info.dong4j.idea.plugin.chain.ActionHandlerAdapter;
@@ -42,6 +40,7 @@ import info.dong4j.idea.plugin.chain.ImageRenameHandler;
 import info.dong4j.idea.plugin.entity.EventData;
 import info.dong4j.idea.plugin.entity.MarkdownImage;
 import info.dong4j.idea.plugin.task.ActionTask;
+import info.dong4j.idea.plugin.util.VirtualFileUtils;
 
 import org.jetbrains.annotations.Contract;
 
@@ -93,8 +92,10 @@ public final class ImageCompressAction extends ImageActionBase {
                 @Override
                 public void invoke(EventData data, Iterator<MarkdownImage> imageIterator, MarkdownImage markdownImage) {
                     InputStream inputStream = markdownImage.getInputStream();
-                    try {
-                        FileUtil.copy(inputStream, new FileOutputStream(new File(markdownImage.getPath())));
+                    File imageFile = new File(markdownImage.getPath());
+                    try (OutputStream outputStream = new FileOutputStream(imageFile)) {
+                        FileUtil.copy(inputStream, outputStream);
+                        data.getWrittenFiles().add(imageFile);
                     } catch (IOException e) {
                         log.trace("", e);
                     }
@@ -106,10 +107,8 @@ public final class ImageCompressAction extends ImageActionBase {
                 @Override
                 public void onSuccess() {
                     log.trace("Success callback");
-                    // 刷新 VFS, 避免新增的图片很久才显示出来
-                    ApplicationManager.getApplication().runWriteAction(() -> {
-                        VirtualFileManager.getInstance().syncRefresh();
-                    });
+                    // 只刷新被替换的图片, 避免修改后的图片很久才显示出来
+                    VirtualFileUtils.refreshAsync(data.getWrittenFiles(), null);
                 }
             });
 
@@ -37,6 +37,7 @@ import com.intellij.psi.PsiElement;
 import info.dong4j.idea.plugin.client.OssClient;
 import info.dong4j.idea.plugin.entity.MarkdownImage;
 import info.dong4j.idea.plugin.enums.CloudEnum;
+import info.dong4j.idea.plugin.index.ImageReferenceCache;
 import info.dong4j.idea.plugin.settings.MikPersistenComponent;
 import info.dong4j.idea.plugin.settings.MikState;
 import info.dong4j.idea.plugin.settings.OssState;
@@ -115,21 +116,25 @@ public abstract class IntentionActionBase extends PsiElementBaseIntentionAction
         return getText();
     }
 
+    /**
+     * 光标移动时都会调用, 使用 {@link ImageReferenceCache} 中缓存的行解析结果
+     *
+     * @param project the project
+     * @param editor  the editor
+     * @param element the element
+     * @return the boolean
+     */
     @Override
     public boolean isAvailable(@NotNull Project project, Editor editor,
                                @NotNull PsiElement element) {
-
-
-        if (MarkdownUtils.illegalImageMark(project, getLineText(editor))) {
-            return false;
-        }
-
-        VirtualFile virtualFile = FileDocumentManager.getInstance().getFile(editor.getDocument());
-        if (virtualFile == null) {
+        Document document = editor.getDocument();
+        ImageReferenceCache cache = ImageReferenceCache.getInstance();
+        if (!cache.isMarkdownDocument(document)) {
             return false;
         }
 
-        return MarkdownUtils.isMardownFile(virtualFile);
+        int documentLine = document.getLineNumber(editor.getCaretModel().getOffset());
+        return cache.isImageMarkLine(project, document, documentLine);
     }
 
     /**
@@ -27,19 +27,32 @@ package info.dong4j.idea.plugin.action.markdown;
 
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.PlatformDataKeys;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.VirtualFile;
 
 import info.dong4j.idea.plugin.MikBundle;
 import info.dong4j.idea.plugin.chain.ActionManager;
 import info.dong4j.idea.plugin.client.OssClient;
 import info.dong4j.idea.plugin.content.MarkdownContents;
 import info.dong4j.idea.plugin.entity.EventData;
+import info.dong4j.idea.plugin.enums.ImageLocationEnum;
+import info.dong4j.idea.plugin.index.ImageReference;
+import info.dong4j.idea.plugin.index.ImageReferenceCache;
+import info.dong4j.idea.plugin.index.MarkdownImageIndex;
 import info.dong4j.idea.plugin.task.ActionTask;
 import info.dong4j.idea.plugin.util.ActionUtils;
+import info.dong4j.idea.plugin.util.MarkdownUtils;
+import info.dong4j.idea.plugin.util.VirtualFileUtils;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
 import javax.swing.Icon;
 
 import lombok.extern.slf4j.Slf4j;
@@ -95,9 +108,6 @@ public abstract class UploadActionBase extends AnAction {
      */
     @Override
     public void actionPerformed(@NotNull AnActionEvent event) {
-        // 先刷新一次, 避免才添加的文件未被添加的 VFS 中, 导致找不到文件的问题
-        VirtualFileManager.getInstance().syncRefresh();
-
         final Project project = event.getProject();
         if (project != null) {
             EventData data = new EventData()
@@ -108,8 +118,63 @@ public abstract class UploadActionBase extends AnAction {
                 .setClientName(getName());
 
             // 开启后台任务
-            new ActionTask(project, MikBundle.message("mik.action.upload.process", getName()), ActionManager.buildUploadChain(data)).queue();
+            Runnable task = () -> new ActionTask(project,
+                                                 MikBundle.message("mik.action.upload.process", getName()),
+                                                 ActionManager.buildUploadChain(data)).queue();
+
+            // 先异步刷新待处理的文件, 避免才添加的文件未被添加的 VFS 中, 导致找不到文件的问题
+            Collection<VirtualFile> refreshFiles = getRefreshFiles(event, project);
+            if (refreshFiles.isEmpty()) {
+                task.run();
+            } else {
+                VirtualFileUtils.refreshAsync(refreshFiles, true, task);
+            }
+        }
+    }
+
+    /**
+     * 获取上传前需要刷新的文件
+     * 1. 编辑器中的文档: 通过索引能找到所有本地图片时不刷新, 否则刷新文档所在目录;
+     * 2. 文件树中选中的文件和目录
+     *
+     * @param event   the event
+     * @param project the project
+     * @return the refresh files
+     */
+    @NotNull
+    private static Collection<VirtualFile> getRefreshFiles(@NotNull AnActionEvent event, @NotNull Project project) {
+        final Editor editor = PlatformDataKeys.EDITOR.getData(event.getDataContext());
+        if (null != editor) {
+            VirtualFile virtualFile = FileDocumentManager.getInstance().getFile(editor.getDocument());
+            if (virtualFile == null || isAllImagesResolved(project, virtualFile)) {
+                return Collections.emptyList();
+            }
+            VirtualFile parent = virtualFile.getParent();
+            return parent == null ? Collections.emptyList() : Collections.singletonList(parent);
+        }
+        final VirtualFile[] files = PlatformDataKeys.VIRTUAL_FILE_ARRAY.getData(event.getDataContext());
+        return files == null ? Collections.emptyList() : Arrays.asList(files);
+    }
+
+    /**
+     * 文档中引用的本地图片是否都能在 project 中找到
+     *
+     * @param project     the project
+     * @param virtualFile the virtual file
+     * @return the boolean
+     */
+    private static boolean isAllImagesResolved(@NotNull Project project, @NotNull VirtualFile virtualFile) {
+        if (!MarkdownImageIndex.isAvailable(project)) {
+            return false;
+        }
+        ImageReferenceCache cache = ImageReferenceCache.getInstance();
+        for (ImageReference reference : MarkdownImageIndex.getImageReferences(project, virtualFile)) {
+            if (ImageLocationEnum.LOCAL.equals(reference.getLocation())
+                && cache.findImage(project, MarkdownUtils.getImageNameByPath(reference.getPath())) == null) {
+                return false;
+            }
         }
+        return true;
     }
 
     /**
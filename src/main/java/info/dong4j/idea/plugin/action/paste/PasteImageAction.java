@@ -26,7 +26,6 @@
 package info.dong4j.idea.plugin.action.paste;
 
 import com.intellij.openapi.actionSystem.DataContext;
-import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.editor.Caret;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
@@ -38,7 +37,6 @@ import com.intellij.openapi.vcs.AbstractVcs;
 import com.intellij.openapi.vcs.ProjectLevelVcsManager;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.openapi.vfs.VirtualFileManager;
 import com.intellij.util.Producer;
 import com.intellij.util.containers.hash.HashMap;
 
@@ -65,6 +63,7 @@ import info.dong4j.idea.plugin.util.CharacterUtils;
 import info.dong4j.idea.plugin.util.ClientUtils;
 import info.dong4j.idea.plugin.util.ImageUtils;
 import info.dong4j.idea.plugin.util.MarkdownUtils;
+import info.dong4j.idea.plugin.util.VirtualFileUtils;
 
 import org.apache.commons.lang.StringUtils;
 import org.jetbrains.annotations.Contract;
@@ -177,10 +176,8 @@ public class PasteImageAction extends EditorActionHandler implements EditorTextI
                             @Override
                             public void onSuccess() {
                                 log.trace("Success callback");
-                                // 刷新 VFS, 避免新增的图片很久才显示出来
-                                ApplicationManager.getApplication().runWriteAction(() -> {
-                                    VirtualFileManager.getInstance().syncRefresh();
-                                });
+                                // 只刷新保存图片的目录, 避免新增的图片很久才显示出来
+                                VirtualFileUtils.refreshAsync(data.getWrittenFiles(), null);
                             }
                         });
 
@@ -197,6 +194,7 @@ public class PasteImageAction extends EditorActionHandler implements EditorTextI
                                                                       Editor editor) {
         Map<Document, List<MarkdownImage>> waitingProcessMap = new HashMap<>(10);
         List<MarkdownImage> markdownImages = new ArrayList<>(10);
+        Map<String, File> sourceFiles = resolveSourceFiles(entry);
         for (Map.Entry<String, InputStream> inputStreamMap : resolveClipboardData(entry).entrySet()) {
             MarkdownImage markdownImage = new MarkdownImage();
             markdownImage.setFileName("");
@@ -211,6 +209,7 @@ public class PasteImageAction extends EditorActionHandler implements EditorTextI
             markdownImage.setLocation(ImageLocationEnum.LOCAL);
             markdownImage.setImageMarkType(ImageMarkEnum.ORIGINAL);
             markdownImage.setInputStream(inputStreamMap.getValue());
+            markdownImage.setSourceFile(sourceFiles.get(inputStreamMap.getKey()));
             markdownImage.setFinalMark("");
 
             markdownImages.add(markdownImage);
@@ -221,6 +220,23 @@ public class PasteImageAction extends EditorActionHandler implements EditorTextI
         return waitingProcessMap;
     }
 
+    /**
+     * clipboard 中为 List<File> 类型时, 保存文件名与文件的关系, 保存图片时可以直接拷贝文件
+     *
+     * @param entry the entry     List<File> 或者 Image 类型
+     * @return the map              文件名-->File
+     */
+    private Map<String, File> resolveSourceFiles(@NotNull Map.Entry<DataFlavor, Object> entry) {
+        Map<String, File> sourceFiles = new HashMap<>(10);
+        if (entry.getKey().equals(DataFlavor.javaFileListFlavor)) {
+            @SuppressWarnings("unchecked") List<File> fileList = (List<File>) entry.getValue();
+            for (File file : fileList) {
+                sourceFiles.put(file.getName(), file);
+            }
+        }
+        return sourceFiles;
+    }
+
     /**
      * 处理 clipboard 数据
      *
@@ -54,18 +54,18 @@ public class ActionHandlerAdapter extends BaseActionHandler {
 
     @Override
     public boolean execute(EventData data) {
-        ProgressIndicator indicator = data.getIndicator();
-        int size = data.getSize();
+        int totalCount = 0;
+        for (List<MarkdownImage> images : data.getWaitingProcessMap().values()) {
+            totalCount += images.size();
+        }
         int totalProcessed = 0;
 
         for (Map.Entry<Document, List<MarkdownImage>> imageEntry : data.getWaitingProcessMap().entrySet()) {
-            int totalCount = imageEntry.getValue().size();
             Iterator<MarkdownImage> imageIterator = imageEntry.getValue().iterator();
             while (imageIterator.hasNext()) {
                 MarkdownImage markdownImage = imageIterator.next();
 
-                indicator.setText2("Processing " + markdownImage.getImageName());
-                indicator.setFraction(((++totalProcessed * 1.0) + data.getIndex() * size) / totalCount * size);
+                updateProgress(data, markdownImage, totalProcessed++, totalCount);
 
                 invoke(data, imageIterator, markdownImage);
             }
@@ -73,6 +73,20 @@ public class ActionHandlerAdapter extends BaseActionHandler {
         return true;
     }
 
+    /**
+     * 处理每张图片前按图片数量更新进度, 整个 chain 的进度为 (handler 位置 + 当前 handler 的进度) / handler 数量
+     *
+     * @param data          the data
+     * @param markdownImage the markdown image
+     * @param processed     已处理的图片数
+     * @param totalCount    图片总数
+     */
+    protected void updateProgress(EventData data, MarkdownImage markdownImage, int processed, int totalCount) {
+        ProgressIndicator indicator = data.getIndicator();
+        indicator.setText2("Processing " + markdownImage.getImageName());
+        indicator.setFraction((data.getIndex() + processed * 1.0 / Math.max(totalCount, 1)) / Math.max(data.getSize(), 1));
+    }
+
     @Override
     protected void invoke(EventData data, Iterator<MarkdownImage> imageIterator, MarkdownImage markdownImage) {
         log.trace("执行特定逻辑");
@@ -28,20 +28,20 @@ package info.dong4j.idea.plugin.chain;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.externalSystem.task.TaskCallback;
 import com.intellij.openapi.progress.ProgressIndicator;
-import com.intellij.openapi.util.io.FileUtil;
 
 import info.dong4j.idea.plugin.client.OssClient;
 import info.dong4j.idea.plugin.entity.EventData;
 import info.dong4j.idea.plugin.entity.MarkdownImage;
 import info.dong4j.idea.plugin.enums.ImageLocationEnum;
+import info.dong4j.idea.plugin.util.ImageDownloader;
 
 import java.io.*;
-import java.net.*;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -110,16 +110,25 @@ public class ActionManager {
         data.setIndicator(indicator);
         data.setSize(handlersChain.size());
         int index = 0;
-        for (IActionHandler handler : handlersChain) {
-            data.setIndex(index++);
-            if (handler.isEnabled(data)) {
-                log.trace("invoke {}", handler.getName());
-                indicator.setText2(handler.getName());
-                if (!handler.execute(data)) {
+        try {
+            for (IActionHandler handler : handlersChain) {
+                if (indicator.isCanceled()) {
+                    log.trace("task canceled, skip {}", handler.getName());
                     break;
                 }
+                data.setIndex(index++);
+                if (handler.isEnabled(data)) {
+                    log.trace("invoke {}", handler.getName());
+                    indicator.setText2(handler.getName());
+                    if (!handler.execute(data)) {
+                        break;
+                    }
+                }
+                indicator.setFraction(++totalProcessed * 1.0 / handlersChain.size());
             }
-            indicator.setFraction(++totalProcessed * 1.0 / handlersChain.size());
+        } finally {
+            // 任务被取消或中途结束时, 后台下载不再需要
+            ImageDownloader.cancel(data.getDownloads());
         }
     }
 
@@ -175,18 +184,17 @@ public class ActionManager {
                             || markdownImage.getPath().contains(client.getCloudType().feature)) {
 
                             iterator.remove();
+                        } else if (client.canCopy(markdownImage.getPath())) {
+                            // 同一服务商, 在 uploadhandler 中直接服务端复制, 不下载图片
+                            markdownImage.setCopySourceUrl(markdownImage.getPath());
+                            markdownImage.setLocation(ImageLocationEnum.LOCAL);
                         } else {
-                            // 将 URL 图片转成 inputstream
-                            try {
-                                byte[] temp = FileUtil.loadBytes(new URL(markdownImage.getPath()).openStream());
-                                InputStream inputStream = new ByteArrayInputStream(temp);
-                                markdownImage.setInputStream(inputStream);
-                                // 这里设置为本地图片, 才会在 uploadhandler 中上传
-                                markdownImage.setLocation(ImageLocationEnum.LOCAL);
-                            } catch (IOException e) {
-                                log.trace("", e);
-                                iterator.remove();
-                            }
+                            // 后台并发下载, uploadhandler 中等待下载完成后上传
+                            CompletableFuture<File> download = ImageDownloader.download(markdownImage.getPath());
+                            data.getDownloads().add(download);
+                            markdownImage.setDownload(download);
+                            // 这里设置为本地图片, 才会在 uploadhandler 中上传
+                            markdownImage.setLocation(ImageLocationEnum.LOCAL);
                         }
                     }
                     log.trace("new waitingProcessMap = {}", waitingProcessMap);
@@ -76,6 +76,8 @@ public class ImageCompressionHandler extends ActionHandlerAdapter {
         try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
             ImageUtils.compress(inputStream, outputStream, STATE.getCompressBeforeUploadOfPercent());
             markdownImage.setInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+            // 内容已经改变, 不能再直接拷贝源文件
+            markdownImage.setSourceFile(null);
         } catch (Exception e) {
             log.trace("", e);
         }
@@ -25,8 +25,11 @@
 
 package info.dong4j.idea.plugin.chain;
 
+import com.intellij.openapi.util.io.FileUtil;
+
 import info.dong4j.idea.plugin.entity.EventData;
 import info.dong4j.idea.plugin.entity.MarkdownImage;
+import info.dong4j.idea.plugin.enums.FileType;
 import info.dong4j.idea.plugin.enums.SuffixEnum;
 import info.dong4j.idea.plugin.settings.MikPersistenComponent;
 import info.dong4j.idea.plugin.settings.MikState;
@@ -35,7 +38,10 @@ import info.dong4j.idea.plugin.util.EnumsUtils;
 import info.dong4j.idea.plugin.util.ImageUtils;
 
 import org.apache.commons.lang3.time.DateFormatUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.*;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.Optional;
@@ -54,6 +60,8 @@ import lombok.extern.slf4j.Slf4j;
 public class ImageRenameHandler extends ActionHandlerAdapter {
 
     private static final String PREFIX = "MIK-";
+    /** 文件名没有后缀且无法识别图片格式时使用的后缀 */
+    private static final String DEFAULT_EXTENSION = ".png";
 
     @Override
     public String getName() {
@@ -93,7 +101,14 @@ public class ImageRenameHandler extends ActionHandlerAdapter {
                 break;
             case RANDOM:
                 if(!imageName.startsWith(PREFIX)){
-                    imageName = PREFIX + CharacterUtils.getRandomString(6) + ImageUtils.getFileExtension(imageName);
+                    imageName = PREFIX + CharacterUtils.getRandomString(6) + extension(imageName, markdownImage);
+                }
+                break;
+            case CONTENT_HASH:
+                String hash = contentHash(markdownImage);
+                if (hash != null) {
+                    imageName = hash + extension(imageName, markdownImage);
+                    markdownImage.setContentHashName(true);
                 }
                 break;
             default:
@@ -102,4 +117,64 @@ public class ImageRenameHandler extends ActionHandlerAdapter {
 
         markdownImage.setImageName(imageName);
     }
+
+    /**
+     * 获取重命名后的后缀, 文件名没有后缀时按图片内容识别格式, 无法识别时使用 {@link #DEFAULT_EXTENSION}
+     *
+     * @param imageName     the image name
+     * @param markdownImage the markdown image
+     * @return 以 . 开头的后缀
+     */
+    @NotNull
+    private static String extension(@NotNull String imageName, @NotNull MarkdownImage markdownImage) {
+        if (imageName.contains(".")) {
+            return ImageUtils.getFileExtension(imageName);
+        }
+        FileType fileType = null;
+        try {
+            File sourceFile = markdownImage.getSourceFile();
+            InputStream inputStream = markdownImage.getInputStream();
+            if (sourceFile != null && sourceFile.isFile()) {
+                try (InputStream in = new FileInputStream(sourceFile)) {
+                    fileType = ImageUtils.getFileType(in);
+                }
+            } else if (inputStream != null && inputStream.markSupported()) {
+                inputStream.mark(32);
+                fileType = ImageUtils.getFileType(inputStream);
+                inputStream.reset();
+            }
+        } catch (IOException e) {
+            log.trace("detect image type error: {}", imageName, e);
+        }
+        return fileType == null || fileType.getExt().isEmpty() ? DEFAULT_EXTENSION : "." + fileType.getExt();
+    }
+
+    /**
+     * 计算图片内容的 MD5, 有本地文件时直接读取文件, 否则读取 inputStream 后替换为可重复读取的 ByteArrayInputStream
+     *
+     * @param markdownImage the markdown image
+     * @return 读取失败返回 null
+     */
+    @Nullable
+    private static String contentHash(@NotNull MarkdownImage markdownImage) {
+        try {
+            File sourceFile = markdownImage.getSourceFile();
+            if (sourceFile != null && sourceFile.isFile()) {
+                return ImageUtils.md5Hex(sourceFile);
+            }
+            InputStream inputStream = markdownImage.getInputStream();
+            if (inputStream == null) {
+                return null;
+            }
+            byte[] bytes;
+            try (InputStream in = inputStream) {
+                bytes = FileUtil.loadBytes(in);
+            }
+            markdownImage.setInputStream(new ByteArrayInputStream(bytes));
+            return ImageUtils.toHex(ImageUtils.newMd5Digest().digest(bytes));
+        } catch (IOException e) {
+            log.trace("content hash error: {}", markdownImage.getImageName(), e);
+        }
+        return null;
+    }
 }
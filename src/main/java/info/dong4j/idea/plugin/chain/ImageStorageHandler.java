@@ -28,15 +28,27 @@ package info.dong4j.idea.plugin.chain;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.progress.ProgressIndicator;
-import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 
 import info.dong4j.idea.plugin.entity.EventData;
 import info.dong4j.idea.plugin.entity.MarkdownImage;
 import info.dong4j.idea.plugin.enums.ImageLocationEnum;
 import info.dong4j.idea.plugin.enums.ImageMarkEnum;
+import info.dong4j.idea.plugin.util.ImageUtils;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -45,6 +57,9 @@ import lombok.extern.slf4j.Slf4j;
 /**
  * <p>Company: no company</p>
  * <p>Description: 保存图片操作 </p>
+ * 1. 本地图片直接拷贝文件 (Files.copy), 不经过 java 堆;
+ * 2. 先写入同目录的临时文件再重命名, 不会出现写了一半的图片, 也不会覆盖正在读取的源文件;
+ * 3. 保存目录中已有相同内容的图片时直接使用已有的图片.
  *
  * @author dong4j
  * @email dong4j@gmail.com
@@ -52,6 +67,8 @@ import lombok.extern.slf4j.Slf4j;
  */
 @Slf4j
 public class ImageStorageHandler extends ActionHandlerAdapter {
+    private static final String TEMP_FILE_PREFIX = ".mik-";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
 
     @Override
     public String getName() {
@@ -68,6 +85,8 @@ public class ImageStorageHandler extends ActionHandlerAdapter {
         ProgressIndicator indicator = data.getIndicator();
         int size = data.getSize();
         int totalProcessed = 0;
+        // 同一批次中可能有多个文档保存到同一个目录
+        Map<File, ImageDirectory> directories = new HashMap<>(4);
 
         for (Map.Entry<Document, List<MarkdownImage>> imageEntry : data.getWaitingProcessMap().entrySet()) {
             int totalCount = imageEntry.getValue().size();
@@ -85,37 +104,31 @@ public class ImageStorageHandler extends ActionHandlerAdapter {
                 indicator.setText2("Processing " + imageName);
                 indicator.setFraction(((++totalProcessed * 1.0) + data.getIndex() * size) / totalCount * size);
 
-                // 将 inputstream 转成 file
-                File saveFile = null;
                 File imageDir = new File(curDocument.getParent(), savepath);
                 boolean checkDir = imageDir.exists() && imageDir.isDirectory();
-                if (checkDir || imageDir.mkdirs()) {
-                    // 保存的文件路径
-                    saveFile = new File(imageDir, imageName);
-                }
-                if (saveFile == null) {
-                    markdownImage.setFinalMark("copy error");
-                    markdownImage.setImageMarkType(ImageMarkEnum.ORIGINAL);
-                    markdownImage.setLocation(ImageLocationEnum.LOCAL);
+                if (!checkDir && !imageDir.mkdirs()) {
+                    copyError(markdownImage);
                     continue;
                 }
 
+                // 保存的文件路径
+                File saveFile;
                 try {
-                    // todo-dong4j : (2019年03月29日 16:00) [如果覆盖 inputstream 所属文件将导致拷贝的文件错误]
-                    FileUtil.copy(markdownImage.getInputStream(), new FileOutputStream(saveFile));
+                    ImageDirectory directory = directories.computeIfAbsent(imageDir, ImageDirectory::new);
+                    saveFile = directory.save(markdownImage, new File(imageDir, imageName));
                 } catch (IOException e) {
                     log.trace("", e);
-                    markdownImage.setFinalMark("copy error");
-                    markdownImage.setImageMarkType(ImageMarkEnum.ORIGINAL);
-                    markdownImage.setLocation(ImageLocationEnum.LOCAL);
+                    copyError(markdownImage);
                     continue;
                 }
+                data.getWrittenFiles().add(saveFile);
 
                 // 保存标签
                 File imageFileRelativizePath = curDocument.getParentFile().toPath().relativize(saveFile.toPath()).toFile();
                 String relImagePath = imageFileRelativizePath.toString().replace('\\', '/');
                 markdownImage.setTitle("");
                 markdownImage.setPath(relImagePath);
+                markdownImage.setSourceFile(saveFile);
                 try {
                     markdownImage.setInputStream(new FileInputStream(saveFile));
                 } catch (FileNotFoundException e) {
@@ -131,4 +144,191 @@ public class ImageStorageHandler extends ActionHandlerAdapter {
         }
         return true;
     }
+
+    /**
+     * 拷贝失败时的标签
+     *
+     * @param markdownImage the markdown image
+     */
+    private static void copyError(@NotNull MarkdownImage markdownImage) {
+        markdownImage.setFinalMark("copy error");
+        markdownImage.setImageMarkType(ImageMarkEnum.ORIGINAL);
+        markdownImage.setLocation(ImageLocationEnum.LOCAL);
+    }
+
+    /**
+     * 保存目录, 按文件大小索引目录中已有的图片, 只有大小相同时才计算 hash
+     */
+    private static class ImageDirectory {
+        private final Path dir;
+        private Map<Long, List<Path>> filesBySize;
+        private final Map<Path, String> hashes = new HashMap<>(16);
+
+        ImageDirectory(@NotNull File dir) {
+            this.dir = dir.toPath();
+        }
+
+        /**
+         * 保存图片, 源文件存在时直接拷贝文件, 否则将 inputStream 写入临时文件 (同时计算 hash)
+         *
+         * @param markdownImage the markdown image
+         * @param target        the target
+         * @return 最终保存的文件, 有相同内容的图片时返回已有的图片
+         * @throws IOException the io exception
+         */
+        @NotNull
+        File save(@NotNull MarkdownImage markdownImage, @NotNull File target) throws IOException {
+            Path targetPath = target.toPath();
+            File sourceFile = markdownImage.getSourceFile();
+            InputStream inputStream = markdownImage.getInputStream();
+
+            if (sourceFile != null && sourceFile.isFile()) {
+                // 不再需要源文件的 inputStream
+                closeQuietly(inputStream);
+                Path source = sourceFile.toPath();
+                if (Files.exists(targetPath) && Files.isSameFile(source, targetPath)) {
+                    return target;
+                }
+                long size = Files.size(source);
+                String hash = null;
+                List<Path> candidates = filesBySize().get(size);
+                if (candidates != null && !candidates.isEmpty()) {
+                    // 有大小相同的图片时才需要在拷贝前计算 hash
+                    hash = hash(source);
+                    Path duplicate = findDuplicate(size, hash);
+                    if (duplicate != null) {
+                        return duplicate.toFile();
+                    }
+                }
+                Path temp = createTempFile();
+                try {
+                    if (hash == null) {
+                        // 拷贝时计算 hash, 只读取一次源文件
+                        hash = copy(Files.newInputStream(source), temp);
+                    } else {
+                        Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    return commit(temp, targetPath, hash);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            }
+
+            if (inputStream == null) {
+                throw new FileNotFoundException(markdownImage.getImageName());
+            }
+            Path temp = createTempFile();
+            try {
+                String hash = copy(inputStream, temp);
+                Path duplicate = findDuplicate(Files.size(temp), hash);
+                if (duplicate != null) {
+                    return duplicate.toFile();
+                }
+                return commit(temp, targetPath, hash);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        /**
+         * 将 inputStream 写入临时文件, 同时计算 hash
+         *
+         * @param inputStream the input stream, 写入后关闭
+         * @param temp        the temp
+         * @return the hash
+         * @throws IOException the io exception
+         */
+        @NotNull
+        private static String copy(@NotNull InputStream inputStream, @NotNull Path temp) throws IOException {
+            MessageDigest digest = ImageUtils.newMd5Digest();
+            try (InputStream in = new DigestInputStream(inputStream, digest)) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return ImageUtils.toHex(digest.digest());
+        }
+
+        /**
+         * 临时文件重命名为目标文件, 同一文件系统中为原子操作
+         *
+         * @param temp   the temp
+         * @param target the target
+         * @param hash   the hash
+         * @return the file
+         * @throws IOException the io exception
+         */
+        @NotNull
+        private File commit(@NotNull Path temp, @NotNull Path target, String hash) throws IOException {
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            // 覆盖了同名文件时先移除旧的记录
+            filesBySize().values().forEach(paths -> paths.remove(target));
+            filesBySize().computeIfAbsent(Files.size(target), k -> new ArrayList<>(1)).add(target);
+            hashes.put(target, hash);
+            return target.toFile();
+        }
+
+        @NotNull
+        private Path createTempFile() throws IOException {
+            return Files.createTempFile(dir, TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+        }
+
+        /**
+         * 查找目录中内容相同的图片
+         *
+         * @param size the size
+         * @param hash the hash
+         * @return the path
+         * @throws IOException the io exception
+         */
+        @Nullable
+        private Path findDuplicate(long size, String hash) throws IOException {
+            List<Path> candidates = filesBySize().get(size);
+            if (candidates == null) {
+                return null;
+            }
+            for (Path candidate : candidates) {
+                if (hash.equals(hash(candidate))) {
+                    return candidate;
+                }
+            }
+            return null;
+        }
+
+        @NotNull
+        private Map<Long, List<Path>> filesBySize() throws IOException {
+            if (filesBySize == null) {
+                filesBySize = new HashMap<>(32);
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                    for (Path path : stream) {
+                        if (Files.isRegularFile(path) && !path.getFileName().toString().startsWith(TEMP_FILE_PREFIX)) {
+                            filesBySize.computeIfAbsent(Files.size(path), k -> new ArrayList<>(1)).add(path);
+                        }
+                    }
+                }
+            }
+            return filesBySize;
+        }
+
+        @NotNull
+        private String hash(@NotNull Path path) throws IOException {
+            String hash = hashes.get(path);
+            if (hash == null) {
+                hash = ImageUtils.md5Hex(path.toFile());
+                hashes.put(path, hash);
+            }
+            return hash;
+        }
+    }
+
+    private static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
 }
@@ -25,20 +25,58 @@
 
 package info.dong4j.idea.plugin.chain;
 
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.concurrency.AppExecutorUtil;
+
+import info.dong4j.idea.plugin.client.CircuitBreaker;
+import info.dong4j.idea.plugin.client.HedgedUploader;
+import info.dong4j.idea.plugin.client.LatencyTracker;
+import info.dong4j.idea.plugin.client.OssClient;
+import info.dong4j.idea.plugin.client.OssClientCache;
 import info.dong4j.idea.plugin.entity.EventData;
 import info.dong4j.idea.plugin.entity.MarkdownImage;
+import info.dong4j.idea.plugin.enums.CloudEnum;
 import info.dong4j.idea.plugin.enums.ImageLocationEnum;
 import info.dong4j.idea.plugin.enums.ImageMarkEnum;
+import info.dong4j.idea.plugin.settings.MikPersistenComponent;
+import info.dong4j.idea.plugin.settings.MikState;
+import info.dong4j.idea.plugin.settings.OssState;
+import info.dong4j.idea.plugin.util.ClientUtils;
+import info.dong4j.idea.plugin.util.ImageDownloader;
+import info.dong4j.idea.plugin.util.ImageUtils;
+import info.dong4j.idea.plugin.util.MirrorManifestUtils;
+import info.dong4j.idea.plugin.util.VirtualFileUtils;
 
 import org.apache.commons.lang.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * <p>Company: no company</p>
  * <p>Description: 图片上传操作</p>
+ * 开启图片备份后, 图片只读取一次, 同时上传到主图床和镜像图床,
+ * 主图床地址写入文档, 镜像地址写入 sidecar 文件 {@link MirrorManifestUtils},
+ * 镜像图床最多等待 {@link #MIRROR_TIMEOUT_SECONDS} 秒, 任务被取消时不再等待;
+ * 每个图床都经过熔断器 {@link CircuitBreaker}, 主图床熔断或上传失败时按顺序使用故障转移图床;
+ * 开启对冲上传后, 主图床超过最近上传耗时的 p95 仍未完成时发起第二次上传 {@link HedgedUploader};
+ * 上传进度按字节统计 {@link UploadProgress}
  *
  * @author dong4j
  * @email dong4j@gmail.com
@@ -46,6 +84,20 @@ import lombok.extern.slf4j.Slf4j;
  */
 @Slf4j
 public class ImageUploadHandler extends ActionHandlerAdapter {
+    /** 主图床上传完成后等待镜像图床的最长时间, 超时后取消未完成的镜像上传 */
+    private static final long MIRROR_TIMEOUT_SECONDS = 60;
+    /** 等待镜像图床和后台下载时检查任务是否被取消的间隔 */
+    private static final long CANCEL_CHECK_MILLIS = 200;
+    /** 镜像图床, 每次执行 chain 时重新获取 */
+    private List<OssClient> mirrorClients = Collections.emptyList();
+    /** 故障转移图床, 按顺序使用, 不包含主图床和镜像图床 */
+    private List<OssClient> failoverClients = Collections.emptyList();
+    /** 是否开启对冲上传 */
+    private boolean hedge;
+    /** 按字节统计的上传进度 */
+    private UploadProgress progress;
+    /** 后台任务的 indicator, 用于检查是否被取消 */
+    private ProgressIndicator indicator;
 
     @Override
     public String getName() {
@@ -58,6 +110,59 @@ public class ImageUploadHandler extends ActionHandlerAdapter {
         return true;
     }
 
+    @Override
+    public boolean execute(EventData data) {
+        MikState state = MikPersistenComponent.getInstance().getState();
+        OssClient primary = data.getClient();
+        mirrorClients = state.isBackup()
+                        ? getClients(state.getBackupCloudTypes(), primary, Collections.emptyList())
+                        : Collections.emptyList();
+        failoverClients = state.isFailover()
+                          ? getClients(state.getFailoverCloudTypes(), primary, mirrorClients)
+                          : Collections.emptyList();
+        hedge = state.isHedgeUpload();
+        indicator = data.getIndicator();
+        progress = new UploadProgress(indicator, data.getIndex(), data.getSize());
+        for (List<MarkdownImage> images : data.getWaitingProcessMap().values()) {
+            for (MarkdownImage markdownImage : images) {
+                if (ImageLocationEnum.LOCAL.equals(markdownImage.getLocation())) {
+                    File sourceFile = markdownImage.getSourceFile();
+                    addTotal(sourceFile != null ? sourceFile.length() : ImageUtils.getLength(markdownImage.getInputStream()));
+                }
+            }
+        }
+
+        boolean result = super.execute(data);
+        if (!mirrorClients.isEmpty()) {
+            writeManifest(data);
+        }
+        return result;
+    }
+
+    /**
+     * 主图床和镜像图床都要上传一次
+     *
+     * @param length 图片大小
+     */
+    private void addTotal(long length) {
+        progress.addTotal(length * (1 + mirrorClients.size()));
+    }
+
+    /**
+     * 能获取到图片大小时按上传的字节数更新进度, 否则按图片数量更新
+     *
+     * @param data          the data
+     * @param markdownImage the markdown image
+     * @param processed     已处理的图片数
+     * @param totalCount    图片总数
+     */
+    @Override
+    protected void updateProgress(EventData data, MarkdownImage markdownImage, int processed, int totalCount) {
+        if (progress.getTotal() <= 0) {
+            super.updateProgress(data, markdownImage, processed, totalCount);
+        }
+    }
+
     /**
      * 只上传 location = LOCAL 的数据
      *
@@ -74,13 +179,29 @@ public class ImageUploadHandler extends ActionHandlerAdapter {
             return;
         }
 
-        if(StringUtils.isBlank(imageName) || markdownImage.getInputStream() == null){
-            log.trace("inputstream 为 null 或者 imageName 为 null, remove markdownImage = {}", markdownImage);
-            imageIterator.remove();
-            return;
-        }
+        String imageUrl = copy(data, markdownImage);
+        if (imageUrl == null) {
+            File downloaded = awaitDownload(markdownImage);
+            if (downloaded != null) {
+                addTotal(downloaded.length());
+            }
+            if (StringUtils.isBlank(imageName) || markdownImage.getInputStream() == null) {
+                log.trace("inputstream 为 null 或者 imageName 为 null, remove markdownImage = {}", markdownImage);
+                imageIterator.remove();
+                return;
+            }
 
-        String imageUrl = data.getClient().upload(markdownImage.getInputStream(), markdownImage.getImageName());
+            try {
+                imageUrl = mirrorClients.isEmpty() && failoverClients.isEmpty() && !hedge
+                           ? upload(data.getClient(), markdownImage.getInputStream(), progress.newImage(), markdownImage)
+                           : uploadWithMirrors(data.getClient(), markdownImage);
+            } finally {
+                if (downloaded != null) {
+                    closeQuietly(markdownImage.getInputStream());
+                    FileUtil.delete(downloaded);
+                }
+            }
+        }
         if (StringUtils.isBlank(imageUrl)) {
             imageUrl = "upload error";
             markdownImage.setLocation(ImageLocationEnum.LOCAL);
@@ -93,4 +214,333 @@ public class ImageUploadHandler extends ActionHandlerAdapter {
         markdownImage.setImageMarkType(ImageMarkEnum.ORIGINAL);
         markdownImage.setFinalMark(mark);
     }
+
+    /**
+     * 迁移图床时同一服务商的图片在服务端复制, 复制失败时下载图片后按普通流程上传
+     *
+     * @param data          the data
+     * @param markdownImage the markdown image
+     * @return 复制后的 url, 不需要复制或复制失败返回 null
+     */
+    @Nullable
+    private static String copy(@NotNull EventData data, @NotNull MarkdownImage markdownImage) {
+        OssClient client = data.getClient();
+        String sourceUrl = markdownImage.getCopySourceUrl();
+        if (StringUtils.isBlank(sourceUrl) || StringUtils.isBlank(markdownImage.getImageName())) {
+            return null;
+        }
+        markdownImage.setCopySourceUrl(null);
+        String url = client.copy(sourceUrl, markdownImage.getImageName());
+        if (StringUtils.isNotBlank(url)) {
+            return url;
+        }
+        log.trace("copy {} 失败, 下载后上传", sourceUrl);
+        CompletableFuture<File> download = ImageDownloader.download(sourceUrl);
+        data.getDownloads().add(download);
+        markdownImage.setDownload(download);
+        return null;
+    }
+
+    /**
+     * 等待后台下载完成, 使用下载的临时文件作为 inputStream, 任务被取消时中止下载
+     *
+     * @param markdownImage the markdown image
+     * @return 下载的临时文件, 不是迁移图床, 下载失败或被取消返回 null
+     */
+    @Nullable
+    private File awaitDownload(@NotNull MarkdownImage markdownImage) {
+        CompletableFuture<File> download = markdownImage.getDownload();
+        if (download == null) {
+            return null;
+        }
+        markdownImage.setDownload(null);
+        try {
+            while (indicator == null || !indicator.isCanceled()) {
+                try {
+                    File file = download.get(CANCEL_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                    markdownImage.setInputStream(new FileInputStream(file));
+                    markdownImage.setSourceFile(file);
+                    return file;
+                } catch (TimeoutException ignored) {
+                    // 继续检查是否被取消
+                }
+            }
+            log.trace("task canceled, abort download {}", markdownImage.getPath());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | IOException e) {
+            log.trace("download {} error", markdownImage.getPath(), e);
+        }
+        download.cancel(true);
+        return null;
+    }
+
+    /**
+     * 经过熔断器上传, 熔断时直接返回 "", 不再等待超时; 记录成功上传的耗时.
+     * 使用内容哈希命名时, 先检查远程是否已存在, 已存在则不再上传
+     *
+     * @param client        the client
+     * @param inputStream   the input stream
+     * @param imageProgress 图片的上传进度, 同一张图片的多次上传共用
+     * @param markdownImage the markdown image
+     * @return the string
+     */
+    private String upload(@NotNull OssClient client,
+                          InputStream inputStream,
+                          @NotNull UploadProgress.ImageProgress imageProgress,
+                          @NotNull MarkdownImage markdownImage) {
+        String imageName = markdownImage.getImageName();
+        if (client.isClosed()) {
+            // 配置修改后被取代的 client, 改用当前 client
+            OssClient current = OssClientCache.current(client);
+            if (current != null) {
+                client = current;
+            }
+        }
+        CircuitBreaker breaker = CircuitBreaker.of(client.getCloudType());
+        if (!breaker.allowRequest()) {
+            log.trace("{} 已熔断, 跳过 {}", client.getName(), imageName);
+            return "";
+        }
+        if (markdownImage.isContentHashName()) {
+            String existUrl = client.getUrlIfExists(imageName);
+            if (StringUtils.isNotBlank(existUrl)) {
+                log.trace("{} 已存在 {}, 跳过上传", client.getName(), imageName);
+                breaker.onSuccess();
+                closeQuietly(inputStream);
+                return existUrl;
+            }
+        }
+        long length = available(inputStream);
+        long start = System.currentTimeMillis();
+        String url = client.upload(imageProgress.wrap(inputStream), imageName);
+        if (HedgedUploader.isAborted(inputStream) || Thread.currentThread().isInterrupted()) {
+            // 对冲上传中被中止的一方
+            breaker.onCancelled();
+        } else if (StringUtils.isBlank(url) && client.isClosed()) {
+            // client 已关闭且没有当前 client 可以代替, 不是 cloud 的故障
+            breaker.onCancelled();
+        } else if (StringUtils.isBlank(url)) {
+            breaker.onFailure();
+        } else {
+            breaker.onSuccess();
+            LatencyTracker.of(client.getCloudType()).record(System.currentTimeMillis() - start, length);
+        }
+        return url;
+    }
+
+    /**
+     * 对冲上传: 第二次上传优先使用第一个故障转移图床, 没有则使用同一个图床 (SDK 会使用新的连接).
+     * 等待时间按图片大小换算, 没有足够的耗时样本或未开启时直接上传
+     *
+     * @param primary       the primary
+     * @param bytes         the bytes
+     * @param imageProgress the image progress
+     * @param markdownImage the markdown image
+     * @return the string
+     */
+    private String uploadHedged(@NotNull OssClient primary,
+                                byte[] bytes,
+                                @NotNull UploadProgress.ImageProgress imageProgress,
+                                @NotNull MarkdownImage markdownImage) {
+        long delay = hedge
+                     ? LatencyTracker.of(primary.getCloudType()).percentile(HedgedUploader.HEDGE_PERCENTILE, bytes.length)
+                     : -1;
+        if (delay < 0) {
+            return upload(primary, new ByteArrayInputStream(bytes), imageProgress, markdownImage);
+        }
+        OssClient secondary = failoverClients.isEmpty() ? primary : failoverClients.get(0);
+        return HedgedUploader.upload(bytes,
+                                     inputStream -> upload(primary, inputStream, imageProgress, markdownImage),
+                                     inputStream -> upload(secondary, inputStream, imageProgress, markdownImage),
+                                     delay);
+    }
+
+    /**
+     * 图片只读取一次, 镜像图床在后台线程上传, 主图床在当前线程上传, 总耗时取决于最慢的图床.
+     * 主图床上传失败时先按顺序使用故障转移图床, 再使用第一个上传成功的镜像地址
+     *
+     * @param primary       the primary
+     * @param markdownImage the markdown image
+     * @return 写入文档的 url
+     */
+    private String uploadWithMirrors(@NotNull OssClient primary, @NotNull MarkdownImage markdownImage) {
+        String imageName = markdownImage.getImageName();
+        byte[] bytes;
+        try (InputStream inputStream = markdownImage.getInputStream()) {
+            bytes = FileUtil.loadBytes(inputStream);
+        } catch (IOException e) {
+            log.trace("read image error: {}", imageName, e);
+            return "";
+        }
+
+        Map<OssClient, Future<String>> mirrorFutures = new LinkedHashMap<>(mirrorClients.size());
+        for (OssClient mirror : mirrorClients) {
+            mirrorFutures.put(mirror, AppExecutorUtil.getAppExecutorService()
+                .submit(() -> upload(mirror, new ByteArrayInputStream(bytes), progress.newImage(), markdownImage)));
+        }
+
+        // 主图床, 对冲和故障转移只有一个结果写入文档, 进度只统计一次
+        UploadProgress.ImageProgress imageProgress = progress.newImage();
+        String imageUrl = uploadHedged(primary, bytes, imageProgress, markdownImage);
+        for (Iterator<OssClient> iterator = failoverClients.iterator(); StringUtils.isBlank(imageUrl) && iterator.hasNext(); ) {
+            OssClient failover = iterator.next();
+            log.trace("{} 上传失败, 使用 {} 上传 {}", primary.getName(), failover.getName(), imageName);
+            imageUrl = upload(failover, new ByteArrayInputStream(bytes), imageProgress, markdownImage);
+        }
+
+        Map<String, String> mirrorUrls = markdownImage.getMirrorUrls();
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(MIRROR_TIMEOUT_SECONDS);
+        for (Map.Entry<OssClient, Future<String>> entry : mirrorFutures.entrySet()) {
+            String mirrorUrl = awaitMirror(entry.getKey(), entry.getValue(), deadline);
+            if (StringUtils.isBlank(mirrorUrl)) {
+                continue;
+            }
+            if (StringUtils.isBlank(imageUrl)) {
+                imageUrl = mirrorUrl;
+            } else {
+                mirrorUrls.put(entry.getKey().getName(), mirrorUrl);
+            }
+        }
+        return imageUrl;
+    }
+
+    /**
+     * 等待镜像图床上传完成, 任务被取消, 线程被中断或超过 deadline 时取消镜像上传
+     *
+     * @param mirror   the mirror
+     * @param future   the future
+     * @param deadline 等待的截止时间
+     * @return 镜像地址, 失败或被取消时返回 ""
+     */
+    @NotNull
+    private String awaitMirror(@NotNull OssClient mirror, @NotNull Future<String> future, long deadline) {
+        try {
+            while (indicator == null || !indicator.isCanceled()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    log.trace("{} 镜像上传超时", mirror.getName());
+                    break;
+                }
+                try {
+                    String url = future.get(Math.min(remaining, CANCEL_CHECK_MILLIS), TimeUnit.MILLISECONDS);
+                    return url == null ? "" : url;
+                } catch (TimeoutException ignored) {
+                    // 继续检查是否被取消
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.trace("mirror upload error: {}", mirror.getName(), e);
+        }
+        future.cancel(true);
+        return "";
+    }
+
+    /**
+     * 获取可用的图床 client, 排除主图床和 excludes
+     *
+     * @param cloudTypes the cloud types
+     * @param primary    the primary
+     * @param excludes   the excludes
+     * @return the clients
+     */
+    @NotNull
+    private static List<OssClient> getClients(String cloudTypes, OssClient primary, List<OssClient> excludes) {
+        if (primary == null) {
+            return Collections.emptyList();
+        }
+        List<OssClient> clients = new ArrayList<>();
+        for (CloudEnum cloudEnum : getClouds(cloudTypes)) {
+            if (cloudEnum == primary.getCloudType()
+                || excludes.stream().anyMatch(c -> c.getCloudType() == cloudEnum)) {
+                continue;
+            }
+            OssClient client = ClientUtils.getClient(cloudEnum);
+            if (ClientUtils.isEnable(client)) {
+                clients.add(client);
+            }
+        }
+        return clients;
+    }
+
+    /**
+     * 解析图床设置 (CloudEnum index, 逗号分隔, 保持顺序), 为空时使用所有已实现的图床 (sm.ms 只有显式设置时才使用)
+     *
+     * @param cloudTypes the cloud types
+     * @return the clouds
+     */
+    @NotNull
+    private static List<CloudEnum> getClouds(String cloudTypes) {
+        List<CloudEnum> clouds = new ArrayList<>();
+        if (StringUtils.isBlank(cloudTypes)) {
+            for (CloudEnum cloudEnum : CloudEnum.values()) {
+                if (cloudEnum != CloudEnum.SM_MS_CLOUD && StringUtils.isNotBlank(cloudEnum.getFeature())) {
+                    clouds.add(cloudEnum);
+                }
+            }
+            return clouds;
+        }
+        for (String index : cloudTypes.split(",")) {
+            try {
+                CloudEnum cloudEnum = OssState.getCloudType(Integer.parseInt(index.trim()));
+                if (cloudEnum != null && !clouds.contains(cloudEnum)) {
+                    clouds.add(cloudEnum);
+                }
+            } catch (NumberFormatException e) {
+                log.trace("illegal cloud type: {}", index);
+            }
+        }
+        return clouds;
+    }
+
+    private static void closeQuietly(InputStream inputStream) {
+        try {
+            inputStream.close();
+        } catch (IOException e) {
+            log.trace("", e);
+        }
+    }
+
+    /**
+     * 上传前的图片大小, 与 client 计算 content length 的方式相同
+     *
+     * @param inputStream the input stream
+     * @return 无法获取时返回 -1
+     */
+    private static long available(InputStream inputStream) {
+        try {
+            return inputStream.available();
+        } catch (IOException e) {
+            log.trace("", e);
+        }
+        return -1;
+    }
+
+    /**
+     * 按 document 写入镜像地址
+     *
+     * @param data the data
+     */
+    private static void writeManifest(@NotNull EventData data) {
+        List<File> manifests = new ArrayList<>();
+        for (Map.Entry<Document, List<MarkdownImage>> entry : data.getWaitingProcessMap().entrySet()) {
+            Map<String, Map<String, String>> mirrors = new LinkedHashMap<>(entry.getValue().size());
+            for (MarkdownImage markdownImage : entry.getValue()) {
+                if (!markdownImage.getMirrorUrls().isEmpty()) {
+                    mirrors.put(markdownImage.getPath(), markdownImage.getMirrorUrls());
+                }
+            }
+            if (mirrors.isEmpty()) {
+                continue;
+            }
+            File manifest = MirrorManifestUtils.getManifestFile(data.getProject(), entry.getKey());
+            if (manifest != null && MirrorManifestUtils.write(manifest, mirrors)) {
+                manifests.add(manifest);
+            }
+        }
+        // 不是所有 chain 都会在结束后刷新 writtenFiles, 这里直接刷新 sidecar 文件
+        VirtualFileUtils.refreshAsync(manifests, null);
+    }
 }
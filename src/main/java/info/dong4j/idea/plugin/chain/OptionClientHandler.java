@@ -25,6 +25,7 @@
 
 package info.dong4j.idea.plugin.chain;
 
+import info.dong4j.idea.plugin.client.ClientInitializer;
 import info.dong4j.idea.plugin.client.OssClient;
 import info.dong4j.idea.plugin.entity.EventData;
 import info.dong4j.idea.plugin.notify.UploadNotification;
@@ -62,6 +63,11 @@ public class OptionClientHandler extends ActionHandlerAdapter {
             UploadNotification.notifyConfigurableError(data.getProject(), data.getClientName());
             return false;
         }
+        // 等待 client 在后台初始化完成
+        if (!ClientInitializer.await(ossClient.ready(), false)) {
+            UploadNotification.notifyConfigurableError(data.getProject(), data.getClientName());
+            return false;
+        }
         return true;
     }
 }
@@ -0,0 +1,217 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 dong4j <dong4j@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package info.dong4j.idea.plugin.chain;
+
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.util.text.StringUtil;
+
+import info.dong4j.idea.plugin.sdk.qcloud.cos.event.ProgressEvent;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.event.ProgressEventType;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.event.ProgressInputStream;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.event.SyncProgressListener;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 按字节统计上传进度.
+ * 所有图床的上传流都用 COS SDK 的 {@link ProgressInputStream} 包装, 并发上传的字节数汇总到同一个计数器,
+ * 同一张图片的多次上传 (对冲, 故障转移) 只统计一次 {@link ImageProgress},
+ * 进度条和吞吐量/剩余时间最多每 {@link #UPDATE_INTERVAL} 毫秒刷新一次</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-19 15:20
+ */
+public class UploadProgress {
+    /** 界面刷新间隔 */
+    static final long UPDATE_INTERVAL = 200;
+
+    private final ProgressIndicator indicator;
+    private final LongSupplier clock;
+    /** 当前 handler 在 chain 中的位置, 用于换算整个 chain 的进度 */
+    private final int index;
+    private final int size;
+    private final long startTime;
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong transferredBytes = new AtomicLong();
+    private final AtomicLong lastUpdate = new AtomicLong();
+
+    /**
+     * Instantiates a new Upload progress.
+     *
+     * @param indicator the indicator
+     * @param index     当前 handler 的位置
+     * @param size      chain 中 handler 的数量
+     */
+    UploadProgress(@NotNull ProgressIndicator indicator, int index, int size) {
+        this(indicator, index, size, System::currentTimeMillis);
+    }
+
+    UploadProgress(@NotNull ProgressIndicator indicator, int index, int size, LongSupplier clock) {
+        this.indicator = indicator;
+        this.index = index;
+        this.size = Math.max(size, 1);
+        this.clock = clock;
+        this.startTime = clock.getAsLong();
+        this.lastUpdate.set(startTime);
+    }
+
+    /**
+     * 增加需要上传的字节数
+     *
+     * @param bytes 小于 0 时忽略
+     */
+    void addTotal(long bytes) {
+        if (bytes > 0) {
+            totalBytes.addAndGet(bytes);
+        }
+    }
+
+    /**
+     * 预计上传的字节数
+     *
+     * @return the total
+     */
+    long getTotal() {
+        return totalBytes.get();
+    }
+
+    /**
+     * 开始统计一张图片的上传, 同一张图片发往同一个图床地址的所有上传共用一个
+     *
+     * @return the image progress
+     */
+    ImageProgress newImage() {
+        return new ImageProgress();
+    }
+
+    /**
+     * 包装只上传一次的图片流, 读取时统计字节数
+     *
+     * @param inputStream the input stream
+     * @return the input stream
+     */
+    InputStream wrap(InputStream inputStream) {
+        return newImage().wrap(inputStream);
+    }
+
+    private void addTransferred(long bytes) {
+        transferredBytes.addAndGet(bytes);
+        long now = clock.getAsLong();
+        long last = lastUpdate.get();
+        if (now - last >= UPDATE_INTERVAL && lastUpdate.compareAndSet(last, now)) {
+            update(now);
+        }
+    }
+
+    /**
+     * 已上传的比例
+     *
+     * @return 0 ~ 1
+     */
+    double getFraction() {
+        long total = totalBytes.get();
+        return total <= 0 ? 0 : Math.min(1.0, transferredBytes.get() * 1.0 / total);
+    }
+
+    /**
+     * 刷新进度条和吞吐量/剩余时间
+     *
+     * @param now the now
+     */
+    private void update(long now) {
+        long transferred = Math.max(transferredBytes.get(), 0);
+        long total = totalBytes.get();
+        long elapsed = Math.max(now - startTime, 1);
+        long bytesPerSecond = transferred * 1000 / elapsed;
+
+        indicator.setFraction((index + getFraction()) / size);
+        StringBuilder text = new StringBuilder()
+            .append(StringUtil.formatFileSize(transferred))
+            .append(" / ")
+            .append(StringUtil.formatFileSize(total))
+            .append(", ")
+            .append(StringUtil.formatFileSize(bytesPerSecond))
+            .append("/s");
+        if (bytesPerSecond > 0 && total > transferred) {
+            text.append(", ").append(StringUtil.formatDuration((total - transferred) * 1000 / bytesPerSecond)).append(" left");
+        }
+        indicator.setText2(text.toString());
+    }
+
+    /**
+     * 一张图片的上传进度.
+     * 对冲上传, 故障转移和 SDK 重试都会重新读取图片, 每次上传各自记录读取位置 (reset 时回退),
+     * 只累计所有上传中最远的位置, 同一张图片的字节不会重复统计, 进度也不会回退
+     */
+    class ImageProgress {
+        private final AtomicLong position = new AtomicLong();
+
+        /**
+         * 包装一次上传的图片流
+         *
+         * @param inputStream the input stream
+         * @return the input stream
+         */
+        InputStream wrap(InputStream inputStream) {
+            return inputStream == null ? null : ProgressInputStream.inputStreamForRequest(inputStream, new AttemptListener());
+        }
+
+        private void advance(long attemptPosition) {
+            long current;
+            do {
+                current = position.get();
+                if (attemptPosition <= current) {
+                    return;
+                }
+            } while (!position.compareAndSet(current, attemptPosition));
+            addTransferred(attemptPosition - current);
+        }
+
+        /**
+         * 一次上传的读取位置
+         */
+        private class AttemptListener extends SyncProgressListener {
+            private final AtomicLong attemptPosition = new AtomicLong();
+
+            @Override
+            public void progressChanged(ProgressEvent progressEvent) {
+                ProgressEventType eventType = progressEvent.getEventType();
+                if (eventType == ProgressEventType.REQUEST_BYTE_TRANSFER_EVENT) {
+                    advance(attemptPosition.addAndGet(progressEvent.getBytes()));
+                } else if (eventType == ProgressEventType.HTTP_REQUEST_CONTENT_RESET_EVENT) {
+                    // 流被 reset 后重新读取, 读到之前的位置前不再统计
+                    attemptPosition.addAndGet(-progressEvent.getBytes());
+                }
+            }
+        }
+    }
+}
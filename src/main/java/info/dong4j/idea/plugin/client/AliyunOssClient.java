@@ -40,13 +40,15 @@ import info.dong4j.idea.plugin.util.DES;
 import info.dong4j.idea.plugin.util.ImageUtils;
 
 import org.apache.commons.lang3.StringUtils;
-import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
 import java.net.*;
 import java.util.Date;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 import javax.swing.JPanel;
 
@@ -54,7 +56,7 @@ import lombok.extern.slf4j.Slf4j;
 
 /**
  * <p>Company: no company</p>
- * <p>Description: 右键上传一次或者点击测试按钮时初始化一次</p>
+ * <p>Description: 按配置快照创建的不可变 client, 由 {@link OssClientCache} 缓存</p>
  *
  * @author dong4j
  * @email dong4j@gmail.com
@@ -69,100 +71,201 @@ public class AliyunOssClient implements OssClient {
     public static final String URL_PROTOCOL_HTTPS = "https";
     private static final String URL_PROTOCOL_HTTP = "http";
 
-    private static String bucketName;
-    private static String filedir;
-    private static OSS ossClient = null;
+    private final String bucketName;
+    private final String filedir;
+    /** 不带协议的 endpoint, 用于判断图片是否在同一区域 */
+    private final String endpointHost;
+    /** OSS 持有连接池和空闲连接回收线程, 被取代后由最后一个请求关闭 */
+    private final SharedClient<OSS> ossClient;
 
-    static {
-        init();
+    /**
+     * 使用配置快照创建不可变的 client, 创建后不再修改任何字段, 可被多个上传线程共享
+     *
+     * @param bucketName the bucket name
+     * @param filedir    the filedir
+     * @param endpoint   the endpoint
+     * @param ossClient  后台初始化的 SDK client
+     */
+    private AliyunOssClient(String bucketName,
+                            String filedir,
+                            String endpoint,
+                            CompletableFuture<OSS> ossClient) {
+        this.bucketName = bucketName;
+        this.filedir = StringUtils.isBlank(filedir) ? "" : filedir + "/";
+        this.endpointHost = StringUtils.removeEnd(StringUtils.defaultString(endpoint).replaceFirst("^https?://", ""), "/");
+        this.ossClient = new SharedClient<>(ossClient, OSS::shutdown);
     }
 
     /**
-     * 如果是第一次使用, ossClient == null
+     * 如果是第一次使用, 配置为空, 返回 null
+     *
+     * @param endpoint        the endpoint
+     * @param accessKey       the access key
+     * @param accessSecretKey the access secret key
+     * @return the oss
      */
-    private static void init() {
-        AliyunOssState aliyunOssState = MikPersistenComponent.getInstance().getState().getAliyunOssState();
-        String accessKey = aliyunOssState.getAccessKey();
-        String accessSecretKey = DES.decrypt(aliyunOssState.getAccessSecretKey(), MikState.ALIYUN);
-        String endpoint = aliyunOssState.getEndpoint();
-
-        bucketName = aliyunOssState.getBucketName();
-
-        String tempFileDir = aliyunOssState.getFiledir();
-        filedir = StringUtils.isBlank(tempFileDir) ? "" : tempFileDir + "/";
-
+    @Nullable
+    private static OSS build(String endpoint, String accessKey, String accessSecretKey) {
         try {
-            ossClient = new OSSClientBuilder().build(endpoint, accessKey, accessSecretKey);
-        } catch (Exception ignored) {
+            return new OSSClientBuilder().build(endpoint, accessKey, accessSecretKey);
+        } catch (Exception e) {
+            log.trace("", e);
         }
+        return null;
     }
 
     /**
-     * Set bucket name.
+     * 获取与当前持久化配置对应的 client, 配置修改后会得到新的实例.
+     * DES 解密和 SDK client 的创建在后台线程执行, 完成后请求一次 bucket 预热连接
      *
-     * @param newBucketName the new bucket name
+     * @return the instance
      */
-    private void setBucketName(String newBucketName) {
-        bucketName = newBucketName;
+    @NotNull
+    public static AliyunOssClient getInstance() {
+        AliyunOssState aliyunOssState = MikPersistenComponent.getInstance().getState().getAliyunOssState();
+        String endpoint = aliyunOssState.getEndpoint();
+        String accessKey = aliyunOssState.getAccessKey();
+        String encryptedSecretKey = aliyunOssState.getAccessSecretKey();
+        String bucketName = aliyunOssState.getBucketName();
+        String filedir = aliyunOssState.getFiledir();
+
+        return OssClientCache.get(CloudEnum.ALIYUN_CLOUD,
+                                  () -> new AliyunOssClient(bucketName,
+                                                            filedir,
+                                                            endpoint,
+                                                            ClientInitializer.initAsync(
+                                                                () -> build(endpoint,
+                                                                            accessKey,
+                                                                            DES.decrypt(encryptedSecretKey, MikState.ALIYUN)),
+                                                                oss -> oss.doesBucketExist(bucketName))),
+                                  endpoint,
+                                  accessKey,
+                                  encryptedSecretKey,
+                                  bucketName,
+                                  filedir);
     }
 
-    private void setFiledir(String newFileddir){
-        filedir = newFileddir;
+    @Override
+    public CompletableFuture<Boolean> ready() {
+        return ossClient.future().thenApply(Objects::nonNull);
+    }
+
+    @Override
+    public CloudEnum getCloudType() {
+        return CloudEnum.ALIYUN_CLOUD;
     }
 
     /**
-     * Set oss client.
+     * 上传到OSS服务器  如果同名文件会覆盖服务器上的
      *
-     * @param oss the oss
+     * @param inputStream 文件流
+     * @param fileName    文件名称 包括后缀名
+     * @return 出错返回 "" ,唯一MD5数字签名
      */
-    private void setOssClient(OSS oss) {
-        ossClient = oss;
+    @Override
+    public String upload(InputStream inputStream, String fileName) {
+        if (!ossClient.acquire()) {
+            OssClient current = OssClientCache.current(this);
+            return current == null ? "" : current.upload(inputStream, fileName);
+        }
+        try {
+            OSS oss = ClientInitializer.await(ossClient.future(), null);
+            if (oss == null) {
+                return "";
+            }
+            return upload(oss, inputStream, fileName);
+        } finally {
+            ossClient.release();
+        }
     }
 
     /**
-     * 静态内部类实现单例
-     * 为什么这样实现就是单例的？
-     * 1. 因为这个类的实例化是靠静态内部类的静态常量实例化的;
-     * 2. INSTANCE 是常量，因此只能赋值一次；它还是静态的，因此随着内部类一起加载;
-     * 这样实现有什么好处？
-     * 1. 我记得以前接触的懒汉式的代码好像有线程安全问题，需要加同步锁才能解决;
-     * 2. 采用静态内部类实现的代码也是懒加载的，只有第一次使用这个单例的实例的时候才加载;
-     * 3. 不会有线程安全问题;
+     * HEAD object 检查是否已存在
      *
-     * @return the instance
+     * @param fileName the file name
+     * @return the url if exists
      */
-    @Contract(pure = true)
-    public static AliyunOssClient getInstance() {
-        AliyunOssClient client = (AliyunOssClient)OssClient.INSTANCES.get(CloudEnum.ALIYUN_CLOUD);
-        if(client == null){
-            client = SingletonHandler.singleton;
-            OssClient.INSTANCES.put(CloudEnum.ALIYUN_CLOUD, client);
+    @Override
+    public String getUrlIfExists(String fileName) {
+        if (!ossClient.acquire()) {
+            OssClient current = OssClientCache.current(this);
+            return current == null ? null : current.getUrlIfExists(fileName);
         }
-        return client;
+        try {
+            OSS oss = ClientInitializer.await(ossClient.future(), null);
+            if (oss == null) {
+                return null;
+            }
+            if (oss.doesObjectExist(bucketName, filedir + fileName)) {
+                return getUrl(oss, filedir, fileName);
+            }
+        } catch (OSSException | ClientException e) {
+            log.trace("", e);
+        } finally {
+            ossClient.release();
+        }
+        return null;
     }
 
     /**
-     * 使用缓存的 map 映射获取已初始化的 client, 避免创建多个实例
+     * 同一区域内的 bucket 地址为 {@code <bucket>.<endpoint>/<key>}, 跨区域不支持 CopyObject
+     *
+     * @param sourceUrl 原图片地址
+     * @return the boolean
      */
-    private static class SingletonHandler {
-        private static AliyunOssClient singleton = new AliyunOssClient();
+    @Override
+    public boolean canCopy(String sourceUrl) {
+        ObjectUrl objectUrl = ObjectUrl.parse(sourceUrl);
+        return objectUrl != null && StringUtils.isNotBlank(endpointHost) && objectUrl.bucket(endpointHost) != null;
     }
 
+    /**
+     * CopyObject 复制到当前 bucket, 需要有源 bucket 的读权限
+     *
+     * @param sourceUrl 原图片地址
+     * @param fileName  新的文件名
+     * @return the string
+     */
     @Override
-    public CloudEnum getCloudType() {
-        return CloudEnum.ALIYUN_CLOUD;
+    public String copy(String sourceUrl, String fileName) {
+        if (!canCopy(sourceUrl)) {
+            return null;
+        }
+        if (!ossClient.acquire()) {
+            OssClient current = OssClientCache.current(this);
+            return current == null ? null : current.copy(sourceUrl, fileName);
+        }
+        try {
+            OSS oss = ClientInitializer.await(ossClient.future(), null);
+            if (oss == null) {
+                return null;
+            }
+            ObjectUrl objectUrl = Objects.requireNonNull(ObjectUrl.parse(sourceUrl));
+            String sourceBucket = objectUrl.bucket(endpointHost);
+            String key = filedir + fileName;
+            if (!(bucketName.equals(sourceBucket) && key.equals(objectUrl.key))) {
+                oss.copyObject(sourceBucket, objectUrl.key, bucketName, key);
+            }
+            return getUrl(oss, filedir, fileName);
+        } catch (OSSException | ClientException e) {
+            log.trace("copy {} error", sourceUrl, e);
+        } finally {
+            ossClient.release();
+        }
+        return null;
     }
 
     /**
-     * 上传到OSS服务器  如果同名文件会覆盖服务器上的
-     *
-     * @param inputStream 文件流
-     * @param fileName    文件名称 包括后缀名
-     * @return 出错返回 "" ,唯一MD5数字签名
+     * 被新配置的 client 取代, 没有正在进行的请求时立即关闭 OSS 的连接池和回收线程, 否则由最后一个请求结束时关闭
      */
     @Override
-    public String upload(InputStream inputStream, String fileName) {
-        return upload(ossClient, inputStream, fileName);
+    public void shutdown() {
+        ossClient.shutdown();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return ossClient.isClosed();
     }
 
     /**
@@ -194,7 +297,7 @@ public class AliyunOssClient implements OssClient {
     }
 
     /**
-     * test 按钮点击事件后请求, 成功后保留 client, paste 或者 右键 上传时使用
+     * test 按钮点击事件后请求, 使用面板配置创建临时 client, 不影响正在使用的 client
      *
      * @param inputStream     the input stream
      * @param fileName        the file name
@@ -213,17 +316,16 @@ public class AliyunOssClient implements OssClient {
                           String endpoint,
                           String filedir) {
 
-        filedir = org.apache.commons.lang.StringUtils.isBlank(filedir) ? "" : filedir + "/";
-
-        // 重设 client 相关配置
-        AliyunOssClient aliyunOssClient = AliyunOssClient.getInstance();
-
-        aliyunOssClient.setBucketName(bucketName);
-        aliyunOssClient.setFiledir(filedir);
-
-        OSS ossClient = new OSSClientBuilder().build(endpoint, accessKey, accessSecretKey);
-
-        String url = aliyunOssClient.upload(ossClient, inputStream, fileName);
+        OSS oss = build(endpoint, accessKey, accessSecretKey);
+        if (oss == null) {
+            return "";
+        }
+        String url;
+        try {
+            url = new AliyunOssClient(bucketName, filedir, endpoint, CompletableFuture.completedFuture(oss)).upload(oss, inputStream, fileName);
+        } finally {
+            oss.shutdown();
+        }
 
         if (StringUtils.isNotBlank(url)) {
             int hashcode = bucketName.hashCode() +
@@ -233,7 +335,6 @@ public class AliyunOssClient implements OssClient {
             OssState.saveStatus(MikPersistenComponent.getInstance().getState().getAliyunOssState(),
                                 hashcode,
                                 MikState.OLD_HASH_KEY);
-            aliyunOssClient.setOssClient(ossClient);
         }
         return url;
     }
@@ -24,55 +24,30 @@ import lombok.extern.slf4j.Slf4j;
 @Client(CloudEnum.BAIDU_CLOUD)
 public class BaiduOssClient implements OssClient {
 
-    private static OssClient ossClient = null;
-
-    static{
-        init();
-    }
+    private final OssClient ossClient;
 
     /**
-     * 如果是第一次使用, ossClient == null, 使用持久化配置初始化 SDK client
+     * 使用配置快照创建不可变的 client, 如果是第一次使用, ossClient == null
      */
-    private static void init() {
-
+    private BaiduOssClient() {
+        this.ossClient = null;
     }
 
     /******************************** init end ******************************************/
 
 
-    /******************************* 2. singleton start *******************************************/
+    /******************************* 2. instance start *******************************************/
 
     /**
-     * Gets instance.
+     * 获取与当前持久化配置对应的 client, 配置快照作为 {@link OssClientCache} 的 key
      *
      * @return the instance
      */
-    @Contract(pure = true)
+    @NotNull
     public static BaiduOssClient getInstance() {
-        BaiduOssClient client = (BaiduOssClient)OssClient.INSTANCES.get(CloudEnum.BAIDU_CLOUD);
-        if(client == null){
-            client = BaiduOssClient.SingletonHandler.singleton;
-            OssClient.INSTANCES.put(CloudEnum.BAIDU_CLOUD, client);
-        }
-        return client;
-    }
-
-    /**
-     * 使用缓存的 map 映射获取已初始化的 client, 避免创建多个实例
-     */
-    private static class SingletonHandler {
-        private static BaiduOssClient singleton = new BaiduOssClient();
-    }
-
-    /**
-     * Set oss client.
-     *
-     * @param oss the oss
-     */
-    private void setOssClient(OssClient oss) {
-        ossClient = oss;
+        return OssClientCache.get(CloudEnum.BAIDU_CLOUD, BaiduOssClient::new);
     }
-    /******************************* singleton end *******************************************/
+    /******************************* instance end *******************************************/
 
     /******************************* 3. interface start *******************************************/
     /**
@@ -126,7 +101,7 @@ public class BaiduOssClient implements OssClient {
     /******************************* 4. custom upload start *******************************************/
 
     /**
-     * test 按钮点击事件后请求, 成功后保留 client, paste 或者 右键 上传时使用
+     * test 按钮点击事件后请求, 使用面板配置创建临时 client, 不影响正在使用的 client
      *
      * @param inputStream the input stream
      * @param fileName    the file name
@@ -143,10 +118,9 @@ public class BaiduOssClient implements OssClient {
                          String accessKey,
                          String secretKey) {
 
-        // 1. 使用 SDK 生成 client
+        // 1. 使用面板配置创建临时 client
         // 2. 调用 SDK 上传文件
-        // 3. 计算 hashcode
-        // 4. 保存有效的 client
+        // 3. 计算 hashcode, 更新可用状态
         return "url";
     }
 
@@ -0,0 +1,204 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 dong4j <dong4j@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package info.dong4j.idea.plugin.client;
+
+import info.dong4j.idea.plugin.enums.CloudEnum;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 每个图床一个熔断器.
+ * 统计最近 {@link #WINDOW_SIZE} 次上传结果, 失败率达到阈值后熔断 (OPEN), 之后的图片直接跳过此图床;
+ * 熔断 {@link #OPEN_MILLIS} 毫秒后进入 HALF_OPEN, 只放行一次试探上传, 成功则恢复 (CLOSED), 失败则继续熔断.</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-17 14:30
+ */
+@Slf4j
+public final class CircuitBreaker {
+    /** 统计窗口大小 */
+    static final int WINDOW_SIZE = 10;
+    /** 窗口内至少有这么多次结果才计算失败率 */
+    static final int MIN_CALLS = 3;
+    /** 失败率阈值 */
+    static final double FAILURE_RATE_THRESHOLD = 0.5;
+    /** 熔断持续时间 */
+    static final long OPEN_MILLIS = 60 * 1000L;
+
+    private static final Map<CloudEnum, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>(12);
+
+    /**
+     * The enum State.
+     */
+    public enum State {
+        /** 正常 */
+        CLOSED,
+        /** 熔断 */
+        OPEN,
+        /** 试探 */
+        HALF_OPEN
+    }
+
+    private final CloudEnum cloudEnum;
+    private final LongSupplier clock;
+    /** 环形窗口, true 表示失败 */
+    private final boolean[] window = new boolean[WINDOW_SIZE];
+    private int windowIndex;
+    private int calls;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    CircuitBreaker(CloudEnum cloudEnum, LongSupplier clock) {
+        this.cloudEnum = cloudEnum;
+        this.clock = clock;
+    }
+
+    /**
+     * 获取图床对应的熔断器
+     *
+     * @param cloudEnum the cloud enum
+     * @return the circuit breaker
+     */
+    @NotNull
+    public static CircuitBreaker of(@NotNull CloudEnum cloudEnum) {
+        return BREAKERS.computeIfAbsent(cloudEnum, c -> new CircuitBreaker(c, System::currentTimeMillis));
+    }
+
+    /**
+     * 是否允许上传, 返回 true 后必须调用 {@link #onSuccess()}, {@link #onFailure()} 或 {@link #onCancelled()}
+     *
+     * @return the boolean
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (clock.getAsLong() - openedAt < OPEN_MILLIS) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                log.trace("{} circuit half open", cloudEnum.title);
+                return true;
+            case HALF_OPEN:
+            default:
+                // 同一时间只放行一次试探
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+        }
+    }
+
+    /**
+     * 上传成功
+     */
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            log.trace("{} circuit closed", cloudEnum.title);
+            reset();
+            return;
+        }
+        record(false);
+    }
+
+    /**
+     * 上传失败
+     */
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED
+            && calls >= MIN_CALLS
+            && failures >= FAILURE_RATE_THRESHOLD * calls) {
+            open();
+        }
+    }
+
+    /**
+     * 上传被中断 (例如对冲上传中输掉的一方), 不计入统计, 只释放试探名额
+     */
+    public synchronized void onCancelled() {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+        }
+    }
+
+    /**
+     * Gets state.
+     *
+     * @return the state
+     */
+    @NotNull
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void record(boolean failure) {
+        if (calls == WINDOW_SIZE) {
+            if (window[windowIndex]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        window[windowIndex] = failure;
+        if (failure) {
+            failures++;
+        }
+        windowIndex = (windowIndex + 1) % WINDOW_SIZE;
+    }
+
+    private void open() {
+        log.trace("{} circuit open", cloudEnum.title);
+        state = State.OPEN;
+        openedAt = clock.getAsLong();
+        trialInFlight = false;
+    }
+
+    private void reset() {
+        state = State.CLOSED;
+        trialInFlight = false;
+        windowIndex = 0;
+        calls = 0;
+        failures = 0;
+    }
+}
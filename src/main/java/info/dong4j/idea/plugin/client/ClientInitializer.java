@@ -0,0 +1,145 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 dong4j <dong4j@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package info.dong4j.idea.plugin.client;
+
+import com.intellij.util.concurrency.AppExecutorUtil;
+
+import info.dong4j.idea.plugin.settings.MikPersistenComponent;
+
+import org.apache.commons.lang.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 在后台线程初始化 SDK client (DES 解密, 创建 SDK client), 并按配置预热连接 (DNS 解析, TLS 握手, HEAD bucket).
+ * 上传前通过 {@link OssClient#ready()} 等待初始化完成, 第一次上传不再承担初始化的开销.</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-16 15:20
+ */
+@Slf4j
+public final class ClientInitializer {
+    /** 等待 client 初始化的最长时间 */
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private ClientInitializer() {
+    }
+
+    /**
+     * 在后台线程创建 SDK client, 创建完成后再异步预热连接, 预热不影响 client 的可用状态
+     *
+     * @param <T>     the type parameter
+     * @param factory 创建 SDK client, 失败时返回 null
+     * @param warmUp  预热连接, 可以为 null
+     * @return the completable future
+     */
+    @NotNull
+    public static <T> CompletableFuture<T> initAsync(@NotNull Supplier<T> factory, @Nullable Consumer<T> warmUp) {
+        CompletableFuture<T> future = CompletableFuture.supplyAsync(() -> {
+            try {
+                return factory.get();
+            } catch (Exception e) {
+                log.trace("init client error", e);
+            }
+            return null;
+        }, AppExecutorUtil.getAppExecutorService());
+
+        if (warmUp != null) {
+            future.thenAcceptAsync(client -> warmUp(client, warmUp), AppExecutorUtil.getAppExecutorService());
+        }
+        return future;
+    }
+
+    /**
+     * 预热连接, 失败只记录日志
+     *
+     * @param <T>    the type parameter
+     * @param client the client
+     * @param warmUp the warm up
+     */
+    public static <T> void warmUp(@Nullable T client, @NotNull Consumer<T> warmUp) {
+        if (client == null || !MikPersistenComponent.getInstance().getState().isClientWarmUp()) {
+            return;
+        }
+        try {
+            warmUp.accept(client);
+        } catch (Exception e) {
+            log.trace("warm up client error", e);
+        }
+    }
+
+    /**
+     * 解析 endpoint 的域名, 让 JVM 缓存 DNS 结果
+     *
+     * @param endpoint url 或者 host
+     */
+    public static void resolve(@Nullable String endpoint) {
+        if (StringUtils.isBlank(endpoint)) {
+            return;
+        }
+        String host = endpoint;
+        try {
+            if (endpoint.contains("://")) {
+                host = new URL(endpoint).getHost();
+            }
+            InetAddress.getAllByName(host);
+        } catch (MalformedURLException | UnknownHostException e) {
+            log.trace("resolve {} error", host, e);
+        }
+    }
+
+    /**
+     * 等待 client 初始化完成
+     *
+     * @param <T>          the type parameter
+     * @param future       the future
+     * @param defaultValue 初始化失败或超时返回的值
+     * @return the t
+     */
+    public static <T> T await(@NotNull CompletableFuture<T> future, T defaultValue) {
+        try {
+            T value = future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            return value == null ? defaultValue : value;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.trace("wait client error", e);
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 dong4j <dong4j@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package info.dong4j.idea.plugin.client;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.startup.StartupActivity;
+
+import info.dong4j.idea.plugin.enums.CloudEnum;
+import info.dong4j.idea.plugin.settings.OssState;
+import info.dong4j.idea.plugin.util.ClientUtils;
+
+import org.apache.commons.lang.StringUtils;
+import org.jetbrains.annotations.NotNull;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 项目打开后在后台初始化默认图床和已通过测试的图床 client,
+ * 第一次粘贴或上传时不再需要等待 client 初始化</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-16 15:48
+ */
+@Slf4j
+public class ClientStartupActivity implements StartupActivity, DumbAware {
+
+    @Override
+    public void runActivity(@NotNull Project project) {
+        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            CloudEnum defaultCloud = OssState.getDefaultCloud();
+            for (CloudEnum cloudEnum : CloudEnum.values()) {
+                if (StringUtils.isBlank(cloudEnum.getFeature())) {
+                    continue;
+                }
+                // sm.ms 始终可用, 只有设置为默认图床时才初始化
+                boolean enabled = cloudEnum != CloudEnum.SM_MS_CLOUD && OssState.getStatus(cloudEnum);
+                if (cloudEnum == defaultCloud || enabled) {
+                    log.trace("init client: {}", cloudEnum.title);
+                    // getInstance 只创建 client, SDK client 的初始化和预热在 ClientInitializer 中异步执行
+                    ClientUtils.getClient(cloudEnum);
+                }
+            }
+        });
+    }
+}
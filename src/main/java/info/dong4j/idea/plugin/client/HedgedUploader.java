@@ -0,0 +1,208 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 dong4j <dong4j@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package info.dong4j.idea.plugin.client;
+
+import com.intellij.util.concurrency.AppExecutorUtil;
+
+import org.apache.commons.lang.StringUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 对冲上传.
+ * 第一次上传在 {@link LatencyTracker} 按图片大小换算的分位数耗时内没有完成时, 再发起一次上传 (同一图床的新连接或者备用图床),
+ * 使用先成功的结果, 用于降低偶尔卡住的连接带来的长尾延迟.
+ * 每次上传读取各自的图片流, 有结果后中止另一个上传的流, 它再读取图片数据时失败;
+ * 已经发送完数据, 正在等待响应的上传无法撤回, 会在后台完成, 结果被忽略 (同名图片会被覆盖为相同的内容)</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-18 10:02
+ */
+@Slf4j
+public final class HedgedUploader {
+    /** 使用最近上传耗时的 p95 作为对冲等待时间 */
+    public static final double HEDGE_PERCENTILE = 0.95;
+
+    private HedgedUploader() {
+    }
+
+    /**
+     * 一次上传
+     */
+    @FunctionalInterface
+    public interface Attempt {
+        /**
+         * 读取 inputStream 并上传
+         *
+         * @param inputStream 本次上传的图片流
+         * @return url, 失败时返回 ""
+         */
+        String upload(@NotNull InputStream inputStream);
+    }
+
+    /**
+     * 执行对冲上传
+     *
+     * @param content     图片数据
+     * @param attempt     第一次上传
+     * @param hedge       对冲上传
+     * @param delayMillis 等待第一次上传的时间
+     * @return 先成功的 url, 都失败时返回 ""
+     */
+    @NotNull
+    public static String upload(@NotNull byte[] content, @NotNull Attempt attempt, @NotNull Attempt hedge, long delayMillis) {
+        return upload(AppExecutorUtil.getAppExecutorService(), content, attempt, hedge, delayMillis);
+    }
+
+    @NotNull
+    static String upload(@NotNull Executor executor,
+                         @NotNull byte[] content,
+                         @NotNull Attempt attempt,
+                         @NotNull Attempt hedge,
+                         long delayMillis) {
+        CompletionService<String> completionService = new ExecutorCompletionService<>(executor);
+        Map<Future<String>, AbortableInputStream> attempts = new LinkedHashMap<>(2);
+        try {
+            submit(completionService, attempts, content, attempt);
+            Future<String> done = completionService.poll(delayMillis, TimeUnit.MILLISECONDS);
+            if (done != null) {
+                // 第一次上传很快失败时不对冲, 交给故障转移处理
+                return getQuietly(done);
+            }
+
+            log.trace("upload not finished in {} ms, start hedged upload", delayMillis);
+            submit(completionService, attempts, content, hedge);
+            for (int i = 0; i < attempts.size(); i++) {
+                String url = getQuietly(completionService.take());
+                if (StringUtils.isNotBlank(url)) {
+                    return url;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // 先中止流再取消, 保证被取消的一方能通过 isAborted 识别, 不计入熔断失败
+            for (Map.Entry<Future<String>, AbortableInputStream> entry : attempts.entrySet()) {
+                if (!entry.getKey().isDone()) {
+                    entry.getValue().abort();
+                    entry.getKey().cancel(true);
+                }
+            }
+        }
+        return "";
+    }
+
+    /**
+     * 上传是否因为另一个上传先完成而被中止
+     *
+     * @param inputStream 传给 {@link Attempt#upload(InputStream)} 的流
+     * @return the boolean
+     */
+    public static boolean isAborted(InputStream inputStream) {
+        return inputStream instanceof AbortableInputStream && ((AbortableInputStream) inputStream).isAborted();
+    }
+
+    private static void submit(@NotNull CompletionService<String> completionService,
+                               @NotNull Map<Future<String>, AbortableInputStream> attempts,
+                               @NotNull byte[] content,
+                               @NotNull Attempt attempt) {
+        AbortableInputStream inputStream = new AbortableInputStream(new ByteArrayInputStream(content));
+        attempts.put(completionService.submit(() -> attempt.upload(inputStream)), inputStream);
+    }
+
+    @NotNull
+    private static String getQuietly(@NotNull Future<String> future) throws InterruptedException {
+        try {
+            String url = future.get();
+            return url == null ? "" : url;
+        } catch (ExecutionException e) {
+            log.trace("upload error", e);
+        }
+        return "";
+    }
+
+    /**
+     * 可以中止的图片流, 中止后读取和 reset 都抛出 IOException
+     */
+    private static class AbortableInputStream extends FilterInputStream {
+        private volatile boolean aborted;
+
+        AbortableInputStream(@NotNull InputStream in) {
+            super(in);
+        }
+
+        void abort() {
+            aborted = true;
+        }
+
+        boolean isAborted() {
+            return aborted;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkAborted();
+            return super.read();
+        }
+
+        @Override
+        public int read(@NotNull byte[] b, int off, int len) throws IOException {
+            checkAborted();
+            return super.read(b, off, len);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            checkAborted();
+            return super.skip(n);
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            checkAborted();
+            super.reset();
+        }
+
+        private void checkAborted() throws IOException {
+            if (aborted) {
+                throw new IOException("upload aborted, another upload finished first");
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 dong4j <dong4j@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package info.dong4j.idea.plugin.client;
+
+import info.dong4j.idea.plugin.enums.CloudEnum;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 记录每个图床最近成功上传的每 KB 耗时, 按图片大小换算对冲上传的等待时间.
+ * 小图片的耗时主要是建立连接和请求的开销, 按 {@link #MIN_NORMALIZED_BYTES} 计算, 避免大图片的等待时间被小图片拉低</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-18 09:40
+ */
+public final class LatencyTracker {
+    /** 保留最近的上传耗时个数 */
+    static final int WINDOW_SIZE = 50;
+    /** 样本数少于此值时不计算分位数 */
+    static final int MIN_SAMPLES = 10;
+    /** 小于此大小的图片按此大小计算每 KB 耗时 */
+    static final long MIN_NORMALIZED_BYTES = 64 * 1024;
+
+    private static final Map<CloudEnum, LatencyTracker> TRACKERS = new ConcurrentHashMap<>(12);
+
+    /** 每 KB 耗时 (ms) */
+    private final double[] samples = new double[WINDOW_SIZE];
+    private int index;
+    private int count;
+
+    LatencyTracker() {
+    }
+
+    /**
+     * 获取图床对应的耗时统计
+     *
+     * @param cloudEnum the cloud enum
+     * @return the latency tracker
+     */
+    @NotNull
+    public static LatencyTracker of(@NotNull CloudEnum cloudEnum) {
+        return TRACKERS.computeIfAbsent(cloudEnum, c -> new LatencyTracker());
+    }
+
+    /**
+     * 记录一次成功上传的耗时
+     *
+     * @param millis the millis
+     * @param bytes  图片大小, 未知时为 -1
+     */
+    public synchronized void record(long millis, long bytes) {
+        samples[index] = millis / kilobytes(bytes);
+        index = (index + 1) % WINDOW_SIZE;
+        if (count < WINDOW_SIZE) {
+            count++;
+        }
+    }
+
+    /**
+     * 按最近上传每 KB 耗时的分位数计算上传指定大小图片的耗时
+     *
+     * @param percentile 0 ~ 1
+     * @param bytes      图片大小
+     * @return 样本不足时返回 -1
+     */
+    public synchronized long percentile(double percentile, long bytes) {
+        if (count < MIN_SAMPLES) {
+            return -1;
+        }
+        double[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile * count) - 1;
+        return Math.round(sorted[Math.max(0, Math.min(rank, count - 1))] * kilobytes(bytes));
+    }
+
+    private static double kilobytes(long bytes) {
+        return Math.max(bytes, MIN_NORMALIZED_BYTES) / 1024.0;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 dong4j <dong4j@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package info.dong4j.idea.plugin.client;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 图床图片地址解析后的 host 和 object key, 用于判断是否可以在服务端复制</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-18 10:20
+ */
+final class ObjectUrl {
+    /** 小写的 host */
+    final String host;
+    /** 已解码且不以 / 开头的 object key */
+    final String key;
+
+    private ObjectUrl(String host, String key) {
+        this.host = host;
+        this.key = key;
+    }
+
+    /**
+     * 解析图片地址, 不是 http(s) 地址或没有 key 时返回 null
+     *
+     * @param url the url
+     * @return the object url
+     */
+    @Nullable
+    static ObjectUrl parse(String url) {
+        if (StringUtils.isBlank(url)) {
+            return null;
+        }
+        try {
+            URL u = new URL(url);
+            if (!u.getProtocol().startsWith("http") || StringUtils.isBlank(u.getHost())) {
+                return null;
+            }
+            // 只解码 %XX, URLDecoder 按表单解码会把路径中的 + 当作空格
+            String path = StringUtils.removeStart(u.getPath(), "/").replace("+", "%2B");
+            String key = URLDecoder.decode(path, StandardCharsets.UTF_8.name());
+            if (StringUtils.isBlank(key)) {
+                return null;
+            }
+            return new ObjectUrl(u.getHost().toLowerCase(), key);
+        } catch (MalformedURLException | UnsupportedEncodingException e) {
+            return null;
+        }
+    }
+
+    /**
+     * host 为 {@code <bucket>.<suffix>} 时返回 bucket, 否则返回 null
+     *
+     * @param suffix 不带前导 . 的 host 后缀
+     * @return the bucket
+     */
+    @Nullable
+    String bucket(String suffix) {
+        String tail = "." + suffix.toLowerCase();
+        if (!host.endsWith(tail) || host.length() == tail.length()) {
+            return null;
+        }
+        String bucket = host.substring(0, host.length() - tail.length());
+        return bucket.contains(".") ? null : bucket;
+    }
+}
@@ -28,11 +28,13 @@ package info.dong4j.idea.plugin.client;
 import info.dong4j.idea.plugin.enums.CloudEnum;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.awt.Component;
 import java.io.*;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.swing.JPanel;
@@ -41,8 +43,8 @@ import javax.swing.JTextField;
 /**
  * <p>Company: no company</p>
  * <p>Description: oss client 实现步骤:
- * 1. 初始化配置: 从持久化配置中初始化 client
- * 2. 静态内部类获取 client 单例
+ * 1. 初始化配置: 使用持久化配置快照创建不可变 client (所有字段为 final)
+ * 2. 通过 OssClientCache 获取与当前配置对应的 client
  * 3. 实现 OssClient 接口
  * 4. 自定义 upload 逻辑</p>
  *
@@ -51,7 +53,7 @@ import javax.swing.JTextField;
  * @since 2019-03-20 11:52
  */
 public interface OssClient {
-    /** 用于反射调用时的缓存 <className, client>, 容量为实现类个数 */
+    /** 当前配置对应的 client <cloudType, client>, 由 OssClientCache 原子替换, 容量为实现类个数 */
     Map<CloudEnum, OssClient> INSTANCES = new ConcurrentHashMap<>(12);
 
     /**
@@ -70,6 +72,64 @@ public interface OssClient {
      */
     CloudEnum getCloudType();
 
+    /**
+     * SDK client 在后台线程初始化, 上传前需要等待此 future 完成, 结果为 false 表示初始化失败
+     *
+     * @return the completable future
+     */
+    default CompletableFuture<Boolean> ready() {
+        return CompletableFuture.completedFuture(true);
+    }
+
+    /**
+     * 检查远程是否已存在同名文件 (HEAD / stat), 用于内容哈希命名时跳过重复上传
+     *
+     * @param fileName the file name
+     * @return 已存在时返回访问地址, 不存在或不支持时返回 null
+     */
+    @Nullable
+    default String getUrlIfExists(String fileName) {
+        return null;
+    }
+
+    /**
+     * 源地址与当前图床属于同一服务商时判断是否可以在服务端复制, 只解析地址, 不发起请求
+     *
+     * @param sourceUrl 原图片地址
+     * @return the boolean
+     */
+    default boolean canCopy(String sourceUrl) {
+        return false;
+    }
+
+    /**
+     * 服务端复制, 图片数据不经过本地
+     *
+     * @param sourceUrl 原图片地址
+     * @param fileName  新的文件名
+     * @return 复制后的访问地址, 不支持或失败时返回 null
+     */
+    @Nullable
+    default String copy(String sourceUrl, String fileName) {
+        return null;
+    }
+
+    /**
+     * 配置修改后 client 被新实例取代时由 OssClientCache 调用, 释放 SDK client 的线程和连接.
+     * 正在进行的请求不受影响, 实现类应在请求结束后再关闭
+     */
+    default void shutdown() {
+    }
+
+    /**
+     * 是否已经被 {@link #shutdown()} 关闭, 关闭后的请求由 {@link OssClientCache#current(OssClient)} 的当前 client 处理
+     *
+     * @return the boolean
+     */
+    default boolean isClosed() {
+        return false;
+    }
+
     /**
      * 全部通过此接口上传
      *
@@ -0,0 +1,155 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 dong4j <dong4j@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package info.dong4j.idea.plugin.client;
+
+import info.dong4j.idea.plugin.enums.CloudEnum;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 按配置快照缓存不可变的 client 实例.
+ * client 的所有字段在构造时确定, 之后不再修改, 因此可以被多个上传线程同时使用;
+ * 配置修改后 key 发生变化, 会创建新的 client 并原子替换 {@link OssClient#INSTANCES} 中的当前实例,
+ * 被取代的旧 client 从缓存中移除并调用 {@link OssClient#shutdown()}, 正在使用旧 client 的上传不受影响.</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-16 10:12
+ */
+public final class OssClientCache {
+    /** 被取代的 client 会被移除, 每个 cloud 只保留当前配置对应的 client */
+    private static final int MAX_SIZE = 16;
+
+    private static final Map<Key, OssClient> CACHE = new LinkedHashMap<Key, OssClient>(MAX_SIZE, 0.75f, true) {
+        private static final long serialVersionUID = 4633578407237917549L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, OssClient> eldest) {
+            if (size() > MAX_SIZE) {
+                eldest.getValue().shutdown();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private OssClientCache() {
+    }
+
+    /**
+     * 获取与当前配置对应的 client, 不存在时通过 factory 创建
+     *
+     * @param <T>       the type parameter
+     * @param cloudEnum the cloud enum
+     * @param factory   使用同一份配置快照创建 client
+     * @param config    配置快照 (参与 key 的 hash 计算)
+     * @return the client
+     */
+    @NotNull
+    @SuppressWarnings("unchecked")
+    public static <T extends OssClient> T get(@NotNull CloudEnum cloudEnum,
+                                              @NotNull Supplier<T> factory,
+                                              Object... config) {
+        Key key = new Key(cloudEnum, config);
+        OssClient client;
+        List<OssClient> superseded = new ArrayList<>();
+        synchronized (CACHE) {
+            client = CACHE.get(key);
+            if (client == null) {
+                // 同一 cloud 的旧配置不会再被使用, 移除后关闭
+                Iterator<Map.Entry<Key, OssClient>> iterator = CACHE.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<Key, OssClient> entry = iterator.next();
+                    if (entry.getKey().cloudEnum == cloudEnum) {
+                        superseded.add(entry.getValue());
+                        iterator.remove();
+                    }
+                }
+                client = factory.get();
+                CACHE.put(key, client);
+            }
+            OssClient.INSTANCES.put(cloudEnum, client);
+        }
+        for (OssClient old : superseded) {
+            old.shutdown();
+        }
+        return (T) client;
+    }
+
+    /**
+     * 已关闭的 client 上的请求改用同一 cloud 的当前 client. 旧 client 关闭前当前 client 已经替换完成
+     *
+     * @param client 已关闭的 client
+     * @return 当前 client, 没有其他 client 时返回 null
+     */
+    @Nullable
+    public static OssClient current(@NotNull OssClient client) {
+        OssClient current = OssClient.INSTANCES.get(client.getCloudType());
+        return current == null || current == client ? null : current;
+    }
+
+    /**
+     * cloud 类型 + 配置快照
+     */
+    private static final class Key {
+        private final CloudEnum cloudEnum;
+        private final Object[] config;
+        private final int hash;
+
+        Key(CloudEnum cloudEnum, Object[] config) {
+            this.cloudEnum = cloudEnum;
+            this.config = config == null ? new Object[0] : config.clone();
+            this.hash = 31 * cloudEnum.hashCode() + Arrays.hashCode(this.config);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return cloudEnum == other.cloudEnum && Arrays.equals(config, other.config);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -27,6 +27,7 @@ package info.dong4j.idea.plugin.client;
 
 import com.qiniu.common.QiniuException;
 import com.qiniu.http.Response;
+import com.qiniu.storage.BucketManager;
 import com.qiniu.storage.Configuration;
 import com.qiniu.storage.UploadManager;
 import com.qiniu.util.Auth;
@@ -41,13 +42,16 @@ import info.dong4j.idea.plugin.util.DES;
 import info.dong4j.idea.plugin.util.EnumsUtils;
 
 import org.apache.commons.lang.StringUtils;
-import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
 import java.net.*;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.swing.JPanel;
 
@@ -65,61 +69,117 @@ import lombok.extern.slf4j.Slf4j;
 @Client(CloudEnum.QINIU_CLOUD)
 public class QiniuOssClient implements OssClient {
     private static final long DEAD_LINE = 3600L * 1000 * 24 * 365 * 10;
+    /** 七牛分配的测试域名后缀 */
+    private static final String[] QINIU_DOMAINS = {".clouddn.com", ".qiniudn.com", ".qiniucdn.com", ".qnssl.com"};
 
-    private static String token;
-    private static UploadManager ossClient = null;
-    private static String domain;
+    private final String domain;
+    private final CompletableFuture<Uploader> ossClient;
 
-    static {
-        init();
+    /**
+     * 使用配置快照创建不可变的 client, 创建后不再修改任何字段, 可被多个上传线程共享
+     *
+     * @param endpoint  the endpoint
+     * @param ossClient 后台初始化的 SDK client
+     */
+    private QiniuOssClient(String endpoint, CompletableFuture<Uploader> ossClient) {
+        this.domain = buildDomain(endpoint);
+        this.ossClient = ossClient;
     }
 
     /**
-     * 如果是第一次使用, ossClient == null
+     * UploadManager, BucketManager 和上传 token 一起创建
      */
-    private static void init() {
-        QiniuOssState qiniuOssState = MikPersistenComponent.getInstance().getState().getQiniuOssState();
-        domain = qiniuOssState.getEndpoint();
-        String accessKey = qiniuOssState.getAccessKey();
-        String secretKey = DES.decrypt(qiniuOssState.getAccessSecretKey(), MikState.QINIU);
-        String bucketName = qiniuOssState.getBucketName();
+    private static final class Uploader {
+        private final UploadManager uploadManager;
+        private final BucketManager bucketManager;
+        private final String bucketName;
+        private final String token;
+        /** 域名 -> bucket, 服务端复制时查找源 bucket */
+        private final Map<String, String> domainBuckets = new ConcurrentHashMap<>();
 
-        Optional<ZoneEnum> zone = EnumsUtils.getEnumObject(ZoneEnum.class, e -> e.getIndex() == qiniuOssState.getZoneIndex());
-        try {
-            Configuration cfg = new Configuration(zone.orElse(ZoneEnum.EAST_CHINA).zone);
-            ossClient = new UploadManager(cfg);
-            buildToken(Auth.create(accessKey, secretKey), bucketName);
-        } catch (Exception ignored) {
+        private Uploader(UploadManager uploadManager, BucketManager bucketManager, String bucketName, String token) {
+            this.uploadManager = uploadManager;
+            this.bucketManager = bucketManager;
+            this.bucketName = bucketName;
+            this.token = token;
         }
-    }
 
-    /**
-     * Set domain.
-     *
-     * @param newDomain the new domain
-     */
-    private void setDomain(String newDomain) {
-        domain = newDomain;
+        /**
+         * 如果是第一次使用, 配置为空, 返回 null
+         *
+         * @param bucketName the bucket name
+         * @param accessKey  the access key
+         * @param secretKey  the secret key (明文)
+         * @param zoneIndex  the zone index
+         * @return the uploader
+         */
+        @Nullable
+        private static Uploader build(String bucketName, String accessKey, String secretKey, int zoneIndex) {
+            try {
+                Optional<ZoneEnum> zone = EnumsUtils.getEnumObject(ZoneEnum.class, e -> e.getIndex() == zoneIndex);
+                Configuration cfg = new Configuration(zone.orElse(ZoneEnum.EAST_CHINA).zone);
+                Auth auth = Auth.create(accessKey, secretKey);
+                return new Uploader(new UploadManager(cfg), new BucketManager(auth, cfg), bucketName, buildToken(auth, bucketName));
+            } catch (Exception e) {
+                log.trace("", e);
+            }
+            return null;
+        }
+
+        /**
+         * 查找绑定了 host 的 bucket, 只查找当前账号下的 bucket
+         *
+         * @param host the host
+         * @return 没有找到返回 null
+         */
+        @Nullable
+        private String findBucket(String host) throws QiniuException {
+            String bucket = domainBuckets.get(host);
+            if (bucket != null) {
+                return bucket;
+            }
+            for (String name : bucketManager.buckets()) {
+                for (String domain : bucketManager.domainList(name)) {
+                    domainBuckets.putIfAbsent(domain.toLowerCase(), name);
+                }
+            }
+            return domainBuckets.get(host);
+        }
     }
 
     /**
-     * Set oss client.
+     * Build token string.
      *
-     * @param oss the oss
+     * @param auth       the auth
+     * @param bucketName the bucket name
+     * @return the string
      */
-    private void setOssClient(UploadManager oss) {
-        ossClient = oss;
+    private static String buildToken(Auth auth, String bucketName) {
+        return auth.uploadToken(bucketName, null, DEAD_LINE, null, true);
     }
 
     /**
-     * Build token string.
+     * 拼接 url 使用的域名, 统一以 / 结尾 (https://developer.qiniu.com/fusion/kb/1322/how-to-configure-cname-domain-name)
      *
-     * @param auth       the auth
-     * @param bucketName the bucket name
+     * @param endpoint the endpoint
      * @return the string
      */
-    private static void buildToken(Auth auth, String bucketName) {
-        token = auth.uploadToken(bucketName, null, DEAD_LINE, null, true);
+    @Nullable
+    private static String buildDomain(String endpoint) {
+        if (StringUtils.isBlank(endpoint)) {
+            return null;
+        }
+        try {
+            URL url = new URL(endpoint);
+            log.trace("getUserInfo = {}", url.getUserInfo());
+            if (StringUtils.isBlank(url.getPath())) {
+                return endpoint + "/";
+            }
+            return endpoint.endsWith("/") ? endpoint : endpoint + "/";
+        } catch (MalformedURLException e) {
+            log.trace("", e);
+        }
+        return null;
     }
 
     @Override
@@ -128,22 +188,38 @@ public class QiniuOssClient implements OssClient {
     }
 
     /**
-     * Gets instance.
+     * 获取与当前持久化配置对应的 client, 配置修改后会得到新的实例.
+     * DES 解密和 SDK client 的创建在后台线程执行, 完成后解析域名预热 DNS
      *
      * @return the instance
      */
-    @Contract(pure = true)
+    @NotNull
     public static QiniuOssClient getInstance() {
-        QiniuOssClient client = (QiniuOssClient)OssClient.INSTANCES.get(CloudEnum.QINIU_CLOUD);
-        if(client == null){
-            client = SingletonHandler.singleton;
-            OssClient.INSTANCES.put(CloudEnum.QINIU_CLOUD, client);
-        }
-        return client;
+        QiniuOssState qiniuOssState = MikPersistenComponent.getInstance().getState().getQiniuOssState();
+        String bucketName = qiniuOssState.getBucketName();
+        String accessKey = qiniuOssState.getAccessKey();
+        String encryptedSecretKey = qiniuOssState.getAccessSecretKey();
+        String endpoint = qiniuOssState.getEndpoint();
+        int zoneIndex = qiniuOssState.getZoneIndex();
+
+        return OssClientCache.get(CloudEnum.QINIU_CLOUD,
+                                  () -> new QiniuOssClient(endpoint,
+                                                           ClientInitializer.initAsync(
+                                                               () -> Uploader.build(bucketName,
+                                                                                    accessKey,
+                                                                                    DES.decrypt(encryptedSecretKey, MikState.QINIU),
+                                                                                    zoneIndex),
+                                                               uploader -> ClientInitializer.resolve(endpoint))),
+                                  bucketName,
+                                  accessKey,
+                                  encryptedSecretKey,
+                                  endpoint,
+                                  zoneIndex);
     }
 
-    private static class SingletonHandler {
-        private static QiniuOssClient singleton = new QiniuOssClient();
+    @Override
+    public CompletableFuture<Boolean> ready() {
+        return ossClient.thenApply(Objects::nonNull);
     }
 
     /**
@@ -155,7 +231,87 @@ public class QiniuOssClient implements OssClient {
      */
     @Override
     public String upload(InputStream inputStream, String fileName) {
-        return upload(ossClient, inputStream, fileName);
+        Uploader uploader = ClientInitializer.await(ossClient, null);
+        if (uploader == null) {
+            return "";
+        }
+        return upload(uploader, inputStream, fileName);
+    }
+
+    /**
+     * stat 检查是否已存在, 不存在时七牛返回 612
+     *
+     * @param fileName the file name
+     * @return the url if exists
+     */
+    @Override
+    public String getUrlIfExists(String fileName) {
+        Uploader uploader = ClientInitializer.await(ossClient, null);
+        if (uploader == null || domain == null) {
+            return null;
+        }
+        try {
+            uploader.bucketManager.stat(uploader.bucketName, fileName);
+            return domain + fileName;
+        } catch (QiniuException e) {
+            log.trace("stat {}: {}", fileName, e.code());
+        }
+        return null;
+    }
+
+    /**
+     * 七牛使用绑定域名访问, 只有当前域名或七牛测试域名才可能在同一账号下
+     *
+     * @param sourceUrl 原图片地址
+     * @return the boolean
+     */
+    @Override
+    public boolean canCopy(String sourceUrl) {
+        ObjectUrl objectUrl = ObjectUrl.parse(sourceUrl);
+        if (objectUrl == null) {
+            return false;
+        }
+        if (domain != null && objectUrl.host.equalsIgnoreCase(URI.create(domain).getHost())) {
+            return true;
+        }
+        for (String qiniuDomain : QINIU_DOMAINS) {
+            if (objectUrl.host.endsWith(qiniuDomain)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 通过域名查找源 bucket 后使用资源复制 (copy) 接口
+     *
+     * @param sourceUrl 原图片地址
+     * @param fileName  新的文件名
+     * @return the string
+     */
+    @Override
+    public String copy(String sourceUrl, String fileName) {
+        if (domain == null || !canCopy(sourceUrl)) {
+            return null;
+        }
+        Uploader uploader = ClientInitializer.await(ossClient, null);
+        if (uploader == null) {
+            return null;
+        }
+        ObjectUrl objectUrl = Objects.requireNonNull(ObjectUrl.parse(sourceUrl));
+        try {
+            String sourceBucket = uploader.findBucket(objectUrl.host);
+            if (sourceBucket == null) {
+                return null;
+            }
+            if (!(uploader.bucketName.equals(sourceBucket) && fileName.equals(objectUrl.key))) {
+                uploader.bucketManager.copy(sourceBucket, objectUrl.key, uploader.bucketName, fileName);
+            }
+            return domain + fileName;
+        } catch (QiniuException e) {
+            log.trace("copy {} error: {}", sourceUrl, e.code());
+        }
+        return null;
     }
 
     /**
@@ -186,7 +342,7 @@ public class QiniuOssClient implements OssClient {
     }
 
     /**
-     * test 按钮点击事件后请求, 成功后保留 client, paste 或者 右键 上传时使用
+     * test 按钮点击事件后请求, 使用面板配置创建临时 client, 不影响正在使用的 client
      *
      * @param inputStream the input stream
      * @param fileName    the file name
@@ -198,7 +354,6 @@ public class QiniuOssClient implements OssClient {
      * @return the string
      */
     @NotNull
-    @Contract(pure = true)
     public String upload(InputStream inputStream,
                          String fileName,
                          String bucketName,
@@ -207,18 +362,9 @@ public class QiniuOssClient implements OssClient {
                          String endpoint,
                          int zoneIndex) {
 
-
-        QiniuOssClient qiniuOssClient = QiniuOssClient.getInstance();
-        Optional<ZoneEnum> zone = EnumsUtils.getEnumObject(ZoneEnum.class, e -> e.getIndex() == zoneIndex);
-        Configuration cfg = new Configuration(zone.orElse(ZoneEnum.EAST_CHINA).zone);
-        UploadManager ossClient = new UploadManager(cfg);
-        Auth auth = Auth.create(accessKey, secretKey);
-        // 重新生成 token
-        QiniuOssClient.buildToken(auth, bucketName);
-
-        qiniuOssClient.setDomain(endpoint);
-
-        String url = qiniuOssClient.upload(ossClient, inputStream, fileName);
+        Uploader uploader = Uploader.build(bucketName, accessKey, secretKey, zoneIndex);
+        QiniuOssClient qiniuOssClient = new QiniuOssClient(endpoint, CompletableFuture.completedFuture(uploader));
+        String url = qiniuOssClient.upload(inputStream, fileName);
 
         if (StringUtils.isNotBlank(url)) {
             int hashcode = bucketName.hashCode() +
@@ -229,7 +375,6 @@ public class QiniuOssClient implements OssClient {
             OssState.saveStatus(MikPersistenComponent.getInstance().getState().getQiniuOssState(),
                                 hashcode,
                                 MikState.OLD_HASH_KEY);
-            qiniuOssClient.setOssClient(ossClient);
         }
         return url;
     }
@@ -237,22 +382,17 @@ public class QiniuOssClient implements OssClient {
     /**
      * Upload string.
      *
-     * @param ossClient   the oss client
+     * @param uploader    the uploader
      * @param inputStream the input stream
      * @param fileName    the file name
      * @return the string
      */
-    public String upload(@NotNull UploadManager ossClient, InputStream inputStream, String fileName) {
+    private String upload(@NotNull Uploader uploader, InputStream inputStream, String fileName) {
+        if (domain == null) {
+            return "";
+        }
         try {
-            ossClient.put(inputStream, fileName, token, null, null);
-            // 拼接 url, 需要正确配置域名 (https://developer.qiniu.com/fusion/kb/1322/how-to-configure-cname-domain-name)
-            URL url = new URL(domain);
-            log.trace("getUserInfo = {}", url.getUserInfo());
-            if (StringUtils.isBlank(url.getPath())) {
-                domain = domain + "/";
-            } else {
-                domain = domain.endsWith("/") ? domain : domain + "/";
-            }
+            uploader.uploadManager.put(inputStream, fileName, uploader.token, null, null);
             return domain + fileName;
         } catch (QiniuException ex) {
             Response r = ex.response;
@@ -261,8 +401,6 @@ public class QiniuOssClient implements OssClient {
                 log.trace(r.bodyString());
             } catch (QiniuException ignored) {
             }
-        } catch (MalformedURLException e) {
-            log.trace("", e);
         }
         return "";
     }
@@ -0,0 +1,121 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 dong4j <dong4j@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package info.dong4j.idea.plugin.client;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 被多个上传线程共用的 SDK client, 按正在进行的请求数引用计数.
+ * client 被新配置取代后调用 {@link #shutdown()}, 没有正在进行的请求时立即关闭, 否则由最后一个请求结束时关闭;
+ * 关闭后 {@link #acquire()} 返回 false, 调用方改用 {@link OssClientCache#current(OssClient)} 返回的当前 client.</p>
+ *
+ * @param <T> SDK client 类型
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-21 20:10
+ */
+public final class SharedClient<T> {
+    private final CompletableFuture<T> client;
+    /** 释放 SDK client 的线程和连接 */
+    private final Consumer<T> closer;
+    /** 正在进行的请求数, 关闭后为 -1, 不再接受新的请求 */
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    /** 配置修改后被新 client 取代, 请求全部结束后关闭 */
+    private volatile boolean superseded;
+
+    /**
+     * Instantiates a new Shared client.
+     *
+     * @param client 后台初始化的 SDK client, 初始化失败时为 null
+     * @param closer 关闭 SDK client
+     */
+    public SharedClient(@NotNull CompletableFuture<T> client, @NotNull Consumer<T> closer) {
+        this.client = client;
+        this.closer = closer;
+    }
+
+    /**
+     * 后台初始化的 SDK client
+     *
+     * @return the completable future
+     */
+    @NotNull
+    public CompletableFuture<T> future() {
+        return client;
+    }
+
+    /**
+     * 请求开始前调用, client 已关闭时返回 false; 返回 true 时必须在请求结束后调用 {@link #release()}
+     *
+     * @return the boolean
+     */
+    public boolean acquire() {
+        int active;
+        do {
+            active = activeRequests.get();
+            if (active < 0) {
+                return false;
+            }
+        } while (!activeRequests.compareAndSet(active, active + 1));
+        return true;
+    }
+
+    /**
+     * 请求结束后调用, 已被取代时由最后一个请求关闭 client
+     */
+    public void release() {
+        if (activeRequests.decrementAndGet() == 0 && superseded) {
+            shutdown();
+        }
+    }
+
+    /**
+     * 被新配置的 client 取代, 没有正在进行的请求时立即关闭, 否则由最后一个请求结束时关闭
+     */
+    public void shutdown() {
+        superseded = true;
+        if (activeRequests.compareAndSet(0, -1)) {
+            client.thenAccept(c -> {
+                if (c != null) {
+                    closer.accept(c);
+                }
+            });
+        }
+    }
+
+    /**
+     * 是否已关闭, 关闭后不再接受新的请求
+     *
+     * @return the boolean
+     */
+    public boolean isClosed() {
+        return activeRequests.get() < 0;
+    }
+}
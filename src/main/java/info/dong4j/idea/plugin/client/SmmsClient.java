@@ -27,14 +27,16 @@ package info.dong4j.idea.plugin.client;
 
 import com.google.gson.Gson;
 
-import com.intellij.openapi.util.io.FileUtil;
-
 import info.dong4j.idea.plugin.entity.SmmsResult;
 import info.dong4j.idea.plugin.enums.CloudEnum;
+import info.dong4j.idea.plugin.util.ImageUtils;
 
-import org.jetbrains.annotations.Contract;
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
 
 import java.io.*;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 import javax.swing.JPanel;
 
@@ -45,6 +47,10 @@ import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
 
 /**
  * <p>Company: no company</p>
@@ -58,11 +64,13 @@ import okhttp3.Response;
 @Client(CloudEnum.SM_MS_CLOUD)
 public class SmmsClient implements OssClient {
     private static final String UPLOAD_URL = "https://sm.ms/api/upload";
-    private static Client client;
+    /** Gson 线程安全, 所有上传共用 */
+    private static final Gson GSON = new Gson();
+    /** OkHttpClient 持有连接池和 dispatcher 线程, 被移出缓存后由最后一个请求关闭 */
+    private final SharedClient<Client> client;
 
-    @Contract(pure = true)
     private SmmsClient() {
-
+        this.client = new SharedClient<>(ClientInitializer.initAsync(Client::new, Client::warmUp), Client::close);
     }
 
     @Override
@@ -75,18 +83,15 @@ public class SmmsClient implements OssClient {
      *
      * @return the instance
      */
-    @Contract(pure = true)
+    @NotNull
     public static SmmsClient getInstance() {
-        SmmsClient client = (SmmsClient)OssClient.INSTANCES.get(CloudEnum.SM_MS_CLOUD);
-        if(client == null){
-            client = SingletonHandler.singleton;
-            OssClient.INSTANCES.put(CloudEnum.SM_MS_CLOUD, client);
-        }
-        return client;
+        // sm.ms 不需要配置, 只会创建一个实例
+        return OssClientCache.get(CloudEnum.SM_MS_CLOUD, SmmsClient::new);
     }
 
-    private static class SingletonHandler {
-        private static SmmsClient singleton = new SmmsClient();
+    @Override
+    public CompletableFuture<Boolean> ready() {
+        return client.future().thenApply(Objects::nonNull);
     }
 
     /**
@@ -98,10 +103,32 @@ public class SmmsClient implements OssClient {
      */
     @Override
     public String upload(InputStream inputStream, String fileName) {
-        if (client == null) {
-            client = new Client();
+        if (!client.acquire()) {
+            OssClient current = OssClientCache.current(this);
+            return current == null ? "" : current.upload(inputStream, fileName);
+        }
+        try {
+            Client smmsClient = ClientInitializer.await(client.future(), null);
+            if (smmsClient == null) {
+                return "";
+            }
+            return smmsClient.upload(inputStream, fileName);
+        } finally {
+            client.release();
         }
-        return client.upload(inputStream, fileName);
+    }
+
+    /**
+     * 被移出缓存时调用, 没有正在进行的请求时立即关闭 OkHttp 的线程和连接, 否则由最后一个请求结束时关闭
+     */
+    @Override
+    public void shutdown() {
+        client.shutdown();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return client.isClosed();
     }
 
     /**
@@ -119,7 +146,7 @@ public class SmmsClient implements OssClient {
     }
 
     private class Client {
-        private OkHttpClient client;
+        private final OkHttpClient client;
 
         /**
          * Instantiates a new Client.
@@ -131,7 +158,30 @@ public class SmmsClient implements OssClient {
         }
 
         /**
-         * 直接使用 http 接口上传
+         * HEAD 请求预热连接, 建立的 TLS 连接会保留在 OkHttp 连接池中
+         */
+        void warmUp() {
+            Request request = new Request.Builder()
+                .url(UPLOAD_URL)
+                .head()
+                .build();
+            try (Response response = client.newCall(request).execute()) {
+                log.trace("warm up sm.ms: {}", response.code());
+            } catch (IOException e) {
+                log.trace("", e);
+            }
+        }
+
+        /**
+         * 停止 dispatcher 的线程并关闭连接池中的连接
+         */
+        void close() {
+            client.dispatcher().executorService().shutdown();
+            client.connectionPool().evictAll();
+        }
+
+        /**
+         * 直接使用 http 接口上传, 图片边读边写入请求, 响应直接解析, 不缓存整个文件和响应
          *
          * @param inputStream the input stream
          * @param fileName    the file name
@@ -141,22 +191,20 @@ public class SmmsClient implements OssClient {
             try {
                 RequestBody requestBody = new MultipartBody.Builder()
                     .setType(MultipartBody.FORM)
-                    .addFormDataPart("smfile", fileName, RequestBody.create(MediaType.parse("multipart/form-data"), FileUtil.loadBytes(inputStream)))
+                    .addFormDataPart("smfile", fileName, new InputStreamRequestBody(inputStream, fileName))
                     .build();
 
                 Request request = new Request.Builder()
                     .url(UPLOAD_URL)
-                    .addHeader("Content-Type", "multipart/form-data")
                     .addHeader("User-Agent", "Mozilla/5.0 (Windows; U; Windows NT 6.1; zh-CN; rv:1.9.2.6)")
                     .post(requestBody)
                     .build();
-                Response response = client.newCall(request).execute();
-                if (!response.isSuccessful()) {
-                    return "";
-                }
-                if (response.body() != null) {
-                    String result = response.body().string();
-                    SmmsResult smmsResult = new Gson().fromJson(result, SmmsResult.class);
+                try (Response response = client.newCall(request).execute()) {
+                    ResponseBody body = response.body();
+                    if (!response.isSuccessful() || body == null) {
+                        return "";
+                    }
+                    SmmsResult smmsResult = GSON.fromJson(body.charStream(), SmmsResult.class);
                     log.trace("{}", smmsResult);
                     return smmsResult.getData().getUrl();
                 }
@@ -166,4 +214,43 @@ public class SmmsClient implements OssClient {
             return "";
         }
     }
+
+    /**
+     * 直接从 inputStream 写入请求体, 文件流和内存流可以得到 content length.
+     * 流只能读取一次, 不能被 OkHttp 重试
+     */
+    private static class InputStreamRequestBody extends RequestBody {
+        private final InputStream inputStream;
+        private final MediaType contentType;
+        private final long contentLength;
+
+        InputStreamRequestBody(InputStream inputStream, String fileName) {
+            this.inputStream = inputStream;
+            String imageType = ImageUtils.getImageType(fileName);
+            this.contentType = MediaType.parse(StringUtils.isBlank(imageType) ? "application/octet-stream" : imageType);
+            this.contentLength = ImageUtils.getLength(inputStream);
+        }
+
+        @Override
+        public MediaType contentType() {
+            return contentType;
+        }
+
+        @Override
+        public long contentLength() {
+            return contentLength;
+        }
+
+        @Override
+        public boolean isOneShot() {
+            return true;
+        }
+
+        @Override
+        public void writeTo(@NotNull BufferedSink sink) throws IOException {
+            try (Source source = Okio.source(inputStream)) {
+                sink.writeAll(source);
+            }
+        }
+    }
 }
@@ -6,10 +6,13 @@ import info.dong4j.idea.plugin.sdk.qcloud.cos.ClientConfig;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.auth.BasicCOSCredentials;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.auth.COSCredentials;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.exception.CosClientException;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.CopyObjectRequest;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.model.ObjectMetadata;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.model.PutObjectRequest;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.model.StorageClass;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.region.Region;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.transfer.TransferManager;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.transfer.TransferManagerUtils;
 import info.dong4j.idea.plugin.settings.MikPersistenComponent;
 import info.dong4j.idea.plugin.settings.MikState;
 import info.dong4j.idea.plugin.settings.OssState;
@@ -18,11 +21,13 @@ import info.dong4j.idea.plugin.util.DES;
 import info.dong4j.idea.plugin.util.ImageUtils;
 
 import org.apache.commons.lang3.StringUtils;
-import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 import javax.swing.JPanel;
 
@@ -31,8 +36,8 @@ import lombok.extern.slf4j.Slf4j;
 /**
  * <p>Company: no company</p>
  * <p>Description: oss client 实现步骤:
- * 1. 初始化配置: 从持久化配置中初始化 client
- * 2. 静态内部类获取 client 单例
+ * 1. 初始化配置: 使用持久化配置快照创建不可变 client
+ * 2. 通过 OssClientCache 获取与当前配置对应的 client
  * 3. 实现 OssClient 接口
  * 4. 自定义 upload 逻辑</p>
  *
@@ -44,92 +49,216 @@ import lombok.extern.slf4j.Slf4j;
 @Client(CloudEnum.TENCENT_CLOUD)
 public class TencentOssClient implements OssClient {
 
-    private static COSClient ossClient = null;
-    private static String bucketName;
-    private static String regionName;
+    /** 被取代后由最后一个请求关闭 */
+    private final SharedClient<COSClient> ossClient;
+    private final String bucketName;
+    private final String regionName;
+    /** 大图片分块上传, 第一次需要时创建, 与 SDK client 共用连接池 */
+    private volatile TransferManager transferManager;
 
-    static {
-        init();
+    /**
+     * 使用配置快照创建不可变的 client, 创建后不再修改任何字段, 可被多个上传线程共享
+     *
+     * @param bucketName the bucket name
+     * @param regionName the region name
+     * @param ossClient  后台初始化的 SDK client
+     */
+    private TencentOssClient(String bucketName,
+                             String regionName,
+                             CompletableFuture<COSClient> ossClient) {
+        this.bucketName = bucketName;
+        this.regionName = regionName;
+        this.ossClient = new SharedClient<>(ossClient, this::close);
     }
 
     /**
-     * 如果是第一次使用, ossClient == null, 使用持久化配置初始化
-     * 1. 如果是第一次设置, 获取的持久化配置为 null, 则初始化 ossClient 失败
+     * 如果是第一次设置, 获取的持久化配置为 null, 则初始化 ossClient 失败, 返回 null
+     *
+     * @param accessKey       the access key
+     * @param accessSecretKey the access secret key
+     * @param regionName      the region name
+     * @return the cos client
      */
-    private static void init() {
-        TencentOssState tencentOssState = MikPersistenComponent.getInstance().getState().getTencentOssState();
-        bucketName = tencentOssState.getBucketName();
-        String accessKey = tencentOssState.getAccessKey();
-        String accessSecretKey = DES.decrypt(tencentOssState.getSecretKey(), MikState.TENCENT);
-        regionName = tencentOssState.getRegionName();
-
+    @Nullable
+    private static COSClient build(String accessKey, String accessSecretKey, String regionName) {
         try {
+            // 1 初始化用户身份信息 (secretId, secretKey)
             COSCredentials cred = new BasicCOSCredentials(accessKey, accessSecretKey);
+            // 2 设置 bucket 的区域, COS地域的简称请参照 https://www.qcloud.com/document/product/436/6224
             ClientConfig clientConfig = new ClientConfig(new Region(regionName));
-            ossClient = new COSClient(cred, clientConfig);
-        } catch (Exception ignored) {
+            // 上传时同一次读取计算 CRC64 校验, 比 MD5 开销小
+            clientConfig.setCrc64CheckEnabled(true);
+            // 3 生成 cos 客户端
+            return new COSClient(cred, clientConfig);
+        } catch (Exception e) {
+            log.trace("", e);
         }
+        return null;
     }
 
-    private void setBucketName(String newBucketName) {
-        bucketName = newBucketName;
+    /**
+     * 获取与当前持久化配置对应的 client, 配置修改后会得到新的实例.
+     * DES 解密和 SDK client 的创建在后台线程执行, 完成后 HEAD bucket 预热连接
+     *
+     * @return the instance
+     */
+    @NotNull
+    public static TencentOssClient getInstance() {
+        TencentOssState tencentOssState = MikPersistenComponent.getInstance().getState().getTencentOssState();
+        String bucketName = tencentOssState.getBucketName();
+        String accessKey = tencentOssState.getAccessKey();
+        String encryptedSecretKey = tencentOssState.getSecretKey();
+        String regionName = tencentOssState.getRegionName();
+
+        return OssClientCache.get(CloudEnum.TENCENT_CLOUD,
+                                  () -> new TencentOssClient(bucketName,
+                                                             regionName,
+                                                             ClientInitializer.initAsync(
+                                                                 () -> build(accessKey,
+                                                                             DES.decrypt(encryptedSecretKey, MikState.TENCENT),
+                                                                             regionName),
+                                                                 cos -> cos.doesBucketExist(bucketName))),
+                                  bucketName,
+                                  accessKey,
+                                  encryptedSecretKey,
+                                  regionName);
     }
 
-    private void setRegionName(String newRegionName) {
-        regionName = newRegionName;
+    @Override
+    public CompletableFuture<Boolean> ready() {
+        return ossClient.future().thenApply(Objects::nonNull);
     }
 
     /**
-     * Set oss client.
+     * 实现接口, 获取当前 client type
      *
-     * @param oss the oss
+     * @return the cloud typed
      */
-    private void setOssClient(COSClient oss) {
-        ossClient = oss;
+    @Override
+    public CloudEnum getCloudType() {
+        return CloudEnum.TENCENT_CLOUD;
     }
 
     /**
-     * Gets instance.
+     * 通过文件流上传文件
      *
-     * @return the instance
+     * @param inputStream the input stream
+     * @param fileName    the file name
+     * @return the string
      */
-    @Contract(pure = true)
-    public static TencentOssClient getInstance() {
-        TencentOssClient client = (TencentOssClient) OssClient.INSTANCES.get(CloudEnum.TENCENT_CLOUD);
-        if (client == null) {
-            client = SingletonHandler.singleton;
-            OssClient.INSTANCES.put(CloudEnum.TENCENT_CLOUD, client);
+    @Override
+    public String upload(InputStream inputStream, String fileName) {
+        if (!ossClient.acquire()) {
+            OssClient current = OssClientCache.current(this);
+            return current == null ? "" : current.upload(inputStream, fileName);
+        }
+        try {
+            COSClient cosClient = ClientInitializer.await(ossClient.future(), null);
+            if (cosClient == null) {
+                return "";
+            }
+            return upload(cosClient, inputStream, fileName);
+        } finally {
+            ossClient.release();
         }
-        return client;
     }
 
     /**
-     * 使用缓存的 map 映射获取已初始化的 client, 避免创建多个实例
+     * getObjectMetadata (HEAD) 检查是否已存在
+     *
+     * @param fileName the file name
+     * @return the url if exists
      */
-    private static class SingletonHandler {
-        private static TencentOssClient singleton = new TencentOssClient();
+    @Override
+    public String getUrlIfExists(String fileName) {
+        if (!ossClient.acquire()) {
+            OssClient current = OssClientCache.current(this);
+            return current == null ? null : current.getUrlIfExists(fileName);
+        }
+        try {
+            COSClient cosClient = ClientInitializer.await(ossClient.future(), null);
+            if (cosClient == null) {
+                return null;
+            }
+            if (cosClient.doesObjectExist(bucketName, fileName)) {
+                return getUrl(fileName);
+            }
+        } catch (CosClientException e) {
+            log.trace("", e);
+        } finally {
+            ossClient.release();
+        }
+        return null;
     }
 
     /**
-     * 实现接口, 获取当前 client type
+     * 图片地址为 {@code <bucket>.cos.<region>.myqcloud.com/<key>}, 支持跨区域复制
      *
-     * @return the cloud typed
+     * @param sourceUrl 原图片地址
+     * @return the boolean
      */
     @Override
-    public CloudEnum getCloudType() {
-        return CloudEnum.TENCENT_CLOUD;
+    public boolean canCopy(String sourceUrl) {
+        return sourceRegion(ObjectUrl.parse(sourceUrl)) != null;
     }
 
     /**
-     * 通过文件流上传文件
+     * PUT Object - Copy 复制到当前 bucket, 源 bucket 需要属于同一账号或有读权限
      *
-     * @param inputStream the input stream
-     * @param fileName    the file name
+     * @param sourceUrl 原图片地址
+     * @param fileName  新的文件名
      * @return the string
      */
     @Override
-    public String upload(InputStream inputStream, String fileName) {
-        return upload(ossClient, inputStream, fileName);
+    public String copy(String sourceUrl, String fileName) {
+        ObjectUrl objectUrl = ObjectUrl.parse(sourceUrl);
+        String sourceRegion = sourceRegion(objectUrl);
+        if (sourceRegion == null) {
+            return null;
+        }
+        if (!ossClient.acquire()) {
+            OssClient current = OssClientCache.current(this);
+            return current == null ? null : current.copy(sourceUrl, fileName);
+        }
+        try {
+            COSClient cosClient = ClientInitializer.await(ossClient.future(), null);
+            if (cosClient == null) {
+                return null;
+            }
+            String sourceBucket = objectUrl.bucket("cos." + sourceRegion + ".myqcloud.com");
+            if (!(bucketName.equals(sourceBucket) && fileName.equals(objectUrl.key))) {
+                cosClient.copyObject(new CopyObjectRequest(new Region(sourceRegion),
+                                                           sourceBucket,
+                                                           objectUrl.key,
+                                                           bucketName,
+                                                           fileName));
+            }
+            return getUrl(fileName);
+        } catch (CosClientException e) {
+            log.trace("copy {} error", sourceUrl, e);
+        } finally {
+            ossClient.release();
+        }
+        return null;
+    }
+
+    /**
+     * 解析 COS 图片地址中的 region
+     *
+     * @param objectUrl the object url
+     * @return 不是 COS 地址时返回 null
+     */
+    @Nullable
+    private static String sourceRegion(@Nullable ObjectUrl objectUrl) {
+        if (objectUrl == null || !objectUrl.host.endsWith(".myqcloud.com")) {
+            return null;
+        }
+        String[] parts = objectUrl.host.split("\\.");
+        // <bucket>.cos.<region>.myqcloud.com
+        if (parts.length != 5 || !"cos".equals(parts[1])) {
+            return null;
+        }
+        return parts[2];
     }
 
     /**
@@ -158,7 +287,7 @@ public class TencentOssClient implements OssClient {
     }
 
     /**
-     * test 按钮点击事件后请求, 成功后保留 client, paste 或者 右键 上传时使用
+     * test 按钮点击事件后请求, 使用面板配置创建临时 client, 不影响正在使用的 client
      *
      * @param inputStream the input stream
      * @param fileName    the file name
@@ -169,7 +298,6 @@ public class TencentOssClient implements OssClient {
      * @return the string
      */
     @NotNull
-    @Contract(pure = true)
     public String upload(InputStream inputStream,
                          String fileName,
                          String bucketName,
@@ -177,19 +305,17 @@ public class TencentOssClient implements OssClient {
                          String secretKey,
                          String regionName) {
 
-        TencentOssClient tencentOssClient = TencentOssClient.getInstance();
-
-        setBucketName(bucketName);
-        setRegionName(regionName);
-
-        // 1 初始化用户身份信息 (secretId, secretKey)
-        COSCredentials cred = new BasicCOSCredentials(accessKey, secretKey);
-        // 2 设置 bucket 的区域, COS地域的简称请参照 https://www.qcloud.com/document/product/436/6224
-        ClientConfig clientConfig = new ClientConfig(new Region(regionName));
-        // 3 生成 cos 客户端
-        COSClient ossClient = new COSClient(cred, clientConfig);
-
-        String url = tencentOssClient.upload(ossClient, inputStream, fileName);
+        COSClient cosClient = build(accessKey, secretKey, regionName);
+        if (cosClient == null) {
+            return "";
+        }
+        String url;
+        TencentOssClient client = new TencentOssClient(bucketName, regionName, CompletableFuture.completedFuture(cosClient));
+        try {
+            url = client.upload(cosClient, inputStream, fileName);
+        } finally {
+            client.close(cosClient);
+        }
 
         if (StringUtils.isNotBlank(url)) {
             int hashcode = bucketName.hashCode() +
@@ -200,12 +326,21 @@ public class TencentOssClient implements OssClient {
             OssState.saveStatus(MikPersistenComponent.getInstance().getState().getTencentOssState(),
                                 hashcode,
                                 MikState.OLD_HASH_KEY);
-            // 保存经过验证的 client
-            tencentOssClient.setOssClient(ossClient);
         }
         return url;
     }
 
+    /**
+     * 拼接 url = <BucketName-APPID>.cos.region_name.myqcloud.com/key
+     *
+     * @param fileName the file name
+     * @return the url
+     */
+    @NotNull
+    private String getUrl(String fileName) {
+        return "http://" + bucketName + ".cos." + regionName + ".myqcloud.com/" + fileName;
+    }
+
     /**
      * 调用 SDK 上传文件
      *
@@ -231,12 +366,66 @@ public class TencentOssClient implements OssClient {
         putObjectRequest.setStorageClass(StorageClass.Standard);
 
         try {
-            ossClient.putObject(putObjectRequest);
-            // 拼接 url = <BucketName-APPID>.cos.region_name.myqcloud.com/key
-            return "http://" + bucketName + ".cos." + regionName + ".myqcloud.com/" + fileName;
+            TransferManager manager = getTransferManager(ossClient);
+            if (TransferManagerUtils.shouldUseMultipartUpload(putObjectRequest, manager.getConfiguration())) {
+                // 分块并发上传, 并发数由 AdaptiveThreadPoolExecutor 根据吞吐量调整
+                manager.upload(putObjectRequest).waitForUploadResult();
+            } else {
+                ossClient.putObject(putObjectRequest);
+            }
+            return getUrl(fileName);
         } catch (CosClientException e) {
             log.trace("upload error", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
         return "";
     }
+
+    /**
+     * 获取分块上传使用的 TransferManager
+     *
+     * @param ossClient the oss client
+     * @return the transfer manager
+     */
+    @NotNull
+    private TransferManager getTransferManager(@NotNull COSClient ossClient) {
+        TransferManager manager = transferManager;
+        if (manager == null) {
+            synchronized (this) {
+                manager = transferManager;
+                if (manager == null) {
+                    manager = new TransferManager(ossClient);
+                    transferManager = manager;
+                }
+            }
+        }
+        return manager;
+    }
+
+    /**
+     * 被新配置的 client 取代, 没有正在进行的请求时立即关闭, 否则由最后一个请求结束时关闭
+     */
+    @Override
+    public void shutdown() {
+        ossClient.shutdown();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return ossClient.isClosed();
+    }
+
+    /**
+     * 释放 client 的线程和连接
+     *
+     * @param ossClient the oss client
+     */
+    private void close(@NotNull COSClient ossClient) {
+        TransferManager manager = transferManager;
+        if (manager != null) {
+            manager.shutdownNow(false);
+        }
+        ossClient.shutdown();
+    }
 }
@@ -37,14 +37,21 @@ import info.dong4j.idea.plugin.util.ImageUtils;
 import info.dong4j.idea.plugin.weibo.CookieContext;
 import info.dong4j.idea.plugin.weibo.UploadRequestBuilder;
 import info.dong4j.idea.plugin.weibo.UploadResponse;
+import info.dong4j.idea.plugin.weibo.WbpSessionPool;
 import info.dong4j.idea.plugin.weibo.WbpUploadRequest;
 
 import org.apache.commons.lang.StringUtils;
-import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 import javax.swing.JPanel;
 
@@ -62,61 +69,91 @@ import lombok.extern.slf4j.Slf4j;
 @Client(CloudEnum.WEIBO_CLOUD)
 public class WeiboOssClient implements OssClient {
 
-    private static WbpUploadRequest ossClient = null;
+    private final CompletableFuture<WbpSessionPool> ossClient;
 
-    private WeiboOssState weiboOssState = MikPersistenComponent.getInstance().getState().getWeiboOssState();
-
-    static {
-        init();
+    /**
+     * 使用配置快照创建不可变的 client, 创建后不再修改任何字段, 可被多个上传线程共享
+     *
+     * @param ossClient 后台初始化的 session pool
+     */
+    private WeiboOssClient(CompletableFuture<WbpSessionPool> ossClient) {
+        this.ossClient = ossClient;
     }
 
     /**
-     * 如果是第一次使用, ossClient == null
+     * 如果是第一次使用, 配置为空, 返回 null
+     *
+     * @param username the username
+     * @param password the password (明文)
+     * @return the wbp upload request
      */
-    private static void init() {
-        WeiboOssState weiboOssState = MikPersistenComponent.getInstance().getState().getWeiboOssState();
-        String username = weiboOssState.getUserName();
-        String password = DES.decrypt(weiboOssState.getPassword(), MikState.WEIBOKEY);
-
+    @Nullable
+    private static WbpUploadRequest build(String username, String password) {
         try {
-            ossClient = new UploadRequestBuilder()
+            return new UploadRequestBuilder()
                 .setAcount(username, password)
                 .build();
-        } catch (Exception ignored) {
+        } catch (Exception e) {
+            log.trace("", e);
         }
-    }
-
-    @Override
-    public CloudEnum getCloudType() {
-        return CloudEnum.WEIBO_CLOUD;
+        return null;
     }
 
     /**
-     * Set oss client.
+     * 主账号和其他账号组成 session pool, 配置不完整的账号被忽略
      *
-     * @param oss the oss
+     * @param username          主账号
+     * @param encryptedPassword 主账号 DES 加密后的密码
+     * @param accounts          其他账号 <用户名, DES 加密后的密码>
+     * @return 没有可用账号时返回 null
      */
-    private void setOssClient(WbpUploadRequest oss) {
-        ossClient = oss;
+    @Nullable
+    private static WbpSessionPool build(String username, String encryptedPassword, Map<String, String> accounts) {
+        List<WbpUploadRequest> requests = new ArrayList<>(accounts.size() + 1);
+        WbpUploadRequest primary = build(username, DES.decrypt(encryptedPassword, MikState.WEIBOKEY));
+        if (primary != null) {
+            requests.add(primary);
+        }
+        accounts.forEach((name, password) -> {
+            WbpUploadRequest request = build(name, DES.decrypt(password, MikState.WEIBOKEY));
+            if (request != null) {
+                requests.add(request);
+            }
+        });
+        return requests.isEmpty() ? null : new WbpSessionPool(requests);
+    }
+
+    @Override
+    public CloudEnum getCloudType() {
+        return CloudEnum.WEIBO_CLOUD;
     }
 
     /**
-     * Gets instance.
+     * 获取与当前持久化配置对应的 client, 配置修改后会得到新的实例.
+     * DES 解密在后台线程执行, 登录有副作用, 因此不做预热.
+     * 配置了多个账号时按 {@link WbpSessionPool} 分配上传
      *
      * @return the instance
      */
-    @Contract(pure = true)
+    @NotNull
     public static WeiboOssClient getInstance() {
-        WeiboOssClient client = (WeiboOssClient)OssClient.INSTANCES.get(CloudEnum.WEIBO_CLOUD);
-        if(client == null){
-            client = WeiboOssClient.SingletonHandler.singleton;
-            OssClient.INSTANCES.put(CloudEnum.WEIBO_CLOUD, client);
-        }
-        return client;
+        WeiboOssState weiboOssState = MikPersistenComponent.getInstance().getState().getWeiboOssState();
+        String username = weiboOssState.getUserName();
+        String encryptedPassword = weiboOssState.getPassword();
+        Map<String, String> accounts = new LinkedHashMap<>(weiboOssState.getAccounts());
+
+        return OssClientCache.get(CloudEnum.WEIBO_CLOUD,
+                                  () -> new WeiboOssClient(ClientInitializer.initAsync(
+                                      () -> build(username, encryptedPassword, accounts),
+                                      null)),
+                                  username,
+                                  encryptedPassword,
+                                  accounts);
     }
 
-    private static class SingletonHandler {
-        private static WeiboOssClient singleton = new WeiboOssClient();
+    @Override
+    public CompletableFuture<Boolean> ready() {
+        return ossClient.thenApply(Objects::nonNull);
     }
 
     /**
@@ -129,7 +166,11 @@ public class WeiboOssClient implements OssClient {
      */
     @Override
     public String upload(InputStream inputStream, String fileName) {
-        return upload(ossClient, inputStream, fileName);
+        WbpSessionPool sessionPool = ClientInitializer.await(ossClient, null);
+        if (sessionPool == null) {
+            return "";
+        }
+        return upload(sessionPool, inputStream, fileName);
     }
 
     /**
@@ -141,7 +182,7 @@ public class WeiboOssClient implements OssClient {
      * @return the string
      * @throws IOException the io exception
      */
-    public String upload(WbpUploadRequest ossClient, InputStream inputStream, String fileName) {
+    public String upload(WbpSessionPool ossClient, InputStream inputStream, String fileName) {
         File file = ImageUtils.buildTempFile(fileName);
         try {
             FileUtil.copy(inputStream, new FileOutputStream(file));
@@ -160,7 +201,7 @@ public class WeiboOssClient implements OssClient {
      * @return the string
      * @throws IOException the io exception
      */
-    public String upload(@NotNull WbpUploadRequest ossClient, File file) {
+    public String upload(@NotNull WbpSessionPool ossClient, File file) {
         String url = "";
         UploadResponse response;
         try {
@@ -194,7 +235,7 @@ public class WeiboOssClient implements OssClient {
     }
 
     /**
-     * test 按钮点击事件后请求, 成功后保留 client, paste 或者 右键 上传时使用
+     * test 按钮点击事件后请求, 使用面板配置创建临时 client, 不影响正在使用的 client
      *
      * @param inputStream the input stream
      * @param fileName    the file name
@@ -203,22 +244,23 @@ public class WeiboOssClient implements OssClient {
      * @return the string
      */
     @NotNull
-    @Contract(pure = true)
     private String upload(InputStream inputStream,
                           String fileName,
                           String username,
                           String password) {
 
-        WeiboOssClient weiboOssClient = WeiboOssClient.getInstance();
-        CookieContext.getInstance().deleteCookie();
-        WbpUploadRequest ossClient = new UploadRequestBuilder()
-            .setAcount(username, password)
-            .build();
-        String url = weiboOssClient.upload(ossClient, inputStream, fileName);
+        CookieContext.getInstance(username).deleteCookie();
+        WbpUploadRequest request = build(username, password);
+        if (request == null) {
+            return "";
+        }
+        WbpSessionPool sessionPool = new WbpSessionPool(Collections.singletonList(request));
+        String url = upload(sessionPool, inputStream, fileName);
         if (StringUtils.isNotBlank(url)) {
             int hashcode = username.hashCode() + password.hashCode();
-            OssState.saveStatus(weiboOssState, hashcode, MikState.OLD_HASH_KEY);
-            weiboOssClient.setOssClient(ossClient);
+            OssState.saveStatus(MikPersistenComponent.getInstance().getState().getWeiboOssState(),
+                                hashcode,
+                                MikState.OLD_HASH_KEY);
         }
         return url;
     }
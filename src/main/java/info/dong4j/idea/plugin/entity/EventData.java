@@ -33,8 +33,11 @@ import com.intellij.openapi.project.Project;
 
 import info.dong4j.idea.plugin.client.OssClient;
 
+import java.io.*;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import lombok.Data;
 import lombok.experimental.Accessors;
@@ -66,4 +69,8 @@ public class EventData {
     private int size;
     /** 当前执行的节点 */
     private int index;
+    /** 处理过程中写入的文件, 任务完成后只刷新这些文件 */
+    private List<File> writtenFiles = new ArrayList<>();
+    /** 迁移图床时在后台下载的图片, chain 结束时取消未使用的下载 */
+    private List<CompletableFuture<File>> downloads = new ArrayList<>();
 }
@@ -31,6 +31,9 @@ import info.dong4j.idea.plugin.enums.ImageLocationEnum;
 import info.dong4j.idea.plugin.enums.ImageMarkEnum;
 
 import java.io.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import lombok.Data;
 
@@ -76,4 +79,14 @@ public class MarkdownImage implements Serializable {
     private String finalMark;
     /** 保存当前标签对应的 image file*/
     private VirtualFile virtualFile;
+    /** inputStream 对应的本地文件, 可直接拷贝文件; inputStream 内容被修改 (压缩) 后为 null */
+    private File sourceFile;
+    /** imageName 由图片内容哈希生成, 上传前可以先检查远程是否已存在 */
+    private boolean contentHashName;
+    /** 迁移图床时可在服务端复制的原图片地址, 此时不下载图片, inputStream 为 null */
+    private String copySourceUrl;
+    /** 迁移图床时在后台下载的图片临时文件, 上传前等待下载完成 */
+    private transient CompletableFuture<File> download;
+    /** 镜像图床上传后的地址 <图床名, url>, 保存到 sidecar 文件, 不写入文档 */
+    private Map<String, String> mirrorUrls = new LinkedHashMap<>(4);
 }
@@ -38,7 +38,9 @@ import org.jetbrains.annotations.Contract;
 public enum SuffixEnum {
     FILE_NAME(0, "文件名"),
     DATE_FILE_NAME(1, "日期-文件名"),
-    RANDOM(2, "随机");
+    RANDOM(2, "随机"),
+    /** 使用图片内容的 MD5 命名, 相同图片得到相同的 key, 上传前先检查远程是否已存在 */
+    CONTENT_HASH(3, "内容哈希");
 
     public int index;
     public String name;
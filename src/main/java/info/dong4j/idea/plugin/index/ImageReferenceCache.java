@@ -0,0 +1,295 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 dong4j <dong4j@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package info.dong4j.idea.plugin.index;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.Ref;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.psi.search.FilenameIndex;
+import com.intellij.psi.search.GlobalSearchScope;
+
+import info.dong4j.idea.plugin.content.ImageContents;
+import info.dong4j.idea.plugin.util.MarkdownUtils;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 每个 Document 的 image mark 缓存</p>
+ * 1. 按行缓存解析结果, 通过 DocumentListener 只失效被修改的行, 光标移动时不再重复解析;
+ * 2. 本地图片名 --> VirtualFile 的查询结果按 project 缓存, VFS 结构变化 (新增/删除/重命名) 后才重新查询索引;
+ * 因此 intention 和 action 的可用性判断在输入时不会再触发 FilenameIndex 查询.
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-12 10:21
+ */
+@Slf4j
+public class ImageReferenceCache implements DocumentListener, Disposable {
+    private static final Key<LineMarks> LINE_MARKS_KEY = Key.create("mik.image.line.marks");
+    private static final Key<ResolvedImages> RESOLVED_IMAGES_KEY = Key.create("mik.resolved.images");
+
+    /**
+     * 注册全局 DocumentListener, 随 application 销毁
+     */
+    public ImageReferenceCache() {
+        EditorFactory.getInstance().getEventMulticaster().addDocumentListener(this, this);
+    }
+
+    /**
+     * Gets instance.
+     *
+     * @return the instance
+     */
+    public static ImageReferenceCache getInstance() {
+        return ServiceManager.getService(ImageReferenceCache.class);
+    }
+
+    /**
+     * 当前 document 是否为 markdown 文件.
+     * 每次通过 VirtualFile 的文件类型判断 (都是缓存的查询), 不缓存结果, 文件重命名或文件类型修改后立即生效
+     *
+     * @param document the document
+     * @return the boolean
+     */
+    public boolean isMarkdownDocument(@NotNull Document document) {
+        VirtualFile virtualFile = FileDocumentManager.getInstance().getFile(document);
+        return virtualFile != null && MarkdownUtils.isMardownFile(virtualFile);
+    }
+
+    /**
+     * 指定行是否为有效的 markdown image mark, 等价于 !{@link MarkdownUtils#illegalImageMark(Project, String)}
+     *
+     * @param project  the project
+     * @param document the document
+     * @param line     the line
+     * @return the boolean
+     */
+    public boolean isImageMarkLine(@NotNull Project project, @NotNull Document document, int line) {
+        if (line < 0 || line >= document.getLineCount()) {
+            return false;
+        }
+        LineMark lineMark = getLineMarks(document).get(document, line);
+        if (lineMark == LineMark.NONE) {
+            return false;
+        }
+        return lineMark.network || isImageFile(project, lineMark.imageName);
+    }
+
+    /**
+     * 本地图片是否存在于 project 中且为图片类型
+     *
+     * @param project   the project
+     * @param imageName the image name
+     * @return the boolean
+     */
+    public boolean isImageFile(@NotNull Project project, @NotNull String imageName) {
+        VirtualFile virtualFile = findImage(project, imageName);
+        return virtualFile != null && ImageContents.IMAGE_TYPE_NAME.equals(virtualFile.getFileType().getName());
+    }
+
+    /**
+     * 通过文件名查找 VirtualFile, VFS 结构未变化时直接返回缓存结果
+     *
+     * @param project   the project
+     * @param imageName the image name
+     * @return the virtual file 有可能为 null
+     */
+    @Nullable
+    public VirtualFile findImage(@NotNull Project project, @NotNull String imageName) {
+        ResolvedImages resolvedImages = getResolvedImages(project);
+        Ref<VirtualFile> cached = resolvedImages.files.get(imageName);
+        if (cached != null && (cached.isNull() || cached.get().isValid())) {
+            return cached.get();
+        }
+
+        // Read access is allowed from event dispatch thread or inside read-action only
+        Collection<VirtualFile> files = ApplicationManager.getApplication().runReadAction(
+            (Computable<Collection<VirtualFile>>) () -> FilenameIndex.getVirtualFilesByName(project,
+                                                                                            imageName,
+                                                                                            GlobalSearchScope.allScope(project)));
+        // 只取第一个图片
+        VirtualFile virtualFile = files == null || files.isEmpty() ? null : files.iterator().next();
+        resolvedImages.files.put(imageName, Ref.create(virtualFile));
+        return virtualFile;
+    }
+
+    /**
+     * VFS 结构变化后丢弃 project 级别的查询缓存
+     *
+     * @param project the project
+     * @return the resolved images
+     */
+    @NotNull
+    private static ResolvedImages getResolvedImages(@NotNull Project project) {
+        long stamp = VirtualFileManager.VFS_STRUCTURE_MODIFICATIONS.getModificationCount();
+        ResolvedImages resolvedImages = project.getUserData(RESOLVED_IMAGES_KEY);
+        if (resolvedImages == null || resolvedImages.stamp != stamp) {
+            resolvedImages = new ResolvedImages(stamp);
+            project.putUserData(RESOLVED_IMAGES_KEY, resolvedImages);
+        }
+        return resolvedImages;
+    }
+
+    @NotNull
+    private static LineMarks getLineMarks(@NotNull Document document) {
+        LineMarks lineMarks = document.getUserData(LINE_MARKS_KEY);
+        if (lineMarks == null) {
+            lineMarks = new LineMarks(document.getLineCount());
+            document.putUserData(LINE_MARKS_KEY, lineMarks);
+        }
+        return lineMarks;
+    }
+
+    @Override
+    public void beforeDocumentChange(@NotNull DocumentEvent event) {
+    }
+
+    /**
+     * 只失效被修改的行, 新增或删除的行同步调整下标
+     *
+     * @param event the event
+     */
+    @Override
+    public void documentChanged(@NotNull DocumentEvent event) {
+        LineMarks lineMarks = event.getDocument().getUserData(LINE_MARKS_KEY);
+        if (lineMarks == null) {
+            return;
+        }
+        Document document = event.getDocument();
+        int startLine = document.getLineNumber(event.getOffset());
+        int oldLines = StringUtil.countNewLines(event.getOldFragment());
+        int newLines = StringUtil.countNewLines(event.getNewFragment());
+        lineMarks.replace(startLine, oldLines + 1, newLines + 1, document.getLineCount());
+    }
+
+    @Override
+    public void dispose() {
+        log.trace("image reference cache disposed");
+    }
+
+    /**
+     * 单行的解析结果, 只保存与文本相关的部分, 本地文件是否存在交给 {@link ResolvedImages}
+     */
+    private static final class LineMark {
+        private static final LineMark NONE = new LineMark(null, false);
+
+        private final String imageName;
+        private final boolean network;
+
+        private LineMark(String imageName, boolean network) {
+            this.imageName = imageName;
+            this.network = network;
+        }
+
+        @NotNull
+        private static LineMark parse(String lineText) {
+            String imageName = MarkdownUtils.getLegalImageName(lineText);
+            if (imageName == null) {
+                return NONE;
+            }
+            return new LineMark(imageName, MarkdownUtils.isNetworkImageMark(lineText));
+        }
+    }
+
+    /**
+     * 按行号保存 LineMark, null 表示该行还未解析或已失效
+     */
+    private static final class LineMarks {
+        private final List<LineMark> marks;
+
+        private LineMarks(int lineCount) {
+            this.marks = new ArrayList<>(Collections.nCopies(lineCount, null));
+        }
+
+        synchronized LineMark get(@NotNull Document document, int line) {
+            // 没有收到变更事件时 (比如 document 被重新加载) 行数可能不一致, 全部重新解析
+            if (marks.size() != document.getLineCount()) {
+                reset(document.getLineCount());
+            }
+            LineMark lineMark = marks.get(line);
+            if (lineMark == null) {
+                String lineText = document.getText(TextRange.create(document.getLineStartOffset(line), document.getLineEndOffset(line)));
+                lineMark = LineMark.parse(lineText);
+                marks.set(line, lineMark);
+            }
+            return lineMark;
+        }
+
+        synchronized void replace(int startLine, int oldCount, int newCount, int lineCount) {
+            if (startLine + oldCount > marks.size()) {
+                reset(lineCount);
+                return;
+            }
+            List<LineMark> changed = marks.subList(startLine, startLine + oldCount);
+            changed.clear();
+            changed.addAll(Collections.nCopies(newCount, null));
+            if (marks.size() != lineCount) {
+                reset(lineCount);
+            }
+        }
+
+        private void reset(int lineCount) {
+            marks.clear();
+            marks.addAll(Collections.nCopies(lineCount, null));
+        }
+    }
+
+    /**
+     * project 中图片名 --> VirtualFile 的查询结果, stamp 为创建时的 VFS 结构修改次数
+     */
+    private static final class ResolvedImages {
+        private final long stamp;
+        private final ConcurrentMap<String, Ref<VirtualFile>> files = new ConcurrentHashMap<>(64);
+
+        private ResolvedImages(long stamp) {
+            this.stamp = stamp;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 dong4j <dong4j@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package info.dong4j.idea.plugin.index;
+
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.util.indexing.DataIndexer;
+import com.intellij.util.indexing.FileBasedIndex;
+import com.intellij.util.indexing.FileBasedIndexExtension;
+import com.intellij.util.indexing.FileContent;
+import com.intellij.util.indexing.ID;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.DataInputOutputUtil;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.IOUtil;
+import com.intellij.util.io.KeyDescriptor;
+
+import info.dong4j.idea.plugin.enums.ImageLocationEnum;
+import info.dong4j.idea.plugin.enums.ImageMarkEnum;
+import info.dong4j.idea.plugin.util.MarkdownUtils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: markdown --> image 引用的持久化索引</p>
+ * 每个有图片引用的文件都会写入 {@link #DOCUMENT_KEY}, value 为该文件的全部引用, 用于按文件查询.
+ * 索引只解析文本, 不查询本地文件, 因此可以在 indexing 线程中安全执行.
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-12 16:10
+ */
+public class MarkdownImageIndex extends FileBasedIndexExtension<String, List<ImageReference>> {
+    public static final ID<String, List<ImageReference>> NAME = ID.create("info.dong4j.idea.plugin.markdown.image.index");
+    /** 文件级别的 key */
+    private static final String DOCUMENT_KEY = "";
+    private static final int VERSION = 2;
+
+    @NotNull
+    @Override
+    public ID<String, List<ImageReference>> getName() {
+        return NAME;
+    }
+
+    @NotNull
+    @Override
+    public DataIndexer<String, List<ImageReference>, FileContent> getIndexer() {
+        return inputData -> {
+            List<ImageReference> allReferences = new ArrayList<>();
+            List<String> lines = StringUtil.split(inputData.getContentAsText().toString(), "\n", true, false);
+            for (int line = 0; line < lines.size(); line++) {
+                String lineText = lines.get(line);
+                if (MarkdownUtils.getLegalImageName(lineText) == null) {
+                    continue;
+                }
+                allReferences.add(new ImageReference(MarkdownUtils.getImagePath(lineText),
+                                                     line,
+                                                     MarkdownUtils.isNetworkImageMark(lineText)
+                                                     ? ImageLocationEnum.NETWORK
+                                                     : ImageLocationEnum.LOCAL,
+                                                     MarkdownUtils.getImageMarkType(lineText)));
+            }
+            if (allReferences.isEmpty()) {
+                return Collections.emptyMap();
+            }
+            return Collections.singletonMap(DOCUMENT_KEY, allReferences);
+        };
+    }
+
+    @NotNull
+    @Override
+    public KeyDescriptor<String> getKeyDescriptor() {
+        return EnumeratorStringDescriptor.INSTANCE;
+    }
+
+    @NotNull
+    @Override
+    public DataExternalizer<List<ImageReference>> getValueExternalizer() {
+        return new ImageReferenceExternalizer();
+    }
+
+    @Override
+    public int getVersion() {
+        return VERSION;
+    }
+
+    @NotNull
+    @Override
+    public FileBasedIndex.InputFilter getInputFilter() {
+        return file -> !file.isDirectory() && MarkdownUtils.isMardownFile(file);
+    }
+
+    @Override
+    public boolean dependsOnFileContent() {
+        return true;
+    }
+
+    /**
+     * 索引是否可用, indexing 时 (dumb mode) 需要使用原来的解析方式
+     *
+     * @param project the project
+     * @return the boolean
+     */
+    public static boolean isAvailable(@NotNull Project project) {
+        return !DumbService.isDumb(project);
+    }
+
+    /**
+     * 所有有图片引用的 markdown 文件, 需要在 read action 中调用
+     *
+     * @param project the project
+     * @return the collection
+     */
+    @NotNull
+    public static Collection<VirtualFile> getDocumentsWithImages(@NotNull Project project) {
+        return FileBasedIndex.getInstance().getContainingFiles(NAME, DOCUMENT_KEY, GlobalSearchScope.projectScope(project));
+    }
+
+    /**
+     * 指定 markdown 文件中的所有图片引用, 需要在 read action 中调用
+     *
+     * @param project the project
+     * @param file    the file
+     * @return the list
+     */
+    @NotNull
+    public static List<ImageReference> getImageReferences(@NotNull Project project, @NotNull VirtualFile file) {
+        List<List<ImageReference>> values = FileBasedIndex.getInstance().getValues(NAME,
+                                                                                   DOCUMENT_KEY,
+                                                                                   GlobalSearchScope.fileScope(project, file));
+        return values.isEmpty() ? Collections.emptyList() : values.get(0);
+    }
+
+    /**
+     * List<ImageReference> 序列化
+     */
+    private static class ImageReferenceExternalizer implements DataExternalizer<List<ImageReference>> {
+        private static final ImageLocationEnum[] LOCATIONS = ImageLocationEnum.values();
+        private static final ImageMarkEnum[] MARK_TYPES = ImageMarkEnum.values();
+
+        @Override
+        public void save(@NotNull DataOutput out, List<ImageReference> value) throws IOException {
+            DataInputOutputUtil.writeINT(out, value.size());
+            for (ImageReference reference : value) {
+                IOUtil.writeUTF(out, reference.getPath());
+                DataInputOutputUtil.writeINT(out, reference.getLineNumber());
+                out.writeByte(reference.getLocation().ordinal());
+                out.writeByte(reference.getImageMarkType().ordinal());
+            }
+        }
+
+        @Override
+        public List<ImageReference> read(@NotNull DataInput in) throws IOException {
+            int size = DataInputOutputUtil.readINT(in);
+            List<ImageReference> references = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                String path = IOUtil.readUTF(in);
+                int lineNumber = DataInputOutputUtil.readINT(in);
+                ImageLocationEnum location = LOCATIONS[in.readByte()];
+                ImageMarkEnum imageMarkType = MARK_TYPES[in.readByte()];
+                references.add(new ImageReference(path, lineNumber, location, imageMarkType));
+            }
+            return references;
+        }
+    }
+}
@@ -30,6 +30,7 @@ import info.dong4j.idea.plugin.sdk.qcloud.cos.internal.DeleteObjectsResponse;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.internal.DigestValidationInputStream;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.internal.InputSubstream;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.internal.LengthCheckInputStream;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.internal.CRC64CalculatingInputStream;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.internal.MD5DigestCalculatingInputStream;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.internal.MultiObjectDeleteXmlFactory;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.internal.ObjectExpirationHeaderHandler;
@@ -126,6 +127,7 @@ import info.dong4j.idea.plugin.sdk.qcloud.cos.model.VersionListing;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.region.Region;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.utils.Base64;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.utils.BinaryUtils;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.utils.CRC64;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.utils.DateUtils;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.utils.Md5Utils;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.utils.ServiceUtils;
@@ -745,23 +747,16 @@ public class COSClient implements COS {
                                 + file.length()
                                 + ", please use transferManager to upload big file!");
             }
-            final boolean calculateMD5 = metadata.getContentMD5() == null;
-
-            if (calculateMD5 && !skipMd5CheckStrategy.skipServerSideValidation(putObjectRequest)) {
-                try {
-                    String contentMd5_b64 = Md5Utils.md5AsBase64(file);
-                    metadata.setContentMD5(contentMd5_b64);
-                } catch (Exception e) {
-                    throw new CosClientException("Unable to calculate MD5 hash: " + e.getMessage(),
-                            e);
-                }
-            }
+            // The content digest is not calculated up front, which would read the whole file
+            // twice. It is calculated below while the file is sent and verified against the
+            // response instead.
             input = ResettableInputStream.newResettableInputStream(file,
                     "Unable to find file to upload");
         }
 
         final ObjectMetadata returnedMetadata;
         MD5DigestCalculatingInputStream md5DigestStream = null;
+        CRC64CalculatingInputStream crc64Stream = null;
         try {
             CosHttpRequest<PutObjectRequest> request =
                     createRequest(bucketName, key, putObjectRequest, HttpMethodName.PUT);
@@ -828,7 +823,10 @@ public class COSClient implements COS {
                 }
             }
 
-            if (metadata.getContentMD5() == null
+            if (clientConfig.isCrc64CheckEnabled()) {
+                // the cheaper CRC64 is validated with the checksum returned by COS instead
+                input = crc64Stream = new CRC64CalculatingInputStream(input);
+            } else if (metadata.getContentMD5() == null
                     && !skipMd5CheckStrategy.skipClientSideValidationPerRequest(putObjectRequest)) {
                 /*
                  * If the user hasn't set the content MD5, then we don't want to buffer the whole
@@ -849,6 +847,11 @@ public class COSClient implements COS {
             CosDataSource.Utils.cleanupDataSource(putObjectRequest, file, isOrig, input, log);
         }
 
+        if (crc64Stream != null) {
+            verifyCrc64(crc64Stream.getCrc64(), returnedMetadata,
+                    "bucketName: " + bucketName + ", key: " + key);
+        }
+
         String contentMd5 = metadata.getContentMD5();
         if (md5DigestStream != null) {
             contentMd5 = Base64.encodeAsString(md5DigestStream.getMd5Digest());
@@ -886,6 +889,34 @@ public class COSClient implements COS {
         return result;
     }
 
+    /**
+     * Compares the CRC64 calculated while uploading with the checksum returned by COS. Responses
+     * without the checksum header are not verified.
+     */
+    private void verifyCrc64(CRC64 clientSideCrc64, ObjectMetadata returnedMetadata, String info) {
+        String serverSideCrc64 = null;
+        for (Entry<String, Object> header : returnedMetadata.getRawMetadata().entrySet()) {
+            if (Headers.COS_HASH_CRC64_ECMA.equalsIgnoreCase(header.getKey())) {
+                serverSideCrc64 = String.valueOf(header.getValue());
+            }
+        }
+        if (serverSideCrc64 == null) {
+            return;
+        }
+        boolean matches;
+        try {
+            matches = Long.parseUnsignedLong(serverSideCrc64.trim()) == clientSideCrc64.getValue();
+        } catch (NumberFormatException e) {
+            matches = false;
+        }
+        if (!matches) {
+            throw new CosClientException("Unable to verify integrity of data upload.  "
+                    + "Client calculated crc64 (" + clientSideCrc64.getUnsignedValue()
+                    + ") didn't match crc64 (" + serverSideCrc64 + ") calculated by COS .  "
+                    + "You may need to delete the data stored in COS . (" + info + ")");
+        }
+    }
+
     @Override
     public PutObjectResult putObject(String bucketName, String key, File file)
             throws CosClientException {
@@ -1445,7 +1476,10 @@ public class COSClient implements COS {
             isCurr = new InputSubstream(isCurr, uploadPartRequest.getFileOffset(), partSize,
                     uploadPartRequest.isLastPart());
             MD5DigestCalculatingInputStream md5DigestStream = null;
-            if (uploadPartRequest.getMd5Digest() == null && !skipMd5CheckStrategy
+            CRC64CalculatingInputStream crc64Stream = null;
+            if (clientConfig.isCrc64CheckEnabled()) {
+                isCurr = crc64Stream = new CRC64CalculatingInputStream(isCurr);
+            } else if (uploadPartRequest.getMd5Digest() == null && !skipMd5CheckStrategy
                     .skipClientSideValidationPerRequest(uploadPartRequest)) {
                 /*
                  * If the user hasn't set the content MD5, then we don't want to buffer the whole
@@ -1455,7 +1489,7 @@ public class COSClient implements COS {
                 isCurr = md5DigestStream = new MD5DigestCalculatingInputStream(isCurr);
             }
             return doUploadPart(bucketName, key, uploadId, partNumber, partSize, request, isCurr,
-                    md5DigestStream);
+                    md5DigestStream, crc64Stream);
         } finally {
             CosDataSource.Utils.cleanupDataSource(uploadPartRequest, fileOrig, isOrig, isCurr, log);
         }
@@ -1464,12 +1498,19 @@ public class COSClient implements COS {
     private UploadPartResult doUploadPart(final String bucketName, final String key,
             final String uploadId, final int partNumber, final long partSize,
             CosHttpRequest<UploadPartRequest> request, InputStream inputStream,
-            MD5DigestCalculatingInputStream md5DigestStream) {
+            MD5DigestCalculatingInputStream md5DigestStream,
+            CRC64CalculatingInputStream crc64Stream) {
         try {
             request.setContent(inputStream);
             ObjectMetadata metadata = invoke(request, new CosMetadataResponseHandler());
             final String etag = metadata.getETag();
 
+            if (crc64Stream != null) {
+                verifyCrc64(crc64Stream.getCrc64(), metadata,
+                        "bucketName: " + bucketName + ", key: " + key + ", uploadId: " + uploadId
+                                + ", partNumber: " + partNumber + ", partSize: " + partSize);
+            }
+
 
             if (md5DigestStream != null && !skipMd5CheckStrategy
                     .skipClientSideValidationPerUploadPartResponse(metadata)) {
@@ -2662,14 +2703,14 @@ public class COSClient implements COS {
         strBuilder.append(clientConfig.getHttpProtocol().toString()).append("://");
         strBuilder.append(clientConfig.getEndpointBuilder()
                 .buildGeneralApiEndpoint(formatBucket(bucketName, cred.getCOSAppId())));
-        strBuilder.append(UrlEncoderUtils.encodeUrlPath(formatKey(key)));
+        UrlEncoderUtils.encodeUrlPath(formatKey(key), strBuilder);
 
         boolean hasAppendFirstParameter = false;
         if (authStr != null) {
-            strBuilder.append("?sign=").append(UrlEncoderUtils.encode(authStr));
+            UrlEncoderUtils.encode(authStr, strBuilder.append("?sign="));
             if (cred instanceof COSSessionCredentials) {
-                strBuilder.append("&").append(Headers.SECURITY_TOKEN).append("=").append(
-                        UrlEncoderUtils.encode(((COSSessionCredentials) cred).getSessionToken()));
+                strBuilder.append("&").append(Headers.SECURITY_TOKEN).append("=");
+                UrlEncoderUtils.encode(((COSSessionCredentials) cred).getSessionToken(), strBuilder);
             }
             hasAppendFirstParameter = true;
         }
@@ -2684,9 +2725,9 @@ public class COSClient implements COS {
             } else {
                 strBuilder.append("&");
             }
-            strBuilder.append(UrlEncoderUtils.encode(paramKey));
+            UrlEncoderUtils.encode(paramKey, strBuilder);
             if (paramValue != null) {
-                strBuilder.append("=").append(UrlEncoderUtils.encode(paramValue));
+                UrlEncoderUtils.encode(paramValue, strBuilder.append("="));
             }
         }
 
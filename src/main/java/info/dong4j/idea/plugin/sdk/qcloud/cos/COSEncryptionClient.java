@@ -114,10 +114,10 @@ public class COSEncryptionClient extends COSClient implements COSEncryption {
      * {@inheritDoc}
      *
      * <p>
-     * Because the encryption process requires context from block N-1 in order to encrypt block N,
-     * parts uploaded with the COSEncryptionClient (as opposed to the normal COSClient) must be
-     * uploaded serially, and in order. Otherwise, the previous encryption context isn't available
-     * to use when encrypting the current part.
+     * Parts of an AES/GCM encrypted upload are encrypted at their offset in the object, so they
+     * can be uploaded concurrently. All parts except the last one must have the same size. The
+     * last part carries the authentication tag, so it may only be started once all other parts
+     * have been started, and it waits until they have been uploaded.
      */
     @Override
     public UploadPartResult uploadPart(UploadPartRequest uploadPartRequest)
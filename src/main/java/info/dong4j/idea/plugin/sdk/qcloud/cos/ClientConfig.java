@@ -21,6 +21,8 @@ public class ClientConfig {
     private static final long DEFAULT_SIGN_EXPIRED = 3600;
     // 默认的user_agent标识
     private static final String DEFAULT_USER_AGENT = "cos-java-sdk-v5.5.7";
+    // 默认的空闲连接保留时间, 单位ms, 预热的连接在此期间可以被上传复用
+    private static final long DEFAULT_IDLE_CONNECTION_ALIVE = 60 * 1000;
     // Read Limit
     private static final int DEFAULT_READ_LIMIT = (2 << 17) + 1;
 
@@ -38,8 +40,11 @@ public class ClientConfig {
     private int connectionTimeout = DEFAULT_CONNECTION_TIMEOUT;
     private int socketTimeout = DEFAULT_SOCKET_TIMEOUT;
     private int maxConnectionsCount = DEFAULT_MAX_CONNECTIONS_COUNT;
+    private long idleConnectionAlive = DEFAULT_IDLE_CONNECTION_ALIVE;
     private String userAgent = DEFAULT_USER_AGENT;
     private int readLimit = DEFAULT_READ_LIMIT;
+    // 上传时计算 CRC64 并与响应头 x-cos-hash-crc64ecma 比较, 代替 MD5 与 ETag 的比较
+    private boolean crc64CheckEnabled = false;
 
     // 不传入region 用于后续调用List Buckets(获取所有的bucket信息)
     public ClientConfig() {
@@ -128,6 +133,14 @@ public class ClientConfig {
         this.maxConnectionsCount = maxConnectionsCount;
     }
 
+    public long getIdleConnectionAlive() {
+        return idleConnectionAlive;
+    }
+
+    public void setIdleConnectionAlive(long idleConnectionAlive) {
+        this.idleConnectionAlive = idleConnectionAlive;
+    }
+
     public void setUserAgent(String userAgent) {
         this.userAgent = userAgent;
     }
@@ -162,6 +175,14 @@ public class ClientConfig {
         this.readLimit = readLimit;
     }
 
+    public boolean isCrc64CheckEnabled() {
+        return crc64CheckEnabled;
+    }
+
+    public void setCrc64CheckEnabled(boolean crc64CheckEnabled) {
+        this.crc64CheckEnabled = crc64CheckEnabled;
+    }
+
     public EndpointBuilder getEndpointBuilder() {
         return endpointBuilder;
     }
@@ -146,6 +146,9 @@ public interface Headers {
     /** Header for the optional original unencrypted Content MD5 of an encrypted object */
     String UNENCRYPTED_CONTENT_MD5 = "x-cos-unencrypted-content-md5";
 
+    /** Response header with the CRC64 (ECMA-182) of the uploaded object or part, unsigned decimal */
+    String COS_HASH_CRC64_ECMA = "x-cos-hash-crc64ecma";
+
     /**
      * Header in the request and response indicating the QCLOUD Key Management
      * System key id used for Server Side Encryption.
@@ -1,20 +1,24 @@
 package info.dong4j.idea.plugin.sdk.qcloud.cos.auth;
 
 import info.dong4j.idea.plugin.sdk.qcloud.cos.Headers;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.exception.CosClientException;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.http.CosHttpRequest;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.http.HttpMethodName;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.internal.CosServiceRequest;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.utils.UrlEncoderUtils;
 
-import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.codec.digest.HmacUtils;
-
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
 import static info.dong4j.idea.plugin.sdk.qcloud.cos.auth.COSSignerConstants.LINE_SEPARATOR;
 import static info.dong4j.idea.plugin.sdk.qcloud.cos.auth.COSSignerConstants.Q_AK;
 import static info.dong4j.idea.plugin.sdk.qcloud.cos.auth.COSSignerConstants.Q_HEADER_LIST;
@@ -26,6 +30,20 @@ import static info.dong4j.idea.plugin.sdk.qcloud.cos.auth.COSSignerConstants.Q_S
 import static info.dong4j.idea.plugin.sdk.qcloud.cos.auth.COSSignerConstants.Q_URL_PARAM_LIST;
 
 public class COSSigner {
+    /**
+     * Request signatures start at the beginning of a key-time window of this many seconds, so
+     * that every request signed within the window shares the same q-key-time and sign key.
+     */
+    static final long KEY_TIME_WINDOW_SECONDS = 60;
+
+    private static final String HMAC_SHA1 = "HmacSHA1";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** Per-thread reusable state for building the canonical request and digests. */
+    private static final ThreadLocal<SignContext> SIGN_CONTEXT = ThreadLocal.withInitial(SignContext::new);
+
+    /** The sign key of the most recent credential and key-time window. */
+    private volatile SignKey signKeyCache;
 
     private boolean isAnonymous(COSCredentials cred) {
         return cred instanceof AnonymousCOSCredentials;
@@ -38,7 +56,8 @@ public class COSSigner {
 
         String authoriationStr =
                 buildAuthorizationStr(request.getHttpMethod(), request.getResourcePath(),
-                        request.getHeaders(), request.getParameters(), cred, expiredTime);
+                        request.getHeaders(), request.getParameters(), cred,
+                        buildWindowTimeStr(System.currentTimeMillis() / 1000, expiredTime.getTime() / 1000));
 
         request.addHeader(Headers.COS_AUTHORIZATION, authoriationStr);
         if (cred instanceof COSSessionCredentials) {
@@ -50,8 +69,8 @@ public class COSSigner {
     public String buildAuthorizationStr(HttpMethodName methodName, String resouce_path,
             COSCredentials cred, Date expiredTime) {
 
-        return buildAuthorizationStr(methodName, resouce_path, new HashMap<String, String>(),
-                new HashMap<String, String>(), cred, expiredTime);
+        return buildAuthorizationStr(methodName, resouce_path, Collections.<String, String>emptyMap(),
+                Collections.<String, String>emptyMap(), cred, expiredTime);
     }
 
     public String buildAuthorizationStr(HttpMethodName methodName, String resouce_path,
@@ -61,101 +80,187 @@ public class COSSigner {
         if (isAnonymous(cred)) {
             return null;
         }
+        return buildAuthorizationStr(methodName, resouce_path, headerMap, paramMap, cred,
+                buildTimeStr(expiredTime));
+    }
 
-        Map<String, String> signHeaders = buildSignHeaders(headerMap);
+    private String buildAuthorizationStr(HttpMethodName methodName, String resouce_path,
+            Map<String, String> headerMap, Map<String, String> paramMap, COSCredentials cred,
+            String qKeyTimeStr) {
+        String qSignTimeStr = qKeyTimeStr;
+        SignContext context = SIGN_CONTEXT.get();
         // 签名中的参数和http 头部 都要进行字符串排序
-        TreeMap<String, String> sortedSignHeaders = new TreeMap<>();
-        TreeMap<String, String> sortedParams = new TreeMap<>();
-
-        sortedSignHeaders.putAll(signHeaders);
-        sortedParams.putAll(paramMap);
-
-        String qHeaderListStr = buildSignMemberStr(sortedSignHeaders);
-        String qUrlParamListStr = buildSignMemberStr(sortedParams);
-        String qKeyTimeStr, qSignTimeStr;
-        qKeyTimeStr = qSignTimeStr = buildTimeStr(expiredTime);
-        String signKey = HmacUtils.hmacSha1Hex(cred.getCOSSecretKey(), qKeyTimeStr);
-        String formatMethod = methodName.toString().toLowerCase();
-        String formatUri = resouce_path;
-        String formatParameters = formatMapToStr(sortedParams);
-        String formatHeaders = formatMapToStr(sortedSignHeaders);
-
-        String formatStr = new StringBuilder().append(formatMethod).append(LINE_SEPARATOR)
-                .append(formatUri).append(LINE_SEPARATOR).append(formatParameters)
-                .append(LINE_SEPARATOR).append(formatHeaders).append(LINE_SEPARATOR).toString();
-        String hashFormatStr = DigestUtils.sha1Hex(formatStr);
-        String stringToSign = new StringBuilder().append(Q_SIGN_ALGORITHM_VALUE)
-                .append(LINE_SEPARATOR).append(qSignTimeStr).append(LINE_SEPARATOR)
-                .append(hashFormatStr).append(LINE_SEPARATOR).toString();
-        String signature = HmacUtils.hmacSha1Hex(signKey, stringToSign);
-
-        String authoriationStr = new StringBuilder().append(Q_SIGN_ALGORITHM_KEY).append("=")
-                .append(Q_SIGN_ALGORITHM_VALUE).append("&").append(Q_AK).append("=")
-                .append(cred.getCOSAccessKeyId()).append("&").append(Q_SIGN_TIME).append("=")
-                .append(qSignTimeStr).append("&").append(Q_KEY_TIME).append("=").append(qKeyTimeStr)
-                .append("&").append(Q_HEADER_LIST).append("=").append(qHeaderListStr).append("&")
-                .append(Q_URL_PARAM_LIST).append("=").append(qUrlParamListStr).append("&")
-                .append(Q_SIGNATURE).append("=").append(signature).toString();
-        return authoriationStr;
+        TreeMap<String, String> sortedSignHeaders = context.sortedHeaders;
+        TreeMap<String, String> sortedParams = context.sortedParams;
+        try {
+            buildSignHeaders(headerMap, sortedSignHeaders);
+            for (Entry<String, String> entry : paramMap.entrySet()) {
+                sortedParams.put(entry.getKey().toLowerCase(), entry.getValue());
+            }
+
+            String signKey = getSignKey(cred.getCOSSecretKey(), qKeyTimeStr, context);
+
+            StringBuilder builder = context.builder(256);
+            builder.append(methodName.toString().toLowerCase()).append(LINE_SEPARATOR)
+                    .append(resouce_path).append(LINE_SEPARATOR);
+            appendMap(sortedParams, builder);
+            builder.append(LINE_SEPARATOR);
+            appendMap(sortedSignHeaders, builder);
+            builder.append(LINE_SEPARATOR);
+            String hashFormatStr = hex(context.sha1(builder));
+
+            builder = context.builder(128);
+            builder.append(Q_SIGN_ALGORITHM_VALUE).append(LINE_SEPARATOR)
+                    .append(qSignTimeStr).append(LINE_SEPARATOR)
+                    .append(hashFormatStr).append(LINE_SEPARATOR);
+            String signature = hex(context.hmacSha1(signKey, builder));
+
+            builder = context.builder(512);
+            builder.append(Q_SIGN_ALGORITHM_KEY).append("=")
+                    .append(Q_SIGN_ALGORITHM_VALUE).append("&").append(Q_AK).append("=")
+                    .append(cred.getCOSAccessKeyId()).append("&").append(Q_SIGN_TIME).append("=")
+                    .append(qSignTimeStr).append("&").append(Q_KEY_TIME).append("=").append(qKeyTimeStr)
+                    .append("&").append(Q_HEADER_LIST).append("=");
+            appendKeys(sortedSignHeaders, builder);
+            builder.append("&").append(Q_URL_PARAM_LIST).append("=");
+            appendKeys(sortedParams, builder);
+            builder.append("&").append(Q_SIGNATURE).append("=").append(signature);
+            return builder.toString();
+        } finally {
+            sortedSignHeaders.clear();
+            sortedParams.clear();
+        }
+    }
+
+    /**
+     * The sign key only depends on the secret key and the key time, so it is computed once per
+     * credential and key-time window.
+     */
+    private String getSignKey(String secretKey, String qKeyTimeStr, SignContext context) {
+        SignKey cached = signKeyCache;
+        if (cached != null && cached.keyTime.equals(qKeyTimeStr) && cached.secretKey.equals(secretKey)) {
+            return cached.signKey;
+        }
+        StringBuilder builder = context.builder(qKeyTimeStr.length());
+        builder.append(qKeyTimeStr);
+        String signKey = hex(context.hmacSha1(secretKey, builder));
+        signKeyCache = new SignKey(secretKey, qKeyTimeStr, signKey);
+        return signKey;
     }
 
-    private Map<String, String> buildSignHeaders(Map<String, String> originHeaders) {
-        Map<String, String> signHeaders = new HashMap<>();
+    private void buildSignHeaders(Map<String, String> originHeaders, TreeMap<String, String> signHeaders) {
         for (Entry<String, String> headerEntry : originHeaders.entrySet()) {
             String key = headerEntry.getKey();
             if (key.equalsIgnoreCase("content-type") || key.equalsIgnoreCase("content-md5")
                     || key.startsWith("x") || key.startsWith("X")) {
-                String lowerKey = key.toLowerCase();
-                String value = headerEntry.getValue();
-                signHeaders.put(lowerKey, value);
+                signHeaders.put(key.toLowerCase(), headerEntry.getValue());
             }
         }
-
-        return signHeaders;
     }
 
-    private String buildSignMemberStr(Map<String, String> signHeaders) {
-        StringBuilder strBuilder = new StringBuilder();
+    /** Appends the lower-cased keys separated by ';'. Keys are already lower case. */
+    private void appendKeys(TreeMap<String, String> kVMap, StringBuilder strBuilder) {
         boolean seenOne = false;
-        for (String key : signHeaders.keySet()) {
+        for (String key : kVMap.keySet()) {
             if (!seenOne) {
                 seenOne = true;
             } else {
                 strBuilder.append(";");
             }
-            strBuilder.append(key.toLowerCase());
+            strBuilder.append(key);
         }
-        return strBuilder.toString();
     }
 
-    private String formatMapToStr(Map<String, String> kVMap) {
-        StringBuilder strBuilder = new StringBuilder();
+    private void appendMap(TreeMap<String, String> kVMap, StringBuilder strBuilder) {
         boolean seeOne = false;
         for (Entry<String, String> entry : kVMap.entrySet()) {
-            String key = entry.getKey();
             String value = entry.getValue();
-            String lowerKey = key.toLowerCase();
-            String encodeKey = UrlEncoderUtils.encode(lowerKey);
-            String encodedValue = "";
-            if (value != null) {
-                encodedValue = UrlEncoderUtils.encode(value);
-            }
             if (!seeOne) {
                 seeOne = true;
             } else {
                 strBuilder.append("&");
             }
-            strBuilder.append(encodeKey).append("=").append(encodedValue);
+            UrlEncoderUtils.encode(entry.getKey(), strBuilder).append("=");
+            if (value != null) {
+                UrlEncoderUtils.encode(value, strBuilder);
+            }
         }
-        return strBuilder.toString();
     }
 
     private String buildTimeStr(Date expiredTime) {
-        StringBuilder strBuilder = new StringBuilder();
         long startTime = System.currentTimeMillis() / 1000;
         long endTime = expiredTime.getTime() / 1000;
-        strBuilder.append(startTime).append(";").append(endTime);
-        return strBuilder.toString();
+        return startTime + ";" + endTime;
     }
 
+    /**
+     * The start time is aligned to the beginning of the current key-time window and the end time
+     * is moved by the same window, so the signature is never valid for less time than requested.
+     */
+    static String buildWindowTimeStr(long nowSeconds, long expiredSeconds) {
+        long startTime = nowSeconds - nowSeconds % KEY_TIME_WINDOW_SECONDS;
+        long endTime = startTime + KEY_TIME_WINDOW_SECONDS + Math.max(expiredSeconds - nowSeconds, 0);
+        return startTime + ";" + endTime;
+    }
+
+    private static String hex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    private static final class SignKey {
+        private final String secretKey;
+        private final String keyTime;
+        private final String signKey;
+
+        private SignKey(String secretKey, String keyTime, String signKey) {
+            this.secretKey = secretKey;
+            this.keyTime = keyTime;
+            this.signKey = signKey;
+        }
+    }
+
+    /**
+     * Reusable sorted maps, string builder and digest instances of one thread. The maps are
+     * cleared after every signature.
+     */
+    private static final class SignContext {
+        private final TreeMap<String, String> sortedHeaders = new TreeMap<>();
+        private final TreeMap<String, String> sortedParams = new TreeMap<>();
+        private final StringBuilder builder = new StringBuilder(512);
+        private final MessageDigest sha1;
+        private final Mac hmacSha1;
+
+        private SignContext() {
+            try {
+                sha1 = MessageDigest.getInstance("SHA-1");
+                hmacSha1 = Mac.getInstance(HMAC_SHA1);
+            } catch (GeneralSecurityException e) {
+                throw new CosClientException("init sign digest failed", e);
+            }
+        }
+
+        private StringBuilder builder(int capacity) {
+            builder.setLength(0);
+            builder.ensureCapacity(capacity);
+            return builder;
+        }
+
+        private byte[] sha1(CharSequence data) {
+            return sha1.digest(data.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        private byte[] hmacSha1(String key, CharSequence data) {
+            try {
+                hmacSha1.init(new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), HMAC_SHA1));
+            } catch (GeneralSecurityException e) {
+                throw new CosClientException("init sign key failed", e);
+            }
+            return hmacSha1.doFinal(data.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
 }
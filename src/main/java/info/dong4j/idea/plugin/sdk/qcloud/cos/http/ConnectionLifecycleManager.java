@@ -0,0 +1,127 @@
+package info.dong4j.idea.plugin.sdk.qcloud.cos.http;
+
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Manages the connection pools of all open clients with a single daemon thread, instead of one
+ * monitor thread per client.
+ * <p>
+ * Every registered pool has its expired connections, and connections idle for longer than the
+ * time given when the pool was registered, closed periodically. The thread is started with the
+ * first registered pool and stopped once the last one is removed, so shut down clients leave no
+ * thread behind.
+ */
+public final class ConnectionLifecycleManager {
+    private static final Logger log = LoggerFactory.getLogger(ConnectionLifecycleManager.class);
+
+    /** The interval between evictions of expired and idle connections. */
+    static final long MONITOR_INTERVAL_MS = 2000;
+
+    /** The pools of open clients, with how long their connections may stay idle. */
+    private static final Map<HttpClientConnectionManager, Long> connectionManagers =
+            new ConcurrentHashMap<HttpClientConnectionManager, Long>();
+
+    /** Null while no pool is registered. */
+    private static ScheduledExecutorService executor;
+
+    private ConnectionLifecycleManager() {}
+
+    /**
+     * Registers the pool of a new client.
+     *
+     * @param idleAliveMillis how long a connection of the pool may stay idle before it is closed,
+     *        see {@link info.dong4j.idea.plugin.sdk.qcloud.cos.ClientConfig#getIdleConnectionAlive()}.
+     * @return true if the pool was not registered yet.
+     */
+    public static synchronized boolean register(HttpClientConnectionManager connectionManager,
+            long idleAliveMillis) {
+        if (connectionManagers.putIfAbsent(connectionManager, idleAliveMillis) != null) {
+            return false;
+        }
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = Executors.defaultThreadFactory().newThread(r);
+                    t.setName("cos-connection-manager");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    evictConnections();
+                }
+            }, MONITOR_INTERVAL_MS, MONITOR_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the pool of a client being shut down. The pool itself is not shut down.
+     *
+     * @return true if the pool was registered.
+     */
+    public static synchronized boolean remove(HttpClientConnectionManager connectionManager) {
+        if (connectionManagers.remove(connectionManager) == null) {
+            return false;
+        }
+        if (connectionManagers.isEmpty() && executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of open clients, whose pools are registered.
+     */
+    public static int getOpenClientCount() {
+        return connectionManagers.size();
+    }
+
+    /**
+     * Returns the connections of all registered pools: the leased and available connections, the
+     * requests pending for a connection, and the maximum number of connections.
+     */
+    public static PoolStats getTotalStats() {
+        int leased = 0;
+        int pending = 0;
+        int available = 0;
+        int max = 0;
+        for (HttpClientConnectionManager connectionManager : connectionManagers.keySet()) {
+            if (connectionManager instanceof ConnPoolControl) {
+                PoolStats stats = ((ConnPoolControl<?>) connectionManager).getTotalStats();
+                leased += stats.getLeased();
+                pending += stats.getPending();
+                available += stats.getAvailable();
+                max += stats.getMax();
+            }
+        }
+        return new PoolStats(leased, pending, available, max);
+    }
+
+    private static void evictConnections() {
+        for (Map.Entry<HttpClientConnectionManager, Long> entry : connectionManagers.entrySet()) {
+            HttpClientConnectionManager connectionManager = entry.getKey();
+            try {
+                connectionManager.closeExpiredConnections();
+                connectionManager.closeIdleConnections(entry.getValue(), TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                // a pool shut down while being evicted
+                log.debug("Unable to evict connections", e);
+            }
+        }
+    }
+}
@@ -33,6 +33,7 @@ import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.protocol.HttpContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,7 +52,6 @@ public class DefaultCosHttpClient implements CosHttpClient {
     private RequestConfig requestConfig;
     private HttpClient httpClient;
     private PoolingHttpClientConnectionManager connectionManager;
-    private IdleConnectionMonitorThread idleConnectionMonitor;
 
     // private CosErrorResponseHandler errorResponseHandler;
     private static final Logger log = LoggerFactory.getLogger(DefaultCosHttpClient.class);
@@ -84,31 +84,36 @@ public class DefaultCosHttpClient implements CosHttpClient {
                     this.clientConfig.getConnectionRequestTimeout())
                 .setConnectTimeout(this.clientConfig.getConnectionTimeout())
                 .setSocketTimeout(this.clientConfig.getSocketTimeout()).build();
-        this.idleConnectionMonitor = new IdleConnectionMonitorThread(this.connectionManager);
-        this.idleConnectionMonitor.setDaemon(true);
-        this.idleConnectionMonitor.start();
+        ConnectionLifecycleManager.register(this.connectionManager,
+                this.clientConfig.getIdleConnectionAlive());
     }
 
+    // 关闭连接池中的所有连接, 不再由 ConnectionLifecycleManager 管理
     @Override
     public void shutdown() {
-        this.idleConnectionMonitor.shutdown();
+        ConnectionLifecycleManager.remove(this.connectionManager);
+        this.connectionManager.shutdown();
+    }
+
+    /**
+     * Returns the leased, available and pending connections of this client's pool.
+     */
+    public PoolStats getPoolStats() {
+        return this.connectionManager.getTotalStats();
     }
 
     // 因为Apache HTTP库自带的URL Encode对一些特殊字符如*等不进行转换, 和COS HTTP服务的URL Encode标准不一致
     private <X extends CosServiceRequest> URI buildUri(CosHttpRequest<X> request) {
-        StringBuffer urlBuffer = new StringBuffer();
+        StringBuilder urlBuffer = new StringBuilder(128);
         urlBuffer.append(request.getProtocol().toString()).append("://")
                 .append(request.getEndpoint());
-        String encodedPath = UrlEncoderUtils.encodeUrlPath(request.getResourcePath());
-        urlBuffer.append(encodedPath);
+        UrlEncoderUtils.encodeUrlPath(request.getResourcePath(), urlBuffer);
 
-        StringBuffer paramBuffer = new StringBuffer();
-        boolean seeOne = false;
-        Map<String, String> requestParams = new HashMap<>();
-        requestParams.putAll(request.getParameters());
+        Map<String, String> requestParams = request.getParameters();
         Map<String, List<String>> customParamsList =
                 request.getOriginalRequest().getCustomQueryParameters();
-        if (customParamsList != null) {
+        if (customParamsList != null && !customParamsList.isEmpty()) {
+            requestParams = new HashMap<>(requestParams);
             for (Entry<String, List<String>> customParamsEntry : customParamsList.entrySet()) {
                 String paramKey = customParamsEntry.getKey();
                 List<String> paramValueList = customParamsEntry.getValue();
@@ -118,32 +123,22 @@ public class DefaultCosHttpClient implements CosHttpClient {
                 }
             }
         }
+        boolean seeOne = false;
         for (Entry<String, String> paramEntry : requestParams.entrySet()) {
             String paramKey = paramEntry.getKey();
             if (paramKey == null) {
                 continue;
             }
-            if (seeOne) {
-                paramBuffer.append("&");
-            }
-            paramBuffer.append(UrlEncoderUtils.encode(paramKey));
-            if (!seeOne) {
-                seeOne = true;
-            }
+            urlBuffer.append(seeOne ? '&' : '?');
+            seeOne = true;
+            UrlEncoderUtils.encode(paramKey, urlBuffer);
             String paramValue = paramEntry.getValue();
             if (paramValue == null) {
                 continue;
             }
-            paramBuffer.append("=");
-            paramBuffer.append(UrlEncoderUtils.encode(paramValue));
+            UrlEncoderUtils.encode(paramValue, urlBuffer.append('='));
         }
 
-        String paramStr = paramBuffer.toString();
-        if (!paramStr.isEmpty()) {
-            urlBuffer.append("?").append(paramStr);
-        }
-
-
         try {
             URI uri = new URI(urlBuffer.toString());
             return uri;
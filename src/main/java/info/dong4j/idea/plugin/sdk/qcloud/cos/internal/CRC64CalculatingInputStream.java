@@ -0,0 +1,69 @@
+package info.dong4j.idea.plugin.sdk.qcloud.cos.internal;
+
+import info.dong4j.idea.plugin.sdk.qcloud.cos.utils.CRC64;
+
+import java.io.*;
+
+/**
+ * Simple InputStream wrapper that examines the wrapped stream's contents as
+ * they are read and calculates a CRC64 checksum, to be compared with the
+ * checksum COS returns for the uploaded data.
+ */
+public class CRC64CalculatingInputStream extends SdkFilterInputStream {
+    /** The checksum being calculated by this input stream */
+    private CRC64 crc64 = new CRC64();
+    /**
+     * The checksum as at the time when the last {@link #mark(int)} operation
+     * was called.
+     */
+    private long crc64LastMarked;
+
+    public CRC64CalculatingInputStream(InputStream in) {
+        super(in);
+    }
+
+    public CRC64 getCrc64() {
+        return crc64;
+    }
+
+    @Override
+    public void mark(int readlimit) {
+        if (markSupported()) {
+            super.mark(readlimit);
+            crc64LastMarked = crc64.getValue();
+        }
+    }
+
+    /**
+     * Resets the wrapped input stream and the in progress checksum. Should
+     * there be a reset without a preceding mark, the checksum restarts from
+     * the beginning.
+     */
+    @Override
+    public void reset() throws IOException {
+        if (markSupported()) {
+            super.reset();
+            crc64 = new CRC64(crc64LastMarked);
+        } else {
+            throw new IOException("mark/reset not supported");
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int ch = super.read();
+        if (ch != -1) {
+            crc64.update(ch);
+        }
+        return ch;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int result = super.read(b, off, len);
+        if (result != -1) {
+            crc64.update(b, off, result);
+        }
+        return result;
+    }
+}
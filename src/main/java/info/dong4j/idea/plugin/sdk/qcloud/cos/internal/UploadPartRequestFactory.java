@@ -1,5 +1,6 @@
 package info.dong4j.idea.plugin.sdk.qcloud.cos.internal;
 
+import info.dong4j.idea.plugin.sdk.qcloud.cos.exception.CosClientException;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.model.PutObjectRequest;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.model.SSECustomerKey;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.model.UploadPartRequest;
@@ -61,25 +62,62 @@ public class UploadPartRequestFactory {
         long partSize = Math.min(optimalPartSize, remainingBytes);
         boolean isLastPart = (remainingBytes - partSize <= 0);
 
-        UploadPartRequest req = null;
+        UploadPartRequest req = newUploadPartRequest(partSize);
         if (wrappedStream != null) {
-            req = new UploadPartRequest()
-                .withBucketName(bucketName)
-                .withKey(key)
-                .withUploadId(uploadId)
-                .withInputStream(new InputSubstream(wrappedStream, 0, partSize, isLastPart))
-                .withPartNumber(partNumber++)
-                .withPartSize(partSize);
+            req.withInputStream(new InputSubstream(wrappedStream, 0, partSize, isLastPart));
         } else {
-            req = new UploadPartRequest()
-                .withBucketName(bucketName)
-                .withKey(key)
-                .withUploadId(uploadId)
-                .withFile(file)
-                .withFileOffset(offset)
-                .withPartNumber(partNumber++)
-                .withPartSize(partSize);
+            req.withFile(file)
+               .withFileOffset(offset);
         }
+        return completeUploadPartRequest(req, partSize, isLastPart);
+    }
+
+    /**
+     * Reads the next part of the input stream into the given buffer and returns a request that
+     * uploads it from memory. Unlike the parts returned by {@link #getNextUploadPartRequest()},
+     * which all read from the same stream, these parts can be uploaded concurrently. The buffer
+     * must not be reused before the part has been uploaded.
+     *
+     * @param buffer A buffer of at least the optimal part size.
+     * @return The request for the next part.
+     * @throws IOException If reading the input stream fails.
+     * @throws CosClientException If the input stream ends before the content length was read.
+     */
+    public synchronized UploadPartRequest getNextUploadPartRequest(byte[] buffer)
+            throws IOException {
+        if (wrappedStream == null) {
+            throw new IllegalStateException("Only a request with an input stream can be buffered");
+        }
+        int partSize = (int) Math.min(optimalPartSize, remainingBytes);
+        boolean isLastPart = (remainingBytes - partSize <= 0);
+
+        int read = 0;
+        while (read < partSize) {
+            int count = wrappedStream.read(buffer, read, partSize - read);
+            if (count == -1) {
+                throw new CosClientException("Data read has a different length than the expected: "
+                        + "dataLength=" + (offset + read) + "; expectedLength="
+                        + (offset + remainingBytes));
+            }
+            read += count;
+        }
+
+        UploadPartRequest req = newUploadPartRequest(partSize)
+            .withInputStream(new ByteArrayInputStream(buffer, 0, partSize));
+        return completeUploadPartRequest(req, partSize, isLastPart);
+    }
+
+    private UploadPartRequest newUploadPartRequest(long partSize) {
+        return new UploadPartRequest()
+            .withBucketName(bucketName)
+            .withKey(key)
+            .withUploadId(uploadId)
+            .withPartNumber(partNumber++)
+            .withPartSize(partSize);
+    }
+
+    private UploadPartRequest completeUploadPartRequest(UploadPartRequest req, long partSize,
+            boolean isLastPart) {
         TransferManager.appendMultipartUserAgent(req);
 
         if (sseCustomerKey != null) req.setSSECustomerKey(sseCustomerKey);
@@ -95,6 +133,13 @@ public class UploadPartRequestFactory {
         return req;
     }
 
+    /**
+     * Returns the size of each part except the last one.
+     */
+    public long getOptimalPartSize() {
+        return optimalPartSize;
+    }
+
     public int getTotalNumberOfParts() {
         return totalNumberOfParts;
     }
@@ -67,7 +67,17 @@ import java.util.List;
 public class XmlResponsesSaxParser {
     private static final Logger log = LoggerFactory.getLogger(XmlResponsesSaxParser.class);
 
-    private XMLReader xr = null;
+    /**
+     * XMLReader instances are not thread safe but can be reused for consecutive documents, so each
+     * thread keeps one instead of creating a new SAX driver for every response.
+     */
+    static final ThreadLocal<XMLReader> READERS = new ThreadLocal<XMLReader>();
+
+    /** Replacement for carriage returns, see {@link #sanitizeXmlDocument(DefaultHandler, InputStream)}. */
+    private static final byte[] ESCAPED_CARRIAGE_RETURN = "&#013;".getBytes(StringUtils.UTF8);
+
+    /** Detaches the handler of the last document from the pooled reader. */
+    private static final DefaultHandler NO_OP_HANDLER = new DefaultHandler();
 
     private boolean sanitizeXmlDocument = true;
 
@@ -78,16 +88,27 @@ public class XmlResponsesSaxParser {
      */
     public XmlResponsesSaxParser() throws CosClientException {
         // Ensure we can load the XML Reader.
-        try {
-            xr = XMLReaderFactory.createXMLReader();
-        } catch (SAXException e) {
-            throw new CosClientException("Couldn't initialize a SAX driver to create an XMLReader",
-                    e);
+        getXmlReader();
+    }
+
+    private static XMLReader getXmlReader() throws CosClientException {
+        XMLReader xr = READERS.get();
+        if (xr == null) {
+            try {
+                xr = XMLReaderFactory.createXMLReader();
+            } catch (SAXException e) {
+                throw new CosClientException("Couldn't initialize a SAX driver to create an XMLReader",
+                        e);
+            }
+            READERS.set(xr);
         }
+        return xr;
     }
 
     /**
-     * Parses an XML document from an input stream using a document handler.
+     * Parses an XML document from an input stream using a document handler. The document is
+     * consumed as a stream by the pooled reader of the current thread; the handler builds the
+     * result while the document is read.
      *
      * @param handler the handler for the XML document
      * @param inputStream an input stream containing the XML document to parse
@@ -97,6 +118,8 @@ public class XmlResponsesSaxParser {
      */
     protected void parseXmlInputStream(DefaultHandler handler, InputStream inputStream)
             throws IOException {
+        XMLReader xr = getXmlReader();
+        boolean parsed = false;
         try {
 
             if (log.isDebugEnabled()) {
@@ -108,6 +131,7 @@ public class XmlResponsesSaxParser {
             xr.setContentHandler(handler);
             xr.setErrorHandler(handler);
             xr.parse(new InputSource(breader));
+            parsed = true;
 
         } catch (IOException e) {
             throw e;
@@ -122,67 +146,109 @@ public class XmlResponsesSaxParser {
             }
             throw new CosClientException(
                     "Failed to parse XML document with handler " + handler.getClass(), t);
+        } finally {
+            if (parsed) {
+                xr.setContentHandler(NO_OP_HANDLER);
+                xr.setErrorHandler(NO_OP_HANDLER);
+            } else {
+                // the reader may be left in an inconsistent state
+                READERS.remove();
+            }
         }
     }
 
+    /**
+     * Replaces any carriage return (\r) characters with explicit XML character entities while the
+     * document is read, to prevent the SAX parser from misinterpreting 0x0D characters as 0x0A and
+     * being unable to parse the XML. The byte 0x0D never occurs inside a multi-byte UTF-8 sequence,
+     * so the document does not need to be decoded and buffered first.
+     */
     protected InputStream sanitizeXmlDocument(DefaultHandler handler, InputStream inputStream)
             throws IOException {
 
         if (!sanitizeXmlDocument) {
             // No sanitizing will be performed, return the original input stream unchanged.
             return inputStream;
-        } else {
-            if (log.isDebugEnabled()) {
-                log.debug("Sanitizing XML document destined for handler " + handler.getClass());
-            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Sanitizing XML document destined for handler " + handler.getClass());
+        }
+        return new CarriageReturnEscapingInputStream(inputStream);
+    }
 
-            InputStream sanitizedInputStream = null;
+    /**
+     * Streams the wrapped document with every 0x0D byte replaced by {@link #ESCAPED_CARRIAGE_RETURN}.
+     */
+    private static final class CarriageReturnEscapingInputStream extends FilterInputStream {
+        /** Position in {@link #ESCAPED_CARRIAGE_RETURN} still to be returned, or -1 */
+        private int pending = -1;
 
-            try {
+        private CarriageReturnEscapingInputStream(InputStream in) {
+            super(new BufferedInputStream(in));
+        }
 
-                /*
-                 * Read object listing XML document from input stream provided into a string buffer,
-                 * so we can replace troublesome characters before sending the document to the XML
-                 * parser.
-                 */
-                StringBuilder listingDocBuffer = new StringBuilder();
-                BufferedReader br =
-                        new BufferedReader(new InputStreamReader(inputStream, StringUtils.UTF8));
+        @Override
+        public int read() throws IOException {
+            if (pending >= 0) {
+                int b = ESCAPED_CARRIAGE_RETURN[pending++];
+                if (pending == ESCAPED_CARRIAGE_RETURN.length) {
+                    pending = -1;
+                }
+                return b;
+            }
+            int b = in.read();
+            if (b == '\r') {
+                pending = 1;
+                return ESCAPED_CARRIAGE_RETURN[0];
+            }
+            return b;
+        }
 
-                char[] buf = new char[8192];
-                int read = -1;
-                while ((read = br.read(buf)) != -1) {
-                    listingDocBuffer.append(buf, 0, read);
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int count = 0;
+            while (count < len) {
+                if (count > 0 && pending < 0 && in.available() <= 0) {
+                    break;
+                }
+                int next = read();
+                if (next == -1) {
+                    return count == 0 ? -1 : count;
                 }
-                br.close();
+                b[off + count++] = (byte) next;
+            }
+            return count;
+        }
 
-                /*
-                 * Replace any carriage return (\r) characters with explicit XML character entities,
-                 * to prevent the SAX parser from misinterpreting 0x0D characters as 0x0A and being
-                 * unable to parse the XML.
-                 */
-                String listingDoc = listingDocBuffer.toString().replaceAll("\r", "&#013;");
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            while (skipped < n && read() != -1) {
+                skipped++;
+            }
+            return skipped;
+        }
 
-                sanitizedInputStream =
-                        new ByteArrayInputStream(listingDoc.getBytes(StringUtils.UTF8));
+        @Override
+        public int available() throws IOException {
+            return (pending >= 0 ? ESCAPED_CARRIAGE_RETURN.length - pending : 0) + in.available();
+        }
 
-            } catch (IOException e) {
-                throw e;
-
-            } catch (Throwable t) {
-                try {
-                    inputStream.close();
-                } catch (IOException e) {
-                    if (log.isErrorEnabled()) {
-                        log.error(
-                                "Unable to close response InputStream after failure sanitizing XML document",
-                                e);
-                    }
-                }
-                throw new CosClientException("Failed to sanitize XML document destined for handler "
-                        + handler.getClass(), t);
-            }
-            return sanitizedInputStream;
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            throw new IOException("mark/reset not supported");
         }
     }
 
@@ -3,6 +3,7 @@ package info.dong4j.idea.plugin.sdk.qcloud.cos.internal.crypto;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.auth.COSCredentialsProvider;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.exception.CosClientException;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.internal.COSDirect;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.internal.SdkFilterInputStream;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.model.COSObject;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.model.COSObjectId;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.model.COSObjectInputStream;
@@ -11,13 +12,17 @@ import info.dong4j.idea.plugin.sdk.qcloud.cos.model.GetObjectRequest;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.model.InitiateMultipartUploadRequest;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.model.ObjectMetadata;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.model.UploadPartRequest;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.UploadPartResult;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.utils.IOUtils;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.utils.Jackson;
 
 import java.io.*;
+import java.security.GeneralSecurityException;
 import java.util.Collections;
 import java.util.Map;
 
+import static info.dong4j.idea.plugin.sdk.qcloud.cos.model.CosDataSource.Utils.cleanupDataSource;
+
 public class COSCryptoModuleAE extends COSCryptoModuleBase {
 
     static {
@@ -277,6 +282,9 @@ public class COSCryptoModuleAE extends COSCryptoModuleBase {
     @Override
     final MultipartUploadCryptoContext newUploadContext(InitiateMultipartUploadRequest req,
             ContentCryptoMaterial cekMaterial) {
+        if (contentCryptoScheme == ContentCryptoScheme.AES_GCM) {
+            return new MultipartUploadGcmContext(req.getBucketName(), req.getKey(), cekMaterial);
+        }
         return new MultipartUploadCryptoContext(req.getBucketName(), req.getKey(), cekMaterial);
     }
 
@@ -291,6 +299,97 @@ public class COSCryptoModuleAE extends COSCryptoModuleBase {
         return req.getPartSize() + (contentCryptoScheme.getTagLengthInBits() / 8);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Parts of an AES/GCM upload are encrypted independently with AES/CTR at their offset in the
+     * object, which yields the same ciphertext as a single AES/GCM cipher, so they can be uploaded
+     * concurrently and in any order. The last part must be started after all other parts; it waits
+     * until they have been uploaded and appends the authentication tag computed from their
+     * ciphertext. All parts except the last one must have the same size.
+     */
+    @Override
+    public UploadPartResult uploadPartSecurely(UploadPartRequest req) {
+        final String uploadId = req.getUploadId();
+        final MultipartUploadCryptoContext context = multipartUploadContexts.get(uploadId);
+        if (!(context instanceof MultipartUploadGcmContext)) {
+            return super.uploadPartSecurely(req);
+        }
+        final MultipartUploadGcmContext uploadContext = (MultipartUploadGcmContext) context;
+        final int blockSize = contentCryptoScheme.getBlockSizeInBytes();
+        final boolean isLastPart = req.isLastPart();
+        final int partNumber = req.getPartNumber();
+        final long partSize = req.getPartSize();
+        if (!isLastPart && 0 != (partSize % blockSize)) {
+            throw new CosClientException(
+                    "Invalid part size: part sizes for encrypted multipart uploads must be multiples "
+                            + "of the cipher block size (" + blockSize
+                            + ") with the exception of the last part.");
+        }
+        if (isLastPart && uploadContext.hasFinalPartBeenSeen()) {
+            throw new CosClientException(
+                    "This part was specified as the last part in a multipart upload, but a previous part was already marked as the last part.  "
+                            + "Only the last part of the upload should be marked as the last part.");
+        }
+        final MultipartUploadGcmContext.CompletedPart preceding;
+        final long offset;
+        if (isLastPart) {
+            try {
+                preceding = uploadContext.beginLastPart(partNumber);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CosClientException(
+                        "Interrupted while waiting for the other parts of upload " + uploadId, e);
+            }
+            offset = preceding.length;
+        } else {
+            preceding = null;
+            offset = uploadContext.beginPart(partNumber, partSize);
+        }
+        final UploadPartResult result;
+        final File fileOrig = req.getFile();
+        final InputStream isOrig = req.getInputStream();
+        SdkFilterInputStream isCurr = null;
+        try {
+            CipherLite cipherLite = uploadContext.getCipherLite().createAuxiliary(offset);
+            CipherLiteInputStream clis = newMultipartCOSCipherInputStream(req, cipherLite);
+            isCurr = clis;
+            GHashInputStream ghis = isLastPart
+                    ? new GHashInputStream(clis, uploadContext.getGHash(),
+                            uploadContext.getTagMask(), preceding.length, preceding.hash)
+                    : new GHashInputStream(clis, uploadContext.getGHash());
+            isCurr = ghis;
+            req.setInputStream(isCurr);
+            // Treat all encryption requests as input stream upload requests,
+            // not as file upload requests.
+            req.setFile(null);
+            req.setFileOffset(0);
+            // The last part of the multipart upload will contain an extra
+            // 16-byte mac
+            if (isLastPart) {
+                long lastPartSize = computeLastPartSize(req);
+                if (lastPartSize > -1)
+                    req.setPartSize(lastPartSize);
+            }
+
+            result = cos.uploadPart(req);
+            if (ghis.getCount() != partSize) {
+                throw new CosClientException("Encrypted " + ghis.getCount() + " bytes of part "
+                        + partNumber + ", but the part size is " + partSize);
+            }
+            uploadContext.completePart(partNumber, offset, partSize, ghis.getHash());
+        } catch (GeneralSecurityException e) {
+            throw new CosClientException("Unable to create cipher for part " + partNumber, e);
+        } finally {
+            cleanupDataSource(req, fileOrig, isOrig, isCurr, log);
+            uploadContext.endPart(partNumber);
+        }
+        if (isLastPart)
+            uploadContext.setHasFinalPartBeenSeen(true);
+        return result;
+    }
+
     /*
      * Private helper methods
      */
@@ -228,7 +228,8 @@ public abstract class COSCryptoModuleBase extends COSCryptoModule {
      * <b>NOTE:</b> Because the encryption process requires context from previous blocks, parts
      * uploaded with the COSEncryptionClient (as opposed to the normal COSClient) must be
      * uploaded serially, and in order. Otherwise, the previous encryption context isn't available
-     * to use when encrypting the current part.
+     * to use when encrypting the current part. Crypto modules that can encrypt parts independently
+     * override this method.
      */
     @Override
     public UploadPartResult uploadPartSecurely(UploadPartRequest req) {
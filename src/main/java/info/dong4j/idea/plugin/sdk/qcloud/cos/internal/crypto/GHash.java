@@ -0,0 +1,166 @@
+package info.dong4j.idea.plugin.sdk.qcloud.cos.internal.crypto;
+
+/**
+ * The GHASH function of AES/GCM (NIST SP 800-38D) for a fixed hash subkey H.
+ * <p>
+ * Field elements are held as two longs, the big-endian high and low halves of the 16-byte block.
+ * GHASH is linear: the hash of a sequence A followed by m blocks B is
+ * {@code GHASH(A) * H^m + GHASH(B)}, which lets the parts of a multipart upload be hashed
+ * independently and combined afterwards, see {@link #shift(long[], long)}.
+ */
+final class GHash {
+    /** Reduction constants of the 4-bit table multiplication. */
+    private static final long[] LAST4 = {
+            0x0000, 0x1c20, 0x3840, 0x2460, 0x7080, 0x6ca0, 0x48c0, 0x54e0,
+            0xe100, 0xfd20, 0xd940, 0xc560, 0x9180, 0x8da0, 0xa9c0, 0xb5e0};
+
+    /** The reduction polynomial R of GCM, high half. */
+    private static final long R = 0xE100000000000000L;
+
+    static final int BLOCK_SIZE = 16;
+
+    private final long hHi;
+    private final long hLo;
+    /** Multiples of H for every 4-bit value, high halves. */
+    private final long[] hh = new long[16];
+    /** Multiples of H for every 4-bit value, low halves. */
+    private final long[] hl = new long[16];
+
+    /**
+     * @param h the hash subkey, the encryption of the zero block
+     */
+    GHash(byte[] h) {
+        hHi = getLong(h, 0);
+        hLo = getLong(h, 8);
+        long vh = hHi;
+        long vl = hLo;
+        hh[8] = vh;
+        hl[8] = vl;
+        for (int i = 4; i > 0; i >>= 1) {
+            long t = (vl & 1) == 1 ? R : 0;
+            vl = (vh << 63) | (vl >>> 1);
+            vh = (vh >>> 1) ^ t;
+            hh[i] = vh;
+            hl[i] = vl;
+        }
+        for (int i = 2; i <= 8; i *= 2) {
+            for (int j = 1; j < i; j++) {
+                hh[i + j] = hh[i] ^ hh[j];
+                hl[i + j] = hl[i] ^ hl[j];
+            }
+        }
+    }
+
+    /**
+     * Returns a new element of value zero, the initial state of a hash.
+     */
+    static long[] zero() {
+        return new long[2];
+    }
+
+    /**
+     * Adds the block at the given offset to the state and multiplies by H.
+     */
+    void update(long[] x, byte[] block, int off) {
+        x[0] ^= getLong(block, off);
+        x[1] ^= getLong(block, off + 8);
+        multiplyH(x);
+    }
+
+    /**
+     * Adds the final block holding the bit lengths of the additional data and the ciphertext.
+     */
+    void updateLengths(long[] x, long aadBytes, long ciphertextBytes) {
+        x[0] ^= aadBytes << 3;
+        x[1] ^= ciphertextBytes << 3;
+        multiplyH(x);
+    }
+
+    /**
+     * Multiplies the state by H with the 4-bit tables.
+     */
+    private void multiplyH(long[] x) {
+        long zh = 0;
+        long zl = 0;
+        for (int i = 15; i >= 0; i--) {
+            int b = (int) ((i < 8 ? x[0] >>> ((7 - i) << 3) : x[1] >>> ((15 - i) << 3)) & 0xff);
+            if (i != 15) {
+                int rem = (int) (zl & 0xf);
+                zl = (zh << 60) | (zl >>> 4);
+                zh = (zh >>> 4) ^ (LAST4[rem] << 48);
+            }
+            zh ^= hh[b & 0xf];
+            zl ^= hl[b & 0xf];
+            int rem = (int) (zl & 0xf);
+            zl = (zh << 60) | (zl >>> 4);
+            zh = (zh >>> 4) ^ (LAST4[rem] << 48);
+            zh ^= hh[b >>> 4];
+            zl ^= hl[b >>> 4];
+        }
+        x[0] = zh;
+        x[1] = zl;
+    }
+
+    /**
+     * Returns {@code x * H^blocks}, the contribution of a hash state followed by the given number
+     * of blocks.
+     */
+    long[] shift(long[] x, long blocks) {
+        long[] result = {x[0], x[1]};
+        long[] power = {hHi, hLo};
+        while (blocks > 0) {
+            if ((blocks & 1) == 1) {
+                result = multiply(result, power);
+            }
+            blocks >>>= 1;
+            if (blocks > 0) {
+                power = multiply(power, power);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Multiplies two field elements bit by bit (Algorithm 1 of SP 800-38D).
+     */
+    static long[] multiply(long[] x, long[] y) {
+        long zh = 0;
+        long zl = 0;
+        long vh = y[0];
+        long vl = y[1];
+        for (int i = 0; i < 128; i++) {
+            long bit = i < 64 ? x[0] << i : x[1] << (i - 64);
+            if (bit < 0) {
+                zh ^= vh;
+                zl ^= vl;
+            }
+            long t = (vl & 1) == 1 ? R : 0;
+            vl = (vh << 63) | (vl >>> 1);
+            vh = (vh >>> 1) ^ t;
+        }
+        return new long[] {zh, zl};
+    }
+
+    /**
+     * Writes the element as a 16-byte block.
+     */
+    static void toBytes(long[] x, byte[] out, int off) {
+        putLong(x[0], out, off);
+        putLong(x[1], out, off + 8);
+    }
+
+    private static long getLong(byte[] b, int off) {
+        long v = 0;
+        for (int i = 0; i < 8; i++) {
+            v = (v << 8) | (b[off + i] & 0xffL);
+        }
+        return v;
+    }
+
+    private static void putLong(long v, byte[] b, int off) {
+        for (int i = 7; i >= 0; i--) {
+            b[off + i] = (byte) v;
+            v >>>= 8;
+        }
+    }
+}
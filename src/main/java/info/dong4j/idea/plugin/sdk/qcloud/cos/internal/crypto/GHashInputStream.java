@@ -0,0 +1,207 @@
+package info.dong4j.idea.plugin.sdk.qcloud.cos.internal.crypto;
+
+import info.dong4j.idea.plugin.sdk.qcloud.cos.internal.SdkFilterInputStream;
+
+import java.io.*;
+
+/**
+ * Computes the GHASH of the AES/GCM ciphertext read through it. For the last part of a parallel
+ * multipart upload the hash continues from the preceding parts, and the authentication tag is
+ * appended once the ciphertext ends.
+ *
+ * @see MultipartUploadGcmContext
+ */
+final class GHashInputStream extends SdkFilterInputStream {
+    private final GHash ghash;
+    /** Null unless the tag is appended. */
+    private final byte[] tagMask;
+    private final long precedingLength;
+
+    private long[] hash;
+    private final byte[] block = new byte[GHash.BLOCK_SIZE];
+    private int blockLength;
+    private long count;
+    private boolean finished;
+    private byte[] tag;
+    private int tagPosition;
+
+    private long[] markedHash;
+    private byte[] markedBlock;
+    private int markedBlockLength;
+    private long markedCount;
+    private boolean markedFinished;
+    private byte[] markedTag;
+    private int markedTagPosition;
+
+    /**
+     * Hashes the ciphertext of a part other than the last one.
+     */
+    GHashInputStream(InputStream in, GHash ghash) {
+        this(in, ghash, null, 0, GHash.zero());
+    }
+
+    /**
+     * Hashes the ciphertext of the last part and appends the tag.
+     *
+     * @param tagMask the encryption of J0
+     * @param precedingLength the length of the ciphertext of all other parts
+     * @param precedingHash the hash of the ciphertext of all other parts
+     */
+    GHashInputStream(InputStream in, GHash ghash, byte[] tagMask, long precedingLength,
+            long[] precedingHash) {
+        super(in);
+        this.ghash = ghash;
+        this.tagMask = tagMask;
+        this.precedingLength = precedingLength;
+        this.hash = precedingHash.clone();
+        // without a mark, reset returns to the beginning
+        this.markedHash = precedingHash.clone();
+        this.markedBlock = new byte[GHash.BLOCK_SIZE];
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n = read(b, 0, 1);
+        return n == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        abortIfNeeded();
+        if (len == 0) {
+            return 0;
+        }
+        if (!finished) {
+            int n = in.read(b, off, len);
+            if (n != -1) {
+                update(b, off, n);
+                return n;
+            }
+            finish();
+        }
+        if (tag == null || tagPosition == tag.length) {
+            return -1;
+        }
+        int n = Math.min(len, tag.length - tagPosition);
+        System.arraycopy(tag, tagPosition, b, off, n);
+        tagPosition += n;
+        return n;
+    }
+
+    private void update(byte[] b, int off, int len) {
+        count += len;
+        if (blockLength > 0) {
+            int n = Math.min(len, GHash.BLOCK_SIZE - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+            if (blockLength < GHash.BLOCK_SIZE) {
+                return;
+            }
+            ghash.update(hash, block, 0);
+            blockLength = 0;
+        }
+        while (len >= GHash.BLOCK_SIZE) {
+            ghash.update(hash, b, off);
+            off += GHash.BLOCK_SIZE;
+            len -= GHash.BLOCK_SIZE;
+        }
+        System.arraycopy(b, off, block, 0, len);
+        blockLength = len;
+    }
+
+    private void finish() {
+        finished = true;
+        if (blockLength > 0) {
+            for (int i = blockLength; i < GHash.BLOCK_SIZE; i++) {
+                block[i] = 0;
+            }
+            ghash.update(hash, block, 0);
+            blockLength = 0;
+        }
+        if (tagMask != null) {
+            long[] s = hash.clone();
+            ghash.updateLengths(s, 0, precedingLength + count);
+            tag = new byte[GHash.BLOCK_SIZE];
+            GHash.toBytes(s, tag, 0);
+            for (int i = 0; i < tag.length; i++) {
+                tag[i] ^= tagMask[i];
+            }
+        }
+    }
+
+    /**
+     * Skipped bytes are read, as they must be hashed.
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buf = new byte[(int) Math.min(n, 4096)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buf, 0, (int) Math.min(buf.length, n - skipped));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        abortIfNeeded();
+        if (finished) {
+            return tag == null ? 0 : tag.length - tagPosition;
+        }
+        return in.available();
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        abortIfNeeded();
+        in.mark(readlimit);
+        markedHash = hash.clone();
+        markedBlock = block.clone();
+        markedBlockLength = blockLength;
+        markedCount = count;
+        markedFinished = finished;
+        markedTag = tag;
+        markedTagPosition = tagPosition;
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        abortIfNeeded();
+        in.reset();
+        hash = markedHash.clone();
+        System.arraycopy(markedBlock, 0, block, 0, block.length);
+        blockLength = markedBlockLength;
+        count = markedCount;
+        finished = markedFinished;
+        tag = markedTag;
+        tagPosition = markedTagPosition;
+    }
+
+    /**
+     * Returns true once the whole ciphertext has been read.
+     */
+    boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Returns the number of ciphertext bytes read, excluding the tag.
+     */
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the hash of the ciphertext read, which is final once {@link #isFinished()}.
+     */
+    long[] getHash() {
+        return hash.clone();
+    }
+}
@@ -0,0 +1,175 @@
+package info.dong4j.idea.plugin.sdk.qcloud.cos.internal.crypto;
+
+import info.dong4j.idea.plugin.sdk.qcloud.cos.annotation.GuardedBy;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.exception.CosClientException;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.crypto.Cipher;
+
+/**
+ * Contextual information for an AES/GCM multipart upload whose parts are encrypted independently,
+ * so that they can be uploaded concurrently.
+ * <p>
+ * The AES/GCM ciphertext is AES/CTR starting at the counter block after J0, so every part is
+ * encrypted with an auxiliary CTR cipher at its plaintext offset. The GHASH of each part's
+ * ciphertext is recorded when the part completes; the last part waits for the other parts still
+ * in progress, combines their hashes and appends the authentication tag. The uploaded object is identical to
+ * one encrypted with a single AES/GCM cipher, and is decrypted the same way.
+ * <p>
+ * All parts except the last one must have the same size, and every other part must have been
+ * started before the last one.
+ */
+class MultipartUploadGcmContext extends MultipartUploadCryptoContext {
+    private final GHash ghash;
+    /** The encryption of J0, which masks the GHASH into the tag. */
+    private final byte[] tagMask;
+
+    @GuardedBy("this")
+    private long partSize = -1;
+    @GuardedBy("this")
+    private final Set<Integer> partsInProgress = new HashSet<Integer>();
+    @GuardedBy("this")
+    private final Set<Integer> failedParts = new HashSet<Integer>();
+    @GuardedBy("this")
+    private final Map<Integer, CompletedPart> completedParts =
+            new HashMap<Integer, CompletedPart>();
+
+    MultipartUploadGcmContext(String bucketName, String key, ContentCryptoMaterial cekMaterial) {
+        super(bucketName, key, cekMaterial);
+        CipherLite cipherLite = cekMaterial.getCipherLite();
+        try {
+            Cipher aes = Cipher.getInstance("AES/ECB/NoPadding", cipherLite.getCipherProvider());
+            aes.init(Cipher.ENCRYPT_MODE, cipherLite.getSecretKey());
+            this.ghash = new GHash(aes.doFinal(new byte[GHash.BLOCK_SIZE]));
+            byte[] j0 = new byte[GHash.BLOCK_SIZE];
+            byte[] iv = cipherLite.getIV();
+            System.arraycopy(iv, 0, j0, 0, iv.length);
+            j0[GHash.BLOCK_SIZE - 1] = 0x01;
+            this.tagMask = aes.doFinal(j0);
+        } catch (Exception e) {
+            throw new CosClientException("Unable to initialize parallel multipart encryption", e);
+        }
+    }
+
+    GHash getGHash() {
+        return ghash;
+    }
+
+    byte[] getTagMask() {
+        return tagMask.clone();
+    }
+
+    /**
+     * Marks a part other than the last one as in progress and returns the plaintext offset it is
+     * encrypted at. A retried part replaces the previous attempt.
+     *
+     * @throws CosClientException if the part does not have the size of the other parts.
+     */
+    synchronized long beginPart(int partNumber, long size) {
+        if (partNumber < 1)
+            throw new IllegalArgumentException("part number must be at least 1");
+        if (partSize == -1) {
+            partSize = size;
+        } else if (partSize != size) {
+            throw new CosClientException(
+                    "All parts of an encrypted multipart upload except the last one must have "
+                            + "the same size (" + partSize + "), but part " + partNumber
+                            + " has " + size);
+        }
+        startPart(partNumber);
+        return (partNumber - 1) * size;
+    }
+
+    /**
+     * Waits until the parts before the last one that are in progress have been uploaded, marks the
+     * last part as in progress and returns the hash state of the preceding ciphertext. Its length
+     * is the offset the last part is encrypted at.
+     *
+     * @throws CosClientException if a preceding part failed or has not been started.
+     */
+    synchronized CompletedPart beginLastPart(int partNumber) throws InterruptedException {
+        if (partNumber < 1)
+            throw new IllegalArgumentException("part number must be at least 1");
+        int missing;
+        while ((missing = firstMissingPart(partNumber)) > 0) {
+            if (failedParts.contains(missing)) {
+                throw new CosClientException("Unable to complete the encryption of the last part: "
+                        + "part " + missing + " failed to upload");
+            }
+            if (!partsInProgress.contains(missing)) {
+                throw new CosClientException("Unable to complete the encryption of the last "
+                        + "part: part " + missing + " must be started before the last part");
+            }
+            // endPart notifies once the part has been uploaded or has failed
+            wait();
+        }
+        long[] hash = GHash.zero();
+        long length = 0;
+        for (int i = 1; i < partNumber; i++) {
+            CompletedPart part = completedParts.get(i);
+            if (part.offset != length) {
+                throw new CosClientException("All parts of an encrypted multipart upload except "
+                        + "the last one must have the same size");
+            }
+            long[] shifted = ghash.shift(hash, part.length / GHash.BLOCK_SIZE);
+            hash = new long[] {shifted[0] ^ part.hash[0], shifted[1] ^ part.hash[1]};
+            length += part.length;
+        }
+        startPart(partNumber);
+        return new CompletedPart(0, length, hash);
+    }
+
+    private int firstMissingPart(int lastPartNumber) {
+        for (int i = 1; i < lastPartNumber; i++) {
+            if (!completedParts.containsKey(i)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private void startPart(int partNumber) {
+        partsInProgress.add(partNumber);
+        failedParts.remove(partNumber);
+        completedParts.remove(partNumber);
+        notifyAll();
+    }
+
+    /**
+     * Records the hash of a part's ciphertext after the part has been uploaded.
+     */
+    synchronized void completePart(int partNumber, long offset, long length, long[] hash) {
+        completedParts.put(partNumber, new CompletedPart(offset, length, hash));
+    }
+
+    /**
+     * Ends a part upload started with {@link #beginPart(int, long)} or
+     * {@link #beginLastPart(int)}. A part that has not been completed is recorded as failed.
+     */
+    synchronized void endPart(int partNumber) {
+        partsInProgress.remove(partNumber);
+        if (!completedParts.containsKey(partNumber)) {
+            failedParts.add(partNumber);
+        }
+        notifyAll();
+    }
+
+    /**
+     * The position and the GHASH state of an encrypted range of the object.
+     */
+    static final class CompletedPart {
+        final long offset;
+        final long length;
+        final long[] hash;
+
+        CompletedPart(long offset, long length, long[] hash) {
+            this.offset = offset;
+            this.length = length;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package info.dong4j.idea.plugin.sdk.qcloud.cos.transfer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread pool for {@link TransferManager} whose number of threads follows the measured transfer
+ * throughput.
+ * <p>
+ * The pool starts with the minimum number of threads. Part transfers report the bytes they moved
+ * through {@link #recordTransfer(long)}; once per sample window the throughput of the window is
+ * compared with the previous one. While there is queued work and the throughput improves, one
+ * thread is added, up to the maximum. When the throughput drops after growing, the link is
+ * considered saturated and the last thread is removed again. A failed transfer reported through
+ * {@link #recordFailure()} halves the number of threads.
+ */
+public class AdaptiveThreadPoolExecutor extends ThreadPoolExecutor {
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveThreadPoolExecutor.class);
+
+    /** The minimum duration of a throughput sample. */
+    static final long SAMPLE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /** Throughput must improve by this ratio to add another thread. */
+    static final double GROWTH_THRESHOLD = 0.1;
+
+    /** A throughput drop by this ratio after growing is treated as saturation. */
+    static final double SATURATION_THRESHOLD = 0.2;
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private volatile int minimumThreads;
+    private volatile int maximumThreads;
+
+    private final AtomicLong windowBytes = new AtomicLong();
+    private final AtomicInteger windowTransfers = new AtomicInteger();
+    private final AtomicBoolean adjusting = new AtomicBoolean();
+    private volatile long windowStart = System.nanoTime();
+
+    /** Guarded by {@link #adjusting}. */
+    private double lastThroughput;
+    /** Guarded by {@link #adjusting}. */
+    private boolean grewLastWindow;
+
+    public AdaptiveThreadPoolExecutor(int minimumThreads, int maximumThreads,
+            ThreadFactory threadFactory) {
+        super(checkMinimum(minimumThreads), minimumThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), threadFactory);
+        this.minimumThreads = minimumThreads;
+        this.maximumThreads = Math.max(minimumThreads, maximumThreads);
+        // the pool holds no threads while nothing is transferred
+        allowCoreThreadTimeOut(true);
+    }
+
+    private static int checkMinimum(int minimumThreads) {
+        if (minimumThreads < 1) {
+            throw new IllegalArgumentException(
+                    "minimum transfer threads must be at least 1: " + minimumThreads);
+        }
+        return minimumThreads;
+    }
+
+    /**
+     * Changes the range the number of threads is adapted in. The current number of threads is
+     * moved into the new range.
+     *
+     * @param minimumThreads The number of threads to start with, at least 1.
+     * @param maximumThreads The number of threads to grow to.
+     */
+    public void setThreadLimits(int minimumThreads, int maximumThreads) {
+        checkMinimum(minimumThreads);
+        this.minimumThreads = minimumThreads;
+        this.maximumThreads = Math.max(minimumThreads, maximumThreads);
+        resize(getCorePoolSize());
+    }
+
+    public int getMinimumThreads() {
+        return minimumThreads;
+    }
+
+    public int getMaximumThreads() {
+        return maximumThreads;
+    }
+
+    /**
+     * Reports a completed part transfer.
+     *
+     * @param bytes The number of bytes transferred.
+     */
+    public void recordTransfer(long bytes) {
+        windowBytes.addAndGet(bytes);
+        windowTransfers.incrementAndGet();
+        long now = System.nanoTime();
+        long elapsed = now - windowStart;
+        // wait until every thread had a chance to complete a part in this window
+        if (elapsed < SAMPLE_WINDOW_NANOS || windowTransfers.get() < getCorePoolSize()
+                || !adjusting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            double throughput = windowBytes.getAndSet(0) * (double) SAMPLE_WINDOW_NANOS / elapsed;
+            windowTransfers.set(0);
+            windowStart = now;
+            adjust(throughput);
+        } finally {
+            adjusting.set(false);
+        }
+    }
+
+    /**
+     * Reports a failed part transfer. The number of threads is halved, as failures are commonly
+     * caused by too many concurrent connections.
+     */
+    public void recordFailure() {
+        if (!adjusting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            resize(getCorePoolSize() / 2);
+            windowBytes.set(0);
+            windowTransfers.set(0);
+            windowStart = System.nanoTime();
+            lastThroughput = 0;
+            grewLastWindow = false;
+        } finally {
+            adjusting.set(false);
+        }
+    }
+
+    private void adjust(double throughput) {
+        int threads = getCorePoolSize();
+        if (grewLastWindow && throughput < lastThroughput * (1 - SATURATION_THRESHOLD)) {
+            // the added thread made things worse
+            resize(threads - 1);
+            grewLastWindow = false;
+        } else if (throughput > lastThroughput * (1 + GROWTH_THRESHOLD) && threads < maximumThreads
+                && !getQueue().isEmpty()) {
+            resize(threads + 1);
+            grewLastWindow = true;
+        } else {
+            grewLastWindow = false;
+        }
+        lastThroughput = throughput;
+    }
+
+    /**
+     * Sets core and maximum pool size to the same value. Threads above the new size exit after
+     * their current task, even if there is queued work.
+     */
+    private void resize(int threads) {
+        int size = Math.min(maximumThreads, Math.max(minimumThreads, threads));
+        int current = getCorePoolSize();
+        if (size == current) {
+            return;
+        }
+        // the core pool size may not exceed the maximum pool size
+        if (size > current) {
+            setMaximumPoolSize(size);
+            setCorePoolSize(size);
+        } else {
+            setCorePoolSize(size);
+            setMaximumPoolSize(size);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Transfer threads: " + current + " -> " + size);
+        }
+    }
+}
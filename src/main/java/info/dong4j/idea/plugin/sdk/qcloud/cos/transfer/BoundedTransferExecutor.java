@@ -0,0 +1,81 @@
+package info.dong4j.idea.plugin.sdk.qcloud.cos.transfer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor for the parts of a single transfer that passes at most a fixed number of tasks to the
+ * shared transfer thread pool at a time, so that one large transfer does not starve the others.
+ * Tasks above the limit wait in a local queue without blocking any thread.
+ */
+class BoundedTransferExecutor implements Executor {
+    private final Executor delegate;
+    private final int maximumInFlight;
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * @param delegate The shared thread pool.
+     * @param maximumInFlight The maximum number of tasks running or queued in the shared thread
+     *        pool, a value less than 1 removes the limit.
+     */
+    BoundedTransferExecutor(Executor delegate, int maximumInFlight) {
+        this.delegate = delegate;
+        this.maximumInFlight = maximumInFlight < 1 ? Integer.MAX_VALUE : maximumInFlight;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        pending.add(task);
+        drain();
+    }
+
+    private void drain() {
+        while (!pending.isEmpty()) {
+            int current = inFlight.get();
+            if (current >= maximumInFlight) {
+                return;
+            }
+            if (!inFlight.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            final Runnable task = pending.poll();
+            if (task == null) {
+                inFlight.decrementAndGet();
+                continue;
+            }
+            try {
+                delegate.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            task.run();
+                        } finally {
+                            inFlight.decrementAndGet();
+                            drain();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // the thread pool has been shut down, nothing queued here will ever run. The
+                // cancelled futures fail the transfer when its parts are collected.
+                inFlight.decrementAndGet();
+                cancel(task);
+                for (Runnable next = pending.poll(); next != null; next = pending.poll()) {
+                    cancel(next);
+                }
+                return;
+            }
+        }
+    }
+
+    private static void cancel(Runnable task) {
+        if (task instanceof Future) {
+            ((Future<?>) task).cancel(false);
+        }
+    }
+}
@@ -12,7 +12,9 @@ import info.dong4j.idea.plugin.sdk.qcloud.cos.model.UploadResult;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.Future;
+import java.util.concurrent.RunnableFuture;
 
 /**
  * Initiates a complete multi-part upload request for a
@@ -101,7 +103,16 @@ public class CompleteMultipartUpload implements Callable<UploadResult> {
         partETags.addAll(eTagsBeforeResume);
         for (Future<PartETag> future : futures) {
             try {
+                if (future instanceof RunnableFuture && !future.isDone()) {
+                    // Parts held back by the per-transfer limit may still be waiting for a thread
+                    // this task occupies, run them here. Does nothing if the part already started.
+                    ((RunnableFuture<?>) future).run();
+                }
                 partETags.add(future.get());
+            } catch (CancellationException e) {
+                throw new CosClientException(
+                        "Unable to complete multi-part upload. Individual part upload was cancelled",
+                        e);
             } catch (Exception e) {
                 throw new CosClientException(
                         "Unable to complete multi-part upload. Individual part upload failed : "
@@ -0,0 +1,213 @@
+package info.dong4j.idea.plugin.sdk.qcloud.cos.transfer;
+
+import info.dong4j.idea.plugin.sdk.qcloud.cos.COS;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.COSObjectSummary;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.DeleteObjectsRequest;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.DeleteObjectsRequest.KeyVersion;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.ListObjectsRequest;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.ObjectListing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares the files of a local directory with the objects under a key prefix and finds the files
+ * that have to be uploaded to synchronize them.
+ * <p>
+ * The listing of the prefix is consumed one page at a time and merged with the local files sorted
+ * the way COS orders keys, so the objects are never held in memory all at once. A file is
+ * unchanged when its object has the same length and either
+ * <ul>
+ * <li>the manifest shows the file has not been modified and the object still has the ETag it was
+ * last synchronized with, or</li>
+ * <li>without a manifest entry holding an ETag, the object was last modified after the file.</li>
+ * </ul>
+ * Objects without a local file are optionally deleted.
+ */
+final class DirectorySync {
+    private static final Logger log = LoggerFactory.getLogger(DirectorySync.class);
+
+    /** The maximum number of keys in a single delete objects request. */
+    static final int MAX_KEYS_PER_DELETE = 1000;
+
+    /**
+     * The order of keys in a COS listing, which is the order of their UTF-8 bytes and therefore of
+     * their code points. {@link String#compareTo(String)} compares UTF-16 chars, which differs for
+     * characters outside the Basic Multilingual Plane.
+     */
+    static final Comparator<String> KEY_ORDER = new Comparator<String>() {
+        @Override
+        public int compare(String a, String b) {
+            int i = 0;
+            int j = 0;
+            while (i < a.length() && j < b.length()) {
+                int ca = a.codePointAt(i);
+                int cb = b.codePointAt(j);
+                if (ca != cb) {
+                    return ca < cb ? -1 : 1;
+                }
+                i += Character.charCount(ca);
+                j += Character.charCount(cb);
+            }
+            return (a.length() - i) - (b.length() - j);
+        }
+    };
+
+    private final COS cos;
+    private final String bucketName;
+    private final String keyPrefix;
+    private final boolean includeSubdirectories;
+    private final DirectorySyncManifest previousManifest;
+    private final DirectorySyncManifest manifest;
+    private final TreeMap<String, File> files = new TreeMap<String, File>(KEY_ORDER);
+
+    private final List<File> changedFiles = new LinkedList<File>();
+    private final List<KeyVersion> keysToDelete = new ArrayList<KeyVersion>();
+    private int deletedObjects;
+
+    /**
+     * @param keyPrefix The key prefix of the directory, which is empty or ends with a slash.
+     * @param previousManifest The manifest of the last synchronization, possibly empty.
+     */
+    DirectorySync(COS cos, String bucketName, String keyPrefix, boolean includeSubdirectories,
+            DirectorySyncManifest previousManifest) {
+        this.cos = cos;
+        this.bucketName = bucketName;
+        this.keyPrefix = keyPrefix;
+        this.includeSubdirectories = includeSubdirectories;
+        this.previousManifest = previousManifest;
+        this.manifest = new DirectorySyncManifest(bucketName, keyPrefix);
+    }
+
+    /**
+     * Adds a local file with the key it is uploaded to.
+     */
+    void addFile(String key, File file) {
+        files.put(key, file);
+    }
+
+    /**
+     * Lists the objects under the key prefix and returns the files that are new or changed,
+     * deleting the objects without a local file if requested.
+     */
+    List<File> findChangedFiles(boolean deleteRemovedObjects) {
+        Iterator<Map.Entry<String, File>> localFiles = files.entrySet().iterator();
+        Map.Entry<String, File> local = localFiles.hasNext() ? localFiles.next() : null;
+        ObjectListing listing = null;
+        do {
+            if (listing == null) {
+                // Without subdirectories, only the objects directly under the prefix are listed,
+                // so that objects of subdirectories are never deleted.
+                ListObjectsRequest listObjectsRequest = new ListObjectsRequest()
+                        .withBucketName(bucketName).withPrefix(keyPrefix)
+                        .withDelimiter(includeSubdirectories ? null : "/")
+                        .withMaxKeys(MAX_KEYS_PER_DELETE);
+                listing = cos.listObjects(listObjectsRequest);
+            } else {
+                listing = cos.listNextBatchOfObjects(listing);
+            }
+
+            for (COSObjectSummary summary : listing.getObjectSummaries()) {
+                String key = summary.getKey();
+                while (local != null && KEY_ORDER.compare(local.getKey(), key) < 0) {
+                    addChangedFile(local.getKey(), local.getValue(), null);
+                    local = localFiles.hasNext() ? localFiles.next() : null;
+                }
+                if (local != null && local.getKey().equals(key)) {
+                    addChangedFile(key, local.getValue(), summary);
+                    local = localFiles.hasNext() ? localFiles.next() : null;
+                } else if (deleteRemovedObjects && isRemoved(key)) {
+                    delete(key);
+                }
+            }
+        } while (listing.isTruncated());
+
+        while (local != null) {
+            addChangedFile(local.getKey(), local.getValue(), null);
+            local = localFiles.hasNext() ? localFiles.next() : null;
+        }
+        if (!keysToDelete.isEmpty()) {
+            flushDeletes();
+        }
+        log.debug("Found " + changedFiles.size() + " changed of " + files.size()
+                + " files and deleted " + deletedObjects + " objects under " + keyPrefix);
+        return changedFiles;
+    }
+
+    /**
+     * Returns the manifest of this synchronization, which is complete once
+     * {@link #findChangedFiles(boolean)} has returned.
+     */
+    DirectorySyncManifest getManifest() {
+        return manifest;
+    }
+
+    /**
+     * Records a local file in the manifest and queues it for upload unless its object is current.
+     *
+     * @param summary The object of the file, or null if it does not exist.
+     */
+    private void addChangedFile(String key, File file, COSObjectSummary summary) {
+        long length = file.length();
+        long lastModified = file.lastModified();
+        if (summary != null && isCurrent(key, length, lastModified, summary)) {
+            manifest.put(key,
+                    new DirectorySyncManifest.Entry(length, lastModified, summary.getETag()));
+        } else {
+            manifest.put(key, new DirectorySyncManifest.Entry(length, lastModified, null));
+            changedFiles.add(file);
+        }
+    }
+
+    private boolean isCurrent(String key, long length, long lastModified,
+            COSObjectSummary summary) {
+        if (summary.getSize() != length) {
+            return false;
+        }
+        DirectorySyncManifest.Entry synced = previousManifest.get(key);
+        if (synced != null && synced.getETag() != null) {
+            // A different length or modification time proves the file changed since it was
+            // synced, even if an older file was restored with its original time.
+            return synced.getLength() == length && synced.getLastModified() == lastModified
+                    && synced.getETag().equals(summary.getETag());
+        }
+        // Without a synced ETag, compare with the time of the object. Listings report the
+        // modification time in whole seconds.
+        Date objectLastModified = summary.getLastModified();
+        return objectLastModified != null
+                && objectLastModified.getTime() >= lastModified / 1000 * 1000;
+    }
+
+    /**
+     * Returns true if the object has no local file. The check against all files, instead of the
+     * merge position, guards the deletion against a listing out of the expected order. Directory
+     * markers are never deleted.
+     */
+    private boolean isRemoved(String key) {
+        return !key.endsWith("/") && !files.containsKey(key);
+    }
+
+    private void delete(String key) {
+        keysToDelete.add(new KeyVersion(key));
+        if (keysToDelete.size() == MAX_KEYS_PER_DELETE) {
+            flushDeletes();
+        }
+    }
+
+    private void flushDeletes() {
+        cos.deleteObjects(new DeleteObjectsRequest(bucketName)
+                .withKeys(new ArrayList<KeyVersion>(keysToDelete)).withQuiet(true));
+        deletedObjects += keysToDelete.size();
+        keysToDelete.clear();
+    }
+}
@@ -0,0 +1,136 @@
+package info.dong4j.idea.plugin.sdk.qcloud.cos.transfer;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import info.dong4j.idea.plugin.sdk.qcloud.cos.utils.Jackson;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The local record of a directory synchronized to a COS key prefix. For every object key it holds
+ * the length and the modification time of the file uploaded to it, and the ETag the object had
+ * when the directory was last synchronized.
+ *
+ * @see TransferManager#syncDirectory(String, String, File, boolean, ObjectMetadataProvider, File,
+ *      boolean)
+ */
+final class DirectorySyncManifest {
+    private static final Logger log = LoggerFactory.getLogger(DirectorySyncManifest.class);
+
+    @JsonProperty
+    private final String bucketName;
+
+    @JsonProperty
+    private final String keyPrefix;
+
+    @JsonProperty
+    private final Map<String, Entry> entries;
+
+    DirectorySyncManifest(String bucketName, String keyPrefix) {
+        this(bucketName, keyPrefix, null);
+    }
+
+    DirectorySyncManifest(
+            @JsonProperty(value = "bucketName") String bucketName,
+            @JsonProperty(value = "keyPrefix") String keyPrefix,
+            @JsonProperty(value = "entries") Map<String, Entry> entries) {
+        this.bucketName = bucketName;
+        this.keyPrefix = keyPrefix;
+        this.entries = entries == null ? new TreeMap<String, Entry>()
+                : new TreeMap<String, Entry>(entries);
+    }
+
+    /**
+     * Loads the manifest of the bucket and key prefix given. An empty manifest is returned if the
+     * file is null or does not exist, cannot be read, or belongs to another key prefix, in which
+     * case every object is compared without it.
+     */
+    static DirectorySyncManifest load(File file, String bucketName, String keyPrefix) {
+        DirectorySyncManifest manifest = new DirectorySyncManifest(bucketName, keyPrefix);
+        if (file == null || !file.isFile()) {
+            return manifest;
+        }
+        DirectorySyncManifest loaded;
+        try {
+            loaded = Jackson.loadFrom(file, DirectorySyncManifest.class);
+        } catch (Exception e) {
+            log.warn("Ignoring unreadable sync manifest " + file, e);
+            return manifest;
+        }
+        if (!bucketName.equals(loaded.bucketName) || !keyPrefix.equals(loaded.keyPrefix)) {
+            log.debug("Ignoring sync manifest " + file + " of another key prefix");
+            return manifest;
+        }
+        return loaded;
+    }
+
+    /**
+     * Writes the manifest to a temporary file first, so that an interrupted write leaves the
+     * previous manifest in place.
+     */
+    void save(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create the directory " + parent);
+        }
+        File temp = new File(parent, file.getName() + ".tmp");
+        Jackson.getWriter().writeValue(temp, this);
+        if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+            temp.delete();
+            throw new IOException("Unable to replace the sync manifest " + file);
+        }
+    }
+
+    Entry get(String key) {
+        return entries.get(key);
+    }
+
+    void put(String key, Entry entry) {
+        entries.put(key, entry);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * The state of a file and its object when the directory was last synchronized.
+     */
+    static final class Entry {
+        @JsonProperty
+        private final long length;
+
+        @JsonProperty
+        private final long lastModified;
+
+        /** Null if the file was uploaded, as the ETag of the new object is not known yet. */
+        @JsonProperty
+        private final String eTag;
+
+        Entry(
+                @JsonProperty(value = "length") long length,
+                @JsonProperty(value = "lastModified") long lastModified,
+                @JsonProperty(value = "eTag") String eTag) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.eTag = eTag;
+        }
+
+        long getLength() {
+            return length;
+        }
+
+        long getLastModified() {
+            return lastModified;
+        }
+
+        String getETag() {
+            return eTag;
+        }
+    }
+}
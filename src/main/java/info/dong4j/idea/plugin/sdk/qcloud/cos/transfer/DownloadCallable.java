@@ -7,6 +7,7 @@ import info.dong4j.idea.plugin.sdk.qcloud.cos.internal.FileLocks;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.model.COSObject;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.model.GetObjectRequest;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.transfer.Transfer.TransferState;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.utils.IOUtils;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.utils.ServiceUtils;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.utils.ServiceUtils.RetryableCOSDownloadTask;
 
@@ -15,9 +16,18 @@ import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
 
 import javax.net.ssl.SSLProtocolException;
 
@@ -34,9 +44,44 @@ final class DownloadCallable implements Callable<File> {
 
     private long expectedFileLength;
 
+    /** The size of the download buffer of each range. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The thread pool ranges are downloaded in, or null for a single connection download. */
+    private final ExecutorService threadPool;
+    private final int maximumPartsPerTransfer;
+    private final long partSize;
+    private final long lastByte;
+    private final String eTag;
+    /** The indexes of the ranges written to the file. */
+    private final BitSet completedParts;
+
     DownloadCallable(COS cos, CountDownLatch latch, GetObjectRequest req,
             boolean resumeExistingDownload, DownloadImpl download, File dstfile,
             long origStartingByte, long expectedFileLength) {
+        this(cos, latch, req, resumeExistingDownload, download, dstfile, origStartingByte,
+                expectedFileLength, null, 0, 0, -1, null, null);
+    }
+
+    /**
+     * Creates a download that fetches byte ranges of {@code partSize} concurrently in the given
+     * thread pool and writes them to their position in the destination file. Ranges already
+     * listed in {@code completedParts} are skipped.
+     */
+    DownloadCallable(COS cos, CountDownLatch latch, GetObjectRequest req, DownloadImpl download,
+            File dstfile, long startingByte, long lastByte, ExecutorService threadPool,
+            int maximumPartsPerTransfer, long partSize, String eTag, int[] completedParts) {
+        this(cos, latch, req, false, download, dstfile, startingByte, -1, threadPool,
+                maximumPartsPerTransfer, partSize, lastByte, eTag, completedParts);
+        if (threadPool == null || partSize < 1)
+            throw new IllegalArgumentException();
+    }
+
+    private DownloadCallable(COS cos, CountDownLatch latch, GetObjectRequest req,
+            boolean resumeExistingDownload, DownloadImpl download, File dstfile,
+            long origStartingByte, long expectedFileLength, ExecutorService threadPool,
+            int maximumPartsPerTransfer, long partSize, long lastByte, String eTag,
+            int[] completedParts) {
         if (cos == null || latch == null || req == null || dstfile == null || download == null)
             throw new IllegalArgumentException();
         this.cos = cos;
@@ -47,6 +92,17 @@ final class DownloadCallable implements Callable<File> {
         this.dstfile = dstfile;
         this.origStartingByte = origStartingByte;
         this.expectedFileLength = expectedFileLength;
+        this.threadPool = threadPool;
+        this.maximumPartsPerTransfer = maximumPartsPerTransfer;
+        this.partSize = partSize;
+        this.lastByte = lastByte;
+        this.eTag = eTag;
+        this.completedParts = new BitSet();
+        if (completedParts != null) {
+            for (int part : completedParts) {
+                this.completedParts.set(part);
+            }
+        }
     }
 
     /**
@@ -60,6 +116,11 @@ final class DownloadCallable implements Callable<File> {
         try {
             latch.await();
             download.setState(TransferState.InProgress);
+            if (threadPool != null) {
+                downloadInParallel();
+                download.setState(TransferState.Completed);
+                return dstfile;
+            }
             COSObject cosObject = retryableDownloadCOSObjectToFile(dstfile,
                     new DownloadTaskImpl(cos, download, req), resumeExistingDownload);
 
@@ -168,6 +229,155 @@ final class DownloadCallable implements Callable<File> {
         }
     }
 
+    /**
+     * Downloads the ranges that are not complete yet concurrently into the pre-sized destination
+     * file. The ranges are written with positional writes to a shared {@link FileChannel}, which
+     * needs no coordination between the ranges and, unlike a memory-mapped file, releases the
+     * file as soon as the channel is closed.
+     */
+    private void downloadInParallel() throws Exception {
+        File parentDirectory = dstfile.getParentFile();
+        if (parentDirectory != null && !parentDirectory.exists() && !parentDirectory.mkdirs()) {
+            throw new CosClientException(
+                    "Unable to create directory in the path" + parentDirectory.getAbsolutePath());
+        }
+        if (!FileLocks.lock(dstfile)) {
+            throw new FileLockException("Fail to lock " + dstfile + " for parallel download");
+        }
+        final long totalLength = lastByte - origStartingByte + 1;
+        final List<FutureTask<Void>> futures = new ArrayList<FutureTask<Void>>();
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(dstfile, "rw");
+            if (raf.length() != totalLength) {
+                // the ranges written before belong to a different file
+                synchronized (this) {
+                    completedParts.clear();
+                }
+                raf.setLength(totalLength);
+            }
+            final FileChannel channel = raf.getChannel();
+            // ranges beyond the per-transfer limit wait here instead of in the shared queue
+            Executor partExecutor = new BoundedTransferExecutor(threadPool, maximumPartsPerTransfer);
+            int parts = (int) ((totalLength + partSize - 1) / partSize);
+            for (int i = 0; i < parts; i++) {
+                if (isCompleted(i)) {
+                    continue;
+                }
+                final int part = i;
+                FutureTask<Void> future = new FutureTask<Void>(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        downloadPart(part, channel);
+                        return null;
+                    }
+                });
+                futures.add(future);
+                partExecutor.execute(future);
+            }
+            for (FutureTask<Void> future : futures) {
+                // downloads the range in this thread if no pool thread has started it yet
+                future.run();
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            cancel(futures);
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception)
+                throw (Exception) cause;
+            throw (Error) cause;
+        } catch (Exception e) {
+            cancel(futures);
+            throw e;
+        } finally {
+            IOUtils.closeQuietly(raf, log);
+            FileLocks.unlock(dstfile);
+        }
+    }
+
+    private static void cancel(List<FutureTask<Void>> futures) {
+        for (FutureTask<Void> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private synchronized boolean isCompleted(int part) {
+        return completedParts.get(part);
+    }
+
+    private void downloadPart(int part, FileChannel channel) throws IOException {
+        long start = origStartingByte + part * partSize;
+        long end = Math.min(start + partSize - 1, lastByte);
+        GetObjectRequest rangeRequest =
+                new GetObjectRequest(req.getBucketName(), req.getKey(), req.getVersionId());
+        rangeRequest.setRange(start, end);
+        rangeRequest.setResponseHeaders(req.getResponseHeaders());
+        rangeRequest.setSSECustomerKey(req.getSSECustomerKey());
+        rangeRequest.setGeneralProgressListener(req.getGeneralProgressListener());
+        if (eTag != null) {
+            // fails the range instead of mixing the contents of two versions of the object
+            rangeRequest.withMatchingETagConstraint(eTag);
+        }
+
+        boolean hasRetried = false;
+        for (;;) {
+            COSObject cosObject = cos.getObject(rangeRequest);
+            if (cosObject == null) {
+                throw new CosClientException("The object " + req.getKey()
+                        + " has changed since the download started");
+            }
+            if (part == 0 || download.getCosObject() == null) {
+                download.setCosObject(cosObject);
+            }
+            try {
+                writeRange(cosObject, channel, start - origStartingByte, end - start + 1);
+                break;
+            } catch (CosClientException ace) {
+                cosObject.getObjectContent().abort();
+                if (!ace.isRetryable() || hasRetried || ace.getCause() instanceof SocketException
+                        || ace.getCause() instanceof SSLProtocolException) {
+                    throw ace;
+                }
+                log.info("Retry the download of range " + start + "-" + end + " of object "
+                        + req.getKey() + " (bucket " + req.getBucketName() + ")", ace);
+                hasRetried = true;
+            }
+        }
+        synchronized (this) {
+            completedParts.set(part);
+            int[] completed = new int[completedParts.cardinality()];
+            for (int i = completedParts.nextSetBit(0), j = 0; i >= 0;
+                    i = completedParts.nextSetBit(i + 1)) {
+                completed[j++] = i;
+            }
+            download.updatePersistableTransfer(partSize, eTag, completed);
+        }
+    }
+
+    private void writeRange(COSObject cosObject, FileChannel channel, long position, long length) {
+        InputStream content = cosObject.getObjectContent();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long written = 0;
+        try {
+            int bytesRead;
+            // the content stream aborts itself once this thread is interrupted
+            while ((bytesRead = content.read(buffer)) > -1) {
+                ByteBuffer data = ByteBuffer.wrap(buffer, 0, bytesRead);
+                while (data.hasRemaining()) {
+                    written += channel.write(data, position + written);
+                }
+            }
+        } catch (IOException e) {
+            throw new CosClientException(
+                    "Unable to store object contents to disk: " + e.getMessage(), e);
+        }
+        if (written != length) {
+            throw new CosClientException("Expected " + length + " bytes at position " + position
+                    + " of file " + dstfile + " but received " + written);
+        }
+        IOUtils.closeQuietly(content, log);
+    }
+
     private static boolean testing;
 
     /**
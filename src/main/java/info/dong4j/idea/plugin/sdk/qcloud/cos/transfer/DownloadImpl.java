@@ -17,7 +17,7 @@ public class DownloadImpl extends AbstractTransfer implements Download {
     /**
      * Information to resume if the download is paused.
      */
-    private final PersistableDownload persistableDownload;
+    private volatile PersistableDownload persistableDownload;
 
     public DownloadImpl(String description, TransferProgress transferProgress,
             ProgressListenerChain progressListenerChain, COSObject cosObject,
@@ -105,6 +105,25 @@ public class DownloadImpl extends AbstractTransfer implements Download {
         }
     }
 
+    /**
+     * Records the state of a parallel download and notifies the listeners, so that a paused
+     * download only fetches the ranges that have not been written yet.
+     *
+     * @param partSize The size of each range.
+     * @param eTag The ETag of the object being downloaded.
+     * @param completedParts The indexes of the ranges written to the file.
+     */
+    void updatePersistableTransfer(long partSize, String eTag, int[] completedParts) {
+        PersistableDownload current = persistableDownload;
+        if (current == null) {
+            return;
+        }
+        persistableDownload = new PersistableDownload(current.getBucketName(), current.getKey(),
+                current.getVersionId(), current.getRange(), current.getResponseHeaders(),
+                current.getFile(), partSize, eTag, completedParts);
+        COSProgressPublisher.publishTransferPersistable(listenerChain, persistableDownload);
+    }
+
     /**
      * Returns the captured state of the download; or null if it should not be
      * captured (for security reason).
@@ -43,23 +43,49 @@ public final class PersistableDownload extends PersistableTransfer {
     @JsonProperty
     private final String file;
 
+    /**
+     * The size of each range of a parallel download, or 0 if the object is downloaded over a
+     * single connection.
+     */
+    @JsonProperty
+    private final long partSize;
+
+    /** The ETag of the object a parallel download has started with. */
+    @JsonProperty
+    private final String eTag;
+
+    /** The indexes of the ranges of a parallel download that have been written to the file. */
+    @JsonProperty
+    private final int[] completedParts;
+
     public PersistableDownload() {
         this(null, null, null, null, null, null);
     }
 
+    public PersistableDownload(String bucketName, String key, String versionId, long[] range,
+            ResponseHeaderOverrides responseHeaders, String file) {
+        this(bucketName, key, versionId, range, responseHeaders, file, 0, null, null);
+    }
+
     public PersistableDownload(
             @JsonProperty(value = "bucketName") String bucketName,
             @JsonProperty(value = "key") String key,
             @JsonProperty(value = "versionId") String versionId,
             @JsonProperty(value = "range") long[] range,
             @JsonProperty(value = "responseHeaders") ResponseHeaderOverrides responseHeaders,
-            @JsonProperty(value = "file") String file) {
+            @JsonProperty(value = "file") String file,
+            @JsonProperty(value = "partSize") long partSize,
+            @JsonProperty(value = "eTag") String eTag,
+            @JsonProperty(value = "completedParts") int[] completedParts) {
         this.bucketName = bucketName;
         this.key = key;
         this.versionId = versionId;
         this.range = range  == null ? null : range.clone();
         this.responseHeaders = responseHeaders;
         this.file = file;
+        this.partSize = partSize;
+        this.eTag = eTag;
+        this.completedParts = completedParts == null ? null : completedParts.clone();
     }
 
     /**
@@ -104,6 +130,27 @@ public final class PersistableDownload extends PersistableTransfer {
         return file;
     }
 
+    /**
+     * Returns the size of each range of a parallel download, or 0 if the download is not parallel.
+     */
+    long getPartSize() {
+        return partSize;
+    }
+
+    /**
+     * Returns the ETag of the object a parallel download has started with.
+     */
+    String getETag() {
+        return eTag;
+    }
+
+    /**
+     * Returns the indexes of the completed ranges of a parallel download.
+     */
+    int[] getCompletedParts() {
+        return completedParts == null ? new int[0] : completedParts.clone();
+    }
+
     String getPauseType() {
         return pauseType;
     }
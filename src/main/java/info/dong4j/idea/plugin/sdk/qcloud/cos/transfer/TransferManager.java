@@ -190,13 +190,19 @@ public class TransferManager {
 
     /**
      * Sets the configuration which specifies how this <code>TransferManager</code> processes
-     * requests.
+     * requests. The thread limits of the configuration are applied to the thread pool if it is an
+     * {@link AdaptiveThreadPoolExecutor}.
      *
      * @param configuration The new configuration specifying how this <code>TransferManager</code>
      *        processes requests.
      */
     public void setConfiguration(TransferManagerConfiguration configuration) {
         this.configuration = configuration;
+        if (threadPool instanceof AdaptiveThreadPoolExecutor) {
+            ((AdaptiveThreadPoolExecutor) threadPool).setThreadLimits(
+                    configuration.getMinimumTransferThreads(),
+                    configuration.getMaximumTransferThreads());
+        }
     }
 
     /**
@@ -512,6 +518,19 @@ public class TransferManager {
     private Download doDownload(final GetObjectRequest getObjectRequest, final File file,
             final TransferStateChangeListener stateListener,
             final COSProgressListener cosProgressListener, final boolean resumeExistingDownload) {
+        return doDownload(getObjectRequest, file, stateListener, cosProgressListener,
+                resumeExistingDownload, null);
+    }
+
+    /**
+     * Same as {@link #doDownload(GetObjectRequest, File, TransferStateChangeListener,
+     * COSProgressListener, boolean)}, resuming the ranges of a paused parallel download if
+     * {@code persistableDownload} holds any.
+     */
+    private Download doDownload(final GetObjectRequest getObjectRequest, final File file,
+            final TransferStateChangeListener stateListener,
+            final COSProgressListener cosProgressListener, final boolean resumeExistingDownload,
+            final PersistableDownload persistableDownload) {
         appendSingleObjectUserAgent(getObjectRequest);
         String description = "Downloading from " + getObjectRequest.getBucketName() + "/"
                 + getObjectRequest.getKey();
@@ -533,20 +552,14 @@ public class TransferManager {
 
         long startingByte = 0;
         long lastByte;
+        ObjectMetadata objectMetadata = null;
 
         long[] range = getObjectRequest.getRange();
         if (range != null && range.length == 2) {
             startingByte = range[0];
             lastByte = range[1];
         } else {
-            GetObjectMetadataRequest getObjectMetadataRequest = new GetObjectMetadataRequest(
-                    getObjectRequest.getBucketName(), getObjectRequest.getKey());
-            if (getObjectRequest.getSSECustomerKey() != null)
-                getObjectMetadataRequest.setSSECustomerKey(getObjectRequest.getSSECustomerKey());
-            if (getObjectRequest.getVersionId() != null)
-                getObjectMetadataRequest.setVersionId(getObjectRequest.getVersionId());
-            final ObjectMetadata objectMetadata = cos.getObjectMetadata(getObjectMetadataRequest);
-
+            objectMetadata = getObjectMetadata(getObjectRequest);
             lastByte = objectMetadata.getContentLength() - 1;
         }
         final long origStartingByte = startingByte;
@@ -557,6 +570,19 @@ public class TransferManager {
         long totalBytesToDownload = lastByte - startingByte + 1;
         transferProgress.setTotalBytesToTransfer(totalBytesToDownload);
 
+        boolean parallel = resumeExistingDownload
+                ? persistableDownload != null && persistableDownload.getPartSize() > 0
+                : TransferManagerUtils.isDownloadParallelizable(cos, totalBytesToDownload,
+                        configuration);
+        if (parallel) {
+            if (objectMetadata == null) {
+                objectMetadata = getObjectMetadata(getObjectRequest);
+            }
+            return doParallelDownload(getObjectRequest, file, download, transferProgress,
+                    origStartingByte, lastByte, objectMetadata.getETag(),
+                    resumeExistingDownload ? persistableDownload : null);
+        }
+
         long fileLength = -1;
         if (resumeExistingDownload) {
             if (!FileLocks.lock(file)) {
@@ -594,6 +620,60 @@ public class TransferManager {
         return download;
     }
 
+    private ObjectMetadata getObjectMetadata(GetObjectRequest getObjectRequest) {
+        GetObjectMetadataRequest getObjectMetadataRequest = new GetObjectMetadataRequest(
+                getObjectRequest.getBucketName(), getObjectRequest.getKey());
+        if (getObjectRequest.getSSECustomerKey() != null)
+            getObjectMetadataRequest.setSSECustomerKey(getObjectRequest.getSSECustomerKey());
+        if (getObjectRequest.getVersionId() != null)
+            getObjectMetadataRequest.setVersionId(getObjectRequest.getVersionId());
+        return cos.getObjectMetadata(getObjectMetadataRequest);
+    }
+
+    /**
+     * Downloads the object in byte ranges that are fetched concurrently and written to their
+     * position in the file. The ranges completed by a paused download are skipped if the object
+     * and the file are unchanged.
+     */
+    private Download doParallelDownload(final GetObjectRequest getObjectRequest, final File file,
+            final DownloadImpl download, final TransferProgress transferProgress,
+            final long startingByte, final long lastByte, final String eTag,
+            final PersistableDownload persistableDownload) {
+        long totalBytesToDownload = lastByte - startingByte + 1;
+        long partSize = configuration.getMultipartDownloadPartSize();
+        int[] completedParts = new int[0];
+        if (persistableDownload != null) {
+            if (!FileLocks.lock(file)) {
+                throw new FileLockException("Fail to lock " + file + " for resume download");
+            }
+            try {
+                if (eTag != null && eTag.equals(persistableDownload.getETag())
+                        && file.length() == totalBytesToDownload) {
+                    partSize = persistableDownload.getPartSize();
+                    completedParts = persistableDownload.getCompletedParts();
+                } else {
+                    log.info("Restarting the download of " + getObjectRequest.getKey()
+                            + ", the object or the file " + file + " changed since it was paused");
+                }
+            } finally {
+                FileLocks.unlock(file);
+            }
+        }
+        for (int part : completedParts) {
+            long partStart = startingByte + part * partSize;
+            transferProgress.updateProgress(Math.min(partSize, lastByte - partStart + 1));
+        }
+        download.updatePersistableTransfer(partSize, eTag, completedParts);
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        Future<?> future = threadPool.submit(new DownloadCallable(cos, latch, getObjectRequest,
+                download, file, startingByte, lastByte, threadPool,
+                configuration.getMaximumPartsPerTransfer(), partSize, eTag, completedParts));
+        download.setMonitor(new DownloadMonitor(download, future));
+        latch.countDown();
+        return download;
+    }
+
     /**
      * Downloads all objects in the virtual directory designated by the keyPrefix given to the
      * destination directory given. All virtual subdirectories will be downloaded recursively.
@@ -754,6 +834,85 @@ public class TransferManager {
                 metadataProvider);
     }
 
+    /**
+     * Synchronizes the virtual directory in the bucket named with the directory given, uploading
+     * only the files that are new or have changed since the last synchronization.
+     *
+     * @see #syncDirectory(String, String, File, boolean, ObjectMetadataProvider, File, boolean)
+     */
+    public MultipleFileUpload syncDirectory(String bucketName, String virtualDirectoryKeyPrefix,
+            File directory, boolean includeSubdirectories, File manifestFile,
+            boolean deleteRemovedObjects) {
+        return syncDirectory(bucketName, virtualDirectoryKeyPrefix, directory,
+                includeSubdirectories, null, manifestFile, deleteRemovedObjects);
+    }
+
+    /**
+     * Synchronizes the virtual directory in the bucket named with the directory given, uploading
+     * only the files that are new or have changed since the last synchronization.
+     * <p>
+     * The objects under the key prefix are listed one page at a time and compared with the files.
+     * A file is skipped when its object has the same length and either the manifest shows that
+     * neither the file nor the object has changed since the last synchronization, or, without a
+     * manifest entry holding an ETag, the object was last modified after the file. The manifest
+     * is updated before the uploads start; uploads that do not complete are detected by the next
+     * synchronization.
+     * </p>
+     * <p>
+     * Objects are listed and deleted in the calling thread, so this method returns once the
+     * changed files have been queued for upload.
+     * </p>
+     *
+     * @param bucketName The name of the bucket to upload objects to.
+     * @param virtualDirectoryKeyPrefix The key prefix of the virtual directory to upload to. Use
+     *        the null or empty string to upload files to the root of the bucket.
+     * @param directory The directory to upload.
+     * @param includeSubdirectories Whether to include subdirectories in the upload. If false, only
+     *        the objects directly under the key prefix are compared and deleted.
+     * @param metadataProvider A callback of type <code>ObjectMetadataProvider</code> which is used
+     *        to provide metadata for each file being uploaded.
+     * @param manifestFile The file recording the state of the last synchronization, which is
+     *        created if it does not exist. It is never uploaded, even inside the directory. If null,
+     *        files are compared by length and modification time only.
+     * @param deleteRemovedObjects Whether to delete the objects under the key prefix that no
+     *        longer have a file in the directory.
+     */
+    public MultipleFileUpload syncDirectory(String bucketName, String virtualDirectoryKeyPrefix,
+            File directory, boolean includeSubdirectories, ObjectMetadataProvider metadataProvider,
+            File manifestFile, boolean deleteRemovedObjects) {
+        if (directory == null || !directory.exists() || !directory.isDirectory()) {
+            throw new IllegalArgumentException("Must provide a directory to upload");
+        }
+        virtualDirectoryKeyPrefix = toDirectoryKeyPrefix(virtualDirectoryKeyPrefix);
+
+        List<File> files = new LinkedList<File>();
+        listFiles(directory, files, includeSubdirectories);
+
+        DirectorySync sync = new DirectorySync(cos, bucketName, virtualDirectoryKeyPrefix,
+                includeSubdirectories,
+                DirectorySyncManifest.load(manifestFile, bucketName, virtualDirectoryKeyPrefix));
+        int startingPosition = relativePathStart(directory);
+        for (File f : files) {
+            if (manifestFile != null
+                    && f.getAbsoluteFile().equals(manifestFile.getAbsoluteFile())) {
+                continue;
+            }
+            sync.addFile(virtualDirectoryKeyPrefix + relativeKey(f, startingPosition), f);
+        }
+        List<File> changedFiles = sync.findChangedFiles(deleteRemovedObjects);
+
+        if (manifestFile != null) {
+            try {
+                sync.getManifest().save(manifestFile);
+            } catch (IOException e) {
+                // The next synchronization compares without the files' last state.
+                log.warn("Unable to save the sync manifest " + manifestFile, e);
+            }
+        }
+        return uploadFileList(bucketName, virtualDirectoryKeyPrefix, directory, changedFiles,
+                metadataProvider);
+    }
+
     /**
      * Uploads all specified files to the bucket named, constructing relative keys depending on the
      * commonParentDirectory given.
@@ -803,11 +962,7 @@ public class TransferManager {
                     "Must provide a common base directory for uploaded files");
         }
 
-        if (virtualDirectoryKeyPrefix == null || virtualDirectoryKeyPrefix.length() == 0) {
-            virtualDirectoryKeyPrefix = "";
-        } else if (!virtualDirectoryKeyPrefix.endsWith("/")) {
-            virtualDirectoryKeyPrefix = virtualDirectoryKeyPrefix + "/";
-        }
+        virtualDirectoryKeyPrefix = toDirectoryKeyPrefix(virtualDirectoryKeyPrefix);
 
         /* This is the hook for adding additional progress listeners */
         ProgressListenerChain additionalListeners = new ProgressListenerChain();
@@ -829,15 +984,7 @@ public class TransferManager {
         if (files == null || files.isEmpty()) {
             multipleFileUpload.setState(TransferState.Completed);
         } else {
-            /*
-             * If the absolute path for the common/base directory does NOT end in a separator (which
-             * is the case for anything but root directories), then we know there's still a
-             * separator between the base directory and the rest of the file's path, so we increment
-             * the starting position by one.
-             */
-            int startingPosition = directory.getAbsolutePath().length();
-            if (!(directory.getAbsolutePath().endsWith(File.separator)))
-                startingPosition++;
+            int startingPosition = relativePathStart(directory);
 
             long totalSize = 0;
             for (File f : files) {
@@ -845,8 +992,7 @@ public class TransferManager {
                 if (f.isFile()) {
                     totalSize += f.length();
 
-                    String key =
-                            f.getAbsolutePath().substring(startingPosition).replaceAll("\\\\", "/");
+                    String key = relativeKey(f, startingPosition);
 
                     ObjectMetadata metadata = new ObjectMetadata();
 
@@ -876,6 +1022,42 @@ public class TransferManager {
         return multipleFileUpload;
     }
 
+    /**
+     * Returns the key prefix of a virtual directory, which is empty or ends with a slash.
+     */
+    private static String toDirectoryKeyPrefix(String virtualDirectoryKeyPrefix) {
+        if (virtualDirectoryKeyPrefix == null || virtualDirectoryKeyPrefix.length() == 0) {
+            return "";
+        } else if (!virtualDirectoryKeyPrefix.endsWith("/")) {
+            return virtualDirectoryKeyPrefix + "/";
+        }
+        return virtualDirectoryKeyPrefix;
+    }
+
+    /**
+     * Returns the position in the absolute path of a file in the directory given where its path
+     * relative to the directory starts.
+     */
+    private static int relativePathStart(File directory) {
+        /*
+         * If the absolute path for the common/base directory does NOT end in a separator (which is
+         * the case for anything but root directories), then we know there's still a separator
+         * between the base directory and the rest of the file's path, so we increment the starting
+         * position by one.
+         */
+        int startingPosition = directory.getAbsolutePath().length();
+        if (!(directory.getAbsolutePath().endsWith(File.separator)))
+            startingPosition++;
+        return startingPosition;
+    }
+
+    /**
+     * Returns the key of a file relative to its common base directory.
+     */
+    private static String relativeKey(File file, int startingPosition) {
+        return file.getAbsolutePath().substring(startingPosition).replaceAll("\\\\", "/");
+    }
+
     /**
      * Lists files in the directory given and adds them to the result list passed in, optionally
      * adding subdirectories recursively.
@@ -1204,7 +1386,7 @@ public class TransferManager {
         request.setResponseHeaders(persistableDownload.getResponseHeaders());
 
         return doDownload(request, new File(persistableDownload.getFile()), null, null,
-                APPEND_MODE);
+                APPEND_MODE, persistableDownload);
     }
 
     /**
@@ -23,6 +23,21 @@ public class TransferManagerConfiguration {
 
     /** Default minimum size of each part for multi-part copy. */
     private static final long DEFAULT_MINIMUM_COPY_PART_SIZE = 100 * MB;
+
+    /** Default size threshold for when to download an object in parallel ranges. */
+    private static final long DEFAULT_MULTIPART_DOWNLOAD_THRESHOLD = 16 * MB;
+
+    /** Default size of each range of a parallel download. */
+    private static final long DEFAULT_MULTIPART_DOWNLOAD_PART_SIZE = 8 * MB;
+
+    /** Default number of threads the adaptive transfer thread pool starts with. */
+    static final int DEFAULT_MINIMUM_TRANSFER_THREADS = 2;
+
+    /** Default number of threads the adaptive transfer thread pool may grow to. */
+    static final int DEFAULT_MAXIMUM_TRANSFER_THREADS = 8;
+
+    /** Default number of parts of a single transfer that may be in flight at the same time. */
+    private static final int DEFAULT_MAXIMUM_PARTS_PER_TRANSFER = 5;
     
     /**
      * The minimum part size for upload parts. Decreasing the minimum part size will cause multipart
@@ -57,6 +72,36 @@ public class TransferManagerConfiguration {
      * initiated.
      */
     private long multipartCopyPartSize = DEFAULT_MINIMUM_COPY_PART_SIZE;
+
+    /**
+     * The size threshold, in bytes, for when to download an object to a file in byte ranges that
+     * are fetched in parallel. Smaller objects are downloaded over a single connection.
+     */
+    private long multipartDownloadThreshold = DEFAULT_MULTIPART_DOWNLOAD_THRESHOLD;
+
+    /**
+     * The size in bytes of each range of a parallel download.
+     */
+    private long multipartDownloadPartSize = DEFAULT_MULTIPART_DOWNLOAD_PART_SIZE;
+
+    /**
+     * The number of threads an {@link AdaptiveThreadPoolExecutor} starts with and never shrinks
+     * below, even after failed requests.
+     */
+    private int minimumTransferThreads = DEFAULT_MINIMUM_TRANSFER_THREADS;
+
+    /**
+     * The number of threads an {@link AdaptiveThreadPoolExecutor} may grow to while the measured
+     * throughput keeps improving.
+     */
+    private int maximumTransferThreads = DEFAULT_MAXIMUM_TRANSFER_THREADS;
+
+    /**
+     * The maximum number of parts of one transfer uploaded or downloaded at the same time, so that
+     * a single large transfer cannot occupy every thread of the pool. A value less than 1 removes
+     * the limit.
+     */
+    private int maximumPartsPerTransfer = DEFAULT_MAXIMUM_PARTS_PER_TRANSFER;
     
     /**
      * Returns the minimum part size for upload parts. Decreasing the minimum part size causes
@@ -156,4 +201,104 @@ public class TransferManagerConfiguration {
         this.multipartCopyThreshold = multipartCopyThreshold;
     }
 
+    /**
+     * Returns the number of threads an {@link AdaptiveThreadPoolExecutor} starts with and never
+     * shrinks below.
+     *
+     * @return The minimum number of transfer threads.
+     */
+    public int getMinimumTransferThreads() {
+        return minimumTransferThreads;
+    }
+
+    /**
+     * Sets the number of threads an {@link AdaptiveThreadPoolExecutor} starts with and never
+     * shrinks below.
+     *
+     * @param minimumTransferThreads The minimum number of transfer threads, at least 1.
+     */
+    public void setMinimumTransferThreads(int minimumTransferThreads) {
+        this.minimumTransferThreads = minimumTransferThreads;
+    }
+
+    /**
+     * Returns the number of threads an {@link AdaptiveThreadPoolExecutor} may grow to while the
+     * measured throughput keeps improving.
+     *
+     * @return The maximum number of transfer threads.
+     */
+    public int getMaximumTransferThreads() {
+        return maximumTransferThreads;
+    }
+
+    /**
+     * Sets the number of threads an {@link AdaptiveThreadPoolExecutor} may grow to while the
+     * measured throughput keeps improving.
+     *
+     * @param maximumTransferThreads The maximum number of transfer threads, not less than the
+     *        minimum.
+     */
+    public void setMaximumTransferThreads(int maximumTransferThreads) {
+        this.maximumTransferThreads = maximumTransferThreads;
+    }
+
+    /**
+     * Returns the size threshold, in bytes, for when to download an object in parallel ranges.
+     *
+     * @return The size threshold for parallel downloads.
+     */
+    public long getMultipartDownloadThreshold() {
+        return multipartDownloadThreshold;
+    }
+
+    /**
+     * Sets the size threshold, in bytes, for when to download an object to a file in byte ranges
+     * that are fetched in parallel.
+     *
+     * @param multipartDownloadThreshold The size threshold for parallel downloads.
+     */
+    public void setMultipartDownloadThreshold(long multipartDownloadThreshold) {
+        this.multipartDownloadThreshold = multipartDownloadThreshold;
+    }
+
+    /**
+     * Returns the size in bytes of each range of a parallel download.
+     *
+     * @return The size of each download range.
+     */
+    public long getMultipartDownloadPartSize() {
+        return multipartDownloadPartSize;
+    }
+
+    /**
+     * Sets the size in bytes of each range of a parallel download. Smaller ranges spread a
+     * download over more connections but add a request per range.
+     *
+     * @param multipartDownloadPartSize The size of each download range.
+     */
+    public void setMultipartDownloadPartSize(long multipartDownloadPartSize) {
+        this.multipartDownloadPartSize = multipartDownloadPartSize;
+    }
+
+    /**
+     * Returns the maximum number of parts of one transfer that are uploaded at the same time.
+     *
+     * @return The maximum number of parts in flight per transfer, or a value less than 1 if
+     *         unlimited.
+     */
+    public int getMaximumPartsPerTransfer() {
+        return maximumPartsPerTransfer;
+    }
+
+    /**
+     * Sets the maximum number of parts of one transfer that are uploaded at the same time, so that
+     * a single large upload cannot occupy every thread of the pool.
+     *
+     * @param maximumPartsPerTransfer The maximum number of parts in flight per transfer, or a value
+     *        less than 1 to remove the limit.
+     */
+    public void setMaximumPartsPerTransfer(int maximumPartsPerTransfer) {
+        this.maximumPartsPerTransfer = maximumPartsPerTransfer;
+    }
+
 }
@@ -1,15 +1,18 @@
 package info.dong4j.idea.plugin.sdk.qcloud.cos.transfer;
 
+import info.dong4j.idea.plugin.sdk.qcloud.cos.COS;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.COSEncryption;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.model.CopyObjectRequest;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.model.PutObjectRequest;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.transfer.Transfer.TransferState;
 
 import java.io.*;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static info.dong4j.idea.plugin.sdk.qcloud.cos.internal.Constants.MAXIMUM_UPLOAD_PARTS;
+import static info.dong4j.idea.plugin.sdk.qcloud.cos.internal.Constants.MB;
 
 
 /**
@@ -17,22 +20,39 @@ import static info.dong4j.idea.plugin.sdk.qcloud.cos.internal.Constants.MAXIMUM_
  */
 public class TransferManagerUtils {
 
+    /** Parts of a stream upload larger than this are not buffered in memory. */
+    private static final long MAXIMUM_BUFFERED_PART_SIZE = 64 * MB;
+
     /**
-     * Returns a new thread pool configured with the default settings.
+     * Returns a new thread pool configured with the default settings. The pool adapts its number
+     * of threads to the measured transfer throughput, see {@link AdaptiveThreadPoolExecutor}.
      *
      * @return A new thread pool configured with the default settings.
      */
     public static ThreadPoolExecutor createDefaultExecutorService() {
+        return createDefaultExecutorService(new TransferManagerConfiguration());
+    }
+
+    /**
+     * Returns a new adaptive thread pool using the thread limits of the given configuration.
+     *
+     * @param configuration Configuration containing the minimum and maximum number of threads.
+     * @return A new thread pool adapting its number of threads to the transfer throughput.
+     */
+    public static AdaptiveThreadPoolExecutor createDefaultExecutorService(
+            TransferManagerConfiguration configuration) {
         ThreadFactory threadFactory = new ThreadFactory() {
-            private int threadCount = 1;
+            private final AtomicInteger threadCount = new AtomicInteger(1);
 
             public Thread newThread(Runnable r) {
                 Thread thread = new Thread(r);
-                thread.setName("cos-transfer-manager-worker-" + threadCount++);
+                thread.setName("cos-transfer-manager-worker-" + threadCount.getAndIncrement());
+                thread.setDaemon(true);
                 return thread;
             }
         };
-        return (ThreadPoolExecutor)Executors.newFixedThreadPool(1, threadFactory);
+        return new AdaptiveThreadPoolExecutor(configuration.getMinimumTransferThreads(),
+                configuration.getMaximumTransferThreads(), threadFactory);
     }
 
     /**
@@ -48,14 +68,56 @@ public class TransferManagerUtils {
      *         uploads.
      */
     public static boolean isUploadParallelizable(final PutObjectRequest putObjectRequest, final boolean isUsingEncryption) {
-        // Each uploaded part in an encrypted upload depends on the encryption context
-        // from the previous upload, so we cannot parallelize encrypted upload parts.
-        if (isUsingEncryption) return false;
-
-        // Otherwise, if there's a file, we can process the uploads concurrently.
+        // Parts of an encrypted upload are encrypted at their offset in the object,
+        // so they no longer depend on the encryption context of the previous part.
+        // If there's a file, we can process the uploads concurrently.
         return (getRequestFile(putObjectRequest) != null);
     }
 
+    /**
+     * Returns true if the parts of the input stream of the specified upload request can be read
+     * ahead into memory and uploaded in parallel. The input stream itself can only be read
+     * sequentially, so each part is buffered before it is uploaded.
+     *
+     * @param putObjectRequest
+     *            The request to check.
+     * @param isUsingEncryption
+     *            True if the upload is an encrypted upload, otherwise false.
+     * @param partSize
+     *            The size of each buffered part.
+     *
+     * @return True if the input stream of this request can be uploaded in
+     *         parallel buffered parts.
+     */
+    public static boolean isStreamUploadParallelizable(final PutObjectRequest putObjectRequest,
+            final boolean isUsingEncryption, final long partSize) {
+        return getRequestFile(putObjectRequest) == null
+                && putObjectRequest.getInputStream() != null
+                && partSize <= MAXIMUM_BUFFERED_PART_SIZE;
+    }
+
+    /**
+     * Returns true if an object of the given size should be downloaded in byte ranges that are
+     * fetched in parallel.
+     *
+     * @param cos
+     *            The client the object is downloaded with.
+     * @param contentLength
+     *            The number of bytes to download.
+     * @param configuration
+     *            The configuration of the transfer manager.
+     *
+     * @return True if the download should use parallel ranged requests.
+     */
+    public static boolean isDownloadParallelizable(final COS cos, final long contentLength,
+            final TransferManagerConfiguration configuration) {
+        // ranges of a client-side encrypted object cannot be decrypted on their own
+        if (cos instanceof COSEncryption) return false;
+
+        return contentLength >= configuration.getMultipartDownloadThreshold()
+                && contentLength > configuration.getMultipartDownloadPartSize();
+    }
+
     /**
      * Returns the size of the data in this request, otherwise -1 if the content
      * length is unknown.
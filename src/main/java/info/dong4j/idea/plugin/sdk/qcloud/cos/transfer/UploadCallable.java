@@ -30,10 +30,16 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
 
 import static info.dong4j.idea.plugin.sdk.qcloud.cos.event.SDKProgressPublisher.publishProgress;
 
@@ -165,8 +171,15 @@ public class UploadCallable implements Callable<UploadResult> {
                     new UploadPartRequestFactory(origReq, multipartUploadId, optimalPartSize);
 
             if (TransferManagerUtils.isUploadParallelizable(origReq, isUsingEncryption)) {
-                captureUploadStateIfPossible();
-                uploadPartsInParallel(requestFactory, multipartUploadId);
+                // an encrypted upload cannot be resumed without its encryption context
+                if (!isUsingEncryption) {
+                    captureUploadStateIfPossible();
+                }
+                uploadPartsInParallel(requestFactory, multipartUploadId, isUsingEncryption);
+                return null;
+            } else if (TransferManagerUtils.isStreamUploadParallelizable(origReq, isUsingEncryption,
+                    optimalPartSize)) {
+                uploadStreamPartsInParallel(requestFactory, isUsingEncryption);
                 return null;
             } else {
                 return uploadPartsInSeries(requestFactory);
@@ -261,22 +274,138 @@ public class UploadCallable implements Callable<UploadResult> {
      * Submits a callable for each part to upload to our thread pool and records its corresponding
      * Future.
      */
-    private void uploadPartsInParallel(UploadPartRequestFactory requestFactory, String uploadId) {
+    private void uploadPartsInParallel(UploadPartRequestFactory requestFactory, String uploadId,
+            boolean isUsingEncryption) throws Exception {
 
         Map<Integer, PartSummary> partNumbers = identifyExistingPartsForResume(uploadId);
+        // parts beyond the per-transfer limit wait here instead of in the shared queue
+        Executor partExecutor =
+                new BoundedTransferExecutor(threadPool, configuration.getMaximumPartsPerTransfer());
 
-        while (requestFactory.hasMoreRequests()) {
-            if (threadPool.isShutdown())
-                throw new CancellationException("TransferManager has been shutdown");
-            UploadPartRequest request = requestFactory.getNextUploadPartRequest();
-            if (partNumbers.containsKey(request.getPartNumber())) {
-                PartSummary summary = partNumbers.get(request.getPartNumber());
-                eTagsToSkip.add(new PartETag(request.getPartNumber(), summary.getETag()));
-                transferProgress.updateProgress(summary.getSize());
-                continue;
+        try {
+            while (requestFactory.hasMoreRequests()) {
+                if (threadPool.isShutdown())
+                    throw new CancellationException("TransferManager has been shutdown");
+                UploadPartRequest request = requestFactory.getNextUploadPartRequest();
+                if (partNumbers.containsKey(request.getPartNumber())) {
+                    PartSummary summary = partNumbers.get(request.getPartNumber());
+                    eTagsToSkip.add(new PartETag(request.getPartNumber(), summary.getETag()));
+                    transferProgress.updateProgress(summary.getSize());
+                    continue;
+                }
+                if (isUsingEncryption && request.isLastPart()) {
+                    awaitSubmittedParts();
+                }
+                FutureTask<PartETag> part =
+                        new FutureTask<PartETag>(new UploadPartCallable(cos, request, threadPool));
+                futures.add(part);
+                partExecutor.execute(part);
+            }
+        } catch (Exception e) {
+            for (Future<PartETag> future : futures) {
+                future.cancel(true);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the input stream ahead into part-sized buffers and uploads the buffered parts
+     * concurrently. At most {@link #getMaximumBufferedParts()} buffers exist at a time; when all
+     * of them are in use, reading waits for the oldest part to finish, or uploads it in this
+     * thread if it has not started yet.
+     */
+    private void uploadStreamPartsInParallel(UploadPartRequestFactory requestFactory,
+            boolean isUsingEncryption) throws Exception {
+        Executor partExecutor =
+                new BoundedTransferExecutor(threadPool, configuration.getMaximumPartsPerTransfer());
+        final Queue<byte[]> buffers = new ConcurrentLinkedQueue<byte[]>();
+        int maximumBuffers = getMaximumBufferedParts();
+        int allocatedBuffers = 0;
+        int oldestPart = 0;
+
+        try {
+            while (requestFactory.hasMoreRequests()) {
+                if (threadPool.isShutdown())
+                    throw new CancellationException("TransferManager has been shutdown");
+                byte[] buffer = buffers.poll();
+                while (buffer == null && allocatedBuffers >= maximumBuffers) {
+                    // backpressure: every buffer belongs to a part that is not uploaded yet
+                    awaitPart(futures.get(oldestPart++));
+                    buffer = buffers.poll();
+                }
+                if (buffer == null) {
+                    buffer = new byte[(int) requestFactory.getOptimalPartSize()];
+                    allocatedBuffers++;
+                }
+
+                final byte[] partBuffer = buffer;
+                UploadPartRequest request = requestFactory.getNextUploadPartRequest(partBuffer);
+                if (isUsingEncryption && request.isLastPart()) {
+                    awaitSubmittedParts();
+                }
+                final UploadPartCallable uploadPart =
+                        new UploadPartCallable(cos, request, threadPool);
+                FutureTask<PartETag> part = new FutureTask<PartETag>(new Callable<PartETag>() {
+                    @Override
+                    public PartETag call() throws Exception {
+                        try {
+                            return uploadPart.call();
+                        } finally {
+                            buffers.add(partBuffer);
+                        }
+                    }
+                });
+                futures.add(part);
+                partExecutor.execute(part);
             }
-            futures.add(threadPool.submit(new UploadPartCallable(cos, request)));
+        } catch (Exception e) {
+            for (Future<PartETag> future : futures) {
+                future.cancel(true);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for all submitted parts. The last part of an encrypted upload carries the
+     * authentication tag computed from the ciphertext of all other parts, so it is only submitted
+     * once they have been uploaded, and never waits for a part that has not started.
+     */
+    private void awaitSubmittedParts() throws Exception {
+        for (Future<PartETag> future : futures) {
+            awaitPart(future);
+        }
+    }
+
+    /**
+     * Waits for a part, uploading it in this thread if no pool thread has picked it up.
+     */
+    private void awaitPart(Future<PartETag> part) throws Exception {
+        if (part instanceof RunnableFuture && !part.isDone()) {
+            ((RunnableFuture<?>) part).run();
+        }
+        try {
+            part.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of part buffers a stream upload may hold, one for each part that may be
+     * in flight.
+     */
+    private int getMaximumBufferedParts() {
+        int maximumParts = configuration.getMaximumPartsPerTransfer();
+        if (maximumParts < 1) {
+            maximumParts = configuration.getMaximumTransferThreads();
         }
+        return Math.max(maximumParts, 1);
     }
 
     private Map<Integer, PartSummary> identifyExistingPartsForResume(String uploadId) {
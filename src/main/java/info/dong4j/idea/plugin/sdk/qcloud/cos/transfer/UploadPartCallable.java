@@ -5,18 +5,44 @@ import info.dong4j.idea.plugin.sdk.qcloud.cos.model.PartETag;
 import info.dong4j.idea.plugin.sdk.qcloud.cos.model.UploadPartRequest;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 public class UploadPartCallable implements Callable<PartETag> {
     private final COS cos;
     private final UploadPartRequest request;
+    /** Receives the throughput of this part, may be null. */
+    private final AdaptiveThreadPoolExecutor threadPool;
 
     public UploadPartCallable(COS cos, UploadPartRequest request) {
+        this(cos, request, null);
+    }
+
+    /**
+     * @param threadPool The thread pool running this part, reported to if it adapts to the
+     *        transfer throughput.
+     */
+    public UploadPartCallable(COS cos, UploadPartRequest request, ExecutorService threadPool) {
         this.cos = cos;
         this.request = request;
+        this.threadPool = threadPool instanceof AdaptiveThreadPoolExecutor
+                ? (AdaptiveThreadPoolExecutor) threadPool
+                : null;
     }
 
     public PartETag call() throws Exception {
-        PartETag partETag = cos.uploadPart(request).getPartETag();
+        PartETag partETag;
+        try {
+            partETag = cos.uploadPart(request).getPartETag();
+        } catch (Exception e) {
+            // cancelled parts say nothing about the connection
+            if (threadPool != null && !Thread.currentThread().isInterrupted()) {
+                threadPool.recordFailure();
+            }
+            throw e;
+        }
+        if (threadPool != null) {
+            threadPool.recordTransfer(request.getPartSize());
+        }
         return partETag;
     }
 }
@@ -0,0 +1,102 @@
+package info.dong4j.idea.plugin.sdk.qcloud.cos.utils;
+
+import java.util.zip.Checksum;
+
+/**
+ * CRC-64 as defined by ECMA-182, in the reflected form COS uses for the
+ * {@code x-cos-hash-crc64ecma} response header. Eight bytes are processed per step with eight
+ * lookup tables ("slicing-by-8"), which is considerably cheaper than calculating an MD5 digest.
+ */
+public class CRC64 implements Checksum {
+    /** The ECMA-182 polynomial, bit-reversed. */
+    private static final long POLY = 0xC96C5795D7870F42L;
+
+    private static final long[][] TABLE = new long[8][256];
+
+    static {
+        for (int n = 0; n < 256; n++) {
+            long crc = n;
+            for (int k = 0; k < 8; k++) {
+                crc = (crc & 1) == 1 ? (crc >>> 1) ^ POLY : crc >>> 1;
+            }
+            TABLE[0][n] = crc;
+        }
+        for (int n = 0; n < 256; n++) {
+            long crc = TABLE[0][n];
+            for (int k = 1; k < 8; k++) {
+                crc = TABLE[0][(int) (crc & 0xff)] ^ (crc >>> 8);
+                TABLE[k][n] = crc;
+            }
+        }
+    }
+
+    private long value;
+
+    public CRC64() {
+    }
+
+    /**
+     * Continues a checksum from a previously returned {@link #getValue()}.
+     */
+    public CRC64(long value) {
+        this.value = value;
+    }
+
+    @Override
+    public void update(int b) {
+        long crc = ~value;
+        crc = TABLE[0][(int) ((crc ^ b) & 0xff)] ^ (crc >>> 8);
+        value = ~crc;
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        long crc = ~value;
+        while (len >= 8) {
+            crc ^= (b[off] & 0xffL)
+                    | (b[off + 1] & 0xffL) << 8
+                    | (b[off + 2] & 0xffL) << 16
+                    | (b[off + 3] & 0xffL) << 24
+                    | (b[off + 4] & 0xffL) << 32
+                    | (b[off + 5] & 0xffL) << 40
+                    | (b[off + 6] & 0xffL) << 48
+                    | (b[off + 7] & 0xffL) << 56;
+            crc = TABLE[7][(int) (crc & 0xff)]
+                    ^ TABLE[6][(int) ((crc >>> 8) & 0xff)]
+                    ^ TABLE[5][(int) ((crc >>> 16) & 0xff)]
+                    ^ TABLE[4][(int) ((crc >>> 24) & 0xff)]
+                    ^ TABLE[3][(int) ((crc >>> 32) & 0xff)]
+                    ^ TABLE[2][(int) ((crc >>> 40) & 0xff)]
+                    ^ TABLE[1][(int) ((crc >>> 48) & 0xff)]
+                    ^ TABLE[0][(int) (crc >>> 56)];
+            off += 8;
+            len -= 8;
+        }
+        while (len-- > 0) {
+            crc = TABLE[0][(int) ((crc ^ b[off++]) & 0xff)] ^ (crc >>> 8);
+        }
+        value = ~crc;
+    }
+
+    public void update(byte[] b) {
+        update(b, 0, b.length);
+    }
+
+    @Override
+    public long getValue() {
+        return value;
+    }
+
+    @Override
+    public void reset() {
+        value = 0;
+    }
+
+    /**
+     * Returns the checksum as unsigned decimal, the format of the {@code x-cos-hash-crc64ecma}
+     * header.
+     */
+    public String getUnsignedValue() {
+        return Long.toUnsignedString(value);
+    }
+}
@@ -2,9 +2,6 @@ package info.dong4j.idea.plugin.sdk.qcloud.cos.utils;
 
 import info.dong4j.idea.plugin.sdk.qcloud.cos.internal.Constants;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import java.io.*;
 import java.net.*;
 
@@ -12,36 +9,43 @@ public class UrlEncoderUtils {
 
     private static final String PATH_DELIMITER = "/";
     private static final String ENCODE_DELIMITER = "%2F";
-    private static final Logger log = LoggerFactory.getLogger(UrlEncoderUtils.class);
 
-    public static String encode(String originUrl) {
-        try {
-            return URLEncoder.encode(originUrl, Constants.DEFAULT_ENCODING).replace("+", "%20").replace("*", "%2A")
-                    .replace("%7E", "~");
-        } catch (UnsupportedEncodingException e) {
-            log.error("URLEncoder error, exception: {}", e);
+    /** RFC 3986 unreserved characters, which are never encoded */
+    private static final boolean[] UNRESERVED = new boolean[128];
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            UNRESERVED[c] = true;
         }
-        return null;
+        for (char c = 'A'; c <= 'Z'; c++) {
+            UNRESERVED[c] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            UNRESERVED[c] = true;
+        }
+        UNRESERVED['-'] = true;
+        UNRESERVED['_'] = true;
+        UNRESERVED['.'] = true;
+        UNRESERVED['~'] = true;
+    }
+
+    public static String encode(String originUrl) {
+        return encode(originUrl, new StringBuilder(originUrl.length() + 16)).toString();
+    }
+
+    /**
+     * Percent-encodes the value as UTF-8 into the builder in a single pass. Everything except the
+     * RFC 3986 unreserved characters is encoded, which matches
+     * {@code URLEncoder.encode(...).replace("+", "%20").replace("*", "%2A").replace("%7E", "~")}.
+     */
+    public static StringBuilder encode(String originUrl, StringBuilder out) {
+        return encode(originUrl, 0, originUrl.length(), false, out);
     }
 
     // encode路径, 不包括分隔符
     public static String encodeEscapeDelimiter(String urlPath) {
-        StringBuilder pathBuilder = new StringBuilder();
-        String[] pathSegmentsArr = urlPath.split(PATH_DELIMITER);
-
-        boolean isFirstSegMent = true;
-        for (String pathSegment : pathSegmentsArr) {
-            if (isFirstSegMent) {
-                pathBuilder.append(encode(pathSegment));
-                isFirstSegMent = false;
-            } else {
-                pathBuilder.append(PATH_DELIMITER).append(encode(pathSegment));
-            }
-        }
-        if (urlPath.endsWith(PATH_DELIMITER)) {
-            pathBuilder.append(PATH_DELIMITER);
-        }
-        return pathBuilder.toString();
+        return encode(urlPath, 0, urlPath.length(), true, new StringBuilder(urlPath.length() + 16)).toString();
     }
 
     // encode url path, replace the continuous slash with %2F except the first slash
@@ -49,25 +53,61 @@ public class UrlEncoderUtils {
         if(urlPath.length() <= 1) {
             return urlPath;
         }
+        return encodeUrlPath(urlPath, new StringBuilder(urlPath.length() + 16)).toString();
+    }
 
-        StringBuilder pathBuilder = new StringBuilder();
-        pathBuilder.append(PATH_DELIMITER);
-        int start = 1, end = 1;
-        while(end < urlPath.length()) {
+    /**
+     * Appends the encoded url path to the builder. The first character is always written as the
+     * leading slash, and a slash that follows another slash is written as %2F.
+     */
+    public static StringBuilder encodeUrlPath(String urlPath, StringBuilder out) {
+        if(urlPath.length() <= 1) {
+            return out.append(urlPath);
+        }
+        out.append(PATH_DELIMITER);
+        int start = 1;
+        for (int end = 1; end < urlPath.length(); end++) {
             if('/' == urlPath.charAt(end)) {
-                if('/' == urlPath.charAt(end - 1)) {
-                    pathBuilder.append(ENCODE_DELIMITER);
-                } else {
-                    pathBuilder.append(encode(urlPath.substring(start, end))).append(PATH_DELIMITER);
-                }
+                encode(urlPath, start, end, false, out);
+                out.append('/' == urlPath.charAt(end - 1) ? ENCODE_DELIMITER : PATH_DELIMITER);
                 start = end + 1;
             }
-            end++;
         }
-        if(start < end) {
-            pathBuilder.append(encode(urlPath.substring(start, end)));
+        return encode(urlPath, start, urlPath.length(), false, out);
+    }
+
+    private static StringBuilder encode(String value, int start, int end, boolean keepDelimiter, StringBuilder out) {
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (UNRESERVED[c] || (keepDelimiter && c == '/')) {
+                    out.append(c);
+                } else {
+                    appendEscaped(out, c);
+                }
+            } else if (c < 0x800) {
+                appendEscaped(out, 0xC0 | (c >> 6));
+                appendEscaped(out, 0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                appendEscaped(out, 0xF0 | (codePoint >> 18));
+                appendEscaped(out, 0x80 | ((codePoint >> 12) & 0x3F));
+                appendEscaped(out, 0x80 | ((codePoint >> 6) & 0x3F));
+                appendEscaped(out, 0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // 与 URLEncoder 一致, 不成对的 surrogate 按 '?' 编码
+                appendEscaped(out, '?');
+            } else {
+                appendEscaped(out, 0xE0 | (c >> 12));
+                appendEscaped(out, 0x80 | ((c >> 6) & 0x3F));
+                appendEscaped(out, 0x80 | (c & 0x3F));
+            }
         }
-        return pathBuilder.toString();
+        return out;
+    }
+
+    private static void appendEscaped(StringBuilder out, int b) {
+        out.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
     }
 
     /**
@@ -63,8 +63,16 @@ public class MikState {
     /** 是否压缩图片 */
     private boolean compress = false;
     private int compressBeforeUploadOfPercent = 60;
-    /** 图片备份 */
+    /** 图片备份: 同时上传到镜像图床, 镜像地址保存到 sidecar 文件 */
     private boolean backup = false;
+    /** 镜像图床 (CloudEnum index, 逗号分隔), 为空时使用所有已通过测试的图床 */
+    private String backupCloudTypes = "";
+    /** 主图床熔断或上传失败时, 使用故障转移图床, 默认关闭, 避免图片在用户不知情时上传到其他图床 */
+    private boolean failover = false;
+    /** 故障转移图床 (CloudEnum index, 逗号分隔, 按顺序使用), 为空时使用所有已通过测试的图床 */
+    private String failoverCloudTypes = "";
+    /** 对冲上传: 上传超过最近耗时的 p95 仍未完成时再发起一次上传, 使用先完成的结果 */
+    private boolean hedgeUpload = false;
     /** 拷贝图片到目录 */
     private boolean copyToDir = false;
     /** 上传图片并替换 */
@@ -81,6 +89,8 @@ public class MikState {
     private boolean rename = false;
     /** 文件名后缀 */
     private int suffixIndex = SuffixEnum.FILE_NAME.index;
+    /** 后台初始化 client 后预热连接 (DNS 解析, TLS 握手, HEAD bucket) */
+    private boolean clientWarmUp = true;
 
     public MikState() {
         this.aliyunOssState = new AliyunOssState();
@@ -25,6 +25,9 @@
 
 package info.dong4j.idea.plugin.settings;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
@@ -43,5 +46,14 @@ import lombok.NoArgsConstructor;
 public class WeiboOssState extends OssState {
     private String userName = "";
     private String password = "";
+    /** 主账号的 cookie */
     private String cookies = "";
+    /** 主账号 cookie 的登录时间, 0 表示未知 */
+    private long cookieTime = 0;
+    /** 其他账号 <用户名, DES 加密后的密码>, 与主账号一起组成 session pool 轮流上传 */
+    private Map<String, String> accounts = new LinkedHashMap<>(2);
+    /** 其他账号的 cookie <用户名, cookie> */
+    private Map<String, String> accountCookies = new LinkedHashMap<>(2);
+    /** 其他账号 cookie 的登录时间 <用户名, 毫秒时间戳> */
+    private Map<String, Long> accountCookieTimes = new LinkedHashMap<>(2);
 }
\ No newline at end of file
@@ -29,6 +29,7 @@ import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.actionSystem.DataContext;
 import com.intellij.openapi.actionSystem.PlatformDataKeys;
 import com.intellij.openapi.actionSystem.Presentation;
+import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -37,6 +38,7 @@ import com.intellij.psi.util.PsiUtilBase;
 
 import info.dong4j.idea.plugin.content.ImageContents;
 import info.dong4j.idea.plugin.content.MikContents;
+import info.dong4j.idea.plugin.index.ImageReferenceCache;
 
 import org.jetbrains.annotations.NotNull;
 
@@ -75,10 +77,14 @@ public final class ActionUtils {
         // 如果光标选中了编辑器
         final Editor editor = PlatformDataKeys.EDITOR.getData(dataContext);
         if (null != editor) {
+            // markdown 文件直接使用 document 上缓存的判断结果, update() 调用频繁, 避免每次都获取 PsiFile
+            if (!type.equals(ImageContents.IMAGE_TYPE_NAME)) {
+                Document document = editor.getDocument();
+                presentation.setEnabled(ImageReferenceCache.getInstance().isMarkdownDocument(document) && document.isWritable());
+                return;
+            }
             final PsiFile file = PsiUtilBase.getPsiFileInEditor(editor, project);
-
-            boolean isImageType = type.equals(ImageContents.IMAGE_TYPE_NAME) ? ImageUtils.isValidForFile(file) : MarkdownUtils.isValidForFile(file);
-            presentation.setEnabled(isImageType);
+            presentation.setEnabled(ImageUtils.isValidForFile(file));
             return;
         }
 
@@ -40,6 +40,8 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -53,6 +55,8 @@ import lombok.extern.slf4j.Slf4j;
  */
 @Slf4j
 public final class ClientUtils {
+    /** 缓存各个 client 的 getInstance 方法, 避免每次反射查找 */
+    private static final Map<CloudEnum, Method> FACTORY_METHODS = new ConcurrentHashMap<>(12);
 
     static {
         try {
@@ -118,40 +122,46 @@ public final class ClientUtils {
      */
     @Nullable
     public static OssClient getClient(int cloudType) {
-        return OssClient.INSTANCES.get(OssState.getCloudType(cloudType));
+        return getClient(OssState.getCloudType(cloudType));
     }
 
     /**
-     * 通过枚举获取 client 实例, 如果没有会从 subClassMap 中获取对应的 sub class name
-     * 如果为 null, 则需要通过反射初始化, 避免通过 'test' 按钮失效
+     * 通过枚举获取 client 实例, 每次都调用 getInstance 静态方法,
+     * 以便配置修改后获取到新的 client (client 由 OssClientCache 按配置快照缓存)
      *
      * @param cloudEnum the cloud enum
      * @return the instance             有可能返回 null
      */
     @Nullable
     public static OssClient getClient(@NotNull CloudEnum cloudEnum) {
-        OssClient client = OssClient.INSTANCES.get(cloudEnum);
-        if(client == null){
+        Method method = FACTORY_METHODS.computeIfAbsent(cloudEnum, ClientUtils::findFactoryMethod);
+        if (method != null) {
             try {
-                // 如果没有加载 class, 则执行 static 代码块
-                Class<?> clz = Class.forName(cloudEnum.getFeature());
+                return (OssClient) method.invoke(null);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                log.trace("", e);
+            }
+        }
+        return OssClient.INSTANCES.get(cloudEnum);
+    }
 
-                Client clientAn = clz.getAnnotation(Client.class);
-                // 被 @Client 标记过的 client 才执行 getInstance 静态方法
-                if (clientAn != null) {
-                    try {
-                        Method method = clz.getMethod("getInstance");
-                        method.invoke(null);
-                        client = OssClient.INSTANCES.get(cloudEnum);
-                    } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
-                        log.trace("", e);
-                    }
-                }
-            } catch (ClassNotFoundException e) {
-                e.printStackTrace();
+    /**
+     * 被 @Client 标记过的 client 才执行 getInstance 静态方法
+     *
+     * @param cloudEnum the cloud enum
+     * @return the method
+     */
+    @Nullable
+    private static Method findFactoryMethod(@NotNull CloudEnum cloudEnum) {
+        try {
+            Class<?> clz = Class.forName(cloudEnum.getFeature());
+            if (clz.getAnnotation(Client.class) != null) {
+                return clz.getMethod("getInstance");
             }
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            log.trace("", e);
         }
-        return client;
+        return null;
     }
 
     /**
@@ -0,0 +1,173 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 dong4j <dong4j@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package info.dong4j.idea.plugin.util;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.concurrency.AppExecutorUtil;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 迁移图床时预先下载网络图片.
+ * 最多同时下载 {@link #MAX_CONCURRENCY} 张, 共用 OkHttp 连接池 (同一图床的图片复用连接),
+ * 图片边下载边写入临时文件, 超过 {@link #MAX_SIZE} 的图片放弃下载.
+ * 上传时按顺序等待各自的下载结果, 先下载完成的图片可以先上传.
+ * 取消 future 时中止下载 (关闭连接和流), 任务取消或 chain 结束时通过 {@link #cancel(Collection)} 取消未使用的下载</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-18 14:30
+ */
+@Slf4j
+public final class ImageDownloader {
+    /** 同时下载的图片数 */
+    public static final int MAX_CONCURRENCY = 4;
+    /** 单张图片最大字节数 */
+    public static final long MAX_SIZE = 20L * 1024 * 1024;
+    private static final int BUFFER_SIZE = 8192;
+    private static final String TEMP_FILE_PREFIX = "mik-download-";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    private static final OkHttpClient HTTP_CLIENT = new OkHttpClient.Builder()
+        .connectTimeout(10, TimeUnit.SECONDS)
+        .readTimeout(30, TimeUnit.SECONDS)
+        .connectionPool(new ConnectionPool(MAX_CONCURRENCY, 1, TimeUnit.MINUTES))
+        .build();
+    private static final ExecutorService EXECUTOR =
+        AppExecutorUtil.createBoundedApplicationPoolExecutor("MarkdownImageKit Downloader", MAX_CONCURRENCY);
+
+    private ImageDownloader() {
+    }
+
+    /**
+     * 在后台下载图片到临时文件 (退出 IDE 时删除), 失败时 future 异常完成.
+     * 取消 future 时未开始的下载不再执行, 进行中的下载被中止
+     *
+     * @param url the url
+     * @return 下载完成的临时文件
+     */
+    @NotNull
+    public static CompletableFuture<File> download(@NotNull String url) {
+        CompletableFuture<File> future = new CompletableFuture<>();
+        Call call;
+        try {
+            call = HTTP_CLIENT.newCall(new Request.Builder().url(url).get().build());
+        } catch (IllegalArgumentException e) {
+            // 不是合法的 http 地址
+            future.completeExceptionally(e);
+            return future;
+        }
+        future.whenComplete((file, e) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        EXECUTOR.execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                File file = downloadToFile(url, call);
+                if (!future.complete(file)) {
+                    // 下载完成前已被取消
+                    FileUtil.delete(file);
+                }
+            } catch (IOException | RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 取消未完成的下载, 删除已完成但未使用的临时文件
+     *
+     * @param downloads the downloads
+     */
+    public static void cancel(@NotNull Collection<CompletableFuture<File>> downloads) {
+        for (CompletableFuture<File> download : downloads) {
+            if (!download.cancel(true) && !download.isCompletedExceptionally()) {
+                // 已上传的临时文件在上传后已删除
+                FileUtil.delete(download.join());
+            }
+        }
+        downloads.clear();
+    }
+
+    /**
+     * 不缓存整张图片, 按块写入临时文件, 同时检查大小
+     *
+     * @param url  the url
+     * @param call the call
+     * @return the file
+     * @throws IOException 下载失败或被取消
+     */
+    @NotNull
+    private static File downloadToFile(@NotNull String url, @NotNull Call call) throws IOException {
+        try (Response response = call.execute()) {
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                throw new IOException("download " + url + " failed: " + response.code());
+            }
+            if (body.contentLength() > MAX_SIZE) {
+                throw new IOException("image too large: " + url + " (" + body.contentLength() + " bytes)");
+            }
+            File file = FileUtil.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX, true);
+            try (InputStream in = body.byteStream(); OutputStream out = new FileOutputStream(file)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long total = 0;
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    total += read;
+                    if (total > MAX_SIZE) {
+                        throw new IOException("image too large: " + url);
+                    }
+                    out.write(buffer, 0, read);
+                }
+            } catch (IOException e) {
+                FileUtil.delete(file);
+                throw e;
+            }
+            log.trace("downloaded {} -> {}", url, file);
+            return file;
+        }
+    }
+}
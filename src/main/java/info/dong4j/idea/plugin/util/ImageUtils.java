@@ -36,6 +36,7 @@ import com.siyeh.ig.portability.mediatype.ImageMediaType;
 import info.dong4j.idea.plugin.content.ImageContents;
 import info.dong4j.idea.plugin.content.MikContents;
 import info.dong4j.idea.plugin.enums.FileType;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.event.ProgressInputStream;
 
 import net.coobird.thumbnailator.Thumbnails;
 
@@ -65,6 +66,9 @@ import java.awt.image.ImageProducer;
 import java.awt.image.RGBImageFilter;
 import java.io.*;
 import java.net.*;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -424,7 +428,7 @@ public final class ImageUtils {
      * Description: 判断OSS服务文件上传时文件的contentType
      *
      * @param fileName the file name
-     * @return String string
+     * @return 不是 gif/png/jpg 或没有后缀时返回 ""
      */
     public static String getImageType(String fileName) {
         String extension = getFileExtension(fileName);
@@ -445,11 +449,12 @@ public final class ImageUtils {
      * Get file suffix string.
      *
      * @param fileName the file name
-     * @return the string
+     * @return 包含 . 的后缀, 没有后缀时返回 ""
      */
     @NotNull
     public static String getFileExtension(@NotNull String fileName) {
-        return fileName.substring(fileName.lastIndexOf("."));
+        int index = fileName.lastIndexOf(".");
+        return index < 0 ? "" : fileName.substring(index);
     }
 
     /**
@@ -566,4 +571,77 @@ public final class ImageUtils {
     public static boolean isImageFile(VirtualFile file) {
         return ImageContents.IMAGE_TYPE_NAME.equals(file.getFileType().getName());
     }
+
+    /**
+     * 创建 MD5 digest, 用于图片去重和内容哈希命名
+     *
+     * @return the message digest
+     */
+    @NotNull
+    public static MessageDigest newMd5Digest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 计算文件内容的 MD5
+     *
+     * @param file the file
+     * @return 小写 16 进制字符串
+     * @throws IOException the io exception
+     */
+    @NotNull
+    public static String md5Hex(@NotNull File file) throws IOException {
+        MessageDigest digest = newMd5Digest();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * 字节数组转小写 16 进制字符串
+     *
+     * @param bytes the bytes
+     * @return the string
+     */
+    @NotNull
+    public static String toHex(@NotNull byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 不读取数据获取剩余字节数, 只支持文件流和内存流 (包括统计进度的包装流)
+     *
+     * @param inputStream the input stream
+     * @return 无法获取时返回 -1
+     */
+    public static long getLength(@Nullable InputStream inputStream) {
+        try {
+            if (inputStream instanceof FileInputStream) {
+                FileChannel channel = ((FileInputStream) inputStream).getChannel();
+                return channel.size() - channel.position();
+            }
+            if (inputStream instanceof ByteArrayInputStream) {
+                return inputStream.available();
+            }
+            if (inputStream instanceof ProgressInputStream) {
+                return getLength(((ProgressInputStream) inputStream).getWrappedInputStream());
+            }
+        } catch (IOException e) {
+            log.trace("", e);
+        }
+        return -1;
+    }
 }
@@ -28,15 +28,17 @@ package info.dong4j.idea.plugin.util;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.actionSystem.DataContext;
 import com.intellij.openapi.actionSystem.PlatformDataKeys;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.project.ProjectUtil;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.psi.PsiFile;
 
 import info.dong4j.idea.plugin.content.ImageContents;
 import info.dong4j.idea.plugin.content.MarkdownContents;
@@ -44,6 +46,8 @@ import info.dong4j.idea.plugin.content.MikContents;
 import info.dong4j.idea.plugin.entity.MarkdownImage;
 import info.dong4j.idea.plugin.enums.ImageLocationEnum;
 import info.dong4j.idea.plugin.enums.ImageMarkEnum;
+import info.dong4j.idea.plugin.index.ImageReferenceCache;
+import info.dong4j.idea.plugin.index.MarkdownImageIndex;
 
 import org.apache.commons.lang.StringUtils;
 import org.jetbrains.annotations.Contract;
@@ -53,8 +57,10 @@ import org.jetbrains.annotations.Nullable;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -69,37 +75,6 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public final class MarkdownUtils {
 
-
-    /**
-     * 通过文件验证是否为 markdown 且是否可写
-     *
-     * @param file the file
-     * @return the boolean
-     */
-    @Contract("null -> false")
-    static boolean isValidForFile(PsiFile file) {
-        if (file == null) {
-            return false;
-        }
-
-        if (!isMardownFile(file)) {
-            return false;
-        }
-        // 不可写时按钮不可用
-        return file.isWritable();
-    }
-
-    /**
-     * Is mardown file boolean.
-     *
-     * @param file the file
-     * @return the boolean
-     */
-    private static boolean isMardownFile(PsiFile file) {
-        return file.getFileType().getName().equals(MarkdownContents.MARKDOWN_TYPE_NAME)
-               || file.getName().endsWith(MarkdownContents.MARKDOWN_FILE_SUFIX);
-    }
-
     /**
      * Is mardown file boolean.
      *
@@ -174,17 +149,9 @@ public final class MarkdownUtils {
             if (lineText.contains(ImageContents.HTML_TAG_A_START) && lineText.contains(ImageContents.HTML_TAG_A_END)) {
                 markdownImage.setLineStartOffset(lineText.indexOf(ImageContents.HTML_TAG_A_START));
                 markdownImage.setLineEndOffset(lineText.indexOf(ImageContents.HTML_TAG_A_END) + 2);
-                // 解析标签类型
-                if (lineText.contains(ImageContents.LARG_IMAGE_MARK_ID)) {
-                    markdownImage.setImageMarkType(ImageMarkEnum.LARGE_PICTURE);
-                } else if (lineText.contains(ImageContents.COMMON_IMAGE_MARK_ID)) {
-                    markdownImage.setImageMarkType(ImageMarkEnum.COMMON_PICTURE);
-                } else {
-                    markdownImage.setImageMarkType(ImageMarkEnum.CUSTOM);
-                }
-            } else {
-                markdownImage.setImageMarkType(ImageMarkEnum.ORIGINAL);
             }
+            // 解析标签类型
+            markdownImage.setImageMarkType(getImageMarkType(lineText));
             // 截取 markdown image 标签
             markdownImage.setOriginalMark(lineText.substring(markdownImage.getLineStartOffset(), markdownImage.getLineEndOffset()));
 
@@ -212,11 +179,14 @@ public final class MarkdownUtils {
                 String imagename = path.substring(path.lastIndexOf(File.separator) + 1);
 
                 Project project = ProjectUtil.guessProjectForFile(virtualFile);
-                VirtualFile imageVirtualFile = UploadUtils.searchVirtualFileByName(project, imagename);
+                VirtualFile imageVirtualFile = ImageReferenceCache.getInstance().findImage(project, imagename);
 
                 markdownImage.setExtension(imageVirtualFile.getExtension());
                 markdownImage.setInputStream(imageVirtualFile.getInputStream());
                 markdownImage.setVirtualFile(imageVirtualFile);
+                if (imageVirtualFile.isInLocalFileSystem()) {
+                    markdownImage.setSourceFile(VfsUtilCore.virtualToIoFile(imageVirtualFile));
+                }
                 markdownImage.setImageName(imagename);
             }
             return markdownImage;
@@ -226,6 +196,25 @@ public final class MarkdownUtils {
         return null;
     }
 
+    /**
+     * 解析标签类型, 以 `<a` 开始, 以 `a>` 结束的为 html 标签
+     *
+     * @param lineText the line text
+     * @return the image mark enum
+     */
+    @NotNull
+    public static ImageMarkEnum getImageMarkType(@NotNull String lineText) {
+        if (lineText.contains(ImageContents.HTML_TAG_A_START) && lineText.contains(ImageContents.HTML_TAG_A_END)) {
+            if (lineText.contains(ImageContents.LARG_IMAGE_MARK_ID)) {
+                return ImageMarkEnum.LARGE_PICTURE;
+            } else if (lineText.contains(ImageContents.COMMON_IMAGE_MARK_ID)) {
+                return ImageMarkEnum.COMMON_PICTURE;
+            }
+            return ImageMarkEnum.CUSTOM;
+        }
+        return ImageMarkEnum.ORIGINAL;
+    }
+
     /**
      * 是否为有效的 markdown image 标签
      *
@@ -234,37 +223,56 @@ public final class MarkdownUtils {
      * @return the boolean
      */
     public static boolean illegalImageMark(Project project, String mark) {
+        String imageName = getLegalImageName(mark);
+        if (imageName == null) {
+            return true;
+        }
+
+        // 如果是 url, 则不在本地查询文件
+        if (isNetworkImageMark(mark)) {
+            return false;
+        }
+
+        // 严格验证图片文件是否存在且是图片
+        return !ImageReferenceCache.getInstance().isImageFile(project, imageName);
+    }
+
+    /**
+     * 只通过文本验证 markdown image 标签, 不查询本地文件
+     *
+     * @param mark the mark
+     * @return 图片名, 标签无效时返回 null
+     */
+    @Nullable
+    public static String getLegalImageName(String mark) {
         // 整行数据是否有 markdown 标签
         int[] offset = resolveText(mark);
         if (offset == null) {
-            return true;
+            return null;
         }
 
         // ![]() path 不能为空
         String path = getImagePath(mark);
-        if(StringUtils.isBlank(path)){
-            return true;
+        if (StringUtils.isBlank(path)) {
+            return null;
         }
 
         // 图片名不能为空
         String imageName = getImageName(mark);
         if (StringUtils.isBlank(imageName)) {
-            return true;
-        }
-
-        // 如果是 url, 则不在本地查询文件
-        if(path.startsWith(ImageContents.IMAGE_LOCATION)){
-            return false;
-        }
-
-        // 严格验证图片文件是否存在
-        VirtualFile virtualFiles = UploadUtils.searchVirtualFileByName(project, imageName);
-        if (virtualFiles == null) {
-            return true;
+            return null;
         }
+        return imageName;
+    }
 
-        // 文件不是图片
-        return !ImageContents.IMAGE_TYPE_NAME.equals(virtualFiles.getFileType().getName());
+    /**
+     * 标签中的图片是否为网络图片
+     *
+     * @param mark the mark     必须是正确的 markdown image 标签
+     * @return the boolean
+     */
+    public static boolean isNetworkImageMark(String mark) {
+        return getImagePath(mark).startsWith(ImageContents.IMAGE_LOCATION);
     }
 
     /**
@@ -276,7 +284,18 @@ public final class MarkdownUtils {
     @NotNull
     @Contract(pure = true)
     public static String getImageName(String mark) {
-        String path = getImagePath(mark);
+        return getImageNameByPath(getImagePath(mark));
+    }
+
+    /**
+     * 从图片路径中获取图片名称
+     *
+     * @param path the path     本地路径或者 url
+     * @return the string
+     */
+    @NotNull
+    @Contract(pure = true)
+    public static String getImageNameByPath(String path) {
         if(StringUtils.isBlank(path)){
             return "";
         }
@@ -301,7 +320,7 @@ public final class MarkdownUtils {
      * @return the string
      */
     @NotNull
-    private static String getImagePath(String mark){
+    public static String getImagePath(String mark){
         if (StringUtils.isBlank(mark)) {
             return "";
         }
@@ -385,6 +404,23 @@ public final class MarkdownUtils {
         return markdownFiles;
     }
 
+    /**
+     * 使用 {@link MarkdownImageIndex} 过滤掉没有图片引用的 markdown 文件, indexing 时不过滤
+     *
+     * @param project       the project
+     * @param markdownFiles the markdown files
+     */
+    private static void filterDocumentsWithImages(@NotNull Project project, List<VirtualFile> markdownFiles) {
+        if (markdownFiles.isEmpty() || !MarkdownImageIndex.isAvailable(project)) {
+            return;
+        }
+        Set<VirtualFile> documentsWithImages = ApplicationManager.getApplication().runReadAction(
+            (Computable<Set<VirtualFile>>) () -> new HashSet<>(MarkdownImageIndex.getDocumentsWithImages(project)));
+        // 只有被索引的文件 (project content 中) 才能通过索引判断
+        ProjectFileIndex fileIndex = ProjectFileIndex.getInstance(project);
+        markdownFiles.removeIf(virtualFile -> !documentsWithImages.contains(virtualFile) && fileIndex.isInContent(virtualFile));
+    }
+
     /**
      * 获取需要处理的 markdown 信息
      * Document --> 需要处理的文档
@@ -422,6 +458,8 @@ public final class MarkdownUtils {
                     // 如果是目录, 则递归获取所有 markdown 文件
                     if (file.isDirectory()) {
                         List<VirtualFile> markdownFiles = MarkdownUtils.recursivelyMarkdownFile(file);
+                        // 通过索引排除没有图片引用的文件, 避免加载和逐行解析
+                        filterDocumentsWithImages(project, markdownFiles);
                         for (VirtualFile virtualFile : markdownFiles) {
                             Document documentFromVirtualFile = FileDocumentManager.getInstance().getDocument(virtualFile);
                             waitingProcessMap.put(documentFromVirtualFile, MarkdownUtils.getImageInfoFromFiles(project, documentFromVirtualFile, virtualFile));
@@ -0,0 +1,138 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 dong4j <dong4j@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package info.dong4j.idea.plugin.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 镜像图床地址的 sidecar 文件.
+ * 文档中只写入主图床地址, 镜像地址按 {主图床 url: {图床名: 镜像 url}} 保存到 markdown 文件旁边的 json 文件中,
+ * 不是来自 markdown 文件的图片 (右键直接上传图片) 保存到项目根目录下.</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-17 10:05
+ */
+@Slf4j
+public final class MirrorManifestUtils {
+    /** sidecar 文件后缀 */
+    public static final String MANIFEST_SUFFIX = ".mirrors.json";
+    /** 项目级 sidecar 文件名 */
+    private static final String PROJECT_MANIFEST = "markdown-image-kit" + MANIFEST_SUFFIX;
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+    private static final Type MANIFEST_TYPE = new TypeToken<LinkedHashMap<String, LinkedHashMap<String, String>>>() {}.getType();
+
+    private MirrorManifestUtils() {
+    }
+
+    /**
+     * 获取 document 对应的 sidecar 文件
+     *
+     * @param project  the project
+     * @param document the document
+     * @return 不是本地文件且没有项目目录时返回 null
+     */
+    @Nullable
+    public static File getManifestFile(@Nullable Project project, @NotNull Document document) {
+        VirtualFile virtualFile = FileDocumentManager.getInstance().getFile(document);
+        if (virtualFile != null && virtualFile.isInLocalFileSystem()) {
+            File file = VfsUtilCore.virtualToIoFile(virtualFile);
+            return new File(file.getParentFile(), file.getName() + MANIFEST_SUFFIX);
+        }
+        if (project != null && project.getBasePath() != null) {
+            return new File(project.getBasePath(), PROJECT_MANIFEST);
+        }
+        return null;
+    }
+
+    /**
+     * 合并写入镜像地址, 已存在的记录会被覆盖
+     *
+     * @param manifest the manifest
+     * @param mirrors  <主图床 url, <图床名, 镜像 url>>
+     * @return 是否写入成功
+     */
+    public static synchronized boolean write(@NotNull File manifest, @NotNull Map<String, Map<String, String>> mirrors) {
+        if (mirrors.isEmpty()) {
+            return false;
+        }
+        Map<String, LinkedHashMap<String, String>> content = read(manifest);
+        for (Map.Entry<String, Map<String, String>> entry : mirrors.entrySet()) {
+            content.computeIfAbsent(entry.getKey(), k -> new LinkedHashMap<>(4)).putAll(entry.getValue());
+        }
+        try {
+            Files.write(manifest.toPath(), GSON.toJson(content, MANIFEST_TYPE).getBytes(StandardCharsets.UTF_8));
+            return true;
+        } catch (IOException e) {
+            log.trace("write mirror manifest error: {}", manifest, e);
+        }
+        return false;
+    }
+
+    /**
+     * 读取已有的镜像地址, 文件不存在或者格式错误时返回空 map
+     *
+     * @param manifest the manifest
+     * @return the map
+     */
+    @NotNull
+    public static Map<String, LinkedHashMap<String, String>> read(@NotNull File manifest) {
+        if (manifest.isFile()) {
+            try {
+                String json = new String(Files.readAllBytes(manifest.toPath()), StandardCharsets.UTF_8);
+                Map<String, LinkedHashMap<String, String>> content = GSON.fromJson(json, MANIFEST_TYPE);
+                if (content != null) {
+                    return content;
+                }
+            } catch (IOException | JsonParseException e) {
+                log.trace("read mirror manifest error: {}", manifest, e);
+            }
+        }
+        return new LinkedHashMap<>(16);
+    }
+}
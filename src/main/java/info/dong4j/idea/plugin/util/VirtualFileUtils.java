@@ -0,0 +1,96 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 dong4j <dong4j@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package info.dong4j.idea.plugin.util;
+
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.newvfs.RefreshQueue;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 只刷新插件读写过的文件或目录, 代替全局的 syncRefresh</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-13 11:02
+ */
+@Slf4j
+public final class VirtualFileUtils {
+
+    /**
+     * 异步刷新插件写入的文件
+     * 新建的文件还不在 VFS 中, 所以刷新最近一个已存在的上级目录 (非递归, 新目录的子文件会在访问时加载)
+     *
+     * @param files    the files    写入的文件
+     * @param onFinish the on finish 刷新完成后执行, 可为 null
+     */
+    public static void refreshAsync(@NotNull Collection<File> files, @Nullable Runnable onFinish) {
+        Set<VirtualFile> refreshFiles = new LinkedHashSet<>();
+        LocalFileSystem fileSystem = LocalFileSystem.getInstance();
+        for (File file : files) {
+            File current = file;
+            VirtualFile virtualFile = null;
+            while (current != null && (virtualFile = fileSystem.findFileByIoFile(current)) == null) {
+                current = current.getParentFile();
+            }
+            if (virtualFile != null) {
+                refreshFiles.add(virtualFile);
+            }
+        }
+        refreshAsync(refreshFiles, false, onFinish);
+    }
+
+    /**
+     * 异步刷新指定的文件或目录
+     *
+     * @param files     the files
+     * @param recursive the recursive
+     * @param onFinish  the on finish 刷新完成后执行, 可为 null
+     */
+    public static void refreshAsync(@NotNull Collection<VirtualFile> files, boolean recursive, @Nullable Runnable onFinish) {
+        if (files.isEmpty()) {
+            if (onFinish != null) {
+                onFinish.run();
+            }
+            return;
+        }
+        log.trace("refresh files = {}", files);
+        VirtualFile[] refreshFiles = files.toArray(VirtualFile.EMPTY_ARRAY);
+        VfsUtil.markDirty(recursive, true, refreshFiles);
+        RefreshQueue.getInstance().refresh(true, recursive, onFinish, refreshFiles);
+    }
+}
@@ -1,14 +1,20 @@
 package info.dong4j.idea.plugin.weibo;
 
 import info.dong4j.idea.plugin.settings.MikPersistenComponent;
+import info.dong4j.idea.plugin.settings.WeiboOssState;
 import info.dong4j.idea.plugin.weibo.io.CookieCacheable;
 
 import org.apache.commons.lang.StringUtils;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * <p>Description: </p>
+ * <p>Description: 每个微博账号一个 cookie 上下文, 主账号的 cookie 保存在 {@link WeiboOssState#getCookies()},
+ * 其他账号保存在 {@link WeiboOssState#getAccountCookies()}.
+ * cookie 和获取时间一起保存在 volatile 字段中, 读取不加锁</p>
  *
  * @author echisan
  * @update dong4j
@@ -16,29 +22,26 @@ import lombok.extern.slf4j.Slf4j;
  */
 @Slf4j
 public class CookieContext implements CookieCacheable {
-    private static final Object LOCK = new Object();
-    private static volatile CookieContext context = null;
-    private volatile String cookie = null;
+    private static final Map<String, CookieContext> CONTEXTS = new ConcurrentHashMap<>(4);
+    /** 升级前保存的 cookie 没有登录时间, 视为很早之前登录, 第一次上传时在后台刷新 */
+    private static final long UNKNOWN_TIME = 1;
+
+    private final String username;
+    /** null 表示还未从持久化配置中读取 */
+    private volatile Cookie cookie = null;
 
-    private CookieContext() {
+    private CookieContext(String username) {
+        this.username = username;
     }
 
     /**
-     * Gets instance.
+     * 获取账号对应的 cookie 上下文
      *
+     * @param username the username
      * @return the instance
      */
-    public static CookieContext getInstance() {
-        if (context == null) {
-            synchronized (LOCK) {
-                if (context == null) {
-                    context = new CookieContext();
-                } else {
-                    return context;
-                }
-            }
-        }
-        return context;
+    public static CookieContext getInstance(String username) {
+        return CONTEXTS.computeIfAbsent(StringUtils.defaultString(username), CookieContext::new);
     }
 
     /**
@@ -46,15 +49,24 @@ public class CookieContext implements CookieCacheable {
      *
      * @return the cookie
      */
-    synchronized String getCOOKIE() {
-        if (StringUtils.isNotBlank(context.cookie)) {
-            return context.cookie;
-        }
-        String cookie = context.readCookie();
-        if (StringUtils.isBlank(cookie)) {
-            return null;
+    String getCOOKIE() {
+        Cookie current = cookie;
+        if (current == null) {
+            long time = readCookieTime();
+            current = new Cookie(readCookie(), time > 0 ? time : UNKNOWN_TIME);
+            cookie = current;
         }
-        return cookie;
+        return StringUtils.isBlank(current.value) ? null : current.value;
+    }
+
+    /**
+     * 当前 cookie 的获取时间
+     *
+     * @return 没有 cookie 时返回 0
+     */
+    long getCookieTime() {
+        Cookie current = cookie;
+        return current == null || StringUtils.isBlank(current.value) ? 0 : current.time;
     }
 
     /**
@@ -62,24 +74,79 @@ public class CookieContext implements CookieCacheable {
      *
      * @param cookie the cookie
      */
-    synchronized void setCOOKIE(String cookie) {
-        context.cookie = cookie;
+    void setCOOKIE(String cookie) {
+        long now = System.currentTimeMillis();
+        this.cookie = new Cookie(cookie, now);
         saveCookie(cookie);
+        saveCookieTime(now);
     }
 
     @Override
     public void saveCookie(String cookie) {
-        MikPersistenComponent.getInstance().getState().getWeiboOssState().setCookies(cookie);
+        WeiboOssState state = MikPersistenComponent.getInstance().getState().getWeiboOssState();
+        if (username.equals(state.getUserName())) {
+            state.setCookies(cookie);
+        } else {
+            state.getAccountCookies().put(username, cookie);
+        }
     }
 
     @Override
     public String readCookie() {
-        return MikPersistenComponent.getInstance().getState().getWeiboOssState().getCookies();
+        WeiboOssState state = MikPersistenComponent.getInstance().getState().getWeiboOssState();
+        if (username.equals(state.getUserName())) {
+            return state.getCookies();
+        }
+        return state.getAccountCookies().get(username);
     }
 
     @Override
     public void deleteCookie() {
-        context.cookie = null;
+        cookie = new Cookie(null, 0);
         saveCookie("");
+        saveCookieTime(0);
+    }
+
+    /**
+     * 保存 cookie 的登录时间, 重启 IDE 后仍按登录时间判断是否需要刷新
+     *
+     * @param time 0 表示没有 cookie
+     */
+    private void saveCookieTime(long time) {
+        WeiboOssState state = MikPersistenComponent.getInstance().getState().getWeiboOssState();
+        if (username.equals(state.getUserName())) {
+            state.setCookieTime(time);
+        } else if (time > 0) {
+            state.getAccountCookieTimes().put(username, time);
+        } else {
+            state.getAccountCookieTimes().remove(username);
+        }
+    }
+
+    /**
+     * 读取持久化的登录时间
+     *
+     * @return 未知时返回 0
+     */
+    private long readCookieTime() {
+        WeiboOssState state = MikPersistenComponent.getInstance().getState().getWeiboOssState();
+        if (username.equals(state.getUserName())) {
+            return state.getCookieTime();
+        }
+        Long time = state.getAccountCookieTimes().get(username);
+        return time == null ? 0 : time;
+    }
+
+    /**
+     * cookie 和获取时间, 一起替换
+     */
+    private static final class Cookie {
+        private final String value;
+        private final long time;
+
+        private Cookie(String value, long time) {
+            this.value = value;
+            this.time = time;
+        }
     }
 }
@@ -0,0 +1,144 @@
+package info.dong4j.idea.plugin.weibo;
+
+import com.intellij.util.concurrency.AppExecutorUtil;
+
+import info.dong4j.idea.plugin.weibo.exception.LoginFailedException;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>Description: 多个微博账号组成的 session pool.
+ * 每次上传选择正在上传数最少的账号, 数量相同时轮流使用, 避免单个账号被限流;
+ * 登录超过 {@link #REFRESH_AFTER} 后在后台重新登录, 刷新期间继续使用旧的 cookie</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @date 2019-07-19 10:30
+ */
+@Slf4j
+public class WbpSessionPool {
+    /** 登录超过该时间后在后台刷新 cookie */
+    static final long REFRESH_AFTER = TimeUnit.HOURS.toMillis(12);
+
+    private final List<Session> sessions;
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * Instantiates a new Wbp session pool.
+     *
+     * @param requests 每个账号一个 upload request, 第一个为主账号; 同一账号只使用第一个 (同一账号共用 cookie)
+     */
+    public WbpSessionPool(@NotNull List<WbpUploadRequest> requests) {
+        if (requests.isEmpty()) {
+            throw new IllegalArgumentException("至少需要一个微博账号!");
+        }
+        this.sessions = new ArrayList<>(requests.size());
+        Set<String> usernames = new HashSet<>(requests.size());
+        for (WbpUploadRequest request : requests) {
+            if (usernames.add(request.getUsername())) {
+                sessions.add(new Session(request));
+            } else {
+                log.trace("ignore duplicate weibo account: {}", request.getUsername());
+            }
+        }
+    }
+
+    /**
+     * 账号数
+     *
+     * @return the int
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * 使用当前最空闲的账号上传
+     *
+     * @param image the image
+     * @return the upload response
+     * @throws IOException the io exception
+     */
+    public UploadResponse upload(File image) throws IOException {
+        Session session = acquire();
+        try {
+            session.refreshIfNeeded();
+            return session.request.upload(image);
+        } finally {
+            session.inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * 从轮转位置开始选择正在上传数最少的账号并占用
+     *
+     * @return the session
+     */
+    @NotNull
+    private Session acquire() {
+        int size = sessions.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        Session selected = sessions.get(start);
+        for (int i = 1; i < size; i++) {
+            Session session = sessions.get((start + i) % size);
+            if (session.inFlight.get() < selected.inFlight.get()) {
+                selected = session;
+            }
+        }
+        selected.inFlight.incrementAndGet();
+        return selected;
+    }
+
+    /**
+     * 账号 session 和正在上传数
+     */
+    private static final class Session {
+        private final WbpUploadRequest request;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Session(WbpUploadRequest request) {
+            this.request = request;
+        }
+
+        /**
+         * cookie 快过期时在后台重新登录, 同一账号同时只刷新一次
+         */
+        private void refreshIfNeeded() {
+            long cookieTime = request.getCookieTime();
+            if (cookieTime == 0
+                || System.currentTimeMillis() - cookieTime < REFRESH_AFTER
+                || !refreshing.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                AppExecutorUtil.getAppExecutorService().execute(() -> {
+                    try {
+                        request.refresh();
+                        log.trace("refresh weibo session: {}", request.getUsername());
+                    } catch (IOException | LoginFailedException e) {
+                        log.trace("refresh weibo session error: {}", request.getUsername(), e);
+                    } finally {
+                        refreshing.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // IDE 关闭时线程池不再接受任务, 下次上传时再刷新
+                refreshing.set(false);
+                log.trace("refresh weibo session rejected: {}", request.getUsername(), e);
+            }
+        }
+    }
+}
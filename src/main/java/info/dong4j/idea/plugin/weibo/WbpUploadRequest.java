@@ -43,17 +43,47 @@ import static java.net.HttpURLConnection.HTTP_OK;
 public class WbpUploadRequest implements UploadRequest {
     private static final Set<String> IMAGE_EXTENSION = new HashSet<>(3);
     /** 重连1次, cookies 过期后自动获取 cookie */
-    private static AtomicInteger tryLoginCount = new AtomicInteger(1);
+    private final AtomicInteger tryLoginCount = new AtomicInteger(1);
     private WbpHttpRequest wbpHttpRequest;
     private volatile String preLoginResult;
     private String username;
     private String password;
+    /** 每个账号使用自己的 cookie, 不同账号的登录互不阻塞 */
+    private final CookieContext cookieContext;
 
     WbpUploadRequest(WbpHttpRequest wbpHttpRequest, String username, String password) {
         this.wbpHttpRequest = wbpHttpRequest;
         initImageExtensionSet();
         this.username = username;
         this.password = password;
+        this.cookieContext = CookieContext.getInstance(username);
+    }
+
+    /**
+     * Gets username.
+     *
+     * @return the username
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * 当前 cookie 的获取时间, 用于在过期前刷新
+     *
+     * @return 没有 cookie 时返回 0
+     */
+    public long getCookieTime() {
+        return cookieContext.getCookieTime();
+    }
+
+    /**
+     * 重新登录获取新的 cookie
+     *
+     * @throws IOException the io exception
+     */
+    public void refresh() throws IOException {
+        login();
     }
 
     private void initImageExtensionSet() {
@@ -179,7 +209,7 @@ public class WbpUploadRequest implements UploadRequest {
             log.trace("登陆成功,cookie:--->\n\n" + cookie + "\n");
             log.info("登陆成功！获取cookie成功!");
             // 存入cookie
-            CookieContext.getInstance().setCOOKIE(cookie);
+            cookieContext.setCOOKIE(cookie);
         } else {
             throw new LoginFailedException("login failed,reason: " + wbpHttpResponse.getBody());
         }
@@ -222,16 +252,20 @@ public class WbpUploadRequest implements UploadRequest {
     }
 
     private void checkLogin() throws IOException, LoginFailedException {
-        CookieContext instance = CookieContext.getInstance();
-        if (StringUtils.isBlank(instance.getCOOKIE())) {
-            login();
+        if (StringUtils.isBlank(cookieContext.getCOOKIE())) {
+            synchronized (this) {
+                // 同一账号并发上传时只登录一次
+                if (StringUtils.isBlank(cookieContext.getCOOKIE())) {
+                    login();
+                }
+            }
         }
     }
 
     private synchronized boolean tryReLogin() throws LoginFailedException {
         // 先判断是否已经到了冷却时间
         if (tryLoginCount.getAndAdd(1) < 2) {
-            CookieContext.getInstance().deleteCookie();
+            cookieContext.deleteCookie();
             return true;
         }
         // 将重登状态重设为0
@@ -260,7 +294,7 @@ public class WbpUploadRequest implements UploadRequest {
     private Map<String, String> getUploadHeader() {
         Map<String, String> header = new HashMap<>(4);
         header.put("Host", "picupload.service.weibo.com");
-        header.put("Cookie", CookieContext.getInstance().getCOOKIE());
+        header.put("Cookie", cookieContext.getCOOKIE());
         header.put("Origin", "https://weibo.com/");
         header.put("Referer", "https://weibo.com/");
         return header;
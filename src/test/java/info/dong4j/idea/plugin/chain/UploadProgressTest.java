@@ -0,0 +1,64 @@
+package info.dong4j.idea.plugin.chain;
+
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.util.io.FileUtil;
+
+import org.junit.Test;
+
+import java.io.*;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 并发上传的字节数汇总</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-19 16:05
+ */
+public class UploadProgressTest {
+    @Test
+    public void test() throws IOException {
+        UploadProgress progress = new UploadProgress(new EmptyProgressIndicator(), 0, 1, () -> 0L);
+        progress.addTotal(40 * 1024);
+        assertEquals(0, progress.getFraction(), 0.0001);
+
+        try (InputStream inputStream = progress.wrap(new ByteArrayInputStream(new byte[10 * 1024]))) {
+            FileUtil.loadBytes(inputStream);
+        }
+        assertEquals(0.25, progress.getFraction(), 0.0001);
+
+        try (InputStream inputStream = progress.wrap(new ByteArrayInputStream(new byte[50 * 1024]))) {
+            FileUtil.loadBytes(inputStream);
+        }
+        assertEquals(1, progress.getFraction(), 0.0001);
+    }
+
+    /**
+     * 同一张图片的多次上传只统计最远的读取位置
+     */
+    @Test
+    public void sameImage() throws IOException {
+        UploadProgress progress = new UploadProgress(new EmptyProgressIndicator(), 0, 1, () -> 0L);
+        progress.addTotal(64 * 1024);
+        UploadProgress.ImageProgress image = progress.newImage();
+
+        // 第一次上传读取一半后 reset 重新读取 (ProgressInputStream 每 8K 通知一次)
+        try (InputStream first = image.wrap(new ByteArrayInputStream(new byte[32 * 1024]))) {
+            first.mark(32 * 1024);
+            first.read(new byte[16 * 1024]);
+            assertEquals(0.25, progress.getFraction(), 0.0001);
+            first.reset();
+            assertEquals(0.25, progress.getFraction(), 0.0001);
+            first.read(new byte[8 * 1024]);
+            assertEquals(0.25, progress.getFraction(), 0.0001);
+        }
+
+        // 对冲上传读完整张图片
+        try (InputStream hedge = image.wrap(new ByteArrayInputStream(new byte[32 * 1024]))) {
+            FileUtil.loadBytes(hedge);
+        }
+        assertEquals(0.5, progress.getFraction(), 0.0001);
+    }
+}
@@ -0,0 +1,131 @@
+package info.dong4j.idea.plugin.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 对冲上传的结果选择和落后一方的中止</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-18 10:40
+ */
+public class HedgedUploaderTest {
+    private static final byte[] CONTENT = new byte[] {1, 2, 3, 4};
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 第一次上传在等待时间内完成, 不发起对冲
+     */
+    @Test
+    public void fastSuccess() {
+        AtomicInteger hedges = new AtomicInteger();
+        String url = HedgedUploader.upload(executor, CONTENT,
+                                           inputStream -> read(inputStream) == CONTENT.length ? "first" : "",
+                                           inputStream -> {
+                                               hedges.incrementAndGet();
+                                               return "hedge";
+                                           },
+                                           1000);
+        assertEquals("first", url);
+        assertEquals(0, hedges.get());
+    }
+
+    /**
+     * 第一次上传卡住, 对冲上传先完成, 第一次上传的流被中止, 再读取时失败
+     */
+    @Test(timeout = 10000)
+    public void hedgeWins() throws InterruptedException {
+        CountDownLatch firstDone = new CountDownLatch(1);
+        AtomicBoolean readAfterAbortFailed = new AtomicBoolean();
+        String url = HedgedUploader.upload(executor, CONTENT,
+                                           inputStream -> {
+                                               try {
+                                                   inputStream.read();
+                                                   // 模拟卡住的连接, 直到被中止
+                                                   while (!HedgedUploader.isAborted(inputStream)) {
+                                                       sleep(10);
+                                                   }
+                                                   inputStream.read();
+                                                   return "first";
+                                               } catch (IOException e) {
+                                                   readAfterAbortFailed.set(true);
+                                                   return "";
+                                               } finally {
+                                                   firstDone.countDown();
+                                               }
+                                           },
+                                           inputStream -> read(inputStream) == CONTENT.length ? "hedge" : "",
+                                           50);
+        assertEquals("hedge", url);
+        assertTrue(firstDone.await(5, TimeUnit.SECONDS));
+        assertTrue(readAfterAbortFailed.get());
+    }
+
+    /**
+     * 两次上传都失败
+     */
+    @Test(timeout = 10000)
+    public void bothFail() {
+        AtomicInteger attempts = new AtomicInteger();
+        String url = HedgedUploader.upload(executor, CONTENT,
+                                           inputStream -> {
+                                               attempts.incrementAndGet();
+                                               sleep(200);
+                                               return "";
+                                           },
+                                           inputStream -> {
+                                               attempts.incrementAndGet();
+                                               throw new IllegalStateException("upload error");
+                                           },
+                                           50);
+        assertEquals("", url);
+        assertEquals(2, attempts.get());
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    private static int read(InputStream inputStream) {
+        int count = 0;
+        try {
+            while (inputStream.read() != -1) {
+                count++;
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+        return count;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package info.dong4j.idea.plugin.client;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 最近上传每 KB 耗时的分位数, 按图片大小换算</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-18 10:30
+ */
+public class LatencyTrackerTest {
+    private static final long SMALL = LatencyTracker.MIN_NORMALIZED_BYTES;
+
+    /**
+     * 样本不足时不计算, 窗口满后覆盖最早的样本
+     */
+    @Test
+    public void test() {
+        LatencyTracker tracker = new LatencyTracker();
+        for (int i = 1; i < LatencyTracker.MIN_SAMPLES; i++) {
+            tracker.record(i * 10, SMALL);
+        }
+        // 样本不足
+        assertEquals(-1, tracker.percentile(HedgedUploader.HEDGE_PERCENTILE, SMALL));
+
+        // 10, 20, ..., 100 乱序记录
+        tracker.record(100, SMALL);
+        assertEquals(10, tracker.percentile(0, SMALL));
+        assertEquals(50, tracker.percentile(0.5, SMALL));
+        assertEquals(100, tracker.percentile(HedgedUploader.HEDGE_PERCENTILE, SMALL));
+        assertEquals(100, tracker.percentile(1, SMALL));
+
+        // 窗口满后覆盖最早的样本
+        for (int i = 0; i < LatencyTracker.WINDOW_SIZE; i++) {
+            tracker.record(1000 + i, SMALL);
+        }
+        assertEquals(1000, tracker.percentile(0, SMALL));
+        assertEquals(1024, tracker.percentile(0.5, SMALL));
+        assertEquals(1047, tracker.percentile(HedgedUploader.HEDGE_PERCENTILE, SMALL));
+    }
+
+    /**
+     * 小图片的耗时按最小大小计算; 大图片的等待时间按大小放大, 不会总是触发对冲
+     */
+    @Test
+    public void size() {
+        LatencyTracker tracker = new LatencyTracker();
+        for (int i = 0; i < LatencyTracker.MIN_SAMPLES; i++) {
+            // 粘贴的小图片和未知大小的图片
+            tracker.record(100, i % 2 == 0 ? 1024 : -1);
+        }
+        assertEquals(100, tracker.percentile(HedgedUploader.HEDGE_PERCENTILE, 1024));
+        assertEquals(100, tracker.percentile(HedgedUploader.HEDGE_PERCENTILE, SMALL));
+        assertEquals(1000, tracker.percentile(HedgedUploader.HEDGE_PERCENTILE, 10 * SMALL));
+
+        // 大图片的样本换算为小图片的等待时间
+        LatencyTracker large = new LatencyTracker();
+        for (int i = 0; i < LatencyTracker.MIN_SAMPLES; i++) {
+            large.record(1600, 16 * SMALL);
+        }
+        assertEquals(100, large.percentile(HedgedUploader.HEDGE_PERCENTILE, 1024));
+        assertEquals(3200, large.percentile(HedgedUploader.HEDGE_PERCENTILE, 32 * SMALL));
+    }
+}
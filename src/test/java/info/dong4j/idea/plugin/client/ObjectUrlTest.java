@@ -0,0 +1,39 @@
+package info.dong4j.idea.plugin.client;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 图片地址解析为 host 和 object key, key 只解码 %XX</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-18 10:40
+ */
+public class ObjectUrlTest {
+    /**
+     * 路径中的 + 保留, %XX 按 UTF-8 解码
+     */
+    @Test
+    public void key() {
+        ObjectUrl url = ObjectUrl.parse("https://Bucket.oss-cn-hangzhou.aliyuncs.com/img/a+b%20c%E5%9B%BE.png?x=1");
+        assertEquals("bucket.oss-cn-hangzhou.aliyuncs.com", url.host);
+        assertEquals("img/a+b c图.png", url.key);
+        assertEquals("img/a+b.png", ObjectUrl.parse("http://bucket.cos.ap-x.myqcloud.com/img/a%2Bb.png").key);
+        assertEquals("bucket", url.bucket("oss-cn-hangzhou.aliyuncs.com"));
+    }
+
+    /**
+     * 不是 http(s) 地址或没有 key 时返回 null
+     */
+    @Test
+    public void invalid() {
+        assertNull(ObjectUrl.parse(null));
+        assertNull(ObjectUrl.parse("ftp://bucket.example.com/a.png"));
+        assertNull(ObjectUrl.parse("https://bucket.example.com/"));
+        assertNull(ObjectUrl.parse("not a url"));
+    }
+}
@@ -0,0 +1,86 @@
+package info.dong4j.idea.plugin.client;
+
+import info.dong4j.idea.plugin.enums.CloudEnum;
+
+import org.junit.Test;
+
+import java.io.*;
+
+import javax.swing.JPanel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 同一份配置快照复用 client, 配置修改后替换当前 client 并关闭被取代的 client</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-16 10:40
+ */
+public class OssClientCacheTest {
+    /**
+     * 配置不变时复用 client, 配置修改后替换当前 client, 被取代的 client 被关闭
+     */
+    @Test
+    public void test() {
+        TestClient first = OssClientCache.get(CloudEnum.SM_MS_CLOUD, TestClient::new, "bucket", "key", 1);
+        TestClient same = OssClientCache.get(CloudEnum.SM_MS_CLOUD, TestClient::new, "bucket", "key", 1);
+        assertSame(first, same);
+        assertSame(first, OssClient.INSTANCES.get(CloudEnum.SM_MS_CLOUD));
+        assertEquals(0, first.shutdowns);
+
+        TestClient changed = OssClientCache.get(CloudEnum.SM_MS_CLOUD, TestClient::new, "bucket", "key", 2);
+        assertNotSame(first, changed);
+        assertSame(changed, OssClient.INSTANCES.get(CloudEnum.SM_MS_CLOUD));
+        assertEquals(1, first.shutdowns);
+        assertEquals(0, changed.shutdowns);
+
+        // 恢复原配置时创建新的 client, 不会复用已关闭的 client
+        TestClient restored = OssClientCache.get(CloudEnum.SM_MS_CLOUD, TestClient::new, "bucket", "key", 1);
+        assertNotSame(first, restored);
+        assertEquals(1, first.shutdowns);
+        assertEquals(1, changed.shutdowns);
+        assertEquals(0, restored.shutdowns);
+    }
+
+    /**
+     * 被取代的 client 上的请求改用当前 client, 当前 client 自己没有可以代替的 client
+     */
+    @Test
+    public void current() {
+        TestClient old = OssClientCache.get(CloudEnum.SM_MS_CLOUD, TestClient::new, "bucket", "key", 3);
+        assertNull(OssClientCache.current(old));
+
+        TestClient current = OssClientCache.get(CloudEnum.SM_MS_CLOUD, TestClient::new, "bucket", "key", 4);
+        assertSame(current, OssClientCache.current(old));
+        assertNull(OssClientCache.current(current));
+    }
+
+    private static class TestClient implements OssClient {
+        private volatile int shutdowns;
+
+        @Override
+        public CloudEnum getCloudType() {
+            return CloudEnum.SM_MS_CLOUD;
+        }
+
+        @Override
+        public String upload(InputStream inputStream, String fileName) {
+            return "";
+        }
+
+        @Override
+        public String upload(InputStream inputStream, String fileName, JPanel jPanel) {
+            return "";
+        }
+
+        @Override
+        public void shutdown() {
+            shutdowns++;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package info.dong4j.idea.plugin.client;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 被取代的 client 在最后一个请求结束后才关闭, 只关闭一次, 关闭后不再接受请求</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-21 20:30
+ */
+public class SharedClientTest {
+    private final List<String> closed = new CopyOnWriteArrayList<>();
+
+    /**
+     * 没有正在进行的请求时立即关闭
+     */
+    @Test
+    public void closeIdle() {
+        SharedClient<String> client = new SharedClient<>(CompletableFuture.completedFuture("sdk"), closed::add);
+        assertTrue(client.acquire());
+        client.release();
+        assertFalse(client.isClosed());
+
+        client.shutdown();
+        assertTrue(client.isClosed());
+        assertEquals(1, closed.size());
+        assertFalse(client.acquire());
+
+        client.shutdown();
+        assertEquals(1, closed.size());
+    }
+
+    /**
+     * 有正在进行的请求时由最后一个请求结束时关闭, 之前的请求继续使用 SDK client
+     */
+    @Test
+    public void closeAfterLastRequest() {
+        SharedClient<String> client = new SharedClient<>(CompletableFuture.completedFuture("sdk"), closed::add);
+        assertTrue(client.acquire());
+        assertTrue(client.acquire());
+
+        client.shutdown();
+        assertFalse(client.isClosed());
+        assertTrue(closed.isEmpty());
+        // 被取代后仍然接受请求, 直到关闭
+        assertTrue(client.acquire());
+        client.release();
+
+        client.release();
+        assertTrue(closed.isEmpty());
+        client.release();
+        assertTrue(client.isClosed());
+        assertEquals(1, closed.size());
+        assertFalse(client.acquire());
+    }
+
+    /**
+     * 初始化完成前被取代时, 初始化完成后关闭; 初始化失败时没有需要关闭的 SDK client
+     */
+    @Test
+    public void closeAfterInit() {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        SharedClient<String> client = new SharedClient<>(future, closed::add);
+        client.shutdown();
+        assertTrue(client.isClosed());
+        assertTrue(closed.isEmpty());
+        future.complete("sdk");
+        assertEquals(1, closed.size());
+
+        SharedClient<String> failed = new SharedClient<>(CompletableFuture.completedFuture(null), closed::add);
+        failed.shutdown();
+        assertTrue(failed.isClosed());
+        assertEquals(1, closed.size());
+    }
+}
@@ -0,0 +1,56 @@
+package info.dong4j.idea.plugin.sdk.qcloud.cos.auth;
+
+import info.dong4j.idea.plugin.sdk.qcloud.cos.http.HttpMethodName;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.codec.digest.HmacUtils;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 缓存 sign key 和复用 builder 后签名结果不变</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-20 10:15
+ */
+public class COSSignerTest {
+    @Test
+    public void test() {
+        COSCredentials cred = new BasicCOSCredentials("AKIDtest", "secret");
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "image/png");
+        headers.put("x-cos-meta-name", "a b");
+        headers.put("Host", "bucket-1250000000.cos.ap-guangzhou.myqcloud.com");
+        Map<String, String> params = new HashMap<>();
+        params.put("partNumber", "1");
+        params.put("uploadId", "id");
+
+        COSSigner signer = new COSSigner();
+        Date expiredTime = new Date(System.currentTimeMillis() + 3600 * 1000);
+        for (int i = 0; i < 2; i++) {
+            String authorization = signer.buildAuthorizationStr(HttpMethodName.PUT, "/a.png", headers, params, cred, expiredTime);
+            String signTime = authorization.split("q-sign-time=")[1].split("&")[0];
+
+            String formatStr = "put\n/a.png\npartnumber=1&uploadid=id\ncontent-type=image%2Fpng&x-cos-meta-name=a%20b\n";
+            String stringToSign = "sha1\n" + signTime + "\n" + DigestUtils.sha1Hex(formatStr) + "\n";
+            String signature = HmacUtils.hmacSha1Hex(HmacUtils.hmacSha1Hex("secret", signTime), stringToSign);
+
+            assertEquals("q-sign-algorithm=sha1&q-ak=AKIDtest&q-sign-time=" + signTime + "&q-key-time=" + signTime
+                         + "&q-header-list=content-type;x-cos-meta-name&q-url-param-list=partnumber;uploadid&q-signature=" + signature,
+                         authorization);
+        }
+    }
+
+    @Test
+    public void window() {
+        assertEquals("120;3780", COSSigner.buildWindowTimeStr(150, 3750));
+        assertEquals("120;3780", COSSigner.buildWindowTimeStr(179, 3779));
+    }
+}
@@ -0,0 +1,143 @@
+package info.dong4j.idea.plugin.sdk.qcloud.cos.http;
+
+import com.sun.net.httpserver.HttpServer;
+
+import info.dong4j.idea.plugin.sdk.qcloud.cos.ClientConfig;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 所有 client 的连接池共用一个回收线程, 第一个连接池注册时启动, 最后一个移除时停止;
+ * 空闲连接按连接池注册时的时间关闭</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-21 20:40
+ */
+public class ConnectionLifecycleManagerTest {
+    private static final String THREAD_NAME = "cos-connection-manager";
+    private static final long IDLE_ALIVE_MS = new ClientConfig().getIdleConnectionAlive();
+
+    /**
+     * 多个连接池只启动一个线程, 全部移除后线程停止, 再次注册时重新启动
+     */
+    @Test(timeout = 10000)
+    public void thread() throws InterruptedException {
+        PoolingHttpClientConnectionManager first = new PoolingHttpClientConnectionManager();
+        PoolingHttpClientConnectionManager second = new PoolingHttpClientConnectionManager();
+        try {
+            assertEquals(0, ConnectionLifecycleManager.getOpenClientCount());
+            // 其他测试移除连接池后线程可能还没有结束
+            awaitThreads(0);
+
+            assertTrue(ConnectionLifecycleManager.register(first, IDLE_ALIVE_MS));
+            assertFalse(ConnectionLifecycleManager.register(first, IDLE_ALIVE_MS));
+            assertTrue(ConnectionLifecycleManager.register(second, IDLE_ALIVE_MS));
+            assertEquals(2, ConnectionLifecycleManager.getOpenClientCount());
+            awaitThreads(1);
+
+            assertTrue(ConnectionLifecycleManager.remove(first));
+            assertFalse(ConnectionLifecycleManager.remove(first));
+            assertEquals(1, ConnectionLifecycleManager.getOpenClientCount());
+            assertEquals(1, threads());
+
+            assertTrue(ConnectionLifecycleManager.remove(second));
+            assertEquals(0, ConnectionLifecycleManager.getOpenClientCount());
+            awaitThreads(0);
+
+            assertTrue(ConnectionLifecycleManager.register(first, IDLE_ALIVE_MS));
+            awaitThreads(1);
+            assertTrue(ConnectionLifecycleManager.remove(first));
+            awaitThreads(0);
+        } finally {
+            ConnectionLifecycleManager.remove(first);
+            ConnectionLifecycleManager.remove(second);
+            first.shutdown();
+            second.shutdown();
+        }
+    }
+
+    /**
+     * 预热的连接默认保留几十秒, 空闲时间较短的连接池的连接先被关闭
+     */
+    @Test(timeout = 20000)
+    public void idleConnections() throws Exception {
+        assertTrue(IDLE_ALIVE_MS >= 30000);
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        PoolingHttpClientConnectionManager warm = new PoolingHttpClientConnectionManager();
+        PoolingHttpClientConnectionManager shortLived = new PoolingHttpClientConnectionManager();
+        try {
+            String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+            warmUp(warm, url);
+            warmUp(shortLived, url);
+            assertEquals(1, warm.getTotalStats().getAvailable());
+            assertEquals(1, shortLived.getTotalStats().getAvailable());
+
+            assertTrue(ConnectionLifecycleManager.register(warm, IDLE_ALIVE_MS));
+            assertTrue(ConnectionLifecycleManager.register(shortLived, 100));
+            while (shortLived.getTotalStats().getAvailable() != 0) {
+                Thread.sleep(50);
+            }
+            assertEquals(1, warm.getTotalStats().getAvailable());
+        } finally {
+            ConnectionLifecycleManager.remove(warm);
+            ConnectionLifecycleManager.remove(shortLived);
+            warm.shutdown();
+            shortLived.shutdown();
+            server.stop(0);
+        }
+    }
+
+    /**
+     * 发送一个请求, 连接放回连接池
+     */
+    private static void warmUp(PoolingHttpClientConnectionManager connectionManager, String url) throws IOException {
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setConnectionManagerShared(true)
+                .build();
+        try (CloseableHttpResponse response = httpClient.execute(new HttpGet(url))) {
+            assertEquals(200, response.getStatusLine().getStatusCode());
+            EntityUtils.consume(response.getEntity());
+        }
+    }
+
+    /**
+     * shutdownNow 之后线程异步结束, 等待线程数达到预期
+     */
+    private static void awaitThreads(int expected) throws InterruptedException {
+        while (threads() != expected) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static int threads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (THREAD_NAME.equals(thread.getName()) && thread.isAlive()) {
+                assertTrue(thread.isDaemon());
+                count++;
+            }
+        }
+        return count;
+    }
+}
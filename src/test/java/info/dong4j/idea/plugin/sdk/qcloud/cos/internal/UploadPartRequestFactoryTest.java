@@ -0,0 +1,54 @@
+package info.dong4j.idea.plugin.sdk.qcloud.cos.internal;
+
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.ObjectMetadata;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.PutObjectRequest;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.UploadPartRequest;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 输入流按分块读入内存, 每个分块可以单独上传</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-20 18:20
+ */
+public class UploadPartRequestFactoryTest {
+    @Test
+    public void test() throws IOException {
+        byte[] data = "0123456789ab".getBytes(StandardCharsets.UTF_8);
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(data.length);
+        PutObjectRequest request = new PutObjectRequest("bucket", "a.png", new ByteArrayInputStream(data), metadata);
+
+        UploadPartRequestFactory factory = new UploadPartRequestFactory(request, "id", 5);
+        String[] expected = {"01234", "56789", "ab"};
+        for (int i = 0; i < expected.length; i++) {
+            assertTrue(factory.hasMoreRequests());
+            UploadPartRequest part = factory.getNextUploadPartRequest(new byte[5]);
+            assertEquals(i + 1, part.getPartNumber());
+            assertEquals(expected[i].length(), part.getPartSize());
+            assertEquals(i == expected.length - 1, part.isLastPart());
+            assertEquals(expected[i], read(part.getInputStream()));
+        }
+        assertFalse(factory.hasMoreRequests());
+    }
+
+    private static String read(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4];
+        int count;
+        while ((count = inputStream.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
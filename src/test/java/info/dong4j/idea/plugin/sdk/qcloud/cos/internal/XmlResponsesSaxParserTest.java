@@ -0,0 +1,139 @@
+package info.dong4j.idea.plugin.sdk.qcloud.cos.internal;
+
+import info.dong4j.idea.plugin.sdk.qcloud.cos.exception.CosClientException;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.ObjectListing;
+
+import org.junit.Test;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 边读边转义回车, 每个线程复用 XMLReader</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-21 10:20
+ */
+public class XmlResponsesSaxParserTest {
+    private static final String LISTING = "<ListBucketResult><Name>bucket</Name><Prefix></Prefix><Marker></Marker>"
+                                          + "<MaxKeys>1000</MaxKeys><IsTruncated>false</IsTruncated>"
+                                          + "<Contents><Key>a\rb.png</Key><Size>1</Size></Contents>"
+                                          + "</ListBucketResult>";
+
+    /**
+     * 回车落在缓冲区边界和读取边界上时, 批量读取与逐字节读取的结果相同
+     */
+    @Test
+    public void escapeCarriageReturn() throws IOException {
+        // 第 8192 个字节 (BufferedInputStream 的默认缓冲区) 前后都是回车
+        byte[] document = new byte[8192 + 64];
+        Arrays.fill(document, (byte) 'x');
+        for (int i : new int[] {0, 1, 8190, 8191, 8192, 8193, document.length - 1}) {
+            document[i] = '\r';
+        }
+        byte[] expected = new String(document, StandardCharsets.UTF_8)
+            .replace("\r", "&#013;")
+            .getBytes(StandardCharsets.UTF_8);
+
+        XmlResponsesSaxParser parser = new XmlResponsesSaxParser();
+        DefaultHandler handler = new DefaultHandler();
+        ByteArrayOutputStream singleBytes = new ByteArrayOutputStream();
+        try (InputStream in = parser.sanitizeXmlDocument(handler, new TrickleInputStream(document, 7))) {
+            int b;
+            while ((b = in.read()) != -1) {
+                singleBytes.write(b);
+            }
+        }
+        assertArrayEquals(expected, singleBytes.toByteArray());
+
+        for (int len : new int[] {1, 2, 3, 5, 6, 7, 8191, 8192}) {
+            for (int chunk : new int[] {1, 6, 4096, document.length}) {
+                ByteArrayOutputStream bulk = new ByteArrayOutputStream();
+                byte[] buffer = new byte[len + 3];
+                try (InputStream in = parser.sanitizeXmlDocument(handler, new TrickleInputStream(document, chunk))) {
+                    int read;
+                    while ((read = in.read(buffer, 3, len)) != -1) {
+                        if (read == 0 || read > len) {
+                            fail("read " + read + " of " + len);
+                        }
+                        bulk.write(buffer, 3, read);
+                    }
+                }
+                assertArrayEquals(expected, bulk.toByteArray());
+            }
+        }
+    }
+
+    /**
+     * 解析失败后丢弃当前线程的 XMLReader, 下一次解析使用新的 XMLReader; 成功解析后复用
+     */
+    @Test
+    public void reuseReaderAfterParseError() throws IOException {
+        XmlResponsesSaxParser parser = new XmlResponsesSaxParser();
+        XMLReader before = XmlResponsesSaxParser.READERS.get();
+        try {
+            parser.parseListBucketObjectsResponse(
+                new ByteArrayInputStream("<ListBucketResult><Name>".getBytes(StandardCharsets.UTF_8)), false);
+            fail("truncated document parsed");
+        } catch (CosClientException expected) {
+            // 文档不完整
+        }
+
+        ObjectListing listing = parser.parseListBucketObjectsResponse(
+            new ByteArrayInputStream(LISTING.getBytes(StandardCharsets.UTF_8)), false).getObjectListing();
+        XMLReader after = XmlResponsesSaxParser.READERS.get();
+        assertNotSame(before, after);
+        assertEquals("bucket", listing.getBucketName());
+        assertEquals(1, listing.getObjectSummaries().size());
+        assertEquals("a\rb.png", listing.getObjectSummaries().get(0).getKey());
+
+        parser.parseListBucketObjectsResponse(new ByteArrayInputStream(LISTING.getBytes(StandardCharsets.UTF_8)), false);
+        assertSame(after, XmlResponsesSaxParser.READERS.get());
+    }
+
+    /**
+     * 每次最多返回 chunk 个字节, available 总是 0, 模拟网络流
+     */
+    private static class TrickleInputStream extends InputStream {
+        private final byte[] data;
+        private final int chunk;
+        private int position;
+
+        TrickleInputStream(byte[] data, int chunk) {
+            this.data = data;
+            this.chunk = chunk;
+        }
+
+        @Override
+        public int read() {
+            return position < data.length ? data[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position >= data.length) {
+                return -1;
+            }
+            int count = Math.min(Math.min(len, chunk), data.length - position);
+            System.arraycopy(data, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package info.dong4j.idea.plugin.sdk.qcloud.cos.internal.crypto;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 分片独立计算的 GHASH 合并后, 生成的认证标签与 AES/GCM 一致</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-21 15:10
+ */
+public class GHashTest {
+    @Test
+    public void test() throws Exception {
+        Random random = new Random(1);
+        byte[] key = new byte[16];
+        byte[] iv = new byte[12];
+        random.nextBytes(key);
+        random.nextBytes(iv);
+        SecretKeySpec secretKey = new SecretKeySpec(key, "AES");
+
+        byte[] data = new byte[1000];
+        random.nextBytes(data);
+        Cipher gcm = Cipher.getInstance("AES/GCM/NoPadding");
+        gcm.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(128, iv));
+        byte[] expected = gcm.doFinal(data);
+
+        Cipher aes = Cipher.getInstance("AES/ECB/NoPadding");
+        aes.init(Cipher.ENCRYPT_MODE, secretKey);
+        GHash ghash = new GHash(aes.doFinal(new byte[16]));
+        byte[] j0 = Arrays.copyOf(iv, 16);
+        j0[15] = 1;
+        byte[] tagMask = aes.doFinal(j0);
+
+        // 前两个分片各 320 字节, 最后一个分片接着前两个分片的 GHASH 计算并追加认证标签
+        long[] first = hash(ghash, expected, 0, 320);
+        long[] second = hash(ghash, expected, 320, 320);
+        long[] shifted = ghash.shift(first, 320 / 16);
+        long[] preceding = {shifted[0] ^ second[0], shifted[1] ^ second[1]};
+
+        InputStream last = new GHashInputStream(
+                new ByteArrayInputStream(expected, 640, data.length - 640), ghash, tagMask, 640,
+                preceding);
+        byte[] lastPart = read(last);
+        assertArrayEquals(Arrays.copyOfRange(expected, 640, expected.length), lastPart);
+    }
+
+    private static long[] hash(GHash ghash, byte[] ciphertext, int offset, int length)
+            throws IOException {
+        GHashInputStream in = new GHashInputStream(
+                new ByteArrayInputStream(ciphertext, offset, length), ghash);
+        read(in);
+        return in.getHash();
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[100];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
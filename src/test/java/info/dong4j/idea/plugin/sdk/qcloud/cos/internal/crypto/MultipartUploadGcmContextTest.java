@@ -0,0 +1,265 @@
+package info.dong4j.idea.plugin.sdk.qcloud.cos.internal.crypto;
+
+import info.dong4j.idea.plugin.sdk.qcloud.cos.auth.BasicCOSCredentials;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.auth.COSStaticCredentialsProvider;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.exception.CosClientException;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.internal.COSDirect;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.AbortMultipartUploadRequest;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.COSObject;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.CompleteMultipartUploadRequest;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.CompleteMultipartUploadResult;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.CopyPartRequest;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.CopyPartResult;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.GetObjectRequest;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.InitiateMultipartUploadRequest;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.InitiateMultipartUploadResult;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.ObjectMetadata;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.PutObjectRequest;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.PutObjectResult;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.UploadPartRequest;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.UploadPartResult;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: AES/GCM 分块乱序并行加密上传, 拼接后的密文和认证标签与 AES/GCM 一致</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-21 16:40
+ */
+public class MultipartUploadGcmContextTest {
+    private static final String UPLOAD_ID = "upload-id";
+    private static final int PART_SIZE = 1024;
+    /** 6 个分块, 最后一个分块 100 字节 */
+    private static final int LENGTH = 5 * PART_SIZE + 100;
+    private static final int PARTS = 6;
+
+    private byte[] data;
+    private FakeDirect direct;
+    private COSCryptoModuleAE module;
+
+    @Before
+    public void setUp() {
+        Random random = new Random(1);
+        data = new byte[LENGTH];
+        random.nextBytes(data);
+        byte[] kek = new byte[16];
+        random.nextBytes(kek);
+
+        direct = new FakeDirect();
+        module = new COSCryptoModuleAE(direct,
+                new COSStaticCredentialsProvider(new BasicCOSCredentials("ak", "sk")),
+                new StaticEncryptionMaterialsProvider(
+                        new EncryptionMaterials(new SecretKeySpec(kek, "AES"))),
+                new CryptoConfiguration(CryptoMode.AuthenticatedEncryption).readOnly());
+        module.initiateMultipartUploadSecurely(new InitiateMultipartUploadRequest("bucket", "a.png"));
+    }
+
+    /**
+     * 分块倒序并行上传, 每个分块先读取一部分再 reset 重读; 最后一个分块等待上传中的分块完成后追加认证标签
+     */
+    @Test(timeout = 10000)
+    public void parallelOutOfOrder() throws Exception {
+        direct.release = new CountDownLatch(1);
+        direct.started = new CountDownLatch(PARTS - 1);
+        ExecutorService threadPool = Executors.newFixedThreadPool(PARTS - 1);
+        try {
+            List<Future<UploadPartResult>> parts = new ArrayList<>();
+            for (int partNumber = PARTS - 1; partNumber >= 1; partNumber--) {
+                final int part = partNumber;
+                parts.add(threadPool.submit(() -> module.uploadPartSecurely(request(part))));
+            }
+            assertTrue(direct.started.await(5, TimeUnit.SECONDS));
+
+            // 其他分块都在上传中, 最后一个分块等待它们完成
+            AtomicReference<Throwable> lastPartError = new AtomicReference<>();
+            Thread lastPart = new Thread(() -> {
+                try {
+                    module.uploadPartSecurely(request(PARTS));
+                } catch (Throwable e) {
+                    lastPartError.set(e);
+                }
+            });
+            lastPart.start();
+            while (lastPart.getState() != Thread.State.WAITING) {
+                assertTrue(lastPart.isAlive());
+                Thread.sleep(1);
+            }
+            assertTrue(direct.parts.isEmpty());
+
+            direct.release.countDown();
+            for (Future<UploadPartResult> part : parts) {
+                part.get();
+            }
+            lastPart.join();
+            assertEquals(null, lastPartError.get());
+        } finally {
+            threadPool.shutdownNow();
+        }
+
+        ByteArrayOutputStream uploaded = new ByteArrayOutputStream();
+        for (int partNumber = 1; partNumber <= PARTS; partNumber++) {
+            uploaded.write(direct.parts.get(partNumber));
+        }
+        assertArrayEquals(encrypt(data), uploaded.toByteArray());
+    }
+
+    /**
+     * 前面的分块还没有开始上传时, 最后一个分块立即失败, 不等待
+     */
+    @Test(expected = CosClientException.class, timeout = 5000)
+    public void missingPart() {
+        for (int partNumber = 2; partNumber < PARTS; partNumber++) {
+            module.uploadPartSecurely(request(partNumber));
+        }
+        module.uploadPartSecurely(request(PARTS));
+    }
+
+    /**
+     * 前面的分块上传失败时, 最后一个分块失败
+     */
+    @Test(timeout = 5000)
+    public void failedPart() {
+        direct.failingPart = 3;
+        for (int partNumber = 1; partNumber < PARTS; partNumber++) {
+            try {
+                module.uploadPartSecurely(request(partNumber));
+            } catch (CosClientException e) {
+                assertEquals(3, partNumber);
+            }
+        }
+        try {
+            module.uploadPartSecurely(request(PARTS));
+            throw new AssertionError("last part uploaded after part 3 failed");
+        } catch (CosClientException expected) {
+            assertTrue(expected.getMessage().contains("part 3"));
+        }
+        assertEquals(null, direct.parts.get(PARTS));
+    }
+
+    private UploadPartRequest request(int partNumber) {
+        int offset = (partNumber - 1) * PART_SIZE;
+        int size = Math.min(PART_SIZE, LENGTH - offset);
+        return new UploadPartRequest().withBucketName("bucket").withKey("a.png")
+                .withUploadId(UPLOAD_ID).withPartNumber(partNumber).withPartSize(size)
+                .withInputStream(new ByteArrayInputStream(data, offset, size))
+                .withLastPart(partNumber == PARTS);
+    }
+
+    /**
+     * 使用上传的内容加密密钥和 IV, 通过 JCE AES/GCM 一次加密全部数据
+     */
+    private byte[] encrypt(byte[] plaintext) throws Exception {
+        CipherLite cipherLite = module.multipartUploadContexts.get(UPLOAD_ID).getCipherLite();
+        Cipher gcm = Cipher.getInstance("AES/GCM/NoPadding");
+        gcm.init(Cipher.ENCRYPT_MODE, cipherLite.getSecretKey(),
+                new GCMParameterSpec(128, cipherLite.getIV()));
+        return gcm.doFinal(plaintext);
+    }
+
+    /**
+     * 记录每个分块上传的密文, 读取前 mark, 读取一部分后 reset, 模拟请求重试
+     */
+    private static class FakeDirect extends COSDirect {
+        private final Map<Integer, byte[]> parts = new ConcurrentHashMap<>();
+        private volatile CountDownLatch started = new CountDownLatch(0);
+        private volatile CountDownLatch release = new CountDownLatch(0);
+        private volatile int failingPart = -1;
+
+        @Override
+        public InitiateMultipartUploadResult initiateMultipartUpload(
+                InitiateMultipartUploadRequest req) {
+            InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+            result.setUploadId(UPLOAD_ID);
+            return result;
+        }
+
+        @Override
+        public UploadPartResult uploadPart(UploadPartRequest req) {
+            started.countDown();
+            try {
+                release.await();
+                if (req.getPartNumber() == failingPart) {
+                    throw new CosClientException("part " + failingPart + " failed");
+                }
+                InputStream in = req.getInputStream();
+                assertTrue(in.markSupported());
+                in.mark(PART_SIZE + 16);
+                assertTrue(in.read(new byte[100]) > 0);
+                in.reset();
+
+                ByteArrayOutputStream ciphertext = new ByteArrayOutputStream();
+                byte[] buffer = new byte[333];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    ciphertext.write(buffer, 0, n);
+                }
+                assertEquals(req.getPartSize(), ciphertext.size());
+                parts.put(req.getPartNumber(), ciphertext.toByteArray());
+            } catch (IOException e) {
+                throw new CosClientException("unable to read part " + req.getPartNumber(), e);
+            } catch (InterruptedException e) {
+                throw new CosClientException("interrupted", e);
+            }
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(req.getPartNumber());
+            result.setETag("etag-" + req.getPartNumber());
+            return result;
+        }
+
+        @Override
+        public PutObjectResult putObject(PutObjectRequest req) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public COSObject getObject(GetObjectRequest req) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ObjectMetadata getObject(GetObjectRequest req, File dest) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompleteMultipartUploadResult completeMultipartUpload(
+                CompleteMultipartUploadRequest req) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CopyPartResult copyPart(CopyPartRequest req) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void abortMultipartUpload(AbortMultipartUploadRequest req) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package info.dong4j.idea.plugin.sdk.qcloud.cos.transfer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 单个上传同时提交到共享线程池的分块数不超过限制</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-20 16:40
+ */
+public class BoundedTransferExecutorTest {
+    @Test
+    public void test() throws Exception {
+        ExecutorService threadPool = TransferManagerUtils.createDefaultExecutorService();
+        ((AdaptiveThreadPoolExecutor) threadPool).setThreadLimits(8, 8);
+        BoundedTransferExecutor executor = new BoundedTransferExecutor(threadPool, 3);
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(20);
+        List<FutureTask<Integer>> parts = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            int part = i;
+            FutureTask<Integer> task = new FutureTask<>(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(10);
+                running.decrementAndGet();
+                done.countDown();
+                return part;
+            });
+            parts.add(task);
+            executor.execute(task);
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < parts.size(); i++) {
+            assertEquals(i, (int) parts.get(i).get());
+        }
+        assertTrue(maxRunning.get() <= 3);
+        threadPool.shutdown();
+    }
+
+    @Test
+    public void threadLimits() {
+        AdaptiveThreadPoolExecutor threadPool = TransferManagerUtils.createDefaultExecutorService(
+            new TransferManagerConfiguration());
+        assertEquals(TransferManagerConfiguration.DEFAULT_MINIMUM_TRANSFER_THREADS, threadPool.getCorePoolSize());
+
+        threadPool.setThreadLimits(4, 6);
+        assertEquals(4, threadPool.getCorePoolSize());
+        assertEquals(4, threadPool.getMaximumPoolSize());
+
+        // 失败时减半, 但不低于最小值
+        threadPool.setThreadLimits(1, 6);
+        threadPool.recordFailure();
+        assertEquals(2, threadPool.getCorePoolSize());
+        threadPool.recordFailure();
+        threadPool.recordFailure();
+        assertEquals(1, threadPool.getCorePoolSize());
+        threadPool.shutdown();
+    }
+}
@@ -0,0 +1,114 @@
+package info.dong4j.idea.plugin.sdk.qcloud.cos.transfer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 同步 manifest 的保存和加载: 先写临时文件再替换, 其他前缀或无法读取的 manifest 被忽略</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-21 18:50
+ */
+public class DirectorySyncManifestTest {
+    private static final String BUCKET = "bucket";
+    private static final String PREFIX = "img/";
+
+    private File directory;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("manifest").toFile();
+        file = new File(directory, "sub/.sync");
+    }
+
+    @After
+    public void tearDown() {
+        for (File f : new File[] {file, temp(), file.getParentFile(), directory}) {
+            f.delete();
+        }
+    }
+
+    /**
+     * 保存后加载得到相同的记录, 上传的文件没有 ETag
+     */
+    @Test
+    public void roundTrip() throws IOException {
+        DirectorySyncManifest manifest = new DirectorySyncManifest(BUCKET, PREFIX);
+        manifest.put(PREFIX + "a.png", new DirectorySyncManifest.Entry(10, 1563700000500L, "etag-a"));
+        manifest.put(PREFIX + "😀.png", new DirectorySyncManifest.Entry(20, 1563700001000L, null));
+        manifest.save(file);
+
+        DirectorySyncManifest loaded = DirectorySyncManifest.load(file, BUCKET, PREFIX);
+        assertEquals(2, loaded.size());
+        DirectorySyncManifest.Entry a = loaded.get(PREFIX + "a.png");
+        assertEquals(10, a.getLength());
+        assertEquals(1563700000500L, a.getLastModified());
+        assertEquals("etag-a", a.getETag());
+        DirectorySyncManifest.Entry emoji = loaded.get(PREFIX + "😀.png");
+        assertEquals(20, emoji.getLength());
+        assertNull(emoji.getETag());
+        assertFalse(temp().exists());
+    }
+
+    /**
+     * 保存时替换已有的 manifest 和残留的临时文件, 不留下临时文件
+     */
+    @Test
+    public void replace() throws IOException {
+        DirectorySyncManifest first = new DirectorySyncManifest(BUCKET, PREFIX);
+        first.put(PREFIX + "old.png", new DirectorySyncManifest.Entry(1, 1, "etag-old"));
+        first.save(file);
+        // 上次保存被中断时残留的临时文件
+        Files.write(temp().toPath(), "{\"bucketName\":".getBytes(StandardCharsets.UTF_8));
+
+        DirectorySyncManifest second = new DirectorySyncManifest(BUCKET, PREFIX);
+        second.put(PREFIX + "new.png", new DirectorySyncManifest.Entry(2, 2, "etag-new"));
+        second.save(file);
+
+        DirectorySyncManifest loaded = DirectorySyncManifest.load(file, BUCKET, PREFIX);
+        assertEquals(1, loaded.size());
+        assertNull(loaded.get(PREFIX + "old.png"));
+        assertEquals("etag-new", loaded.get(PREFIX + "new.png").getETag());
+        assertFalse(temp().exists());
+        assertArrayEquals(new String[] {".sync"}, file.getParentFile().list());
+    }
+
+    /**
+     * 没有 manifest, 属于其他 bucket 或前缀, 或者无法解析时返回空的 manifest
+     */
+    @Test
+    public void ignoreUnusable() throws IOException {
+        assertEquals(0, DirectorySyncManifest.load(null, BUCKET, PREFIX).size());
+        assertEquals(0, DirectorySyncManifest.load(file, BUCKET, PREFIX).size());
+
+        DirectorySyncManifest manifest = new DirectorySyncManifest(BUCKET, PREFIX);
+        manifest.put(PREFIX + "a.png", new DirectorySyncManifest.Entry(1, 1, "etag"));
+        manifest.save(file);
+        assertEquals(1, DirectorySyncManifest.load(file, BUCKET, PREFIX).size());
+        assertEquals(0, DirectorySyncManifest.load(file, BUCKET, "other/").size());
+        assertEquals(0, DirectorySyncManifest.load(file, "other", PREFIX).size());
+
+        Files.write(file.toPath(), "{\"bucketName\":".getBytes(StandardCharsets.UTF_8));
+        DirectorySyncManifest unreadable = DirectorySyncManifest.load(file, BUCKET, PREFIX);
+        assertEquals(0, unreadable.size());
+        assertTrue(file.isFile());
+    }
+
+    private File temp() {
+        return new File(file.getParentFile(), file.getName() + ".tmp");
+    }
+}
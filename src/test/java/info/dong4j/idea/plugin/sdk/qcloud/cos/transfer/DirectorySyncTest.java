@@ -0,0 +1,360 @@
+package info.dong4j.idea.plugin.sdk.qcloud.cos.transfer;
+
+import info.dong4j.idea.plugin.sdk.qcloud.cos.COS;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.ClientConfig;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.COSObjectSummary;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.DeleteObjectsRequest;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.DeleteObjectsResult;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.ListObjectsRequest;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.ObjectListing;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.PutObjectRequest;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.PutObjectResult;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.region.Region;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 目录同步: 按 COS 的 key 顺序分页合并, 根据 manifest 的 ETag 或修改时间判断文件是否变化, 删除本地已删除的对象</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-21 18:20
+ */
+public class DirectorySyncTest {
+    private static final String BUCKET = "bucket";
+    private static final String PREFIX = "img/";
+    /** 文件的修改时间, 对象的修改时间以秒为单位 */
+    private static final long FILE_TIME = 1563700000500L;
+
+    /** COS 按 key 的 UTF-8 字节排序 */
+    private static final Comparator<String> UTF8_ORDER = (a, b) -> {
+        byte[] x = a.getBytes(StandardCharsets.UTF_8);
+        byte[] y = b.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < Math.min(x.length, y.length); i++) {
+            if (x[i] != y[i]) {
+                return (x[i] & 0xff) - (y[i] & 0xff);
+            }
+        }
+        return x.length - y.length;
+    };
+
+    private File directory;
+    private FakeCos fakeCos;
+    private COS cos;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("sync").toFile();
+        fakeCos = new FakeCos();
+        cos = (COS) Proxy.newProxyInstance(COS.class.getClassLoader(), new Class[] {COS.class}, fakeCos);
+    }
+
+    @After
+    public void tearDown() {
+        delete(directory);
+    }
+
+    /**
+     * 按码点比较, 与 UTF-8 字节顺序一致; 辅助平面的字符排在 BMP 的全角字符之后
+     */
+    @Test
+    public void keyOrder() {
+        String emoji = "😀.png";
+        String fullWidth = "Ａ.png";
+        // String.compareTo 按 UTF-16 比较, 顺序相反
+        assertTrue(emoji.compareTo(fullWidth) < 0);
+        assertTrue(DirectorySync.KEY_ORDER.compare(fullWidth, emoji) < 0);
+        assertTrue(DirectorySync.KEY_ORDER.compare(emoji, fullWidth) > 0);
+
+        assertTrue(DirectorySync.KEY_ORDER.compare("a-b", "a/b") < 0);
+        assertTrue(DirectorySync.KEY_ORDER.compare("a/b", "a-b") > 0);
+        assertTrue(DirectorySync.KEY_ORDER.compare("a", "a/b") < 0);
+        assertEquals(0, DirectorySync.KEY_ORDER.compare(emoji, new String(emoji)));
+
+        List<String> keys = new ArrayList<>(Arrays.asList("img/z.png", emoji, "a/b", fullWidth, "a-b",
+                                                          "a", "😀", "img/Ａ/x.png", "img/😁"));
+        List<String> expected = new ArrayList<>(keys);
+        expected.sort(UTF8_ORDER);
+        keys.sort(DirectorySync.KEY_ORDER);
+        assertEquals(expected, keys);
+    }
+
+    /**
+     * 本地文件与分页的列表合并, 每页 2 个对象, 辅助平面字符的 key 跨页时仍能匹配
+     */
+    @Test
+    public void mergeAcrossPages() throws IOException {
+        String[] names = {"a-b.png", "a.png", "b.png", "Ａ.png", "😀.png", "😁.png"};
+        DirectorySync sync = new DirectorySync(cos, BUCKET, PREFIX, true, emptyManifest());
+        for (String name : names) {
+            File file = file(name, name);
+            fakeCos.put(PREFIX + name, name.getBytes(StandardCharsets.UTF_8).length, "etag", FILE_TIME + 1000);
+            sync.addFile(PREFIX + name, file);
+        }
+        File added = file("c.png", "new");
+        sync.addFile(PREFIX + "c.png", added);
+
+        assertEquals(Collections.singletonList(added), sync.findChangedFiles(true));
+        assertEquals(3, fakeCos.pages);
+        assertTrue(fakeCos.deleted.isEmpty());
+        assertEquals(names.length + 1, sync.getManifest().size());
+    }
+
+    /**
+     * 不包含子目录时只列出前缀下直接的对象, 子目录中的对象不会被删除
+     */
+    @Test
+    public void deleteWithoutSubdirectories() throws IOException {
+        fakeCos.put(PREFIX + "removed.png", 1, "etag", FILE_TIME);
+        fakeCos.put(PREFIX + "sub/x.png", 1, "etag", FILE_TIME);
+        fakeCos.put(PREFIX + "sub/y.png", 1, "etag", FILE_TIME);
+        fakeCos.put(PREFIX + "kept.png", 4, "etag", FILE_TIME + 1000);
+        DirectorySync sync = new DirectorySync(cos, BUCKET, PREFIX, false, emptyManifest());
+        sync.addFile(PREFIX + "kept.png", file("kept.png", "kept"));
+
+        assertTrue(sync.findChangedFiles(true).isEmpty());
+        assertEquals(Collections.singletonList("/"), fakeCos.delimiters);
+        assertEquals(Collections.singletonList(PREFIX + "removed.png"), fakeCos.deleted);
+        assertTrue(fakeCos.store.containsKey(PREFIX + "sub/x.png"));
+        assertTrue(fakeCos.store.containsKey(PREFIX + "sub/y.png"));
+    }
+
+    /**
+     * 目录标记没有对应的文件, 也不会被删除
+     */
+    @Test
+    public void keepDirectoryMarkers() throws IOException {
+        fakeCos.put(PREFIX + "dir/", 0, "etag", FILE_TIME);
+        fakeCos.put(PREFIX + "dir/removed.png", 1, "etag", FILE_TIME);
+        DirectorySync sync = new DirectorySync(cos, BUCKET, PREFIX, true, emptyManifest());
+        sync.addFile(PREFIX + "a.png", file("a.png", "a"));
+
+        assertEquals(1, sync.findChangedFiles(true).size());
+        assertEquals(Collections.singletonList(null), fakeCos.delimiters);
+        assertEquals(Collections.singletonList(PREFIX + "dir/removed.png"), fakeCos.deleted);
+        assertTrue(fakeCos.store.containsKey(PREFIX + "dir/"));
+    }
+
+    /**
+     * manifest 中文件的长度和修改时间未变时, 只比较 ETag, 不比较对象的修改时间
+     */
+    @Test
+    public void currentByETag() throws IOException {
+        DirectorySyncManifest manifest = emptyManifest();
+        manifest.put(PREFIX + "same.png", new DirectorySyncManifest.Entry(4, FILE_TIME, "etag-1"));
+        manifest.put(PREFIX + "replaced.png", new DirectorySyncManifest.Entry(4, FILE_TIME, "etag-1"));
+        // 对象比文件旧, 但 ETag 与上次同步时相同
+        fakeCos.put(PREFIX + "same.png", 4, "etag-1", FILE_TIME - 60000);
+        // 对象比文件新, 但被其他客户端替换
+        fakeCos.put(PREFIX + "replaced.png", 4, "etag-2", FILE_TIME + 60000);
+        DirectorySync sync = new DirectorySync(cos, BUCKET, PREFIX, true, manifest);
+        sync.addFile(PREFIX + "same.png", file("same.png", "same"));
+        File replaced = file("replaced.png", "repl");
+        sync.addFile(PREFIX + "replaced.png", replaced);
+
+        assertEquals(Collections.singletonList(replaced), sync.findChangedFiles(false));
+        assertEquals("etag-1", sync.getManifest().get(PREFIX + "same.png").getETag());
+        assertNull(sync.getManifest().get(PREFIX + "replaced.png").getETag());
+    }
+
+    /**
+     * 没有 manifest 记录或记录中没有 ETag 时, 比较对象和文件的修改时间 (对象的修改时间精确到秒)
+     */
+    @Test
+    public void currentByLastModified() throws IOException {
+        DirectorySyncManifest manifest = emptyManifest();
+        // 上次上传失败, 没有 ETag
+        manifest.put(PREFIX + "unsynced.png", new DirectorySyncManifest.Entry(4, FILE_TIME - 5000, null));
+        fakeCos.put(PREFIX + "unsynced.png", 4, "etag-2", FILE_TIME / 1000 * 1000);
+        fakeCos.put(PREFIX + "newer.png", 4, "etag", FILE_TIME + 1000);
+        fakeCos.put(PREFIX + "older.png", 4, "etag", FILE_TIME - 1000);
+        fakeCos.put(PREFIX + "resized.png", 3, "etag", FILE_TIME + 60000);
+        DirectorySync sync = new DirectorySync(cos, BUCKET, PREFIX, true, manifest);
+        sync.addFile(PREFIX + "newer.png", file("newer.png", "newe"));
+        File older = file("older.png", "olde");
+        sync.addFile(PREFIX + "older.png", older);
+        File resized = file("resized.png", "resi");
+        sync.addFile(PREFIX + "resized.png", resized);
+        sync.addFile(PREFIX + "unsynced.png", file("unsynced.png", "unsy"));
+
+        assertEquals(Arrays.asList(older, resized), sync.findChangedFiles(false));
+        assertEquals("etag", sync.getManifest().get(PREFIX + "newer.png").getETag());
+        assertEquals("etag-2", sync.getManifest().get(PREFIX + "unsynced.png").getETag());
+    }
+
+    /**
+     * manifest 记录的长度或修改时间与文件不同时, 文件已修改, 即使对象的 ETag 未变且比文件新
+     * (例如恢复了修改时间更早的旧文件)
+     */
+    @Test
+    public void changedSinceSync() throws IOException {
+        DirectorySyncManifest manifest = emptyManifest();
+        manifest.put(PREFIX + "restored.png", new DirectorySyncManifest.Entry(4, FILE_TIME + 5000, "etag-1"));
+        manifest.put(PREFIX + "edited.png", new DirectorySyncManifest.Entry(5, FILE_TIME, "etag-1"));
+        fakeCos.put(PREFIX + "restored.png", 4, "etag-1", FILE_TIME + 60000);
+        fakeCos.put(PREFIX + "edited.png", 4, "etag-1", FILE_TIME + 60000);
+        DirectorySync sync = new DirectorySync(cos, BUCKET, PREFIX, true, manifest);
+        File edited = file("edited.png", "edit");
+        sync.addFile(PREFIX + "edited.png", edited);
+        File restored = file("restored.png", "rest");
+        sync.addFile(PREFIX + "restored.png", restored);
+
+        assertEquals(Arrays.asList(edited, restored), sync.findChangedFiles(false));
+        assertNull(sync.getManifest().get(PREFIX + "restored.png").getETag());
+        assertNull(sync.getManifest().get(PREFIX + "edited.png").getETag());
+    }
+
+    /**
+     * 第一次同步上传所有文件, 第二次不上传; manifest 文件在目录中也不会被上传
+     */
+    @Test(timeout = 10000)
+    public void syncDirectory() throws Exception {
+        file("a.png", "a");
+        file("sub/b.png", "b");
+        fakeCos.put(PREFIX + "removed.png", 1, "etag", FILE_TIME);
+        File manifestFile = new File(directory, ".sync");
+        TransferManager transferManager = new TransferManager(cos);
+        try {
+            transferManager.syncDirectory(BUCKET, "img", directory, true, manifestFile, true)
+                    .waitForCompletion();
+            assertEquals(Arrays.asList(PREFIX + "a.png", PREFIX + "sub/b.png"), fakeCos.uploaded);
+            assertEquals(Collections.singletonList(PREFIX + "removed.png"), fakeCos.deleted);
+            assertTrue(manifestFile.isFile());
+
+            fakeCos.uploaded.clear();
+            transferManager.syncDirectory(BUCKET, "img", directory, true, manifestFile, true)
+                    .waitForCompletion();
+            assertTrue(fakeCos.uploaded.isEmpty());
+            assertEquals(2, DirectorySyncManifest.load(manifestFile, BUCKET, PREFIX).size());
+        } finally {
+            transferManager.shutdownNow(false);
+        }
+    }
+
+    private static DirectorySyncManifest emptyManifest() {
+        return new DirectorySyncManifest(BUCKET, PREFIX);
+    }
+
+    private File file(String name, String content) throws IOException {
+        File file = new File(directory, name);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        assertTrue(file.setLastModified(FILE_TIME));
+        return file;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * 按 UTF-8 字节顺序分页列出对象, 每页 2 个
+     */
+    private static class FakeCos implements InvocationHandler {
+        private static final int PAGE_SIZE = 2;
+
+        private final Map<String, COSObjectSummary> store = new TreeMap<>(UTF8_ORDER);
+        private final List<String> delimiters = new ArrayList<>();
+        private final List<String> deleted = new ArrayList<>();
+        private final List<String> uploaded = Collections.synchronizedList(new ArrayList<>());
+        private int pages;
+
+        void put(String key, long size, String eTag, long lastModified) {
+            COSObjectSummary summary = new COSObjectSummary();
+            summary.setBucketName(BUCKET);
+            summary.setKey(key);
+            summary.setSize(size);
+            summary.setETag(eTag);
+            summary.setLastModified(new Date(lastModified / 1000 * 1000));
+            synchronized (store) {
+                store.put(key, summary);
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "getClientConfig":
+                    return new ClientConfig(new Region("ap-x"));
+                case "listObjects":
+                    ListObjectsRequest request = (ListObjectsRequest) args[0];
+                    delimiters.add(request.getDelimiter());
+                    return page(request.getPrefix(), request.getDelimiter(), null);
+                case "listNextBatchOfObjects":
+                    ObjectListing previous = (ObjectListing) args[0];
+                    return page(previous.getPrefix(), previous.getDelimiter(), previous.getNextMarker());
+                case "deleteObjects":
+                    for (DeleteObjectsRequest.KeyVersion key : ((DeleteObjectsRequest) args[0]).getKeys()) {
+                        deleted.add(key.getKey());
+                        store.remove(key.getKey());
+                    }
+                    return new DeleteObjectsResult(Collections.emptyList());
+                case "putObject":
+                    PutObjectRequest put = (PutObjectRequest) args[0];
+                    uploaded.add(put.getKey());
+                    Collections.sort(uploaded);
+                    put(put.getKey(), put.getFile().length(), "etag-" + put.getKey(), System.currentTimeMillis());
+                    PutObjectResult result = new PutObjectResult();
+                    result.setETag("etag-" + put.getKey());
+                    return result;
+                case "shutdown":
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+
+        private ObjectListing page(String prefix, String delimiter, String marker) {
+            pages++;
+            ObjectListing listing = new ObjectListing();
+            listing.setBucketName(BUCKET);
+            listing.setPrefix(prefix);
+            listing.setDelimiter(delimiter);
+            for (COSObjectSummary summary : store.values()) {
+                String key = summary.getKey();
+                if (!key.startsWith(prefix) || (marker != null && UTF8_ORDER.compare(key, marker) <= 0)) {
+                    continue;
+                }
+                if (delimiter != null && key.substring(prefix.length()).contains(delimiter)) {
+                    // 子目录中的对象作为公共前缀返回
+                    continue;
+                }
+                if (listing.getObjectSummaries().size() == PAGE_SIZE) {
+                    listing.setTruncated(true);
+                    listing.setNextMarker(listing.getObjectSummaries().get(PAGE_SIZE - 1).getKey());
+                    return listing;
+                }
+                listing.getObjectSummaries().add(summary);
+            }
+            return listing;
+        }
+    }
+}
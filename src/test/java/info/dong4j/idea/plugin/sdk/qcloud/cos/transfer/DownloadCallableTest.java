@@ -0,0 +1,291 @@
+package info.dong4j.idea.plugin.sdk.qcloud.cos.transfer;
+
+import info.dong4j.idea.plugin.sdk.qcloud.cos.COS;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.ClientConfig;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.exception.CosClientException;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.COSObject;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.COSObjectInputStream;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.GetObjectRequest;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.ObjectMetadata;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.region.Region;
+
+import org.apache.http.client.methods.HttpGet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 按字节范围并行下载: ETag 约束, 失败的范围重试一次, 按位置写入文件, 暂停状态序列化后续传</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-21 17:30
+ */
+public class DownloadCallableTest {
+    private static final int PART_SIZE = 1000;
+    /** 11 个范围, 最后一个 500 字节 */
+    private static final int LENGTH = 10 * PART_SIZE + 500;
+    private static final int PARTS = 11;
+    private static final String ETAG = "etag-1";
+
+    private final byte[] content = new byte[LENGTH];
+    private FakeCos fakeCos;
+    private ExecutorService threadPool;
+    private TransferManager transferManager;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        new Random(5).nextBytes(content);
+        fakeCos = new FakeCos(content);
+        threadPool = Executors.newFixedThreadPool(4);
+        COS cos = (COS) Proxy.newProxyInstance(COS.class.getClassLoader(), new Class[] {COS.class}, fakeCos);
+        transferManager = new TransferManager(cos, threadPool, false);
+        TransferManagerConfiguration configuration = new TransferManagerConfiguration();
+        configuration.setMultipartDownloadThreshold(PART_SIZE);
+        configuration.setMultipartDownloadPartSize(PART_SIZE);
+        configuration.setMaximumPartsPerTransfer(3);
+        transferManager.setConfiguration(configuration);
+        file = File.createTempFile("download", ".bin");
+        assertTrue(file.delete());
+    }
+
+    @After
+    public void tearDown() {
+        threadPool.shutdownNow();
+        file.delete();
+    }
+
+    /**
+     * 第一个范围等待后面的范围写入后才返回, 每个范围写入自己的位置; 每个范围请求都带有开始时的 ETag
+     */
+    @Test(timeout = 10000)
+    public void parallel() throws Exception {
+        fakeCos.holdFirstRange = new CountDownLatch(1);
+        Download download = transferManager.download("bucket", "a.png", file);
+        download.waitForCompletion();
+
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+        assertEquals(PARTS, fakeCos.gets.get());
+        for (int part = 0; part < PARTS; part++) {
+            assertEquals(1, fakeCos.attempts(part));
+        }
+        assertEquals(Collections.nCopies(PARTS, Collections.singletonList(ETAG)), fakeCos.eTagConstraints);
+        assertTrue(fakeCos.completionOrder.get(0) != 0);
+
+        PersistableDownload state = download.pause();
+        assertEquals(PART_SIZE, state.getPartSize());
+        assertEquals(ETAG, state.getETag());
+        assertArrayEquals(new int[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10}, state.getCompletedParts());
+    }
+
+    /**
+     * 读取中断的范围重试一次后成功
+     */
+    @Test(timeout = 10000)
+    public void retryOnce() throws Exception {
+        fakeCos.failures.put(4, 1);
+        transferManager.download("bucket", "a.png", file).waitForCompletion();
+
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+        assertEquals(2, fakeCos.attempts(4));
+        assertEquals(PARTS + 1, fakeCos.gets.get());
+    }
+
+    /**
+     * 重试后仍然失败的范围使下载失败; 暂停状态序列化后续传只下载未完成的范围
+     */
+    @Test(timeout = 10000)
+    public void resume() throws Exception {
+        fakeCos.failures.put(7, 2);
+        Download failed = transferManager.download("bucket", "a.png", file);
+        try {
+            failed.waitForCompletion();
+            fail("download with a failing range completed");
+        } catch (CosClientException expected) {
+            // 范围 7 两次失败
+        }
+        assertEquals(Transfer.TransferState.Failed, failed.getState());
+        assertEquals(2, fakeCos.attempts(7));
+
+        PersistableDownload paused = failed.pause();
+        int[] completed = paused.getCompletedParts();
+        assertTrue(completed.length < PARTS);
+        assertTrue(Arrays.binarySearch(completed, 7) < 0);
+        PersistableDownload restored = PersistableTransfer.deserializeFrom(paused.serialize());
+        assertEquals(PART_SIZE, restored.getPartSize());
+        assertEquals(ETAG, restored.getETag());
+        assertArrayEquals(completed, restored.getCompletedParts());
+
+        fakeCos.failures.clear();
+        fakeCos.gets.set(0);
+        fakeCos.attempts.clear();
+        transferManager.resumeDownload(restored).waitForCompletion();
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+        assertEquals(PARTS - completed.length, fakeCos.gets.get());
+        for (int part : completed) {
+            assertEquals(0, fakeCos.attempts(part));
+        }
+    }
+
+    /**
+     * 暂停后对象被修改时, 续传重新下载全部范围
+     */
+    @Test(timeout = 10000)
+    public void resumeChangedObject() throws Exception {
+        PersistableDownload paused = new PersistableDownload("bucket", "a.png", null, null, null,
+                file.getAbsolutePath(), PART_SIZE, "etag-0", new int[] {0, 1, 2});
+        Files.write(file.toPath(), new byte[LENGTH]);
+
+        transferManager.resumeDownload(PersistableTransfer.deserializeFrom(paused.serialize()))
+                .waitForCompletion();
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+        assertEquals(PARTS, fakeCos.gets.get());
+    }
+
+    /**
+     * 下载过程中对象被替换时, 带 ETag 约束的范围请求没有返回内容, 下载失败而不是混合两个版本
+     */
+    @Test(timeout = 10000)
+    public void objectChanged() throws Exception {
+        fakeCos.changeAfterGets = 3;
+        Download download = transferManager.download("bucket", "a.png", file);
+        try {
+            download.waitForCompletion();
+            fail("download of a changed object completed");
+        } catch (CosClientException expected) {
+            assertTrue(expected.getMessage().contains("changed"));
+        }
+        for (List<String> constraints : fakeCos.eTagConstraints) {
+            assertEquals(Collections.singletonList(ETAG), constraints);
+        }
+    }
+
+    private static class FakeCos implements InvocationHandler {
+        private final byte[] content;
+        private final AtomicInteger gets = new AtomicInteger();
+        /** 范围 -> 尝试次数 */
+        private final Map<Integer, AtomicInteger> attempts = new ConcurrentHashMap<>();
+        /** 范围 -> 读取失败的次数 */
+        private final Map<Integer, Integer> failures = new ConcurrentHashMap<>();
+        private final List<List<String>> eTagConstraints = new CopyOnWriteArrayList<>();
+        private final List<Integer> completionOrder = new CopyOnWriteArrayList<>();
+        private final Set<Integer> completed = ConcurrentHashMap.newKeySet();
+        /** 不为 null 时, 第一个范围等待其他范围读取完成 */
+        private volatile CountDownLatch holdFirstRange;
+        /** 请求多少次后对象被替换, -1 表示不变 */
+        private volatile int changeAfterGets = -1;
+
+        FakeCos(byte[] content) {
+            this.content = content;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "getClientConfig":
+                    return new ClientConfig(new Region("ap-x"));
+                case "getObjectMetadata":
+                    ObjectMetadata metadata = new ObjectMetadata();
+                    metadata.setContentLength(content.length);
+                    metadata.setHeader("ETag", ETAG);
+                    return metadata;
+                case "getObject":
+                    return getObject((GetObjectRequest) args[0]);
+                case "shutdown":
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+
+        private COSObject getObject(GetObjectRequest request) throws InterruptedException {
+            int get = gets.incrementAndGet();
+            eTagConstraints.add(request.getMatchingETagConstraints());
+            long[] range = request.getRange();
+            int part = (int) (range[0] / PART_SIZE);
+            assertEquals(Math.min(range[0] + PART_SIZE, content.length) - 1, range[1]);
+            int attempt = attempts.computeIfAbsent(part, p -> new AtomicInteger()).incrementAndGet();
+            if (changeAfterGets >= 0 && get > changeAfterGets) {
+                // COSClient 在 ETag 约束不满足时返回 null
+                return null;
+            }
+            if (part == 0 && holdFirstRange != null) {
+                holdFirstRange.await();
+            }
+
+            int length = (int) (range[1] - range[0] + 1);
+            InputStream in = new ByteArrayInputStream(content, (int) range[0], length);
+            if (attempt <= failures.getOrDefault(part, 0)) {
+                // 读取一半后连接中断
+                in = new SequenceInputStream(new ByteArrayInputStream(content, (int) range[0], length / 2),
+                                             new FailingInputStream());
+            }
+            COSObject object = new COSObject();
+            object.setBucketName(request.getBucketName());
+            object.setKey(request.getKey());
+            object.setObjectContent(new COSObjectInputStream(new CompletionInputStream(in, part), new HttpGet("http://x/")));
+            return object;
+        }
+
+        int attempts(int part) {
+            AtomicInteger count = attempts.get(part);
+            return count == null ? 0 : count.get();
+        }
+
+        /**
+         * 读取到末尾时记录范围的完成顺序
+         */
+        private class CompletionInputStream extends FilterInputStream {
+            private final int part;
+
+            CompletionInputStream(InputStream in, int part) {
+                super(in);
+                this.part = part;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int count = super.read(b, off, len);
+                if (count == -1 && completed.add(part)) {
+                    completionOrder.add(part);
+                    if (part != 0 && holdFirstRange != null) {
+                        holdFirstRange.countDown();
+                    }
+                }
+                return count;
+            }
+        }
+    }
+
+    private static class FailingInputStream extends InputStream {
+        @Override
+        public int read() throws IOException {
+            throw new IOException("connection reset");
+        }
+    }
+}
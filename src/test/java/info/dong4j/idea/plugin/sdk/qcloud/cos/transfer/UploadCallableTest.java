@@ -0,0 +1,245 @@
+package info.dong4j.idea.plugin.sdk.qcloud.cos.transfer;
+
+import info.dong4j.idea.plugin.sdk.qcloud.cos.COS;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.ClientConfig;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.exception.CosClientException;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.AbortMultipartUploadRequest;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.CompleteMultipartUploadRequest;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.CompleteMultipartUploadResult;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.InitiateMultipartUploadResult;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.ObjectMetadata;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.PartETag;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.UploadPartRequest;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.model.UploadPartResult;
+import info.dong4j.idea.plugin.sdk.qcloud.cos.region.Region;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 输入流按分块预读并行上传: 缓冲区复用, 预读受缓冲区数限制, 单线程池不死锁, 分块失败时中止上传</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-20 19:10
+ */
+public class UploadCallableTest {
+    private static final int PART_SIZE = 1024;
+    private static final int MAX_BUFFERS = 2;
+
+    /**
+     * 只有一个线程时, 上传任务自己占用该线程, 等待的分块在读取线程中上传
+     */
+    @Test(timeout = 10000)
+    public void singleThread() throws Exception {
+        byte[] content = content(10 * PART_SIZE + 100);
+        FakeCos fakeCos = new FakeCos(content, -1, 0);
+        ExecutorService threadPool = Executors.newFixedThreadPool(1);
+        try {
+            upload(fakeCos, threadPool, content).waitForUploadResult();
+        } finally {
+            threadPool.shutdownNow();
+        }
+        fakeCos.assertCompleted(11);
+    }
+
+    /**
+     * 多个线程并行上传, 同时上传的分块和预读的字节数都不超过缓冲区数
+     */
+    @Test(timeout = 10000)
+    public void parallel() throws Exception {
+        byte[] content = content(20 * PART_SIZE);
+        FakeCos fakeCos = new FakeCos(content, -1, 20);
+        ExecutorService threadPool = Executors.newFixedThreadPool(4);
+        try {
+            upload(fakeCos, threadPool, content).waitForUploadResult();
+        } finally {
+            threadPool.shutdownNow();
+        }
+        fakeCos.assertCompleted(20);
+        assertTrue(fakeCos.maxConcurrent.get() <= MAX_BUFFERS);
+        assertTrue(fakeCos.maxConcurrent.get() > 1);
+    }
+
+    /**
+     * 分块失败时停止读取, 取消其他分块并中止分块上传
+     */
+    @Test(timeout = 10000)
+    public void failingPart() throws Exception {
+        byte[] content = content(20 * PART_SIZE);
+        FakeCos fakeCos = new FakeCos(content, 3, 5);
+        ExecutorService threadPool = Executors.newFixedThreadPool(2);
+        try {
+            upload(fakeCos, threadPool, content).waitForUploadResult();
+            fail("upload with a failing part completed");
+        } catch (CosClientException expected) {
+            // 分块 3 失败
+        } finally {
+            threadPool.shutdownNow();
+        }
+        assertNull(fakeCos.completed);
+        assertEquals(Collections.singletonList(FakeCos.UPLOAD_ID), fakeCos.aborted);
+        // 失败的分块最多预读 MAX_BUFFERS 个分块
+        assertTrue(fakeCos.source.read.get() <= (3 + MAX_BUFFERS) * PART_SIZE);
+    }
+
+    private static Upload upload(FakeCos fakeCos, ExecutorService threadPool, byte[] content) {
+        COS cos = (COS) Proxy.newProxyInstance(COS.class.getClassLoader(), new Class[] {COS.class}, fakeCos);
+        TransferManager transferManager = new TransferManager(cos, threadPool, false);
+        TransferManagerConfiguration configuration = new TransferManagerConfiguration();
+        configuration.setMinimumUploadPartSize(PART_SIZE);
+        configuration.setMultipartUploadThreshold(PART_SIZE);
+        configuration.setMaximumPartsPerTransfer(MAX_BUFFERS);
+        transferManager.setConfiguration(configuration);
+
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(content.length);
+        return transferManager.upload("bucket", "a.png", fakeCos.source, metadata);
+    }
+
+    private static byte[] content(int length) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) (i * 31 + i / PART_SIZE);
+        }
+        return content;
+    }
+
+    /**
+     * 统计读取的字节数
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private final AtomicLong read = new AtomicLong();
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                read.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0) {
+                read.addAndGet(count);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * 分块上传的 COS, 检查每个分块的内容和预读的字节数
+     */
+    private static class FakeCos implements InvocationHandler {
+        static final String UPLOAD_ID = "upload-id";
+
+        private final byte[] content;
+        private final int failingPart;
+        private final long delayMillis;
+        private final CountingInputStream source;
+        private final Set<Integer> uploadedParts = ConcurrentHashMap.newKeySet();
+        private final AtomicLong uploadedBytes = new AtomicLong();
+        private final AtomicInteger concurrent = new AtomicInteger();
+        private final AtomicInteger maxConcurrent = new AtomicInteger();
+        private final List<String> aborted = Collections.synchronizedList(new ArrayList<>());
+        private volatile List<PartETag> completed;
+
+        /**
+         * @param failingPart 上传失败的分块, -1 表示都成功
+         */
+        FakeCos(byte[] content, int failingPart, long delayMillis) {
+            this.content = content;
+            this.failingPart = failingPart;
+            this.delayMillis = delayMillis;
+            this.source = new CountingInputStream(new ByteArrayInputStream(content));
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "getClientConfig":
+                    return new ClientConfig(new Region("ap-x"));
+                case "initiateMultipartUpload":
+                    InitiateMultipartUploadResult initiated = new InitiateMultipartUploadResult();
+                    initiated.setUploadId(UPLOAD_ID);
+                    return initiated;
+                case "uploadPart":
+                    return uploadPart((UploadPartRequest) args[0]);
+                case "completeMultipartUpload":
+                    completed = ((CompleteMultipartUploadRequest) args[0]).getPartETags();
+                    return new CompleteMultipartUploadResult();
+                case "abortMultipartUpload":
+                    aborted.add(((AbortMultipartUploadRequest) args[0]).getUploadId());
+                    return null;
+                case "shutdown":
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+
+        private UploadPartResult uploadPart(UploadPartRequest request) throws Exception {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                int partNumber = request.getPartNumber();
+                // 还未上传完成的分块都占用一个缓冲区
+                assertTrue(source.read.get() - uploadedBytes.get() <= MAX_BUFFERS * PART_SIZE);
+
+                // 分块的流直接读取缓冲区, 上传完成前缓冲区被复用时内容会被后面的分块覆盖
+                Thread.sleep(delayMillis);
+                byte[] data = new byte[(int) request.getPartSize()];
+                new DataInputStream(request.getInputStream()).readFully(data);
+                int offset = (partNumber - 1) * PART_SIZE;
+                assertArrayEquals(Arrays.copyOfRange(content, offset, offset + data.length), data);
+                if (partNumber == failingPart) {
+                    throw new CosClientException("part " + partNumber + " failed");
+                }
+
+                uploadedParts.add(partNumber);
+                uploadedBytes.addAndGet(data.length);
+                UploadPartResult result = new UploadPartResult();
+                result.setPartNumber(partNumber);
+                result.setETag("etag-" + partNumber);
+                return result;
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        }
+
+        void assertCompleted(int parts) {
+            assertEquals(parts, uploadedParts.size());
+            assertEquals(parts, completed.size());
+            assertEquals(content.length, uploadedBytes.get());
+            assertEquals(content.length, source.read.get());
+            assertTrue(aborted.isEmpty());
+        }
+    }
+}
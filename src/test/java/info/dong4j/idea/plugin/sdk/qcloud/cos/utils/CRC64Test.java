@@ -0,0 +1,43 @@
+package info.dong4j.idea.plugin.sdk.qcloud.cos.utils;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: CRC64 (ECMA-182) 与 COS x-cos-hash-crc64ecma 的算法一致, 分块计算结果相同</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-21 09:30
+ */
+public class CRC64Test {
+    @Test
+    public void test() {
+        CRC64 crc64 = new CRC64();
+        crc64.update("123456789".getBytes(StandardCharsets.UTF_8));
+        assertEquals(0x995DC9BBDF1939FAL, crc64.getValue());
+        assertEquals(Long.toUnsignedString(0x995DC9BBDF1939FAL), crc64.getUnsignedValue());
+
+        byte[] data = new byte[1001];
+        new Random(1).nextBytes(data);
+        CRC64 whole = new CRC64();
+        whole.update(data, 0, data.length);
+
+        CRC64 bytes = new CRC64();
+        for (byte b : data) {
+            bytes.update(b);
+        }
+        assertEquals(whole.getValue(), bytes.getValue());
+
+        CRC64 first = new CRC64();
+        first.update(data, 0, 500);
+        CRC64 resumed = new CRC64(first.getValue());
+        resumed.update(data, 500, 501);
+        assertEquals(whole.getValue(), resumed.getValue());
+    }
+}
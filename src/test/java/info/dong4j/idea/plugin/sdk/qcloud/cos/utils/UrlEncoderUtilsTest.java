@@ -0,0 +1,35 @@
+package info.dong4j.idea.plugin.sdk.qcloud.cos.utils;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.net.*;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 单次遍历编码与 URLEncoder + replace 的结果一致</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @since 2019-07-20 14:40
+ */
+public class UrlEncoderUtilsTest {
+    @Test
+    public void encode() throws UnsupportedEncodingException {
+        String[] values = {"", "abc-_.~", "a b+c*d", "图片 1.png", "emoji😀", "a/b?c=d&e#f", "100%"};
+        for (String value : values) {
+            String expected = URLEncoder.encode(value, "UTF-8").replace("+", "%20").replace("*", "%2A").replace("%7E", "~");
+            assertEquals(expected, UrlEncoderUtils.encode(value));
+        }
+    }
+
+    @Test
+    public void encodePath() {
+        assertEquals("/a/b%20c/%E5%9B%BE.png", UrlEncoderUtils.encodeUrlPath("/a/b c/图.png"));
+        assertEquals("/%2Fa/%2Fb/", UrlEncoderUtils.encodeUrlPath("//a//b/"));
+        assertEquals("/", UrlEncoderUtils.encodeUrlPath("/"));
+        assertEquals("a/b%20c/", UrlEncoderUtils.encodeEscapeDelimiter("a/b c/"));
+    }
+}
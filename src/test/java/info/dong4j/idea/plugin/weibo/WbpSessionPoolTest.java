@@ -0,0 +1,150 @@
+package info.dong4j.idea.plugin.weibo;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>Company: no company</p>
+ * <p>Description: 账号选择和 cookie 刷新</p>
+ *
+ * @author dong4j
+ * @email dong4j@gmail.com
+ * @date 2019-07-19 11:20
+ */
+public class WbpSessionPoolTest {
+    private static final File IMAGE = new File("image.png");
+
+    /**
+     * 选择正在上传数最少的账号, 相同时按轮转位置
+     */
+    @Test(timeout = 10000)
+    public void leastInFlight() throws Exception {
+        FakeRequest a = new FakeRequest("a");
+        FakeRequest b = new FakeRequest("b");
+        FakeRequest c = new FakeRequest("c");
+        WbpSessionPool pool = new WbpSessionPool(Arrays.asList(a, b, c));
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            // 轮转位置 0, 1, 2: 三个账号各有一个上传
+            List<Future<UploadResponse>> uploads = Arrays.asList(executor.submit(() -> pool.upload(IMAGE)),
+                                                                 executor.submit(() -> pool.upload(IMAGE)),
+                                                                 executor.submit(() -> pool.upload(IMAGE)));
+            assertEquals(1, a.started.poll(5, TimeUnit.SECONDS).intValue());
+            assertEquals(1, b.started.poll(5, TimeUnit.SECONDS).intValue());
+            assertEquals(1, c.started.poll(5, TimeUnit.SECONDS).intValue());
+
+            // c 上传完成后, 轮转位置回到 a, 但 a 和 b 仍在上传, 选择 c
+            c.release.countDown();
+            uploads.get(2).get(5, TimeUnit.SECONDS);
+            Future<UploadResponse> fourth = executor.submit(() -> pool.upload(IMAGE));
+            assertEquals(2, c.started.poll(5, TimeUnit.SECONDS).intValue());
+            fourth.get(5, TimeUnit.SECONDS);
+            assertEquals(0, a.started.size() + b.started.size());
+
+            a.release.countDown();
+            b.release.countDown();
+            for (Future<UploadResponse> upload : uploads) {
+                upload.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 同一账号只刷新一次, 刷新期间继续使用旧的 cookie 上传
+     */
+    @Test(timeout = 10000)
+    public void refreshOnce() throws Exception {
+        FakeRequest request = new FakeRequest("refresh");
+        request.release.countDown();
+        request.cookieTime = System.currentTimeMillis() - WbpSessionPool.REFRESH_AFTER - 1;
+        CountDownLatch refreshRelease = new CountDownLatch(1);
+        request.refreshRelease = refreshRelease;
+        WbpSessionPool pool = new WbpSessionPool(Collections.singletonList(request));
+
+        pool.upload(IMAGE);
+        pool.upload(IMAGE);
+        assertTrue(request.refreshStarted.await(5, TimeUnit.SECONDS));
+        pool.upload(IMAGE);
+        assertEquals(1, request.refreshes.get());
+
+        // 刷新完成后 cookie 时间更新, 不再刷新
+        refreshRelease.countDown();
+        assertTrue(request.refreshed.await(5, TimeUnit.SECONDS));
+        pool.upload(IMAGE);
+        assertEquals(1, request.refreshes.get());
+        assertEquals(4, request.uploads.get());
+    }
+
+    /**
+     * 其他账号中包含主账号时只使用一次
+     */
+    @Test
+    public void duplicateAccount() {
+        WbpSessionPool pool = new WbpSessionPool(Arrays.asList(new FakeRequest("a"),
+                                                               new FakeRequest("b"),
+                                                               new FakeRequest("a")));
+        assertEquals(2, pool.size());
+    }
+
+    private static class FakeRequest extends WbpUploadRequest {
+        /** 每次开始上传时放入第几次上传 */
+        private final BlockingQueue<Integer> started = new LinkedBlockingQueue<>();
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger uploads = new AtomicInteger();
+        private final AtomicInteger refreshes = new AtomicInteger();
+        private final CountDownLatch refreshStarted = new CountDownLatch(1);
+        private final CountDownLatch refreshed = new CountDownLatch(1);
+        private volatile CountDownLatch refreshRelease = new CountDownLatch(0);
+        private volatile long cookieTime = System.currentTimeMillis();
+
+        FakeRequest(String username) {
+            super(null, username, "");
+        }
+
+        @Override
+        public long getCookieTime() {
+            return cookieTime;
+        }
+
+        @Override
+        public void refresh() {
+            refreshes.incrementAndGet();
+            refreshStarted.countDown();
+            try {
+                refreshRelease.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            cookieTime = System.currentTimeMillis();
+            refreshed.countDown();
+        }
+
+        @Override
+        public UploadResponse upload(File image) throws IOException {
+            started.add(uploads.incrementAndGet());
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            return new WbpUploadResponse();
+        }
+    }
+}